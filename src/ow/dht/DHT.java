@@ -94,15 +94,38 @@ public interface DHT<V extends Serializable> extends HighLevelService {
 	 * @param key
 	 * @param similarity - threshold within which similar keys will be returned (range: 0-1)
 	 * @param extraHops - number of hops to query after the node responsible for `key`
-	 * @param numResultsDesired - will stop querying extra hops after we've retrieved this many results
-	 *                          actual # of results returned may differ.
-	 *                          If `numResultsDesired` is negative, will always extend query
-	 *                          to `extraHops` nodes.
+	 * @param numResultsDesired - if positive, returns only this many keys most similar to `key`.
+	 *                          Each node returns at most this many keys, and querying extra hops stops
+	 *                          once no neighbor is expected to improve the last of them.
+	 *                          If `numResultsDesired` is not positive, returns all the keys found,
+	 *                          always extending the query to `extraHops` nodes.
 	 * @return A map of key -> set of values, sorted by similarity
 	 */
 	Map<ID, Set<ValueInfo<V>>> getSimilar(ID key, float similarity, int extraHops, int numResultsDesired)
 			throws RoutingException;
 
+	/**
+	 * Performs multiple similarity searches collectively.
+	 * Each key is searched as {@link #getSimilar(ID, float, int, int) getSimilar()} does,
+	 * and stops independently of the others.
+	 * @return results for each key. An element is null if routing to the key failed.
+	 */
+	Map<ID, Set<ValueInfo<V>>>[] getSimilar(ID[] keys, float[] similarities, int extraHops, int numResultsDesired);
+
+	/**
+	 * Performs a multi-probe similarity search.
+	 * Each probe is looked up, probes which resolve to the same responsible node are unified,
+	 * and each node is asked once for the keys similar to the keys of its probes.
+	 * Probes are given in the order of priority, e.g. by {@link ow.id.lsh.MultiProbe}.
+	 * @param keys keys with which found keys are compared. keys[i] is the query for probes[i].
+	 * @param probes IDs to be looked up, which are keys or keys with some bits flipped.
+	 * @param similarity - threshold within which similar keys will be returned (range: 0-1)
+	 * @param numResultsDesired - if positive, returns only this many keys most similar to their queries.
+	 * @return values of the keys found, sorted from the most similar one if `numResultsDesired` is positive.
+	 */
+	Map<ID, Set<ValueInfo<V>>> getSimilarByProbes(ID[] keys, ID[] probes, float similarity, int numResultsDesired)
+			throws RoutingException;
+
 
 	/**
 	 * Performs multiple get operations collectively.
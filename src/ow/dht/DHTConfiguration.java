@@ -26,7 +26,7 @@ public class DHTConfiguration extends HighLevelServiceConfiguration {
 
 	// for Directory
 	public final static String DEFAULT_DIRECTORY_TYPE = "VolatileMap";
-		// "BerkeleyDB", "PersistentMap" or "VolatileMap"
+		// "BerkeleyDB", "PersistentMap", "OffHeapMap" or "VolatileMap"
 	public final static Class DEFAULT_VALUE_CLASS = String.class;
 	public final static String DEFAULT_WORKING_DIR = ".";
 
@@ -54,6 +54,15 @@ public class DHTConfiguration extends HighLevelServiceConfiguration {
 
 	public final static boolean DEFAULT_SEARCH_KEYS_FOR_SIMILARITY = true;
 	public final static int DEFAULT_SIMILAR_SEARCH_HOP_COUNT = 4;
+	public final static int DEFAULT_SIMILAR_SEARCH_PARALLELISM = 1;	// queries extra hops one by one
+	public final static long DEFAULT_SIMILAR_SEARCH_TIMEOUT = -1L;	// msec, no limit if not positive
+	public final static boolean DEFAULT_ADAPTIVE_SIMILAR_SEARCH_HOPS = false;
+	public final static int DEFAULT_SIMILARITY_REPLICA_FANOUT = 0;	// no copies by similarity
+	public final static long DEFAULT_KEY_SUMMARY_INTERVAL = -1L;	// msec, no summaries if not positive
+	public final static int DEFAULT_SIMILAR_RESULT_CACHE_SIZE = 0;	// no cache
+	public final static long DEFAULT_SIMILAR_RESULT_CACHE_TTL = 60 * 1000;	// 1 min
+	public final static int DEFAULT_SIMILAR_REPLY_MAX_RESULTS = -1;	// no limit if not positive
+	public final static int DEFAULT_SIMILAR_REPLY_MAX_SIZE = -1;	// byte, no limit if not positive
 
 
 	private String implName = DEFAULT_IMPL_NAME;
@@ -245,4 +254,122 @@ public class DHTConfiguration extends HighLevelServiceConfiguration {
 		return old;
 	}
 
+	/**
+	 * The number of neighbors of the responsible node queried concurrently by a similarity search.
+	 * If larger than 1, neighbors are queried nearest first as soon as a preceding query returns,
+	 * instead of hop by hop.
+	 */
+	private int similarSearchParallelism = DEFAULT_SIMILAR_SEARCH_PARALLELISM;
+	public int getSimilarSearchParallelism() { return this.similarSearchParallelism; }
+	public int setSimilarSearchParallelism(int parallelism) {
+		int old = this.similarSearchParallelism;
+		this.similarSearchParallelism = parallelism;
+		return old;
+	}
+
+	/**
+	 * The latency budget of a similarity search.
+	 * Neighbors are not queried after it elapses, and results found so far are returned.
+	 */
+	private long similarSearchTimeout = DEFAULT_SIMILAR_SEARCH_TIMEOUT;
+	public long getSimilarSearchTimeout() { return this.similarSearchTimeout; }
+	public long setSimilarSearchTimeout(long timeout) {
+		long old = this.similarSearchTimeout;
+		this.similarSearchTimeout = timeout;
+		return old;
+	}
+
+	/**
+	 * If true, a similarity search stops querying neighbors after consecutive ones return no new result,
+	 * and takes at most as many extra hops as recent searches with the same threshold needed,
+	 * up to the extra hop count.
+	 */
+	private boolean adaptiveSimilarSearchHops = DEFAULT_ADAPTIVE_SIMILAR_SEARCH_HOPS;
+	public boolean getAdaptiveSimilarSearchHops() { return this.adaptiveSimilarSearchHops; }
+	public boolean setAdaptiveSimilarSearchHops(boolean flag) {
+		boolean old = this.adaptiveSimilarSearchHops;
+		this.adaptiveSimilarSearchHops = flag;
+		return old;
+	}
+
+	/**
+	 * The number of the highest-order bits of a key flipped one by one to place copies of its values
+	 * on the nodes responsible for the flipped keys, in addition to the replicas.
+	 * On HammingChord, whose ring is in Gray code order, flipping a high-order bit moves a key far on the ring,
+	 * so that the node responsible for a key also holds keys one bit away from it which other nodes are responsible for.
+	 * Copies are put on at most this many nodes per key.
+	 */
+	private int similarityReplicaFanout = DEFAULT_SIMILARITY_REPLICA_FANOUT;
+	public int getSimilarityReplicaFanout() { return this.similarityReplicaFanout; }
+	public int setSimilarityReplicaFanout(int fanout) {
+		int old = this.similarityReplicaFanout;
+		this.similarityReplicaFanout = fanout;
+		return old;
+	}
+
+	/**
+	 * The interval of sending a summary of the keys on a node to its neighbors.
+	 * A similarity search skips a neighbor whose summary shows no key similar enough,
+	 * using summaries received up to three intervals ago.
+	 */
+	private long keySummaryInterval = DEFAULT_KEY_SUMMARY_INTERVAL;
+	public long getKeySummaryInterval() { return this.keySummaryInterval; }
+	public long setKeySummaryInterval(long interval) {
+		long old = this.keySummaryInterval;
+		this.keySummaryInterval = interval;
+		return old;
+	}
+
+	/**
+	 * The maximum number of the results of similarity searches cached on the querying node.
+	 * A search is answered from the cached results of a search for the same key
+	 * with a lower or the same threshold and at least as many extra hops.
+	 * Results are invalidated when a similar key is put or removed through or on this node.
+	 */
+	private int similarResultCacheSize = DEFAULT_SIMILAR_RESULT_CACHE_SIZE;
+	public int getSimilarResultCacheSize() { return this.similarResultCacheSize; }
+	public int setSimilarResultCacheSize(int size) {
+		int old = this.similarResultCacheSize;
+		this.similarResultCacheSize = size;
+		return old;
+	}
+
+	/**
+	 * The maximum time for which the results of a similarity search are cached,
+	 * shortened to the earliest expiration of the values in them.
+	 */
+	private long similarResultCacheTTL = DEFAULT_SIMILAR_RESULT_CACHE_TTL;
+	public long getSimilarResultCacheTTL() { return this.similarResultCacheTTL; }
+	public long setSimilarResultCacheTTL(long ttl) {
+		long old = this.similarResultCacheTTL;
+		this.similarResultCacheTTL = ttl;
+		return old;
+	}
+
+	/**
+	 * The maximum number of keys in a reply to a similarity query for a key.
+	 * A node replies with its most similar keys up to the smaller of this and the limit of the query,
+	 * and the querying node gets the rest page by page.
+	 */
+	private int similarReplyMaxResults = DEFAULT_SIMILAR_REPLY_MAX_RESULTS;
+	public int getSimilarReplyMaxResults() { return this.similarReplyMaxResults; }
+	public int setSimilarReplyMaxResults(int max) {
+		int old = this.similarReplyMaxResults;
+		this.similarReplyMaxResults = max;
+		return old;
+	}
+
+	/**
+	 * The maximum size of the keys and values in a reply to similarity queries, in byte.
+	 * The limit applies to the serialized results before compression,
+	 * and a reply contains at least one key for each query which has a match.
+	 */
+	private int similarReplyMaxSize = DEFAULT_SIMILAR_REPLY_MAX_SIZE;
+	public int getSimilarReplyMaxSize() { return this.similarReplyMaxSize; }
+	public int setSimilarReplyMaxSize(int size) {
+		int old = this.similarReplyMaxSize;
+		this.similarReplyMaxSize = size;
+		return old;
+	}
+
 }
@@ -99,6 +99,7 @@ public final class ValueInfo<V extends Serializable> implements Expirable, Seria
 		private long ttl;
 		private ByteArray hashedSecret;
 		private int extraHopCount;
+		private boolean similarityCopy;	// put on a node responsible for a similar key
 
 		public Attributes(long ttl, ByteArray hashedSecret) {
 			this.ttl = ttl;
@@ -112,17 +113,25 @@ public final class ValueInfo<V extends Serializable> implements Expirable, Seria
 			this.extraHopCount = extraHopCount;
 		}
 
+		public Attributes(long ttl, ByteArray hashedSecret, boolean similarityCopy) {
+			this(ttl, hashedSecret);
+			this.similarityCopy = similarityCopy;
+		}
+
 		public Attributes(Attributes a, int extraHopCount) {
 			this(a.ttl, a.hashedSecret, extraHopCount);
+			this.similarityCopy = a.similarityCopy;
 		}
 
 		public long getTTL() { return this.ttl; }
 		public ByteArray getHashedSecret() { return this.hashedSecret; }
 		public int getExtraHopCount() { return this.extraHopCount; }
+		public boolean isSimilarityCopy() { return this.similarityCopy; }
 
 		public int hashCode() {	// consider TTL
 			int ret = ((int)ttl) ^ (int)(ttl >>> 32);
 			ret ^= this.extraHopCount;
+			if (this.similarityCopy) ret = ~ret;
 
 			if (this.hashedSecret != null)
 				ret ^= this.hashedSecret.hashCode();
@@ -137,6 +146,7 @@ public final class ValueInfo<V extends Serializable> implements Expirable, Seria
 
 			if (this.ttl != other.ttl) return false;
 			if (this.extraHopCount != other.extraHopCount) return false;
+			if (this.similarityCopy != other.similarityCopy) return false;
 
 			if (this.hashedSecret == null) {
 				if (other.hashedSecret != null) return false;
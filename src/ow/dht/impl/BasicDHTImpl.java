@@ -19,15 +19,28 @@ package ow.dht.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ow.dht.*;
 import ow.dht.impl.message.DHTReplyMessage;
 import ow.dht.impl.message.GetMessage;
+import ow.dht.impl.message.GetSimilarMessage;
+import ow.dht.impl.message.GetSimilarReplyMessage;
+import ow.dht.impl.message.KeySummaryMessage;
 import ow.dht.impl.message.PutMessage;
 import ow.dht.impl.message.RemoveMessage;
 import ow.dht.impl.message.ReqTransferMessage;
@@ -38,11 +51,13 @@ import ow.directory.DirectoryFactory;
 import ow.directory.DirectoryProvider;
 import ow.directory.MultiValueAdapterForSingleValueDirectory;
 import ow.directory.MultiValueDirectory;
+import ow.directory.NearestKeys;
 import ow.directory.SingleValueDirectory;
+import ow.directory.comparator.HammingIDComparator;
+import ow.directory.comparator.KeySimilarityComparator;
 import ow.id.ID;
 import ow.id.IDAddressPair;
 import ow.id.comparator.AlgoBasedFromSrcIDComparator;
-import ow.id.comparator.AlgoBasedTowardTargetIDComparator;
 import ow.messaging.Message;
 import ow.messaging.MessageHandler;
 import ow.messaging.MessageSender;
@@ -52,6 +67,10 @@ import ow.messaging.MessagingFactory;
 import ow.messaging.MessagingProvider;
 import ow.messaging.Signature;
 import ow.routing.*;
+import ow.routing.impl.DistanceRanking;
+import ow.util.Timer;
+import ow.util.concurrent.ExecutorBlockingMode;
+import ow.util.concurrent.SingletonThreadPoolExecutors;
 
 /**
  * A basic implementation of DHT service over a routing service.
@@ -79,6 +98,16 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 
 	protected MultiValueDirectory<ID,ValueInfo<V>> globalDir;
 
+	// summaries of the keys on other nodes, for similarity searches
+	private final Map<ID,ReceivedKeySummary> keySummaries = new ConcurrentHashMap<ID,ReceivedKeySummary>();
+	private volatile KeySummary ownKeySummary = null;
+
+	// extra hops of similarity searches learned from recent ones
+	private final HopBudgets hopBudgets = new HopBudgets();
+
+	// results of similarity searches, null if not cached
+	private SimilarResultCache<V> similarResultCache = null;
+
 	// members for put operations
 	protected ByteArray hashedSecretForPut;
 	protected long ttlForPut;
@@ -160,9 +189,21 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 			this.globalDir = new MultiValueAdapterForSingleValueDirectory<ID, ValueInfo<V>>(singleValueDir);
 		}
 
+		if (config.getSimilarResultCacheSize() > 0) {
+			this.similarResultCache = new SimilarResultCache<V>(
+					config.getSimilarResultCacheSize(), config.getSimilarResultCacheTTL(),
+					this.globalDir.getSimilarityComparator());
+		}
+
 		// initialize message handlers and callbacks
 		prepareHandlers(this.routingSvc);
 		prepareCallbacks(this.routingSvc);
+
+		// start sending key summaries
+		if (config.getKeySummaryInterval() > 0) {
+			Timer.getSingletonTimer().schedule(new KeySummarySender(), Timer.currentTimeMillis(),
+					true /*isDaemon*/, true /*executeConcurrently*/);
+		}
 	}
 
 	public MessagingAddress joinOverlay(String hostAndPort, int defaultPort)
@@ -251,15 +292,25 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 
 	public Map<ID, Set<ValueInfo<V>>> getSimilar(ID key, float threshold, int extraHops, int numResultsDesired)
 		throws RoutingException {
+		SimilarResultCache<V> cache = this.similarResultCache;
+		if (cache != null) {
+			Map<ID, Set<ValueInfo<V>>> cached = cache.get(key, threshold, extraHops, numResultsDesired);
+			if (cached != null) return cached;
+		}
+
 		ID[] keys = { key };
 		Float[] thresholds = { threshold };
 		Map<ID, Set<ValueInfo<V>>>[] results = new Map[keys.length];
+		long start = Timer.currentTimeMillis();
+		long generation = (cache != null ? cache.getGeneration() : 0L);
 		RoutingResult[] routingRes = this.getSimilarRemotely(keys, thresholds, results, extraHops, numResultsDesired);
 
 		if (routingRes[0] == null) {
 			throw new RoutingException();
 		}
 
+		this.cacheSimilarResults(keys, thresholds, results, extraHops, numResultsDesired, start, generation);
+
 		return results[0];
 	}
 
@@ -269,6 +320,174 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 		return results;
 	}
 
+	public Map<ID, Set<ValueInfo<V>>>[] getSimilar(ID[] keys, float[] thresholds, int extraHops, int numResultsDesired) {
+		Map<ID, Set<ValueInfo<V>>>[] results = new Map[keys.length];
+
+		// keys whose results are not cached
+		SimilarResultCache<V> cache = this.similarResultCache;
+		List<Integer> misses = new ArrayList<Integer>(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			if (cache != null) {
+				results[i] = cache.get(keys[i], thresholds[i], extraHops, numResultsDesired);
+			}
+			if (results[i] == null) misses.add(i);
+		}
+		if (misses.isEmpty()) return results;
+
+		ID[] missedKeys = new ID[misses.size()];
+		Float[] boxedThresholds = new Float[misses.size()];
+		for (int j = 0; j < missedKeys.length; j++) {
+			missedKeys[j] = keys[misses.get(j)];
+			boxedThresholds[j] = thresholds[misses.get(j)];
+		}
+
+		Map<ID, Set<ValueInfo<V>>>[] missedResults = new Map[missedKeys.length];
+		long start = Timer.currentTimeMillis();
+		long generation = (cache != null ? cache.getGeneration() : 0L);
+		this.getSimilarRemotely(missedKeys, boxedThresholds, missedResults, extraHops, numResultsDesired);
+		this.cacheSimilarResults(missedKeys, boxedThresholds, missedResults, extraHops, numResultsDesired, start, generation);
+
+		for (int j = 0; j < missedKeys.length; j++) {
+			results[misses.get(j)] = missedResults[j];
+		}
+
+		return results;
+	}
+
+	/**
+	 * Caches the results of searches for all the similar keys which were not cut short by the timeout.
+	 *
+	 * @param start the time at which the searches started.
+	 * @param generation the generation of the cache at the start, see {@link SimilarResultCache#getGeneration()}.
+	 */
+	private void cacheSimilarResults(ID[] keys, Float[] thresholds, Map<ID, Set<ValueInfo<V>>>[] results,
+			int extraHops, int numResultsDesired, long start, long generation) {
+		SimilarResultCache<V> cache = this.similarResultCache;
+		if (cache == null || numResultsDesired > 0) return;
+
+		long timeout = config.getSimilarSearchTimeout();
+		if (timeout > 0 && Timer.currentTimeMillis() - start >= timeout) return;
+
+		for (int i = 0; i < keys.length; i++) {
+			cache.put(keys[i], thresholds[i], extraHops, results[i], start, generation);
+		}
+	}
+
+	/**
+	 * Invalidates the cached results of similarity searches which a put or a remove on the key may change.
+	 */
+	protected void invalidateSimilarResults(ID key) {
+		SimilarResultCache<V> cache = this.similarResultCache;
+		if (cache != null && key != null) cache.invalidate(key);
+	}
+
+	public Map<ID, Set<ValueInfo<V>>> getSimilarByProbes(ID[] keys, ID[] probes, float threshold, int numResultsDesired)
+			throws RoutingException {
+		if (keys.length != probes.length) {
+			throw new IllegalArgumentException("The numbers of keys and probes differ: " + keys.length + ", " + probes.length);
+		}
+
+		// one search per distinct key
+		Map<ID, Integer> keyIndexes = new LinkedHashMap<ID, Integer>();
+		for (ID key : keys) {
+			if (!keyIndexes.containsKey(key)) keyIndexes.put(key, keyIndexes.size());
+		}
+
+		ID[] distinctKeys = keyIndexes.keySet().toArray(new ID[keyIndexes.size()]);
+		if (!config.getSearchKeysForSimilarity()) {
+			// probes are useless without similarity search
+			Map<ID, Set<ValueInfo<V>>> result = new HashMap<ID, Set<ValueInfo<V>>>();
+			for (Map<ID, Set<ValueInfo<V>>> r : this.getSimilar(distinctKeys, new float[distinctKeys.length], 0, numResultsDesired)) {
+				if (r != null) result.putAll(r);
+			}
+			return result;
+		}
+
+		long timeout = config.getSimilarSearchTimeout();
+		long deadline = (timeout > 0 ? Timer.currentTimeMillis() + timeout : Long.MAX_VALUE);
+
+		SimilarSearch[] searches = new BasicDHTImpl.SimilarSearch[distinctKeys.length];
+		for (int i = 0; i < distinctKeys.length; i++) {
+			searches[i] = (numResultsDesired > 0 ?
+					new NearestSearch(distinctKeys[i], threshold, numResultsDesired) :
+					new AllSimilarSearch(distinctKeys[i], threshold));
+		}
+
+		// look up the responsible node of every probe
+		RoutingResult[] routingRes = this.routingSvc.route(probes, 1);
+		this.preserveRoute(probes, routingRes);
+
+		// ask each node once for each key, whichever probe of the key led to it
+		Map<IDAddressPair, NeighborQuery> queries = new LinkedHashMap<>();
+		Map<IDAddressPair, Set<Integer>> queriedKeys = new HashMap<>();
+		boolean routed = false;
+		for (int i = 0; i < probes.length; i++) {
+			if (routingRes[i] == null) continue;
+			routed = true;
+
+			RoutingHop[] route = routingRes[i].getRoute();
+			IDAddressPair node = route[route.length - 1].getIDAddressPair();
+
+			Set<Integer> queried = queriedKeys.get(node);
+			if (queried == null) {
+				queried = new HashSet<Integer>();
+				queriedKeys.put(node, queried);
+			}
+
+			int index = keyIndexes.get(keys[i]);
+			if (!queried.add(index)) continue;
+
+			NeighborQuery q = queries.get(node);
+			if (q == null) {
+				q = new NeighborQuery(node);
+				queries.put(node, q);
+			}
+			q.add(index, 0, searches[index], searches[index].nextThreshold());
+		}
+
+		if (!routed) throw new RoutingException();
+
+		logger.log(Level.FINE, "Multi-probe search: " + probes.length + " probes to " + queries.size() + " nodes.");
+
+		CompletionService<NeighborQuery> completionService = this.newNeighborQueryCompletionService();
+		for (NeighborQuery q : queries.values()) {
+			completionService.submit(q);
+		}
+		for (int n = queries.size(); n > 0; n--) {
+			NeighborQuery q = this.takeNeighborQuery(completionService, deadline);
+			if (q == null) break;	// timed out or interrupted
+
+			q.mergeInto(searches);
+		}
+
+		// get the rest of the replies cut short by the limits
+		this.queryNeighborsSequentially(searches, 0, deadline);
+
+		// unify the results of the keys
+		if (numResultsDesired > 0) {
+			NearestValues<V> nearest = new NearestValues<V>(numResultsDesired);
+			for (SimilarSearch s : searches) nearest.merge(((NearestSearch)s).nearest, 0);
+			return nearest.toMap();
+		}
+		else {
+			Map<ID, Set<ValueInfo<V>>> result = new HashMap<ID, Set<ValueInfo<V>>>();
+			for (SimilarSearch s : searches) {
+				Map<ID, Set<ValueInfo<V>>> r = s.getResults();
+				if (r == null) continue;
+
+				for (Map.Entry<ID, Set<ValueInfo<V>>> entry : r.entrySet()) {
+					Set<ValueInfo<V>> vals = result.get(entry.getKey());
+					if (vals == null) {
+						vals = new HashSet<ValueInfo<V>>();
+						result.put(entry.getKey(), vals);
+					}
+					vals.addAll(entry.getValue());
+				}
+			}
+			return result;
+		}
+	}
+
 	protected RoutingResult[] getRemotely(ID[] keys, Set<ValueInfo<V>>[] results) {
 		Serializable[][] args = new Serializable[keys.length][2];
 		for (int i = 0; i < keys.length; i++) {
@@ -319,11 +538,18 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 			return routingRes;
 		}
 
-		Serializable[][] args = new Serializable[keys.length][3];
+		long timeout = config.getSimilarSearchTimeout();
+		long deadline = (timeout > 0 ? Timer.currentTimeMillis() + timeout : Long.MAX_VALUE);
+
+		SimilarSearch[] searches = new BasicDHTImpl.SimilarSearch[keys.length];
+		Serializable[][] args = new Serializable[keys.length][];
 		for (int i = 0; i < keys.length; i++) {
-			args[i][0] = CALLBACK_NAME_GET_SIMILAR;
-			args[i][1] = keys[i];
-			args[i][2] = thresholds[i];
+			searches[i] = (numResultsDesired > 0 ?
+					new NearestSearch(keys[i], thresholds[i], numResultsDesired) :
+					new AllSimilarSearch(keys[i], thresholds[i]));
+			args[i] = searches[i].callbackArgs(searches[i].nextThreshold());
+			searches[i].hopBudget = (config.getAdaptiveSimilarSearchHops() ?
+					this.hopBudgets.budget(thresholds[i], extraHops) : extraHops);
 		}
 
 		Serializable[][] callbackResultContainer = new Serializable[keys.length][1];
@@ -335,115 +561,606 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 
 		this.preserveRoute(keys, routingRes);
 
+		RoutingAlgorithm algo = this.getRoutingService().getRoutingAlgorithm();
 		for (int i = 0; i < keys.length; i++) {
-			if (routingRes[i] == null) continue;
+			if (routingRes[i] == null) {
+				searches[i].done = true;
+				continue;
+			}
 
-			if (callbackResultContainer[i] != null)
-				results[i] = (Map<ID, Set<ValueInfo<V>>>)callbackResultContainer[i][0];
-		}
+			if (callbackResultContainer[i] != null) {
+				RoutingHop[] route = routingRes[i].getRoute();
+				searches[i].merge(callbackResultContainer[i][0], 0, route[route.length - 1].getIDAddressPair());
+			}
 
-		// If there are no spare candidates, we can't query the neighbors of the responsible nodes
-		if (config.getNumSpareResponsibleNodeCandidates() < 1) {
-			return routingRes;
+			searches[i].setResponsibleNode(algo, routingRes[i]);
 		}
 
 		// To retrieve more similar results, query the neighbors of the nodes that returned
-		// values, up to the max number of hops specified in `extraHops`
+		// values, up to the max number of hops specified in `extraHops`.
+		// If there are no spare candidates, we can't query the neighbors of the responsible nodes,
+		// but still get the rest of the replies cut short by the limits.
+		int neighborHops = (config.getNumSpareResponsibleNodeCandidates() >= 1 ? extraHops : 0);
+		boolean hasPendingPages = false;
+		for (SimilarSearch s : searches) {
+			if (s.peekPendingPage() != null) hasPendingPages = true;
+		}
+		if (neighborHops > 0 || hasPendingPages) {
+			if (config.getSimilarSearchParallelism() > 1) {
+				this.queryNeighborsConcurrently(searches, neighborHops, deadline);
+			}
+			else {
+				this.queryNeighborsSequentially(searches, neighborHops, deadline);
+			}
+		}
 
-		ID[] targets = new ID[keys.length];
-		RoutingResult[] lastHopResults = routingRes;
+		for (int i = 0; i < keys.length; i++) {
+			if (routingRes[i] == null) continue;
 
-		RoutingAlgorithm algo = this.getRoutingService().getRoutingAlgorithm();
+			results[i] = searches[i].getResults();
 
-		Set<ID>[] potentialTargets = new Set[keys.length];
-		Set<ID>[] alreadyContacted = new Set[keys.length];
-		for (int i = 0; i < keys.length; i++) {
-			potentialTargets[i] = new HashSet<>();
-			alreadyContacted[i] = new HashSet<>();
+			if (config.getAdaptiveSimilarSearchHops() && extraHops > 0) {
+				this.hopBudgets.record(thresholds[i], searches[i].lastProductiveHop);
+			}
 		}
 
-		for (int hop = 1; hop <= extraHops; hop++) {
-			for (int i = 0; i < keys.length; i++) {
-				if (results[i] != null && results[i].size() >= numResultsDesired) {
-					return routingRes; // FIXME: this is incorrect if keys.length > 1
-				}
+		return routingRes;
+	}
 
-				if (lastHopResults[i] == null) {
-					//targets[i] = keys[i];
+	/**
+	 * Queries a neighbor per key in each round, nearest to the responsible node first.
+	 * The rest of a reply cut short by the limits is asked for before the next neighbor.
+	 * Keys without neighbors to be queried drop out,
+	 * and the queries of a round are packed into a message per node.
+	 */
+	private void queryNeighborsSequentially(SimilarSearch[] searches, int extraHops, long deadline) {
+		int[] numQueried = new int[searches.length];
+
+		while (true) {
+			Map<IDAddressPair, NeighborQuery> queries = new LinkedHashMap<>();
+
+			for (int i = 0; i < searches.length; i++) {
+				SimilarSearch s = searches[i];
+
+				PendingPage page = s.pollPendingPage();
+				if (page != null) {
+					NeighborQuery q = queries.get(page.node);
+					if (q == null) {
+						q = new NeighborQuery(page.node);
+						queries.put(page.node, q);
+					}
+					q.add(i, page.hop, s, s.nextThreshold(), page.continuation);
 					continue;
 				}
 
-				IDAddressPair[] candidates = lastHopResults[i].getResponsibleNodeCandidates();
-				RoutingHop[] route = lastHopResults[i].getRoute();
-				ID lastResponsibleNode = route[route.length - 1].getIDAddressPair().getID();
-				// the first candidate is the node that returned the result, followed by its neighbors,
-				// sorted by proximity to the target key.
-				alreadyContacted[i].add(lastResponsibleNode);
-				for (IDAddressPair node : candidates) {
-					potentialTargets[i].add(node.getID());
+				if (s.done) continue;
+				if (numQueried[i] >= Math.min(extraHops, s.hopBudget)) {
+					s.done = true;
+					continue;
 				}
 
-				potentialTargets[i].removeAll(alreadyContacted[i]);
-				if (potentialTargets[i].isEmpty()) {
+				float threshold = s.nextThreshold();
+				IDAddressPair next = (Float.isNaN(threshold) ? null : s.pollCandidate());
+				if (next == null) {
+					s.done = true;
 					continue;
 				}
 
-				AlgoBasedTowardTargetIDComparator cmp =
-						new AlgoBasedTowardTargetIDComparator(algo, lastResponsibleNode);
-				TreeSet<ID> closestNodesToPreviousTarget = new TreeSet<>(cmp);
-				closestNodesToPreviousTarget.addAll(potentialTargets[i]);
+				NeighborQuery q = queries.get(next);
+				if (q == null) {
+					q = new NeighborQuery(next);
+					queries.put(next, q);
+				}
+				q.add(i, ++numQueried[i], s, threshold);
+			}
 
-				targets[i] = closestNodesToPreviousTarget.first();
+			if (queries.isEmpty()) break;
+
+			// send the messages of this round concurrently
+			CompletionService<NeighborQuery> completionService = this.newNeighborQueryCompletionService();
+			for (NeighborQuery q : queries.values()) {
+				completionService.submit(q);
 			}
 
-			// targets now contains the IDs of the nodes nearest to the responsible nodes from last round
-			// so we query those nodes using the same args
-			// logger.warning("Extra Hop #" + hop + " contacting " + targets);
-			callbackResultContainer = new Serializable[keys.length][1];
-			lastHopResults = this.routingSvc.invokeCallbacksOnRoute(
-					targets, config.getNumTimesGets() + config.getNumSpareResponsibleNodeCandidates(),
-					callbackResultContainer, -1, args);
+			for (int n = queries.size(); n > 0; n--) {
+				NeighborQuery q = this.takeNeighborQuery(completionService, deadline);
+				if (q == null) return;	// timed out or interrupted
 
-			// merge results from this round with those from previous hops
-			for (int i = 0; i < keys.length; i++) {
-				if (lastHopResults[i] == null || callbackResultContainer[i] == null) {
+				q.mergeInto(searches);
+			}
+		}
+	}
+
+	/**
+	 * Queries up to `extraHops` neighbors per key, nearest to the responsible node first.
+	 * At most {@link DHTConfiguration#getSimilarSearchParallelism() parallelism} messages are in flight,
+	 * each of which packs the queries to the same node.
+	 * Replies are merged as they arrive, and the neighbors of a replying node join the candidates.
+	 */
+	private void queryNeighborsConcurrently(SimilarSearch[] searches, int extraHops, long deadline) {
+		int parallelism = config.getSimilarSearchParallelism();
+
+		CompletionService<NeighborQuery> completionService = this.newNeighborQueryCompletionService();
+		int[] numQueried = new int[searches.length];
+		int inFlight = 0;
+		int nextSearch = 0;	// round-robin over keys
+
+		while (true) {
+			// issue queries
+			Map<IDAddressPair, NeighborQuery> queries = new LinkedHashMap<>();
+			for (int n = 0; n < searches.length; ) {
+				int i = nextSearch;
+				nextSearch = (nextSearch + 1) % searches.length;
+
+				SimilarSearch s = searches[i];
+				PendingPage page = s.peekPendingPage();
+				float threshold = Float.NaN;
+				IDAddressPair next = null;
+				if (page != null) {
+					// the rest of a reply first
+					threshold = s.nextThreshold();
+					next = page.node;
+				}
+				else if (!s.done && numQueried[i] < Math.min(extraHops, s.hopBudget)) {
+					threshold = s.nextThreshold();
+					if (Float.isNaN(threshold)) {
+						s.done = true;
+					}
+					else {
+						next = s.peekCandidate();
+					}
+				}
+
+				NeighborQuery q = (next != null ? queries.get(next) : null);
+				if (next == null || (q == null && inFlight + queries.size() >= parallelism)) {
+					n++;
 					continue;
 				}
+				n = 0;
 
+				if (q == null) {
+					q = new NeighborQuery(next);
+					queries.put(next, q);
+				}
+				if (page != null) {
+					s.pollPendingPage();
+					q.add(i, page.hop, s, threshold, page.continuation);
+				}
+				else {
+					s.pollCandidate();
+					q.add(i, ++numQueried[i], s, threshold);
+				}
+			}
 
-				Map<ID, Set<ValueInfo<V>>> accumulatedResults = results[i];
-				Map<ID, Set<ValueInfo<V>>> hopResult =
-						(Map<ID, Set<ValueInfo<V>>>)callbackResultContainer[i][0];
+			for (NeighborQuery q : queries.values()) {
+				completionService.submit(q);
+				inFlight++;
+			}
 
-				// For each entry in the new map, merge into the accumulatedResults.
-				// If the same ID key exists in both, merge both sets of values
-				for (Map.Entry<ID, Set<ValueInfo<V>>> entry : hopResult.entrySet()) {
+			if (inFlight <= 0) break;
 
-					HashSet<ValueInfo<V>> hopVals = new HashSet<>();
-					// Increase the 'extraHopCount' for the ValueInfo objects returned
-					for (ValueInfo<V> v : entry.getValue()) {
-						if (accumulatedResults.containsKey(entry.getKey())) {
-							hopVals.add(v);
-						} else {
-							ValueInfo<V> withNewHopCount = new ValueInfo<>(
-									v.getValue(),
-									new ValueInfo.Attributes(v.getAttributes(), hop));
-							hopVals.add(withNewHopCount);
-						}
+			// wait for a reply
+			NeighborQuery q = this.takeNeighborQuery(completionService, deadline);
+			if (q == null) break;	// timed out or interrupted
+			inFlight--;
+
+			q.mergeInto(searches);
+		}
+	}
+
+	private CompletionService<NeighborQuery> newNeighborQueryCompletionService() {
+		ExecutorService ex = SingletonThreadPoolExecutors.getThreadPool(
+				ExecutorBlockingMode.CONCURRENT_NON_BLOCKING, Thread.currentThread().isDaemon());
+		return new ExecutorCompletionService<NeighborQuery>(ex);
+	}
+
+	/**
+	 * @return null if the deadline passed or interrupted.
+	 */
+	private NeighborQuery takeNeighborQuery(CompletionService<NeighborQuery> completionService, long deadline) {
+		try {
+			Future<NeighborQuery> f;
+			if (deadline == Long.MAX_VALUE) {
+				f = completionService.take();
+			}
+			else {
+				long remaining = deadline - Timer.currentTimeMillis();
+				f = (remaining > 0 ? completionService.poll(remaining, TimeUnit.MILLISECONDS) : null);
+			}
+
+			if (f == null) {
+				logger.log(Level.INFO, "Similarity search timed out.");
+				return null;
+			}
+
+			return f.get();
+		}
+		catch (InterruptedException e) {
+			logger.log(Level.WARNING, "Similarity search interrupted.");
+			return null;
+		}
+		catch (ExecutionException e) {
+			// NOTREACHED
+			logger.log(Level.WARNING, "A query to a neighbor threw an Exception.", e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Similarity queries for multiple keys to a node, sent in a message.
+	 */
+	private final class NeighborQuery implements Callable<NeighborQuery> {
+		private final IDAddressPair node;
+		private final List<Integer> indexes = new ArrayList<Integer>();	// of the keys
+		private final List<Integer> hops = new ArrayList<Integer>();
+		private final List<ID> keys = new ArrayList<ID>();
+		private final List<Float> thresholds = new ArrayList<Float>();
+		private final List<Integer> numResults = new ArrayList<Integer>();
+		private final List<SeenKeys> seenKeys = new ArrayList<SeenKeys>();
+		private final List<Float> continuations = new ArrayList<Float>();
+
+		private GetSimilarReplyMessage reply = null;
+
+		NeighborQuery(IDAddressPair node) {
+			this.node = node;
+		}
+
+		void add(int index, int hop, SimilarSearch s, float threshold) {
+			this.add(index, hop, s, threshold, Float.NaN);
+		}
+
+		/**
+		 * @param continuation the similarity to resume a reply at, Float.NaN for a new query.
+		 */
+		void add(int index, int hop, SimilarSearch s, float threshold, float continuation) {
+			this.indexes.add(index);
+			this.hops.add(hop);
+			this.keys.add(s.key);
+			this.thresholds.add(threshold);
+			this.numResults.add(s.numResults());
+			this.seenKeys.add(SeenKeys.of(s.seenKeys()));
+			this.continuations.add(continuation);
+		}
+
+		public NeighborQuery call() {
+			int size = this.keys.size();
+			float[] thresholdArray = new float[size];
+			int[] numResultArray = new int[size];
+			float[] continuationArray = new float[size];
+			for (int i = 0; i < size; i++) {
+				thresholdArray[i] = this.thresholds.get(i);
+				numResultArray[i] = this.numResults.get(i);
+				continuationArray[i] = this.continuations.get(i);
+			}
+
+			GetSimilarMessage request = new GetSimilarMessage(
+					this.keys.toArray(new ID[size]), thresholdArray, numResultArray,
+					this.seenKeys.toArray(new SeenKeys[size]), continuationArray,
+					config.getSimilarReplyMaxResults(), config.getSimilarReplyMaxSize(),
+					config.getNumTimesGets() + config.getNumSpareResponsibleNodeCandidates());
+
+			if (this.node.equals(getSelfIDAddressPair())) {
+				this.reply = getSimilarValuesLocally(request);
+				return this;
+			}
+
+			try {
+				Message reply = sender.sendAndReceive(this.node.getAddress(), request);
+				if (reply instanceof GetSimilarReplyMessage) {
+					this.reply = (GetSimilarReplyMessage)reply;
+				}
+				else {
+					logger.log(Level.WARNING, "Reply to a GET_SIMILAR req is not GET_SIMILAR_REPLY: "
+							+ reply.getName()
+							+ " from " + this.node.getAddress());
+				}
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "failed to send: " + this.node.getAddress());
+			}
+
+			return this;
+		}
+
+		void mergeInto(SimilarSearch[] searches) {
+			if (this.reply == null || this.reply.results == null) return;
+
+			for (int j = 0; j < this.indexes.size() && j < this.reply.results.length; j++) {
+				SimilarSearch s = searches[this.indexes.get(j)];
+				s.merge(this.reply.results[j], this.hops.get(j), this.node);
+				s.addCandidates(this.reply.neighbors);
+			}
+
+			if (this.reply.neighbors != null && this.reply.neighborSummaries != null) {
+				long now = Timer.currentTimeMillis();
+				for (int j = 0; j < this.reply.neighbors.length && j < this.reply.neighborSummaries.length; j++) {
+					if (this.reply.neighbors[j] != null && this.reply.neighborSummaries[j] != null) {
+						// as old as the replying node received it
+						long age = (this.reply.neighborSummaryAges != null && j < this.reply.neighborSummaryAges.length ?
+								this.reply.neighborSummaryAges[j] : 0L);
+						putKeySummary(this.reply.neighbors[j].getID(),
+								new ReceivedKeySummary(this.reply.neighborSummaries[j], now - Math.max(age, 0L)));
 					}
+				}
+			}
+		}
+	}
 
-					final int thisHop = hop;
-					accumulatedResults.merge(entry.getKey(), hopVals,
-							(Set<ValueInfo<V>> prevVals, Set<ValueInfo<V>> newVals) -> {
-								prevVals.addAll(newVals);
-								return prevVals;
-							});
+	/**
+	 * The state of a similarity search for a key.
+	 */
+	private abstract class SimilarSearch {
+		final ID key;
+		final float threshold;
+		boolean done = false;
+		int hopBudget = 0;	// extra hops allowed
+
+		int lastProductiveHop = 0;
+		private int unproductiveHops = 0;	// consecutive
+
+		// neighbors not queried yet, nearest to the responsible node first
+		private DistanceRanking<IDAddressPair> candidates = null;
+		private final Set<ID> known = new HashSet<ID>();
+
+		// the rest of the replies cut short by the limits
+		private final Queue<PendingPage> pendingPages = new LinkedList<PendingPage>();
+
+		SimilarSearch(ID key, float threshold) {
+			this.key = key;
+			this.threshold = threshold;
+		}
+
+		/**
+		 * Returns the threshold for the next node.
+		 *
+		 * @return Float.NaN if no node needs to be queried.
+		 */
+		abstract float nextThreshold();
+
+		/**
+		 * @return the number of keys requested, or 0 for all the keys similar enough.
+		 */
+		abstract int numResults();
+
+		/**
+		 * Merges a reply from a node reached after the specified number of extra hops.
+		 *
+		 * @return true if the reply improved the results.
+		 */
+		abstract boolean mergeReply(Serializable reply, int hop);
+
+		/**
+		 * Merges a reply from the node and stops the search if the recent extra hops are not productive.
+		 * A page of the reply is merged, and the rest of it is to be asked for.
+		 */
+		void merge(Serializable reply, int hop, IDAddressPair node) {
+			if (reply instanceof SimilarPage) {
+				SimilarPage page = (SimilarPage)reply;
+				reply = page.getResults();
+				if (node != null) this.pendingPages.offer(new PendingPage(node, hop, page.getContinuation()));
+			}
+
+			boolean improved = this.mergeReply(reply, hop);
+			if (hop <= 0) return;
+
+			if (improved) {
+				this.lastProductiveHop = Math.max(this.lastProductiveHop, hop);
+				this.unproductiveHops = 0;
+			}
+			else if (config.getAdaptiveSimilarSearchHops() && ++this.unproductiveHops >= HopBudgets.PATIENCE) {
+				this.done = true;
+			}
+		}
+
+		abstract Map<ID, Set<ValueInfo<V>>> getResults();
+
+		/**
+		 * Returns the keys found so far, which nodes queried next need not return.
+		 */
+		abstract Collection<ID> seenKeys();
+
+		Serializable[] callbackArgs(float threshold) {
+			return new Serializable[] { CALLBACK_NAME_GET_SIMILAR, this.key, threshold, this.numResults(),
+					config.getSimilarReplyMaxResults(), config.getSimilarReplyMaxSize() };
+		}
+
+		void setResponsibleNode(RoutingAlgorithm algo, RoutingResult res) {
+			RoutingHop[] route = res.getRoute();
+			ID responsibleNode = route[route.length - 1].getIDAddressPair().getID();
+
+			this.candidates = DistanceRanking.towardTarget(algo, responsibleNode);
+			this.known.add(responsibleNode);
+			// the first candidate is the node that returned the result, followed by its neighbors,
+			// sorted by proximity to the target key.
+			this.addCandidates(res.getResponsibleNodeCandidates());
+		}
+
+		void addCandidates(IDAddressPair[] nodes) {
+			if (this.candidates == null || nodes == null) return;
+
+			for (IDAddressPair node : nodes) {
+				if (node != null && this.known.add(node.getID())) {
+					this.candidates.add(node);
 				}
-				results[i] = accumulatedResults;
 			}
 		}
 
-		return routingRes;
+		/**
+		 * Returns the nearest candidate, dropping the ones whose key summaries show no key similar enough.
+		 */
+		IDAddressPair peekCandidate() {
+			if (this.candidates == null) return null;
+
+			float threshold = this.nextThreshold();
+			IDAddressPair next;
+			while ((next = this.candidates.first()) != null && !mayHaveSimilarKeys(next, this.key, threshold)) {
+				this.candidates.removeID(next.getID());
+			}
+
+			return next;
+		}
+
+		IDAddressPair pollCandidate() {
+			IDAddressPair next = this.peekCandidate();
+			if (next != null) this.candidates.removeID(next.getID());
+
+			return next;
+		}
+
+		/**
+		 * Returns the next page to be asked for, dropping the ones which can't improve the results.
+		 */
+		PendingPage peekPendingPage() {
+			if (Float.isNaN(this.nextThreshold())) this.pendingPages.clear();
+			return this.pendingPages.peek();
+		}
+
+		PendingPage pollPendingPage() {
+			PendingPage page = this.peekPendingPage();
+			if (page != null) this.pendingPages.poll();
+
+			return page;
+		}
+	}
+
+	/**
+	 * The rest of a reply to be asked for.
+	 */
+	private static final class PendingPage {
+		final IDAddressPair node;
+		final int hop;	// of the node
+		final float continuation;
+
+		PendingPage(IDAddressPair node, int hop, float continuation) {
+			this.node = node;
+			this.hop = hop;
+			this.continuation = continuation;
+		}
+	}
+
+	/**
+	 * Collects all the keys similar enough.
+	 */
+	private final class AllSimilarSearch extends SimilarSearch {
+		private Map<ID, Set<ValueInfo<V>>> results = null;
+
+		AllSimilarSearch(ID key, float threshold) { super(key, threshold); }
+
+		float nextThreshold() { return this.threshold; }
+
+		int numResults() { return 0; }
+
+		boolean mergeReply(Serializable reply, int hop) {
+			Map<ID, Set<ValueInfo<V>>> hopResult = (Map<ID, Set<ValueInfo<V>>>)reply;
+
+			if (this.results == null) {
+				this.results = (hop == 0 || hopResult == null ? hopResult : new HashMap<ID, Set<ValueInfo<V>>>());
+				if (hop == 0) return (hopResult != null && !hopResult.isEmpty());
+			}
+			if (hopResult == null) return false;
+
+			int sizeBefore = this.results.size();
+
+			// For each entry in the new map, merge into the accumulated results.
+			// If the same ID key exists in both, merge both sets of values
+			for (Map.Entry<ID, Set<ValueInfo<V>>> entry : hopResult.entrySet()) {
+				HashSet<ValueInfo<V>> hopVals = new HashSet<>();
+				// Increase the 'extraHopCount' for the ValueInfo objects returned
+				for (ValueInfo<V> v : entry.getValue()) {
+					if (this.results.containsKey(entry.getKey())) {
+						hopVals.add(v);
+					} else {
+						ValueInfo<V> withNewHopCount = new ValueInfo<>(
+								v.getValue(),
+								new ValueInfo.Attributes(v.getAttributes(), hop));
+						hopVals.add(withNewHopCount);
+					}
+				}
+
+				this.results.merge(entry.getKey(), hopVals,
+						(Set<ValueInfo<V>> prevVals, Set<ValueInfo<V>> newVals) -> {
+							prevVals.addAll(newVals);
+							return prevVals;
+						});
+			}
+
+			return this.results.size() > sizeBefore;
+		}
+
+		Map<ID, Set<ValueInfo<V>>> getResults() { return this.results; }
+
+		Collection<ID> seenKeys() { return (this.results != null ? this.results.keySet() : null); }
+	}
+
+	/**
+	 * Collects the k most similar keys.
+	 * Every node returns at most k keys, and once k keys are found,
+	 * a node is asked only for keys more similar than the k-th one.
+	 * Querying nodes stops when the k-th result cannot be improved:
+	 * it is an exact match, or the last neighbor queried did not improve it.
+	 */
+	private final class NearestSearch extends SimilarSearch {
+		private final NearestValues<V> nearest;
+
+		NearestSearch(ID key, float threshold, int k) {
+			super(key, threshold);
+			this.nearest = new NearestValues<V>(k);
+		}
+
+		float nextThreshold() {
+			float kth = this.nearest.getKthSimilarity();
+			if (kth >= 1.0f) {
+				// no key can be more similar than an exact match
+				return Float.NaN;
+			}
+
+			// ask only for keys which would get into the k results
+			return Math.max(this.threshold, Math.nextUp(kth));
+		}
+
+		int numResults() { return this.nearest.getK(); }
+
+		boolean mergeReply(Serializable reply, int hop) {
+			boolean improved = mergeNearest(this.nearest, this.key, reply, hop);
+
+			if (hop > 0 && !improved && this.nearest.size() >= this.nearest.getK()) {
+				// the nearest remaining neighbor could not improve the k-th result,
+				// and farther ones are less likely to
+				this.done = true;
+			}
+
+			return improved;
+		}
+
+		Map<ID, Set<ValueInfo<V>>> getResults() { return this.nearest.toMap(); }
+
+		Collection<ID> seenKeys() { return this.nearest.keys(); }
+	}
+
+	/**
+	 * Merges a reply to a top-k query.
+	 * A reply of a plain map comes from a node which does not support a top-k query.
+	 */
+	private boolean mergeNearest(NearestValues<V> nearest, ID key, Serializable reply, int hop) {
+		if (reply instanceof NearestValues) {
+			return nearest.merge((NearestValues<V>)reply, hop);
+		}
+
+		if (reply instanceof Map) {
+			KeySimilarityComparator<ID> comparator = this.globalDir.getSimilarityComparator();
+
+			NearestValues<V> converted = new NearestValues<V>(nearest.getK());
+			for (Map.Entry<ID, Set<ValueInfo<V>>> entry : ((Map<ID, Set<ValueInfo<V>>>)reply).entrySet()) {
+				if (entry.getValue() == null) continue;
+
+				float sim = (comparator != null ? comparator.similarity(key, entry.getKey()) : 1.0f);
+				converted.add(entry.getKey(), sim, entry.getValue());
+			}
+
+			return nearest.merge(converted, hop);
+		}
+
+		return false;
 	}
 
 	public Set<ValueInfo<V>> put(ID key, V value) throws IOException {
@@ -634,6 +1351,9 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 			}	// for (MessagingAddress target: targetSet)
 		}	// while (true)
 
+		// after the writes landed, not to cache results of searches made before them again
+		for (ID key: keys) this.invalidateSimilarResults(key);
+
 		// null in requests indicates that routing failure
 		for (int i = 0; i < requests.length; i++) {
 			if (routingRes[i] == null) requests[i] = null;
@@ -706,6 +1426,10 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 			this.routingSvc = null;
 		}
 
+		if (this.similarResultCache != null) {
+			this.similarResultCache.clear();
+		}
+
 		// close directories
 		if (this.globalDir != null) {
 			this.globalDir.close();
@@ -818,6 +1542,27 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 			}
 		};
 		routingSvc.addMessageHandler(GetMessage.class, handler);
+
+		handler = new MessageHandler() {
+			public Message process(Message msg) {
+				return getSimilarValuesLocally((GetSimilarMessage)msg);
+			}
+		};
+		routingSvc.addMessageHandler(GetSimilarMessage.class, handler);
+
+		handler = new MessageHandler() {
+			public Message process(Message msg) {
+				KeySummary summary = ((KeySummaryMessage)msg).summary;
+				if (summary != null) {
+					putKeySummary(((IDAddressPair)msg.getSource()).getID(),
+							new ReceivedKeySummary(summary, Timer.currentTimeMillis()));
+				}
+
+				// reply with the summary of this node, which the neighbor may not send to this node
+				return new KeySummaryMessage(getOwnKeySummary(false));
+			}
+		};
+		routingSvc.addMessageHandler(KeySummaryMessage.class, handler);
 	}
 
 	protected class PutMessageHandler implements MessageHandler {
@@ -826,6 +1571,7 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 			final DHT.PutRequest<V>[] requests = ((PutMessage<V>)msg).requests;
 			long ttl = ((PutMessage<V>)msg).ttl;
 			final ByteArray hashedSecret = ((PutMessage<V>)msg).hashedSecret;
+			boolean similarityCopy = ((PutMessage<V>)msg).similarityCopy;
 
 			logger.log(Level.INFO, "A PUT message received"
 					+ (requests[0] == null ? "(null)" : requests[0].getKey()));
@@ -839,7 +1585,7 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 			Set<ValueInfo<V>>[] ret = new Set/*<ValueInfo<V>>*/[requests.length];
 
 			try {
-				ValueInfo.Attributes attr = new ValueInfo.Attributes(ttl, hashedSecret);
+				ValueInfo.Attributes attr = new ValueInfo.Attributes(ttl, hashedSecret, similarityCopy);
 
 				for (int i = 0; i < requests.length; i++) {
 //System.out.println("  key[" + i + "]: " + requests[i].getKey());
@@ -847,19 +1593,23 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 
 					ret[i] = new HashSet<ValueInfo<V>>();
 
+					// a copy does not take the place of the value this node is responsible for
+					Set<ValueInfo<V>> existing = (similarityCopy ? globalDir.get(requests[i].getKey()) : null);
+
 					for (V v: requests[i].getValues()) {
 //System.out.println("  value: " + v);
 						if (v != null) {
-							ValueInfo<V> old = null;
-							synchronized (globalDir) {
-								old = globalDir.put(requests[i].getKey(), new ValueInfo<V>(v, attr), ttl);
-							}
+							if (existing != null && isOriginal(existing, new ValueInfo<V>(v, attr))) continue;
+
+							ValueInfo<V> old = globalDir.put(requests[i].getKey(), new ValueInfo<V>(v, attr), ttl);
 
 							if (old != null) {
 								ret[i].add(old);
 							}
 						}
 					}
+
+					invalidateSimilarResults(requests[i].getKey());
 				}
 			}
 			catch (Exception e) {
@@ -869,6 +1619,13 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 
 			return new DHTReplyMessage<V>(ret);
 		}
+
+		private boolean isOriginal(Set<ValueInfo<V>> values, ValueInfo<V> value) {
+			for (ValueInfo<V> v: values) {
+				if (v.equals(value) && !v.getAttributes().isSimilarityCopy()) return true;
+			}
+			return false;
+		}
 	}
 
 	protected class RemoveMessageHandler implements MessageHandler {
@@ -920,9 +1677,7 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 									}
 
 									if (remove) {
-										synchronized (globalDir) {
-											globalDir.remove(key, v);
-										}
+										globalDir.remove(key, v);
 
 										ret[i].add(v);
 									}
@@ -933,14 +1688,10 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 					else {
 						ret[i] = new HashSet<ValueInfo<V>>();
 
-						synchronized (globalDir) {
-							if (values != null) {
-								for (V val: values) {
-									ValueInfo<V> v =
-										globalDir.remove(key, new ValueInfo<V>(val, 0, hashedSecret));
-									if (v != null) ret[i].add(v);
-								}
-							}
+						for (V val: values) {
+							ValueInfo<V> v =
+								globalDir.remove(key, new ValueInfo<V>(val, 0, hashedSecret));
+							if (v != null) ret[i].add(v);
 						}
 					}
 				}
@@ -948,6 +1699,8 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 					// NOTREACHED
 					logger.log(Level.WARNING, "An Exception thrown by Directory#remove().", e);
 				}
+
+				invalidateSimilarResults(key);
 			}	// for (int i = 0; i < requests.length; i++)
 
 			return new DHTReplyMessage<V>(ret);
@@ -967,7 +1720,13 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 					return (Serializable) getValueLocally(key, globalDir);
 				} else if (callbackName.equals(CALLBACK_NAME_GET_SIMILAR)) {
 					float threshold = (Float)args[2];
-					return (Serializable) getSimilarValuesLocally(key, threshold, globalDir);
+					int k = (args.length > 3 ? (Integer)args[3] : 0);
+					int maxResults = smallerLimit(
+							(args.length > 4 ? (Integer)args[4] : -1), config.getSimilarReplyMaxResults());
+					int maxReplySize = smallerLimit(
+							(args.length > 5 ? (Integer)args[5] : -1), config.getSimilarReplyMaxSize());
+					return getSimilarPageLocally(key, threshold, k, null, Float.NaN,
+							maxResults, maxReplySize, new int[1], globalDir);
 				}
 
 				logger.log(Level.WARNING, "Unknown callback name " + callbackName);
@@ -1003,4 +1762,338 @@ public class BasicDHTImpl<V extends Serializable> implements DHT<V> {
 		}
 
 	}
+
+	/**
+	 * @param seen keys to be omitted, possibly null.
+	 */
+	protected NearestValues<V>
+		getNearestValuesLocally(ID key, float threshold, int k, SeenKeys seen, MultiValueDirectory<ID, ValueInfo<V>> dir) {
+
+		try {
+			// the seen keys are among the k + seen.size() nearest ones at most
+			int numSeen = (seen != null ? seen.size() : 0);
+			NearestKeys<ID> nearestKeys = dir.getNearestKeys(key, threshold, k + numSeen);
+
+			NearestValues<V> result = new NearestValues<V>(k);
+			int numAdded = 0;
+			boolean truncated = nearestKeys.isTruncated();
+			for (int i = 0; i < nearestKeys.size(); i++) {
+				ID k1 = nearestKeys.getKey(i);
+				if (seen != null && seen.contains(k1)) continue;
+
+				if (numAdded >= k) {
+					truncated = true;
+					break;
+				}
+
+				Set<ValueInfo<V>> values = dir.get(k1);
+				if (values != null) {
+					result.add(k1, nearestKeys.getSimilarity(i), values);
+					numAdded++;
+				}
+			}
+			result.setTruncated(truncated);
+
+			return result;
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "An Exception thrown by Directory#getNearestKeys().", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the keys similar to the key and their values, all of them
+	 * or a {@link SimilarPage} of the most similar ones within the limits.
+	 *
+	 * @param k the number of keys of a top-k query, or 0 for all the keys similar enough.
+	 * @param seen keys to be omitted, possibly null.
+	 * @param continuation the similarity to resume at, Float.NaN for the first page.
+	 * @param maxResults the maximum number of keys, no limit if not positive.
+	 * @param maxReplySize the maximum size of the reply in byte, no limit if not positive.
+	 * @param replySize the size of the reply so far, to which the size of the results is added.
+	 */
+	protected Serializable getSimilarPageLocally(ID key, float threshold, int k, SeenKeys seen, float continuation,
+			int maxResults, int maxReplySize, int[] replySize, MultiValueDirectory<ID, ValueInfo<V>> dir) {
+		if (maxResults <= 0 && maxReplySize <= 0 && Float.isNaN(continuation)) {
+			if (k > 0) {
+				return getNearestValuesLocally(key, threshold, k, seen, dir);
+			}
+
+			Map<ID, Set<ValueInfo<V>>> values = getSimilarValuesLocally(key, threshold, dir);
+			if (values != null && seen != null) {
+				// a copy, not to change a map which the directory may hold
+				values = new HashMap<ID, Set<ValueInfo<V>>>(values);
+				values.keySet().removeIf(seen::contains);
+			}
+			return (Serializable) values;
+		}
+
+		int limit = (maxResults > 0 ? maxResults : Integer.MAX_VALUE);
+		if (k > 0) limit = Math.min(limit, k);
+
+		try {
+			// the seen keys are among the limit + seen.size() nearest ones at most,
+			// and one more tells if the results are cut short
+			int numSeen = (seen != null ? seen.size() : 0);
+			long numKeys = (limit < Integer.MAX_VALUE ? (long)limit + numSeen + 1 : 0L);
+			NearestKeys<ID> nearestKeys = dir.getNearestKeys(key, threshold,
+					(numKeys < Integer.MAX_VALUE ? (int)numKeys : 0));
+
+			Map<ID, Set<ValueInfo<V>>> values = new LinkedHashMap<ID, Set<ValueInfo<V>>>();
+			NearestValues<V> nearest = (k > 0 ? new NearestValues<V>(k) : null);
+			float last = Float.NaN;
+			boolean cut = false;
+			for (int i = 0; i < nearestKeys.size(); i++) {
+				ID k1 = nearestKeys.getKey(i);
+				float sim = nearestKeys.getSimilarity(i);
+				if (sim > continuation || (seen != null && seen.contains(k1))) continue;
+
+				if (values.size() >= limit) {
+					cut = true;
+					break;
+				}
+
+				Set<ValueInfo<V>> vals = dir.get(k1);
+				if (vals == null) continue;
+
+				if (maxReplySize > 0) {
+					int size = serializedSize(k1, vals);
+					if (!values.isEmpty() && replySize[0] + size > maxReplySize) {
+						cut = true;
+						break;
+					}
+					replySize[0] += size;
+				}
+
+				values.put(k1, vals);
+				if (nearest != null) nearest.add(k1, sim, vals);
+				last = sim;
+			}
+
+			if (nearest != null) {
+				nearest.setTruncated(cut || nearestKeys.isTruncated());
+
+				// a top-k query is not cut short by k itself
+				if (cut && values.size() >= k) cut = false;
+			}
+
+			Serializable results = (nearest != null ? nearest : (Serializable)values);
+			return (cut ? new SimilarPage(results, last) : results);
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "An Exception thrown by Directory#getNearestKeys().", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the smaller of two limits, either of which is no limit if not positive.
+	 */
+	private static int smallerLimit(int a, int b) {
+		if (a <= 0) return b;
+		if (b <= 0) return a;
+		return Math.min(a, b);
+	}
+
+	/**
+	 * Returns the size of a key and its values serialized, which they take in a reply before compression.
+	 */
+	private static int serializedSize(ID key, Set<? extends Serializable> values) throws IOException {
+		final int[] count = new int[1];
+		ObjectOutputStream oos = new ObjectOutputStream(new OutputStream() {
+			public void write(int b) { count[0]++; }
+			public void write(byte[] b, int off, int len) { count[0] += len; }
+		});
+		oos.writeObject(key);
+		oos.writeObject(values.toArray(new Serializable[values.size()]));
+		oos.close();
+
+		return count[0];
+	}
+
+	protected GetSimilarReplyMessage getSimilarValuesLocally(GetSimilarMessage req) {
+		int maxResults = smallerLimit(req.maxResults, config.getSimilarReplyMaxResults());
+		int maxReplySize = smallerLimit(req.maxReplySize, config.getSimilarReplyMaxSize());
+		int[] replySize = new int[1];
+
+		Serializable[] results = new Serializable[req.keys.length];
+		for (int i = 0; i < req.keys.length; i++) {
+			SeenKeys seen = (req.seenKeys != null ? req.seenKeys[i] : null);
+			float continuation = (req.continuations != null ? req.continuations[i] : Float.NaN);
+
+			results[i] = getSimilarPageLocally(req.keys[i], req.thresholds[i], req.numResults[i], seen, continuation,
+					maxResults, maxReplySize, replySize, globalDir);
+		}
+
+		IDAddressPair[] neighbors = this.routingSvc.getRoutingAlgorithm().responsibleNodeCandidates(
+				this.getSelfIDAddressPair().getID(), req.numNeighbors);
+
+		// pass the summaries of the neighbors so that the requesting node can skip some of them,
+		// with their ages not to make them look fresher than they are
+		KeySummary[] neighborSummaries = null;
+		long[] neighborSummaryAges = null;
+		if (neighbors != null) {
+			long now = Timer.currentTimeMillis();
+			for (int i = 0; i < neighbors.length; i++) {
+				ReceivedKeySummary received = (neighbors[i] != null ? this.getReceivedKeySummary(neighbors[i].getID()) : null);
+				if (received == null) continue;
+
+				if (neighborSummaries == null) {
+					neighborSummaries = new KeySummary[neighbors.length];
+					neighborSummaryAges = new long[neighbors.length];
+				}
+				neighborSummaries[i] = received.summary;
+				neighborSummaryAges[i] = now - received.time;
+			}
+		}
+
+		return new GetSimilarReplyMessage(results, neighbors, neighborSummaries, neighborSummaryAges);
+	}
+
+	/**
+	 * Returns false if the key summary of the node shows no key similar enough to the key.
+	 * Summaries are used only with Hamming similarity.
+	 */
+	private boolean mayHaveSimilarKeys(IDAddressPair node, ID key, float threshold) {
+		if (Float.isNaN(threshold)
+				|| !(this.globalDir.getSimilarityComparator() instanceof HammingIDComparator)) return true;
+
+		KeySummary summary = this.getKeySummary(node.getID());
+		if (summary == null) return true;
+
+		return summary.mayContain(key, HammingIDComparator.maxDistance(key.getSize() * 8, threshold));
+	}
+
+	/**
+	 * @return null if no summary was received recently.
+	 */
+	private KeySummary getKeySummary(ID nodeID) {
+		ReceivedKeySummary received = this.getReceivedKeySummary(nodeID);
+		return (received != null ? received.summary : null);
+	}
+
+	/**
+	 * @return null if no summary made recently by the node was received.
+	 */
+	private ReceivedKeySummary getReceivedKeySummary(ID nodeID) {
+		long interval = config.getKeySummaryInterval();
+		if (interval <= 0) return null;
+
+		ReceivedKeySummary received = this.keySummaries.get(nodeID);
+		if (received == null) return null;
+
+		if (received.isExpired(Timer.currentTimeMillis(), interval)) {
+			this.keySummaries.remove(nodeID, received);
+			return null;
+		}
+
+		return received;
+	}
+
+	/**
+	 * Keeps a summary of a node unless one made later has been received.
+	 */
+	private void putKeySummary(ID nodeID, ReceivedKeySummary received) {
+		while (true) {
+			ReceivedKeySummary old = this.keySummaries.putIfAbsent(nodeID, received);
+			if (old == null || old.time > received.time) return;
+			if (this.keySummaries.replace(nodeID, old, received)) return;
+		}
+	}
+
+	/**
+	 * Drops the summaries not renewed for a while, e.g. of nodes which left.
+	 */
+	private void expireKeySummaries(long interval) {
+		long now = Timer.currentTimeMillis();
+		Iterator<ReceivedKeySummary> it = this.keySummaries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().isExpired(now, interval)) it.remove();
+		}
+	}
+
+	/**
+	 * Returns the summary of the keys on this node, computed last time the summary was sent
+	 * unless it is to be updated.
+	 */
+	private KeySummary getOwnKeySummary(boolean update) {
+		KeySummary summary = this.ownKeySummary;
+		if (summary == null || update) {
+			summary = KeySummary.of(this.globalDir.keySet(), this.algoConfig.getIDSizeInByte());
+			this.ownKeySummary = summary;
+		}
+
+		return summary;
+	}
+
+	private final static class ReceivedKeySummary {
+		final KeySummary summary;
+		final long time;	// when the node sent it, as far as this node knows
+
+		ReceivedKeySummary(KeySummary summary, long time) {
+			this.summary = summary;
+			this.time = time;
+		}
+
+		boolean isExpired(long now, long interval) {
+			return now - this.time > 3 * interval;
+		}
+	}
+
+	/**
+	 * Sends a summary of the keys on this node to its neighbors and the other nodes in its routing table,
+	 * e.g. fingers, periodically, and drops summaries of other nodes not renewed.
+	 */
+	private final class KeySummarySender implements Runnable {
+		public void run() {
+			if (stopped) return;
+
+			long interval = config.getKeySummaryInterval();
+			if (interval <= 0) return;
+
+			expireKeySummaries(interval);
+
+			if (!suspended) {
+				try {
+					final KeySummary summary = getOwnKeySummary(true);
+
+					IDAddressPair self = getSelfIDAddressPair();
+					RoutingAlgorithm algo = routingSvc.getRoutingAlgorithm();
+					Set<IDAddressPair> targets = new LinkedHashSet<IDAddressPair>();
+					IDAddressPair[] neighbors = algo.responsibleNodeCandidates(
+							self.getID(), config.getNumTimesGets() + config.getNumSpareResponsibleNodeCandidates());
+					if (neighbors != null) targets.addAll(Arrays.asList(neighbors));
+					targets.addAll(Arrays.asList(algo.routingTableEntries()));
+
+					// send in parallel not to let a dead or slow node hold up the others
+					ExecutorService ex = SingletonThreadPoolExecutors.getThreadPool(
+							ExecutorBlockingMode.CONCURRENT_NON_BLOCKING, true);
+					for (final IDAddressPair p: targets) {
+						if (p == null || self.equals(p)) continue;
+
+						ex.submit(new Runnable() {
+							public void run() {
+								try {
+									Message reply = sender.sendAndReceive(p.getAddress(), new KeySummaryMessage(summary));
+									if (reply instanceof KeySummaryMessage && ((KeySummaryMessage)reply).summary != null) {
+										putKeySummary(p.getID(),
+												new ReceivedKeySummary(((KeySummaryMessage)reply).summary, Timer.currentTimeMillis()));
+									}
+								}
+								catch (IOException e) {
+									logger.log(Level.WARNING, "failed to send a KEY_SUMMARY msg: " + p.getAddress());
+								}
+							}
+						});
+					}
+				}
+				catch (Exception e) {
+					// directory closed or routing service stopped concurrently
+					logger.log(Level.WARNING, "Failed to send a key summary.", e);
+				}
+			}
+
+			Timer.getSingletonTimer().schedule(this, Timer.currentTimeMillis() + interval,
+					true /*isDaemon*/, true /*executeConcurrently*/);
+		}
+	}
 }
@@ -32,6 +32,7 @@ import ow.directory.DirectoryConfiguration;
 import ow.directory.DirectoryFactory;
 import ow.directory.DirectoryProvider;
 import ow.directory.MultiValueDirectory;
+import ow.directory.NearestKeys;
 import ow.id.ID;
 import ow.id.IDAddressPair;
 import ow.messaging.MessagingAddress;
@@ -181,6 +182,51 @@ public final class CHTImpl<V extends Serializable> implements DHT<V> {
 		return getSimilar(key, similarity);
 	}
 
+	public Map<ID, Set<ValueInfo<V>>>[] getSimilar(ID[] keys, float[] similarities, int extraHops, int numDesiredResults) {
+		Map<ID, Set<ValueInfo<V>>>[] results = new Map[keys.length];
+
+		for (int i = 0; i < keys.length; i++) {
+			try {
+				results[i] = this.getSimilar(keys[i], similarities[i], extraHops, numDesiredResults);
+			}
+			catch (RoutingException e) {
+				results[i] = null;
+			}
+		}
+
+		return results;
+	}
+
+	public Map<ID, Set<ValueInfo<V>>> getSimilarByProbes(ID[] keys, ID[] probes, float similarity, int numDesiredResults)
+			throws RoutingException {
+		// a single node holds all the keys, which probes need not find
+		Set<ID> distinctKeys = new LinkedHashSet<ID>(Arrays.asList(keys));
+
+		if (numDesiredResults > 0) {
+			// the k most similar keys over all the keys, not the union of the k of each key
+			NearestValues<V> nearest = new NearestValues<V>(numDesiredResults);
+			for (ID key: distinctKeys) {
+				try {
+					NearestKeys<ID> nearestKeys = this.globalDir.getNearestKeys(key, similarity, numDesiredResults);
+					for (int i = 0; i < nearestKeys.size(); i++) {
+						Set<ValueInfo<V>> values = this.globalDir.get(nearestKeys.getKey(i));
+						if (values != null) nearest.add(nearestKeys.getKey(i), nearestKeys.getSimilarity(i), values);
+					}
+				}
+				catch (Exception e) {
+					logger.log(Level.WARNING, "An Exception thrown by Directory#getNearestKeys().", e);
+				}
+			}
+			return nearest.toMap();
+		}
+
+		Map<ID, Set<ValueInfo<V>>> result = new HashMap<>();
+		for (ID key: distinctKeys) {
+			result.putAll(this.getSimilar(key, similarity, 0, numDesiredResults));
+		}
+		return result;
+	}
+
 	@Override
 	public Map<ID, Set<ValueInfo<V>>> getSimilar(ID key, float similarity) throws RoutingException {
 		// TODO: implement if/when time allows. for now, fall back to get()
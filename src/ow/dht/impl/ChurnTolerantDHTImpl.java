@@ -296,6 +296,8 @@ public class ChurnTolerantDHTImpl<V extends Serializable> extends BasicDHTImpl<V
 
 		if (ret[0] == null) throw new RoutingException();
 
+		this.putOrRemoveSimilarityReplicas(requests, false, this.ttlForPut, this.hashedSecretForPut, false);
+
 		return ret[0];
 	}
 
@@ -325,8 +327,13 @@ public class ChurnTolerantDHTImpl<V extends Serializable> extends BasicDHTImpl<V
 			repeat = config.getNumReplica();
 		}
 
-		return this.putOrRemoveRemotely(requests, false, this.ttlForPut, this.hashedSecretForPut, true,
-				numReplica, repeat, false);
+		Set<ValueInfo<V>>[] ret =
+			this.putOrRemoveRemotely(requests, false, this.ttlForPut, this.hashedSecretForPut, true,
+					numReplica, repeat, false);
+
+		this.putOrRemoveSimilarityReplicas(requests, false, this.ttlForPut, this.hashedSecretForPut, false);
+
+		return ret;
 	}
 
 	public Set<ValueInfo<V>>[] remove(DHT.RemoveRequest<V>[] requests, ByteArray hashedSecret) {
@@ -390,9 +397,118 @@ public class ChurnTolerantDHTImpl<V extends Serializable> extends BasicDHTImpl<V
 			this.putOrRemoveRemotely(requests, true, 0, hashedSecret, true,
 					numReplica, repeat, false);
 
+		this.putOrRemoveSimilarityReplicas(requests, true, 0, hashedSecret, false);
+
 		return results;
 	}
 
+	/**
+	 * Puts or removes copies of values on the nodes responsible for the keys
+	 * with one of their highest-order bits flipped, up to
+	 * {@link DHTConfiguration#getSimilarityReplicaFanout() the fan-out} nodes per key.
+	 * The nodes holding the replicas of a key are skipped.
+	 * Copies are put with no further replication and marked as copies, which their holders do not reput.
+	 *
+	 * @param onlyIfResponsible true to skip the keys for which this node is not the responsible node.
+	 */
+	private void putOrRemoveSimilarityReplicas(DHT.PutRequest<V>[] requests,
+			boolean doesRemove, long ttl, ByteArray hashedSecret, boolean onlyIfResponsible) {
+		int fanout = config.getSimilarityReplicaFanout();
+		if (fanout <= 0 || !config.getSearchKeysForSimilarity() || requests.length <= 0) return;
+
+		// requests for the keys to which routing failed have been nulled
+		List<Integer> present = new ArrayList<Integer>();
+		for (int i = 0; i < requests.length; i++) {
+			if (requests[i] != null) present.add(i);
+		}
+
+		if (onlyIfResponsible) {
+			ID[] keys = new ID[present.size()];
+			for (int p = 0; p < present.size(); p++) keys[p] = requests[present.get(p)].getKey();
+
+			RoutingResult[] keyRes = this.routingSvc.route(keys, 1);
+			IDAddressPair self = this.getSelfIDAddressPair();
+			for (int p = present.size() - 1; p >= 0; p--) {
+				IDAddressPair[] candidates = (keyRes[p] != null ? keyRes[p].getResponsibleNodeCandidates() : null);
+				if (candidates == null || candidates.length <= 0 || !self.equals(candidates[0])) present.remove(p);
+			}
+		}
+		if (present.isEmpty()) return;
+
+		int sizeInBit = requests[present.get(0)].getKey().getSize() * 8;
+		fanout = Math.min(fanout, sizeInBit);
+
+		// the keys themselves followed by their flipped ones
+		ID[] targets = new ID[present.size() * (fanout + 1)];
+		for (int p = 0; p < present.size(); p++) {
+			ID key = requests[present.get(p)].getKey();
+			targets[p * (fanout + 1)] = key;
+			for (int b = 0; b < fanout; b++) {
+				int bit = sizeInBit - 1 - b;
+				targets[p * (fanout + 1) + 1 + b] =
+					(ID.testBit(key.getWords(), bit) ? key.clearBit(bit) : key.setBit(bit));
+			}
+		}
+
+		RoutingResult[] routingRes = this.routingSvc.route(targets, Math.max(config.getNumReplica(), 1));
+
+		Map<MessagingAddress,List<Integer>> indexListMap = new HashMap<MessagingAddress,List<Integer>>();
+		for (int p = 0; p < present.size(); p++) {
+			RoutingResult keyRes = routingRes[p * (fanout + 1)];
+			if (keyRes == null) continue;
+
+			Set<MessagingAddress> placed = new HashSet<MessagingAddress>();
+			IDAddressPair[] replicas = keyRes.getResponsibleNodeCandidates();
+			for (int j = 0; j < replicas.length && j < Math.max(config.getNumReplica(), 1); j++) {
+				placed.add(replicas[j].getAddress());
+			}
+
+			for (int b = 0; b < fanout; b++) {
+				RoutingResult res = routingRes[p * (fanout + 1) + 1 + b];
+				if (res == null) continue;
+
+				IDAddressPair[] candidates = res.getResponsibleNodeCandidates();
+				if (candidates == null || candidates.length <= 0) continue;
+
+				MessagingAddress target = candidates[0].getAddress();
+				if (!placed.add(target)) continue;
+
+				List<Integer> indexList = indexListMap.get(target);
+				if (indexList == null) {
+					indexList = new ArrayList<Integer>();
+					indexListMap.put(target, indexList);
+				}
+				indexList.add(present.get(p));
+			}
+		}
+
+		for (Map.Entry<MessagingAddress,List<Integer>> entry: indexListMap.entrySet()) {
+			List<Integer> indexList = entry.getValue();
+
+			int size = indexList.size();
+			DHT.PutRequest<V>[] packedRequests =
+				(doesRemove ? new DHT.RemoveRequest/*<V>*/[size] : new DHT.PutRequest/*<V>*/[size]);
+			for (int i = 0; i < size; i++) {
+				packedRequests[i] = requests[indexList.get(i)];
+			}
+
+			Message request;
+			if (!doesRemove) {
+				request = new PutMessage<V>(packedRequests, ttl, hashedSecret, 1, true);
+			}
+			else {
+				request = new RemoveMessage<V>((DHT.RemoveRequest<V>[])packedRequests, hashedSecret, 1);
+			}
+
+			try {
+				sender.sendAndReceive(entry.getKey(), request);
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "failed to send a copy by similarity: " + entry.getKey());
+			}
+		}
+	}
+
 	public synchronized void stop() {
 		// TODO: transfer key-value pairs on this node to other nodes
 
@@ -567,9 +683,7 @@ System.out.println("  key : " + entry.getKey());
 					Set<ValueInfo<V>> valSet = entry.getValue();
 					for (ValueInfo<V> val: valSet) {
 						try {
-							synchronized (globalDir) {
-								globalDir.put(key, val, val.getTTL());
-							}
+							globalDir.put(key, val, val.getTTL());
 						}
 						catch (Exception e) { /* ignore */ }
 					}
@@ -589,12 +703,9 @@ System.out.println("  key : " + entry.getKey());
 
 //System.out.println("joining node: " + otherID);
 		ID[] keys = null;
-		synchronized (globalDir) {
-			Set<ID> keySet = globalDir.keySet();
-			if (keySet != null) {
-				keys = new ID[keySet.size()];
-				keySet.toArray(keys);
-			}
+		Set<ID> keySet = globalDir.keySet();
+		if (keySet != null) {
+			keys = keySet.toArray(new ID[0]);
 		}
 
 		for (ID k: keys) {
@@ -695,6 +806,9 @@ System.out.println("  key : " + entry.getKey());
 							}
 
 							for (ValueInfo.Attributes attr: attrValueMap.keySet()) {
+								// the nodes responsible for the key reput copies by similarity
+								if (attr.isSimilarityCopy()) continue;
+
 								Set<V> vSet = attrValueMap.get(attr);
 								V[] values = (V[])new Serializable[vSet.size()];
 								vSet.toArray(values);
@@ -723,6 +837,10 @@ System.out.println("  key : " + entry.getKey());
 								Set<ValueInfo<V>>[] ret =
 									putOrRemoveRemotely(reqs, false, attr.getTTL(), attr.getHashedSecret(), false,
 											numReplica, repeat, false);
+								// only the requester or the responsible node puts copies,
+								// not the other replicas
+								putOrRemoveSimilarityReplicas(reqs, false, attr.getTTL(), attr.getHashedSecret(),
+										!config.getDoReputOnRequester());
 
 								for (int k = 0; k < reqs.length; k++) {
 									if (ret[k] == null) {
@@ -0,0 +1,68 @@
+package ow.dht.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Extra hop budgets of similarity searches learned from recent searches.
+ * For each threshold, rounded to a hundredth, the last extra hop which found a new result
+ * is recorded for the recent searches, and a search is allowed {@link #PATIENCE} hops beyond most of them,
+ * so that a budget grows again if searches keep finding results near its end.
+ */
+final class HopBudgets {
+	/**
+	 * The number of consecutive extra hops without a new result after which a search stops.
+	 */
+	final static int PATIENCE = 2;
+
+	private final static int WINDOW = 32;		// searches remembered per threshold
+	private final static int MIN_SAMPLES = 8;	// the budget is not limited until this many searches
+	private final static double PERCENTILE = 0.9;
+
+	private final Map<Integer,History> histories = new HashMap<Integer,History>();
+
+	/**
+	 * Returns the number of extra hops for a search with the threshold.
+	 */
+	synchronized int budget(float threshold, int maxHops) {
+		History h = this.histories.get(bucket(threshold));
+		if (h == null || h.size() < MIN_SAMPLES) return maxHops;
+
+		int n = h.size();
+		int[] sorted = new int[n];
+		System.arraycopy(h.lastProductiveHops, 0, sorted, 0, n);
+		Arrays.sort(sorted);
+
+		int p = sorted[Math.min(n - 1, (int)Math.ceil(PERCENTILE * n) - 1)];
+		return Math.min(maxHops, p + PATIENCE);
+	}
+
+	/**
+	 * Records the last extra hop which found a new result, 0 if none did.
+	 */
+	synchronized void record(float threshold, int lastProductiveHop) {
+		Integer b = bucket(threshold);
+		History h = this.histories.get(b);
+		if (h == null) {
+			h = new History();
+			this.histories.put(b, h);
+		}
+
+		h.lastProductiveHops[h.next] = lastProductiveHop;
+		h.next = (h.next + 1) % WINDOW;
+		if (h.next == 0) h.filled = true;
+	}
+
+	private static Integer bucket(float threshold) {
+		return Math.round(threshold * 100.0f);
+	}
+
+	private final static class History {
+		final int[] lastProductiveHops = new int[WINDOW];
+		int next = 0;	// index to be recorded next
+		boolean filled = false;	// true once WINDOW searches are recorded
+
+		int size() { return (this.filled ? WINDOW : this.next); }
+	}
+}
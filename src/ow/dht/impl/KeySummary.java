@@ -0,0 +1,104 @@
+package ow.dht.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import ow.id.ID;
+
+/**
+ * A compact summary of the keys a node holds, with which other nodes predict
+ * whether the node has a key within a Hamming distance from a search key without asking it.
+ * Keys are split into bytes, and the summary records which of the 256 values each byte takes in any key.
+ * The distance from a search key to any key is at least the sum over the bytes of
+ * the distance to the nearest recorded value, so that a node is skipped only if it has no key near enough.
+ * A summary takes 32 bytes per byte of keys, e.g. 640 bytes for 160-bit IDs.
+ */
+public final class KeySummary implements Serializable {
+	private final static int WORDS_PER_SEGMENT = 256 / 64;
+
+	private final int sizeInByte;
+	private final int numKeys;
+	private final long[] occupancy;	// WORDS_PER_SEGMENT words per byte of keys
+
+	private KeySummary(int sizeInByte, int numKeys, long[] occupancy) {
+		this.sizeInByte = sizeInByte;
+		this.numKeys = numKeys;
+		this.occupancy = occupancy;
+	}
+
+	/**
+	 * Summarizes keys of the specified size. Keys of other sizes are ignored.
+	 */
+	public static KeySummary of(Collection<ID> keys, int sizeInByte) {
+		long[] occupancy = new long[sizeInByte * WORDS_PER_SEGMENT];
+		int numKeys = 0;
+
+		if (keys != null) {
+			for (ID key: keys) {
+				if (key.getSize() != sizeInByte) continue;
+
+				byte[] value = key.getValue();
+				for (int j = 0; j < sizeInByte; j++) {
+					int v = value[j] & 0xff;
+					occupancy[j * WORDS_PER_SEGMENT + (v >>> 6)] |= 1L << (v & 63);
+				}
+				numKeys++;
+			}
+		}
+
+		return new KeySummary(sizeInByte, numKeys, occupancy);
+	}
+
+	public int getNumKeys() { return this.numKeys; }
+
+	/**
+	 * Returns a lower bound of the Hamming distance from the key to the keys summarized,
+	 * or a number larger than the limit once the bound exceeds it.
+	 *
+	 * @return Integer.MAX_VALUE if no key is summarized, and 0 if the key is of another size.
+	 */
+	public int lowerBound(ID key, int limit) {
+		if (key.getSize() != this.sizeInByte) return 0;
+		if (this.numKeys <= 0) return Integer.MAX_VALUE;
+
+		byte[] value = key.getValue();
+		int bound = 0;
+		for (int j = 0; j < this.sizeInByte && bound <= limit; j++) {
+			bound += this.nearest(j, value[j] & 0xff);
+		}
+
+		return bound;
+	}
+
+	/**
+	 * Returns false if no key summarized is within the radius from the key.
+	 */
+	public boolean mayContain(ID key, int radius) {
+		return this.lowerBound(key, radius) <= radius;
+	}
+
+	/**
+	 * Returns the distance from a byte value to the nearest value recorded for the j-th byte.
+	 */
+	private int nearest(int j, int v) {
+		int base = j * WORDS_PER_SEGMENT;
+		if ((this.occupancy[base + (v >>> 6)] & (1L << (v & 63))) != 0L) return 0;
+
+		int min = 8;
+		for (int w = 0; w < WORDS_PER_SEGMENT; w++) {
+			long bits = this.occupancy[base + w];
+			while (bits != 0L) {
+				int u = (w << 6) | Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1L;
+
+				int d = Integer.bitCount(u ^ v);
+				if (d < min) {
+					min = d;
+					if (min <= 1) return min;
+				}
+			}
+		}
+
+		return min;
+	}
+}
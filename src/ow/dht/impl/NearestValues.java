@@ -0,0 +1,173 @@
+package ow.dht.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import ow.dht.ValueInfo;
+import ow.id.ID;
+
+/**
+ * Values of the k keys most similar to a search key.
+ * A node builds one from its directory and returns it as the reply to a top-k similarity query,
+ * and the querying node merges the replies from the responsible node and its neighbors into one.
+ * Only the k most similar keys are kept, in a heap of which the least similar one is on the top.
+ */
+public final class NearestValues<V extends Serializable> implements Serializable {
+	private final int k;
+	private final Map<ID,Entry<V>> entries = new HashMap<ID,Entry<V>>();
+	private final PriorityQueue<Entry<V>> worstFirst = new PriorityQueue<Entry<V>>();
+	private boolean truncated = false;
+
+	/**
+	 * @param k the number of keys to be kept. Positive.
+	 */
+	public NearestValues(int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("The number of results should be positive: " + k);
+		}
+
+		this.k = k;
+	}
+
+	public int getK() { return this.k; }
+
+	/**
+	 * Adds values of a key. Values are unified with the ones already added for the same key,
+	 * and the key keeps the highest of the similarities it was added with,
+	 * e.g. to the different query keys of probes.
+	 * A key less similar than the k kept ones is dropped.
+	 */
+	public void add(ID key, float similarity, Set<ValueInfo<V>> vals) {
+		Entry<V> e = this.entries.get(key);
+		if (e != null) {
+			if (similarity > e.similarity) {
+				// re-position in the heap
+				this.worstFirst.remove(e);
+				e.similarity = similarity;
+				this.worstFirst.add(e);
+			}
+			e.values.addAll(vals);
+			return;
+		}
+
+		e = new Entry<V>(key, similarity);
+		if (this.entries.size() >= this.k) {
+			Entry<V> worst = this.worstFirst.peek();
+			if (e.compareTo(worst) <= 0) return;
+
+			this.worstFirst.poll();
+			this.entries.remove(worst.key);
+		}
+
+		e.values.addAll(vals);
+		this.entries.put(key, e);
+		this.worstFirst.add(e);
+	}
+
+	/**
+	 * Merges a reply from a node reached after the specified number of extra hops.
+	 * Values of a newly found key are marked with the hop count.
+	 *
+	 * @return true if the reply improved the k-th result.
+	 */
+	public boolean merge(NearestValues<V> reply, int hop) {
+		int sizeBefore = this.entries.size();
+		float kthBefore = this.getKthSimilarity();
+
+		for (Entry<V> e: reply.entries.values()) {
+			Set<ValueInfo<V>> vals = e.values;
+			if (hop > 0 && !this.entries.containsKey(e.key)) {
+				Set<ValueInfo<V>> marked = new HashSet<ValueInfo<V>>();
+				for (ValueInfo<V> v: vals) {
+					marked.add(new ValueInfo<V>(v.getValue(), new ValueInfo.Attributes(v.getAttributes(), hop)));
+				}
+				vals = marked;
+			}
+
+			this.add(e.key, e.similarity, vals);
+		}
+		this.truncated |= reply.truncated;
+
+		return (sizeBefore < this.k && this.entries.size() > sizeBefore)
+				|| this.getKthSimilarity() > kthBefore;
+	}
+
+	public int size() { return this.entries.size(); }
+
+	/**
+	 * Returns the keys kept, the k most similar ones at most.
+	 */
+	public Set<ID> keys() { return Collections.unmodifiableSet(this.entries.keySet()); }
+
+	/**
+	 * Returns the similarity of the k-th most similar key,
+	 * which a key has to exceed to get into the results.
+	 *
+	 * @return Float.NEGATIVE_INFINITY if fewer than k keys are found.
+	 */
+	public float getKthSimilarity() {
+		if (this.entries.size() < this.k) return Float.NEGATIVE_INFINITY;
+
+		return this.worstFirst.peek().similarity;
+	}
+
+	/**
+	 * Returns the similarity of the least similar key in the results.
+	 *
+	 * @return Float.NaN if no key is found.
+	 */
+	public float getWorstSimilarity() {
+		Entry<V> worst = this.worstFirst.peek();
+		return (worst != null ? worst.similarity : Float.NaN);
+	}
+
+	/**
+	 * Returns true if a node had more similar keys than k and dropped the less similar ones.
+	 */
+	public boolean isTruncated() { return this.truncated; }
+
+	void setTruncated(boolean truncated) { this.truncated = truncated; }
+
+	/**
+	 * Returns the k most similar keys and their values, sorted from the most similar one.
+	 */
+	public Map<ID,Set<ValueInfo<V>>> toMap() {
+		List<Entry<V>> sorted = new ArrayList<Entry<V>>(this.entries.values());
+		Collections.sort(sorted, Collections.reverseOrder());
+
+		Map<ID,Set<ValueInfo<V>>> ret = new LinkedHashMap<ID,Set<ValueInfo<V>>>();
+		for (Entry<V> e: sorted) {
+			ret.put(e.key, e.values);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * A key, its similarity and values, ordered from the least similar one.
+	 * Of keys equally similar, a greater key is less similar.
+	 */
+	private final static class Entry<V extends Serializable> implements Comparable<Entry<V>>, Serializable {
+		final ID key;
+		float similarity;
+		final Set<ValueInfo<V>> values = new HashSet<ValueInfo<V>>();
+
+		Entry(ID key, float similarity) {
+			this.key = key;
+			this.similarity = similarity;
+		}
+
+		public int compareTo(Entry<V> o) {
+			int c = Float.compare(this.similarity, o.similarity);
+			return (c != 0 ? c : o.key.compareTo(this.key));
+		}
+	}
+}
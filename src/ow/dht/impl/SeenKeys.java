@@ -0,0 +1,52 @@
+package ow.dht.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+import ow.id.ID;
+
+/**
+ * A compact set of keys which a querying node already has, sent with a similarity query
+ * so that the queried node omits them from its reply.
+ * Keys are stored as a sorted array of 64-bit hashes, 8 bytes per key.
+ * A different key is taken for a stored one with a probability of about n / 2^64,
+ * which is negligible unlike a Bloom filter of a comparable size, whose false positives would drop results.
+ */
+public final class SeenKeys implements Serializable {
+	private final long[] hashes;
+
+	private SeenKeys(long[] hashes) {
+		this.hashes = hashes;
+	}
+
+	/**
+	 * @return null if there is no key.
+	 */
+	public static SeenKeys of(Collection<ID> keys) {
+		if (keys == null || keys.isEmpty()) return null;
+
+		long[] hashes = new long[keys.size()];
+		int i = 0;
+		for (ID key: keys) hashes[i++] = hash(key);
+		Arrays.sort(hashes);
+
+		return new SeenKeys(hashes);
+	}
+
+	public boolean contains(ID key) {
+		return Arrays.binarySearch(this.hashes, hash(key)) >= 0;
+	}
+
+	public int size() { return this.hashes.length; }
+
+	private static long hash(ID key) {
+		long h = key.getSize();
+		for (long w: key.getWords()) {
+			h = (h ^ w) * 0xbf58476d1ce4e5b9L;
+			h ^= h >>> 31;
+		}
+
+		return h;
+	}
+}
@@ -0,0 +1,34 @@
+package ow.dht.impl;
+
+import java.io.Serializable;
+
+/**
+ * A part of the reply to a similarity query for a key, cut short by the result count or size limit.
+ * The results are the most similar keys of the queried node, sorted from the most similar one,
+ * and the rest of them are the keys at or below the similarity of the continuation
+ * which the querying node has not received.
+ * The querying node gets the next page by asking the node again with the continuation and the keys it has.
+ */
+public final class SimilarPage implements Serializable {
+	private final Serializable results;
+	private final float continuation;
+
+	/**
+	 * @param results a map of keys and values, or {@link NearestValues} for a top-k query.
+	 * @param continuation the similarity of the least similar key in the results.
+	 */
+	public SimilarPage(Serializable results, float continuation) {
+		this.results = results;
+		this.continuation = continuation;
+	}
+
+	/**
+	 * Returns a map of keys and values, or {@link NearestValues} for a top-k query.
+	 */
+	public Serializable getResults() { return this.results; }
+
+	/**
+	 * Returns the similarity at or below which the rest of the results are.
+	 */
+	public float getContinuation() { return this.continuation; }
+}
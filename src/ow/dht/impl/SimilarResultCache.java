@@ -0,0 +1,235 @@
+package ow.dht.impl;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ow.dht.ValueInfo;
+import ow.directory.comparator.KeySimilarityComparator;
+import ow.id.ID;
+import ow.util.Timer;
+
+/**
+ * A cache of the results of similarity searches on the querying node, keyed by the key and the threshold.
+ * A search is answered from the results of a search for the key with a lower or the same threshold
+ * and at least as many extra hops, filtered by similarity, which are a superset of its results.
+ * Only the results of searches for all the similar keys are cached,
+ * and top-k searches are answered by ranking them.
+ * An entry expires at the earliest expiration of its values or after the TTL of the cache,
+ * and is invalidated by a put or a remove of a key similar enough to its key.
+ * Invalidation is lazy: a put or a remove only logs its key without taking the lock of the cache,
+ * and a lookup checks an entry against the keys logged since the search for it started,
+ * see {@link #getGeneration()}.
+ * The least recently used key is evicted if the number of entries exceeds the capacity.
+ */
+final class SimilarResultCache<V extends Serializable> {
+	private final int capacity;
+	private final long ttl;
+	private final KeySimilarityComparator<ID> comparator;	// null if results can't be filtered
+
+	private final LinkedHashMap<ID,NavigableMap<Float,Entry<V>>> entries =
+			new LinkedHashMap<ID,NavigableMap<Float,Entry<V>>>(16, 0.75f, true /*access order*/);
+	private int numEntries = 0;
+
+	// keys put or removed recently, the one of generation g at g % WRITE_LOG_SIZE
+	private final static int WRITE_LOG_SIZE = 4096;
+	private final AtomicLong generation = new AtomicLong(0L);	// incremented on invalidation
+	private final AtomicReferenceArray<Write> writeLog = new AtomicReferenceArray<Write>(WRITE_LOG_SIZE);
+
+	/**
+	 * @param capacity the maximum number of results cached.
+	 * @param ttl the maximum time in millisecond for which results are cached.
+	 */
+	SimilarResultCache(int capacity, long ttl, KeySimilarityComparator<ID> comparator) {
+		this.capacity = capacity;
+		this.ttl = ttl;
+		this.comparator = comparator;
+	}
+
+	/**
+	 * Returns the cached results of a search, or null if not cached.
+	 */
+	synchronized Map<ID,Set<ValueInfo<V>>> get(ID key, float threshold, int extraHops, int numResultsDesired) {
+		if (numResultsDesired > 0 && this.comparator == null) return null;	// can't be ranked
+
+		NavigableMap<Float,Entry<V>> m = this.entries.get(key);
+		if (m == null) return null;
+
+		long now = Timer.currentTimeMillis();
+
+		// from the entry with the highest threshold not higher than the requested one
+		Iterator<Map.Entry<Float,Entry<V>>> it = m.headMap(threshold, true).descendingMap().entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Float,Entry<V>> e = it.next();
+			Entry<V> entry = e.getValue();
+			if (entry.expiringTime <= now || !this.validate(key, e.getKey(), entry)) {
+				it.remove();
+				this.numEntries--;
+				continue;
+			}
+			if (entry.extraHops < extraHops) continue;
+
+			boolean exact = (e.getKey() == threshold);
+			if (!exact && this.comparator == null) continue;
+
+			return entry.results(key, threshold, numResultsDesired, exact, this.comparator);
+		}
+
+		if (m.isEmpty()) {
+			this.entries.remove(key);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks an entry against the keys put or removed since it was validated last,
+	 * and returns false if one of them may change its results.
+	 * An entry older than the keys logged is not valid.
+	 */
+	private boolean validate(ID key, float threshold, Entry<V> entry) {
+		long current = this.generation.get();
+
+		for (long g = entry.generation + 1; g <= current; g++) {
+			Write w = this.writeLog.get((int)(g % WRITE_LOG_SIZE));
+			if (w == null || w.generation != g) return false;	// overwritten, or being logged
+
+			// an entry may contain the key if its threshold is not higher than the similarity
+			if (this.comparator == null || this.comparator.similarity(key, w.key) >= threshold) return false;
+		}
+
+		entry.generation = current;
+		return true;
+	}
+
+	/**
+	 * Returns the generation of this cache, which an invalidation increments.
+	 * A search takes it before it starts and passes it to {@link #put(ID, float, int, Map, long, long) put()}
+	 * so that its results, possibly older than a put or a remove landed meanwhile,
+	 * are checked against the keys put or removed since then.
+	 */
+	long getGeneration() {
+		return this.generation.get();
+	}
+
+	/**
+	 * Caches the results of a search for all the similar keys.
+	 *
+	 * @param searchedTime the time at which the search started.
+	 * The TTLs of the values, remaining on the nodes which replied, count from it.
+	 * @param generation the generation taken before the search started.
+	 */
+	synchronized void put(ID key, float threshold, int extraHops, Map<ID,Set<ValueInfo<V>>> results,
+			long searchedTime, long generation) {
+		if (results == null) return;
+
+		long now = Timer.currentTimeMillis();
+		long expiringTime = now + this.ttl;
+		Map<ID,Set<ValueInfo<V>>> copy = new HashMap<ID,Set<ValueInfo<V>>>();
+		for (Map.Entry<ID,Set<ValueInfo<V>>> e: results.entrySet()) {
+			if (e.getValue() == null) continue;
+
+			for (ValueInfo<V> v: e.getValue()) {
+				if (v.getTTL() >= 0L) expiringTime = Math.min(expiringTime, searchedTime + v.getTTL());
+			}
+			copy.put(e.getKey(), new HashSet<ValueInfo<V>>(e.getValue()));
+		}
+		if (expiringTime <= now) return;	// expired on the way
+
+		NavigableMap<Float,Entry<V>> m = this.entries.get(key);
+		if (m == null) {
+			m = new TreeMap<Float,Entry<V>>();
+			this.entries.put(key, m);
+		}
+
+		// drop the entries which the new one answers for
+		Iterator<Entry<V>> it = m.tailMap(threshold, true).values().iterator();
+		while (it.hasNext()) {
+			if (it.next().extraHops <= extraHops) {
+				it.remove();
+				this.numEntries--;
+			}
+		}
+
+		m.put(threshold, new Entry<V>(copy, extraHops, expiringTime, generation));
+		this.numEntries++;
+
+		// evict the least recently used keys
+		Iterator<NavigableMap<Float,Entry<V>>> lru = this.entries.values().iterator();
+		while (this.numEntries > this.capacity && lru.hasNext()) {
+			NavigableMap<Float,Entry<V>> eldest = lru.next();
+			if (eldest == m) continue;
+
+			this.numEntries -= eldest.size();
+			lru.remove();
+		}
+	}
+
+	/**
+	 * Invalidates the results which the values of the key put or removed may change.
+	 * A lookup drops them later.
+	 */
+	void invalidate(ID key) {
+		long g = this.generation.incrementAndGet();
+		this.writeLog.set((int)(g % WRITE_LOG_SIZE), new Write(g, key));
+	}
+
+	synchronized void clear() {
+		this.entries.clear();
+		this.numEntries = 0;
+	}
+
+	private final static class Entry<V extends Serializable> {
+		final Map<ID,Set<ValueInfo<V>>> results;
+		final int extraHops;
+		final long expiringTime;
+		long generation;	// up to which the results are valid
+
+		Entry(Map<ID,Set<ValueInfo<V>>> results, int extraHops, long expiringTime, long generation) {
+			this.results = results;
+			this.extraHops = extraHops;
+			this.expiringTime = expiringTime;
+			this.generation = generation;
+		}
+
+		Map<ID,Set<ValueInfo<V>>> results(ID key, float threshold, int numResultsDesired, boolean exact,
+				KeySimilarityComparator<ID> comparator) {
+			if (numResultsDesired > 0) {
+				NearestValues<V> nearest = new NearestValues<V>(numResultsDesired);
+				for (Map.Entry<ID,Set<ValueInfo<V>>> e: this.results.entrySet()) {
+					float sim = comparator.similarity(key, e.getKey());
+					if (!exact && sim < threshold) continue;
+
+					nearest.add(e.getKey(), sim, new HashSet<ValueInfo<V>>(e.getValue()));
+				}
+				return nearest.toMap();
+			}
+
+			Map<ID,Set<ValueInfo<V>>> ret = new HashMap<ID,Set<ValueInfo<V>>>();
+			for (Map.Entry<ID,Set<ValueInfo<V>>> e: this.results.entrySet()) {
+				if (!exact && comparator.similarity(key, e.getKey()) < threshold) continue;
+
+				ret.put(e.getKey(), new HashSet<ValueInfo<V>>(e.getValue()));
+			}
+			return ret;
+		}
+	}
+
+	private final static class Write {
+		final long generation;
+		final ID key;
+
+		Write(long generation, ID key) {
+			this.generation = generation;
+			this.key = key;
+		}
+	}
+}
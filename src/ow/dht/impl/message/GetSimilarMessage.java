@@ -0,0 +1,66 @@
+package ow.dht.impl.message;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import ow.dht.impl.SeenKeys;
+import ow.id.ID;
+import ow.messaging.Message;
+
+/**
+ * Similarity queries for multiple keys packed into a message to a node.
+ */
+public final class GetSimilarMessage extends Message {
+	public final static String NAME = "GET_SIMILAR";
+	public final static boolean TO_BE_REPORTED = true;
+	public final static Color COLOR = null;
+
+	// message members
+	public ID[] keys;
+	public float[] thresholds;
+	public int[] numResults;	// all keys similar enough if not positive
+	public SeenKeys[] seenKeys;	// keys to be omitted from the reply, possibly null
+	public float[] continuations;	// similarities to resume at, NaN for the first page, possibly null
+	public int maxResults;	// keys per query, no limit if not positive
+	public int maxReplySize;	// byte, no limit if not positive
+	public int numNeighbors;	// neighbors to be returned
+
+	public GetSimilarMessage() { super(); }	// for Class#newInstance()
+
+	public GetSimilarMessage(
+			ID[] keys, float[] thresholds, int[] numResults, SeenKeys[] seenKeys,
+			float[] continuations, int maxResults, int maxReplySize, int numNeighbors) {
+		this.keys = keys;
+		this.thresholds = thresholds;
+		this.numResults = numResults;
+		this.seenKeys = seenKeys;
+		this.continuations = continuations;
+		this.maxResults = maxResults;
+		this.maxReplySize = maxReplySize;
+		this.numNeighbors = numNeighbors;
+	}
+
+	public void encodeContents(ObjectOutputStream oos) throws IOException {
+		oos.writeObject(this.keys);
+		oos.writeObject(this.thresholds);
+		oos.writeObject(this.numResults);
+		oos.writeObject(this.seenKeys);
+		oos.writeObject(this.continuations);
+		oos.writeInt(this.maxResults);
+		oos.writeInt(this.maxReplySize);
+		oos.writeInt(this.numNeighbors);
+	}
+
+	public void decodeContents(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		this.keys = (ID[])ois.readObject();
+		this.thresholds = (float[])ois.readObject();
+		this.numResults = (int[])ois.readObject();
+		this.seenKeys = (SeenKeys[])ois.readObject();
+		this.continuations = (float[])ois.readObject();
+		this.maxResults = ois.readInt();
+		this.maxReplySize = ois.readInt();
+		this.numNeighbors = ois.readInt();
+	}
+}
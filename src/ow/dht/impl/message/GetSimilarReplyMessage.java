@@ -0,0 +1,48 @@
+package ow.dht.impl.message;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import ow.dht.impl.KeySummary;
+import ow.id.IDAddressPair;
+import ow.messaging.Message;
+
+public final class GetSimilarReplyMessage extends Message {
+	public final static String NAME = "GET_SIMILAR_REPLY";
+	public final static boolean TO_BE_REPORTED = true;
+	public final static Color COLOR = null;
+
+	// message members
+	public Serializable[] results;		// for each key of the request
+	public IDAddressPair[] neighbors;	// of the replying node
+	public KeySummary[] neighborSummaries;	// for each neighbor, null if unknown
+	public long[] neighborSummaryAges;	// in millisecond, since each neighbor sent its summary
+
+	public GetSimilarReplyMessage() { super(); }	// for Class#newInstance()
+
+	public GetSimilarReplyMessage(
+			Serializable[] results, IDAddressPair[] neighbors, KeySummary[] neighborSummaries,
+			long[] neighborSummaryAges) {
+		this.results = results;
+		this.neighbors = neighbors;
+		this.neighborSummaries = neighborSummaries;
+		this.neighborSummaryAges = neighborSummaryAges;
+	}
+
+	public void encodeContents(ObjectOutputStream oos) throws IOException {
+		oos.writeObject(this.results);
+		oos.writeObject(this.neighbors);
+		oos.writeObject(this.neighborSummaries);
+		oos.writeObject(this.neighborSummaryAges);
+	}
+
+	public void decodeContents(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		this.results = (Serializable[])ois.readObject();
+		this.neighbors = (IDAddressPair[])ois.readObject();
+		this.neighborSummaries = (KeySummary[])ois.readObject();
+		this.neighborSummaryAges = (long[])ois.readObject();
+	}
+}
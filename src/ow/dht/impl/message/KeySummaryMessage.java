@@ -0,0 +1,32 @@
+package ow.dht.impl.message;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import ow.dht.impl.KeySummary;
+import ow.messaging.Message;
+
+public final class KeySummaryMessage extends Message {
+	public final static String NAME = "KEY_SUMMARY";
+	public final static boolean TO_BE_REPORTED = false;
+	public final static Color COLOR = null;
+
+	// message members
+	public KeySummary summary;	// of the keys on the sending node
+
+	public KeySummaryMessage() { super(); }	// for Class#newInstance()
+
+	public KeySummaryMessage(KeySummary summary) {
+		this.summary = summary;
+	}
+
+	public void encodeContents(ObjectOutputStream oos) throws IOException {
+		oos.writeObject(this.summary);
+	}
+
+	public void decodeContents(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		this.summary = (KeySummary)ois.readObject();
+	}
+}
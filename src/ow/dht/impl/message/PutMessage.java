@@ -35,6 +35,7 @@ public final class PutMessage<V> extends Message {
 	public long ttl;
 	public ByteArray hashedSecret;
 	public int numReplica;
+	public boolean similarityCopy;	// true if put on the node responsible for a similar key
 
 	public PutMessage() { super(); }	// for Class#newInstance()
 
@@ -46,11 +47,18 @@ public final class PutMessage<V> extends Message {
 		this.numReplica = numReplica;
 	}
 
+	public PutMessage(
+			DHT.PutRequest<V>[] requests, long ttl, ByteArray hashedSecret, int numReplica, boolean similarityCopy) {
+		this(requests, ttl, hashedSecret, numReplica);
+		this.similarityCopy = similarityCopy;
+	}
+
 	public void encodeContents(ObjectOutputStream oos) throws IOException {
 		oos.writeObject(this.requests);
 		oos.writeLong(this.ttl);
 		oos.writeObject(this.hashedSecret);
 		oos.writeInt(this.numReplica);
+		oos.writeBoolean(this.similarityCopy);
 	}
 
 	public void decodeContents(ObjectInputStream ois) throws IOException, ClassNotFoundException {
@@ -58,5 +66,6 @@ public final class PutMessage<V> extends Message {
 		this.ttl = ois.readLong();
 		this.hashedSecret = (ByteArray)ois.readObject();
 		this.numReplica = ois.readInt();
+		this.similarityCopy = ois.readBoolean();
 	}
 }
@@ -17,6 +17,8 @@
 package ow.directory;
 
 import ow.directory.comparator.KeySimilarityComparatorFactory;
+import ow.directory.index.MultiIndexHashingIndex;
+import ow.directory.index.SimilarityIndexFactory;
 
 import java.io.Serializable;
 
@@ -37,6 +39,8 @@ public class DirectoryConfiguration implements Serializable {
 	public final static HeapOverflowAction DEFAULT_HEAP_OVERFLOW_ACTION = HeapOverflowAction.LRU;
 	public final static long DEFAULT_REQUIRED_FREE_HEAP_TO_PUT = 128 * 1024L;	// 128 KB
 	public final static String DEFAULT_SIMILARITY_METRIC = KeySimilarityComparatorFactory.METRIC_HAMMING;
+	public final static String DEFAULT_SIMILARITY_INDEX = SimilarityIndexFactory.INDEX_MULTI_INDEX_HASHING;
+	public final static int DEFAULT_SIMILARITY_INDEX_SUBSTRING_BITS = MultiIndexHashingIndex.DEFAULT_SUBSTRING_BITS;
 
 	// Expiration time (in millisecond)
 	public long expirationTime = DEFAULT_EXPIRATION_TIME;
@@ -50,6 +54,7 @@ public class DirectoryConfiguration implements Serializable {
 	// How does the directory treat heap overflow
 	// Note: this flag works only with on-memory key-value store.
 	// In other words, works with "VolatileMap" and "PersistentMap" and does not work with "BerkeleyDB".
+	// With "OffHeapMap", it works when no slab can be allocated outside the heap.
 	public HeapOverflowAction heapOverflowAction = DEFAULT_HEAP_OVERFLOW_ACTION;
 	public HeapOverflowAction getHeapOverflowAction() { return this.heapOverflowAction; }
 	public HeapOverflowAction setHeapOverflowAction(HeapOverflowAction flag) {
@@ -73,4 +78,24 @@ public class DirectoryConfiguration implements Serializable {
 		this.similarityMetric = metric;
 		return old;
 	}
+
+	// Index to search similar keys: "MultiIndexHashing", "BKTree", "VPTree", "GrayCodeRange",
+	// "Scan" for a scan over packed keys or "None" for a scan with the comparator
+	private String similarityIndex = DEFAULT_SIMILARITY_INDEX;
+	public String getSimilarityIndex() { return this.similarityIndex; }
+	public String setSimilarityIndex(String index) {
+		String old = this.similarityIndex;
+		this.similarityIndex = index;
+		return old;
+	}
+
+	// Length of a substring (in bit) indexed by multi-index hashing.
+	// Around log2(number of keys) is a good choice.
+	private int similarityIndexSubstringBits = DEFAULT_SIMILARITY_INDEX_SUBSTRING_BITS;
+	public int getSimilarityIndexSubstringBits() { return this.similarityIndexSubstringBits; }
+	public int setSimilarityIndexSubstringBits(int bits) {
+		int old = this.similarityIndexSubstringBits;
+		this.similarityIndexSubstringBits = bits;
+		return old;
+	}
 }
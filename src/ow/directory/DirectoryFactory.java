@@ -28,6 +28,7 @@ public class DirectoryFactory {
 	private final static Class/*<DirectoryProvider>*/[] PROVIDERS = {
 		ow.directory.inmemory.VolatileMapProvider.class,		// "VolatileMap"
 		ow.directory.inmemory.PersistentMapProvider.class,	// "PersistentMap"
+		ow.directory.inmemory.OffHeapMapProvider.class,	// "OffHeapMap"
 		ow.directory.berkeleydb.BerkeleyDBProvider.class		// "BerkeleyDB"
 	};
 
@@ -55,7 +56,7 @@ public class DirectoryFactory {
 
 	/**
 	 * Return a directory provider associate with the given name.
-	 * The name should be one of the following names: "BerkeleyDB", "PersistentMap" or "VolatileMap".
+	 * The name should be one of the following names: "BerkeleyDB", "PersistentMap", "OffHeapMap" or "VolatileMap".
 	 *
 	 * @param providerName name of a directory provider. 
 	 * @return a directory provider.
@@ -54,6 +54,10 @@ public final class MultiValueAdapterForSingleValueDirectory<K,V> implements Mult
 		return this.dir.getSimilarKeys(key, threshold);
 	}
 
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception {
+		return this.dir.getNearestKeys(key, threshold, k);
+	}
+
 	public Map<K, Set<V>> getSimilar(K key, float threshold) throws Exception {
 		final Map<K, V> vals = this.dir.getSimilar(key, threshold);
 		TreeMap<K, Set<V>> ret = new TreeMap<>();
@@ -55,6 +55,12 @@ public interface MultiValueDirectory<K,V> extends Iterable<Map.Entry<K,V>> {
    */
 	Map<K,Set<V>> getSimilar(K key, float threshold) throws Exception;
 
+	/**
+	 * Returns at most k keys similar to `key` within `threshold`, sorted from the most similar one.
+	 * @param k the maximum number of keys. No limit if it is not positive.
+	 */
+	NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception;
+
 	/**
 	 * Puts a pair of the specified key and value.
 	 * Multiple values associated to the same key can be stored, but same values (equals()) are unified.
@@ -0,0 +1,126 @@
+package ow.directory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import ow.directory.comparator.KeySimilarityComparator;
+
+/**
+ * The k keys most similar to a reference key, sorted from the most similar one.
+ * Selected with a bounded min-heap of size k, so that a selection from n candidates
+ * takes O(n log k) time and O(k) space instead of sorting every match.
+ */
+public final class NearestKeys<K> implements Serializable {
+	private final List<K> keys;
+	private final float[] similarities;
+	private final boolean truncated;
+
+	private NearestKeys(List<K> keys, float[] similarities, boolean truncated) {
+		this.keys = keys;
+		this.similarities = similarities;
+		this.truncated = truncated;
+	}
+
+	public static <K> NearestKeys<K> empty() {
+		return new NearestKeys<K>(new ArrayList<K>(0), new float[0], false);
+	}
+
+	/**
+	 * A result which consists of the reference key only. For a directory without similarity comparison.
+	 */
+	public static <K> NearestKeys<K> exact(K key) {
+		List<K> keys = new ArrayList<K>(1);
+		keys.add(key);
+		return new NearestKeys<K>(keys, new float[] { 1.0f }, false);
+	}
+
+	/**
+	 * Selects the k candidates most similar to the reference key with a similarity equal to or larger than the threshold.
+	 *
+	 * @param k the maximum number of keys. No limit if it is not positive.
+	 */
+	public static <K> NearestKeys<K> select(K reference, Iterable<K> candidates, float threshold, int k,
+			KeySimilarityComparator<K> comparator) {
+		if (k <= 0) k = Integer.MAX_VALUE;
+
+		PriorityQueue<Candidate<K>> heap = new PriorityQueue<Candidate<K>>();
+		boolean truncated = false;
+
+		// score a collection at once
+		float[] sims = (candidates instanceof Collection ?
+				comparator.similarities(reference, (Collection<K>)candidates) : null);
+
+		int n = 0;
+		for (K c: candidates) {
+			float sim = (sims != null ? sims[n++] : comparator.similarity(reference, c));
+			if (sim < threshold) continue;
+
+			if (heap.size() < k) {
+				heap.add(new Candidate<K>(c, sim));
+			}
+			else {
+				truncated = true;
+				if (sim > heap.peek().similarity) {
+					heap.poll();
+					heap.add(new Candidate<K>(c, sim));
+				}
+			}
+		}
+
+		Candidate<K>[] sorted = heap.toArray(new Candidate[heap.size()]);
+		Arrays.sort(sorted, Collections.reverseOrder());
+
+		List<K> keys = new ArrayList<K>(sorted.length);
+		float[] similarities = new float[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			keys.add(sorted[i].key);
+			similarities[i] = sorted[i].similarity;
+		}
+
+		return new NearestKeys<K>(keys, similarities, truncated);
+	}
+
+	public int size() { return this.keys.size(); }
+
+	/**
+	 * Returns the keys sorted from the most similar one.
+	 */
+	public List<K> getKeys() { return Collections.unmodifiableList(this.keys); }
+
+	public K getKey(int i) { return this.keys.get(i); }
+
+	public float getSimilarity(int i) { return this.similarities[i]; }
+
+	/**
+	 * Returns the similarity of the least similar key.
+	 *
+	 * @return Float.NaN if no key was selected.
+	 */
+	public float getWorstSimilarity() {
+		return (this.similarities.length > 0 ? this.similarities[this.similarities.length - 1] : Float.NaN);
+	}
+
+	/**
+	 * Returns true if more keys than k were similar enough and the less similar ones were dropped.
+	 */
+	public boolean isTruncated() { return this.truncated; }
+
+	private static final class Candidate<K> implements Comparable<Candidate<K>> {
+		final K key;
+		final float similarity;
+
+		Candidate(K key, float similarity) {
+			this.key = key;
+			this.similarity = similarity;
+		}
+
+		public int compareTo(Candidate<K> o) {
+			return Float.compare(this.similarity, o.similarity);
+		}
+	}
+}
@@ -33,6 +33,7 @@ public interface SingleValueDirectory<K,V> extends Iterable<Map.Entry<K,V>> {
 	KeySimilarityComparator<K> getSimilarityComparator();
 	Set<K> getSimilarKeys(K key, float threshold) throws Exception;
 	Map<K,V> getSimilar(K key, float threshold) throws Exception;
+	NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception;
 	V put(K key, V value) throws Exception;
 	V remove(K key) throws Exception;
 	boolean isEmpty();
@@ -21,7 +21,9 @@ import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ow.directory.NearestKeys;
 import ow.directory.comparator.KeySimilarityComparator;
+import ow.directory.index.SimilarityIndex;
 import ow.id.ID;
 
 import com.sleepycat.bind.ByteArrayBinding;
@@ -47,6 +49,7 @@ public abstract class AbstractJEDirectory<K,V> {
 
 	private final String dbName;
 	KeySimilarityComparator<K> similarityComparator;
+	SimilarityIndex<K> similarityIndex;	// null if not indexed
 	Environment env;
 	Database db;
 	SortedMap<K,V> map;
@@ -57,7 +60,8 @@ public abstract class AbstractJEDirectory<K,V> {
 	private boolean catalogPrepared = false;
 
 	protected AbstractJEDirectory(Class<K> typeK, Class<V> typeV, Environment env, String dbName,
-			boolean allowMultipleValues, KeySimilarityComparator<K> similarityComparator) throws Exception {
+			boolean allowMultipleValues, KeySimilarityComparator<K> similarityComparator,
+			SimilarityIndex<K> similarityIndex) throws Exception {
 		this.env = env;
 
 		// prepare DatabaseConfig
@@ -87,6 +91,12 @@ public abstract class AbstractJEDirectory<K,V> {
 
 		this.map = new StoredSortedMap<K,V>(db, keyBinding, dataBinding, true);
 		this.similarityComparator = similarityComparator;
+
+		// index the stored keys
+		if (similarityComparator != null && similarityIndex != null) {
+			for (K k: this.map.keySet()) similarityIndex.add(k);
+			this.similarityIndex = similarityIndex;
+		}
 	}
 
 	/**
@@ -113,6 +123,7 @@ public abstract class AbstractJEDirectory<K,V> {
 
 	public void clear() {
 		this.map.clear();
+		if (this.similarityIndex != null) this.similarityIndex.clear();
 	}
 
 	public void close() {
@@ -145,19 +156,79 @@ public abstract class AbstractJEDirectory<K,V> {
 			return new TreeSet<>();
 		}
 
-		// TODO: use more efficient impl than brute-force search of entire keyset :)
-		Set<K> keys = keySet();
 		TreeSet<K> results = new TreeSet<>(similarityComparator.comparatorForKey(key));
 
-		for (K candidate : keys) {
-			float sim = similarityComparator.similarity(key, candidate);
-			if (sim >= threshold) {
+		Collection<K> candidates = this.getCandidates(key, threshold);
+		float[] sims = similarityComparator.similarities(key, candidates);
+		int i = 0;
+		for (K candidate : candidates) {
+			if (sims[i++] >= threshold) {
 				results.add(candidate);
 			}
 		}
 		return results;
 	}
 
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception {
+		if (similarityComparator == null) {
+			logger.warning("Similarity comparison not supported");
+			return (this.keySet().contains(key) ? NearestKeys.exact(key) : NearestKeys.<K>empty());
+		}
+
+		return NearestKeys.select(key, this.getCandidates(key, threshold), threshold, k, similarityComparator);
+	}
+
+	private Collection<K> getCandidates(K key, float threshold) {
+		// the index narrows down candidates, otherwise brute-force search of entire keyset
+		Set<K> keys = null;
+		if (this.similarityIndex != null) {
+			keys = this.similarityIndex.getCandidates(key, threshold);
+		}
+		if (keys == null) {
+			return keySet();
+		}
+
+		List<K> present = new ArrayList<K>(keys.size());
+		for (K candidate : keys) {
+			if (this.unindexIfAbsent(candidate)) {
+				// removed through an iterator
+				continue;
+			}
+			present.add(candidate);
+		}
+		return present;
+	}
+
+	/**
+	 * Adds a key to the similarity index. Called after the key is put.
+	 */
+	void index(K key) {
+		if (this.similarityIndex == null) return;
+
+		synchronized (this.similarityIndex) {
+			this.similarityIndex.add(key);
+		}
+	}
+
+	/**
+	 * Removes a key from the similarity index if the key is not in this directory.
+	 * Called after the key or one of its values is removed.
+	 * Checking and removing under the lock, a key being put concurrently is never left out of the index.
+	 *
+	 * @return true if the key is not in this directory.
+	 */
+	boolean unindexIfAbsent(K key) {
+		if (this.similarityIndex == null) return false;
+
+		synchronized (this.similarityIndex) {
+			if (this.map.containsKey(key)) return false;
+
+			this.similarityIndex.remove(key);
+		}
+
+		return true;
+	}
+
 	public Set<Map.Entry<K,V>> entrySet() {
 		return this.map.entrySet();
 /*
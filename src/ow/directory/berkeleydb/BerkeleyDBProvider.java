@@ -33,6 +33,7 @@ import com.sleepycat.je.EnvironmentConfig;
 import com.sleepycat.je.Transaction;
 import ow.directory.comparator.KeySimilarityComparator;
 import ow.directory.comparator.KeySimilarityComparatorFactory;
+import ow.directory.index.SimilarityIndexFactory;
 
 public class BerkeleyDBProvider extends DirectoryProvider {
 	private final static String NAME = "BerkeleyDB";
@@ -56,7 +57,8 @@ public class BerkeleyDBProvider extends DirectoryProvider {
 		KeySimilarityComparator<K> similarityComparator =
 			KeySimilarityComparatorFactory.getComparator(typeK, config.getSimilarityMetric());
 
-		return new SingleValueJEDirectory<K,V>(typeK, typeV, env, dbName, similarityComparator);
+		return new SingleValueJEDirectory<K,V>(typeK, typeV, env, dbName, similarityComparator,
+				SimilarityIndexFactory.<K>getIndex(typeK, config));
 	}
 
 	protected <K,V> MultiValueDirectory<K,V> provideMultiValueDirectory(Class typeK, Class typeV, String workingDir, String dbName,
@@ -66,7 +68,8 @@ public class BerkeleyDBProvider extends DirectoryProvider {
 		Environment env = this.getEnvironment(new File(workingDir));
 		KeySimilarityComparator<K> similarityComparator =
 				KeySimilarityComparatorFactory.getComparator(typeK, config.getSimilarityMetric());
-		return new MultiValueJEDirectory<K,V>(typeK, typeV, env, dbName, similarityComparator);
+		return new MultiValueJEDirectory<K,V>(typeK, typeV, env, dbName, similarityComparator,
+				SimilarityIndexFactory.<K>getIndex(typeK, config));
 	}
 
 	private void init() {
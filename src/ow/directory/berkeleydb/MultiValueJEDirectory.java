@@ -30,12 +30,14 @@ import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationStatus;
 import com.sleepycat.je.Transaction;
 import ow.directory.comparator.KeySimilarityComparator;
+import ow.directory.index.SimilarityIndex;
 
 public class MultiValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> implements MultiValueDirectory<K,V> {
 	protected MultiValueJEDirectory(Class<K> typeK, Class<V> typeV, Environment env, String dbName,
-																	KeySimilarityComparator<K> similarityComparator)
+																	KeySimilarityComparator<K> similarityComparator,
+																	SimilarityIndex<K> similarityIndex)
 			throws Exception {
-		super(typeK, typeV, env, dbName, true, similarityComparator);
+		super(typeK, typeV, env, dbName, true, similarityComparator, similarityIndex);
 	}
 
 	public Set<V> get(K key) throws DatabaseException {
@@ -56,7 +58,11 @@ public class MultiValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> impleme
 		return results;
 	}
 
-	public V put(K key, V value) throws Exception {
+	/**
+	 * Writes are serialized on this directory
+	 * because concurrent transactions on a key could conflict on the cursor.
+	 */
+	public synchronized V put(K key, V value) throws Exception {
 		DatabaseEntry keyEntry = new DatabaseEntry();
 		DatabaseEntry dataEntry = new DatabaseEntry();
 		keyBinding.objectToEntry(key, keyEntry);
@@ -99,6 +105,8 @@ public class MultiValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> impleme
 		cursor.close();
 		txn.commit();
 
+		super.index(key);
+
 		return ret;
 	}
 
@@ -108,11 +116,15 @@ public class MultiValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> impleme
 		return this.put(key, value);
 	}
 
-	public Set<V> remove(K key) throws DatabaseException {
-		return getAndRemove(key, true);
+	public synchronized Set<V> remove(K key) throws DatabaseException {
+		Set<V> ret = getAndRemove(key, true);
+
+		super.unindexIfAbsent(key);
+
+		return ret;
 	}
 
-	public V remove(K key, V value) throws Exception {
+	public synchronized V remove(K key, V value) throws Exception {
 		DatabaseEntry keyEntry = new DatabaseEntry();
 		DatabaseEntry foundEntry = new DatabaseEntry();
 		keyBinding.objectToEntry(key, keyEntry);
@@ -138,6 +150,8 @@ public class MultiValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> impleme
 		cursor.close();
 		txn.commit();
 
+		super.unindexIfAbsent(key);
+
 		return ret;
 	}
 
@@ -23,6 +23,7 @@ import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.Transaction;
 import ow.directory.comparator.KeySimilarityComparator;
+import ow.directory.index.SimilarityIndex;
 
 import java.util.*;
 
@@ -36,9 +37,10 @@ import java.util.*;
 public class SingleValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> implements SingleValueDirectory<K,V> {
 
 	protected SingleValueJEDirectory(Class<K> typeK, Class<V> typeV, Environment env, String dbName,
-																	 KeySimilarityComparator<K> similarityComparator)
+																	 KeySimilarityComparator<K> similarityComparator,
+																	 SimilarityIndex<K> similarityIndex)
 			throws Exception {
-		super(typeK, typeV, env, dbName, false, similarityComparator);
+		super(typeK, typeV, env, dbName, false, similarityComparator, similarityIndex);
 	}
 
 	public SortedMap<K,V> getSimilar(K key, float threshold) throws Exception {
@@ -73,6 +75,8 @@ public class SingleValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> implem
 		ret = super.map.put(key, value);
 		txn.commit();
 
+		super.index(key);
+
 		return ret;
 	}
 
@@ -89,6 +93,8 @@ public class SingleValueJEDirectory<K,V> extends AbstractJEDirectory<K,V> implem
 		ret = super.map.remove(key);
 		txn.commit();
 
+		super.unindexIfAbsent(key);
+
 		return ret;
 	}
 }
@@ -3,6 +3,7 @@ package ow.directory.comparator;
 import ow.id.ID;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Comparator;
 
 /**
@@ -10,32 +11,82 @@ import java.util.Comparator;
  */
 public class HammingIDComparator implements KeySimilarityComparator<ID>, Serializable {
 
+  /**
+   * Orders keys from the least similar one to the reference, as their similarities do.
+   * Compares Hamming distances to the words of the reference taken once,
+   * and keys at the same distance by themselves so that different keys are never equal in a sorted set.
+   */
   public class KeyComparator implements Comparator<ID>, Serializable {
     private final ID reference;
+    private final long[] referenceWords;
+
     public KeyComparator(ID reference) {
       this.reference = reference;
+      this.referenceWords = reference.getWords();
+    }
+
+    @Override
+    public int compare(ID k1, ID k2) {
+      int d1 = distance(reference, referenceWords, k1);
+      int d2 = distance(reference, referenceWords, k2);
+      int c = Integer.compare(d2, d1);
+      return (c != 0 ? c : k1.compareTo(k2));
+    }
+  }
+
+  /**
+   * Orders keys from the nearest one to the reference by their Hamming distances,
+   * which are integers and free of the rounding of similarities.
+   * Keys at the same distance are ordered by themselves.
+   */
+  public static final class DistanceComparator implements Comparator<ID>, Serializable {
+    private final ID reference;
+    private final long[] referenceWords;
+
+    public DistanceComparator(ID reference) {
+      this.reference = reference;
+      this.referenceWords = reference.getWords();
+    }
+
+    public int distance(ID key) {
+      return HammingIDComparator.distance(this.reference, this.referenceWords, key);
     }
 
     @Override
     public int compare(ID k1, ID k2) {
-      float sim1 = HammingIDComparator.getSimilarity(reference, k1);
-      float sim2 = HammingIDComparator.getSimilarity(reference, k2);
-      return Float.compare(sim1, sim2);
+      int c = Integer.compare(this.distance(k1), this.distance(k2));
+      return (c != 0 ? c : k1.compareTo(k2));
     }
   }
 
   public static int hammingDistance(ID key1, ID key2) {
-    if (key1.getSize() != key2.getSize()) {
+    return distance(key1, key1.getWords(), key2);
+  }
+
+  private static int distance(ID reference, long[] referenceWords, ID key) {
+    if (reference.getSize() != key.getSize()) {
       throw new IllegalArgumentException("Keys must have equal sizes for similarity comparison");
     }
 
-    final float keySizeInBits = key1.getSize() * 8;
-    if (keySizeInBits == 0) {
+    if (reference.getSize() == 0) {
       // yay, paranoia!
       throw new IllegalArgumentException("Key size of zero is invalid.");
     }
 
-    return key1.toBigInteger().xor(key2.toBigInteger()).bitCount();
+    return ID.xorBitCount(referenceWords, key.getWords());
+  }
+
+  /**
+   * Returns the Hamming distances of candidates to a reference key.
+   */
+  public static int[] distances(ID reference, ID[] candidates) {
+    long[] referenceWords = reference.getWords();
+
+    int[] ret = new int[candidates.length];
+    for (int i = 0; i < candidates.length; i++) {
+      ret[i] = distance(reference, referenceWords, candidates[i]);
+    }
+    return ret;
   }
 
   @Override
@@ -43,15 +94,52 @@ public class HammingIDComparator implements KeySimilarityComparator<ID>, Seriali
     return new KeyComparator(reference);
   }
 
+  public static DistanceComparator distanceComparatorForKey(ID reference) {
+    return new DistanceComparator(reference);
+  }
+
   @Override
   public float similarity(ID key1, ID key2) {
     return HammingIDComparator.getSimilarity(key1, key2);
   }
 
+  @Override
+  public float[] similarities(ID reference, Collection<? extends ID> candidates) {
+    long[] referenceWords = reference.getWords();
+    int sizeInBit = reference.getSize() * 8;
+
+    float[] ret = new float[candidates.size()];
+    int i = 0;
+    for (ID c: candidates) {
+      ret[i++] = getSimilarity(distance(reference, referenceWords, c), sizeInBit);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the largest Hamming distance whose similarity is equal to or larger than the threshold.
+   * Computed in the same way as {@link #getSimilarity(ID, ID) getSimilarity()}
+   * to avoid a disagreement by rounding.
+   *
+   * @return -1 if no distance satisfies the threshold.
+   */
+  public static int maxDistance(int sizeInBit, float threshold) {
+    int d = -1;
+    while (d < sizeInBit && getSimilarity(d + 1, sizeInBit) >= threshold) {
+      d++;
+    }
+
+    return d;
+  }
+
   public static float getSimilarity(ID key1, ID key2) {
+    return getSimilarity(hammingDistance(key1, key2), key1.getSize() * 8);
+  }
 
-    double hamming = hammingDistance(key1, key2);
-    double keySizeInBits = key1.getSize() * 8;
-    return (float)((keySizeInBits - hamming) / keySizeInBits);
+  /**
+   * Returns the similarity of keys of the size at the Hamming distance.
+   */
+  public static float getSimilarity(int distance, int sizeInBit) {
+    return (float)((sizeInBit - (double)distance) / sizeInBit);
   }
 }
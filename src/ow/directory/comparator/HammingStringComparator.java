@@ -3,23 +3,32 @@ package ow.directory.comparator;
 import ow.id.ID;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Comparator;
 
 /**
  * Created by yusef on 12/17/15.
  */
 public class HammingStringComparator implements KeySimilarityComparator<String>, Serializable {
+  /**
+   * Orders keys from the least similar one to the reference by their Hamming distances,
+   * and keys at the same distance by themselves so that different keys are never equal in a sorted set.
+   */
   public class KeyComparator implements Comparator<String>, Serializable {
     private final String reference;
+    private final char[] referenceChars;
+
     public KeyComparator(String reference) {
       this.reference = reference;
+      this.referenceChars = reference.toCharArray();
     }
 
     @Override
     public int compare(String k1, String k2) {
-      int sim1 = (int) (HammingStringComparator.getSimilarity(reference, k1) * 100.0);
-      int sim2 = (int) (HammingStringComparator.getSimilarity(reference, k2) * 100.0);
-      return sim1 - sim2;
+      int d1 = distance(referenceChars, k1);
+      int d2 = distance(referenceChars, k2);
+      int c = Integer.compare(d2, d1);
+      return (c != 0 ? c : k1.compareTo(k2));
     }
   }
 
@@ -42,12 +51,43 @@ public class HammingStringComparator implements KeySimilarityComparator<String>,
     return distance;
   }
 
+  private static int distance(char[] reference, String key) {
+    if (key == null || reference.length != key.length()) {
+      throw new IllegalArgumentException();
+    }
+
+    int distance = 0;
+    for (int i = 0; i < reference.length; i++) {
+      if (reference[i] != key.charAt(i)) {
+        distance += 1;
+      }
+    }
+    return distance;
+  }
+
 
   @Override
   public float similarity(String key1, String key2) {
     return HammingStringComparator.getSimilarity(key1, key2);
   }
 
+  @Override
+  public float[] similarities(String reference, Collection<? extends String> candidates) {
+    if (reference.length() == 0) {
+      throw new IllegalArgumentException("Key length must be > 0");
+    }
+
+    char[] referenceChars = reference.toCharArray();
+    final float len = referenceChars.length;
+
+    float[] ret = new float[candidates.size()];
+    int i = 0;
+    for (String c: candidates) {
+      ret[i++] = (len - distance(referenceChars, c)) / len;
+    }
+    return ret;
+  }
+
   public static float getSimilarity(String key1, String key2) {
     if (key1.length() == 0) {
       throw new IllegalArgumentException("Key length must be > 0");
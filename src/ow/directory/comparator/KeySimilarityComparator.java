@@ -1,5 +1,6 @@
 package ow.directory.comparator;
 
+import java.util.Collection;
 import java.util.Comparator;
 
 /**
@@ -10,4 +11,15 @@ public interface KeySimilarityComparator<K> {
   float similarity(K key1, K key2);
 
   Comparator<K> comparatorForKey(K reference);
+
+  /**
+   * Returns the similarities of candidates to a reference key, in the iteration order of the candidates.
+   * Implementations prepare the reference once for all the candidates.
+   */
+  default float[] similarities(K reference, Collection<? extends K> candidates) {
+    float[] ret = new float[candidates.size()];
+    int i = 0;
+    for (K c: candidates) ret[i++] = this.similarity(reference, c);
+    return ret;
+  }
 }
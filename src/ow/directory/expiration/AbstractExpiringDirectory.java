@@ -63,6 +63,19 @@ public abstract class AbstractExpiringDirectory<K,V> implements Iterable<Map.Ent
 		}
 	}
 
+	/**
+	 * Stops the expiring task if the directory is empty.
+	 * Checked under the lock {@link #initExpiringTask(long) initExpiringTask()} takes,
+	 * the task is not stopped after a value is put concurrently and the task is kept for it.
+	 */
+	protected void stopExpiringTaskIfEmpty() {
+		synchronized (this) {
+			if (this.isEmpty()) {
+				this.stopExpiringTask();
+			}
+		}
+	}
+
 	protected void stopExpiringTask() {
 		synchronized (this) { 
 			if (this.expiringTask != null) {
@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.*;
 
 import ow.directory.MultiValueDirectory;
+import ow.directory.NearestKeys;
 import ow.directory.comparator.KeySimilarityComparator;
 import ow.util.Timer;
 
@@ -42,11 +43,10 @@ public class ExpiringMultiValueDirectory<K,V> extends AbstractExpiringDirectory<
 		ExpiringValue<V> entry = new ExpiringValue<V>(value, ttl);
 		long expiringTime = entry.getExpiringTime();
 
-		synchronized (this) {
-			entry = this.dir.put(key, entry);
+		// the directory takes care of concurrent writes
+		entry = this.dir.put(key, entry);
 
-			super.initExpiringTask(expiringTime + 100L);
-		}
+		super.initExpiringTask(expiringTime + 100L);
 
 		V ret = null;
 		if (entry != null) {
@@ -78,13 +78,9 @@ public class ExpiringMultiValueDirectory<K,V> extends AbstractExpiringDirectory<
 	private Set<V> getAndRemove(K key, boolean remove) throws Exception {
 		Set<ExpiringValue<V>> c;
 		if (remove) {
-			synchronized (this) {
-				c = this.dir.remove(key);
+			c = this.dir.remove(key);
 
-				if (this.dir.isEmpty()) {
-					super.stopExpiringTask();
-				}
-			}
+			super.stopExpiringTaskIfEmpty();
 		}
 		else
 			c = this.dir.get(key);
@@ -123,6 +119,10 @@ public class ExpiringMultiValueDirectory<K,V> extends AbstractExpiringDirectory<
 		return this.dir.getSimilarKeys(key, threshold);
 	}
 
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception {
+		return this.dir.getNearestKeys(key, threshold, k);
+	}
+
 	public Map<K, Set<V>> getSimilar(K key, float threshold) throws Exception {
 		Set<K> keys = getSimilarKeys(key, threshold);
 
@@ -139,13 +139,9 @@ public class ExpiringMultiValueDirectory<K,V> extends AbstractExpiringDirectory<
 
 	public V remove(K key, V value) throws Exception {
 		ExpiringValue<V> entry = new ExpiringValue<V>(value, super.defaultTTL);
-		synchronized (this) {
-			entry = this.dir.remove(key, entry);
+		entry = this.dir.remove(key, entry);
 
-			if (this.dir.isEmpty()) {
-				super.stopExpiringTask();
-			}
-		}
+		super.stopExpiringTaskIfEmpty();
 
 		V ret = null;
 		if (entry != null) {
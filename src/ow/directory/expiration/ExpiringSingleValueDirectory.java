@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.*;
 import java.util.logging.Logger;
 
+import ow.directory.NearestKeys;
 import ow.directory.SingleValueDirectory;
 import ow.directory.comparator.KeySimilarityComparator;
 import ow.util.Timer;
@@ -118,6 +119,10 @@ public class ExpiringSingleValueDirectory<K,V> extends AbstractExpiringDirectory
 		return internalDirectory.getSimilarKeys(key, threshold);
 	}
 
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception {
+		return internalDirectory.getNearestKeys(key, threshold, k);
+	}
+
 	public Map<K, V> getSimilar(K key, float threshold) throws Exception {
 		Set<K> keys = getSimilarKeys(key, threshold);
 		HashMap<K,V> results = new HashMap<>();
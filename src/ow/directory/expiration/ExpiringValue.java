@@ -61,7 +61,7 @@ public class ExpiringValue<V> implements Serializable {
 			}
 		}
 
-		return true;
+		return false;
 	}
 
 	public String toString() {
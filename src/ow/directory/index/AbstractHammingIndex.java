@@ -0,0 +1,130 @@
+package ow.directory.index;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ow.directory.comparator.HammingIDComparator;
+import ow.id.ID;
+
+/**
+ * A base class of indexes for Hamming range queries on IDs.
+ * Keys are partitioned by their sizes because the distance is defined only between IDs of the same size.
+ * Each partition keeps the keys packed in a {@link PackedKeys PackedKeys} as well,
+ * which is scanned if the index structure cannot narrow down the search.
+ * Queries share a read lock and updates take a write lock,
+ * so that an index can be updated by message handlers and the expiration task concurrently.
+ */
+abstract class AbstractHammingIndex implements SimilarityIndex<ID> {
+	private final Map<Integer,Partition> partitions = new HashMap<Integer,Partition>();
+	private final Map<Integer,PackedKeys> packedKeys = new HashMap<Integer,PackedKeys>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Keys of the same size.
+	 */
+	interface Partition {
+		/**
+		 * Called only with a key not in this partition.
+		 */
+		void add(ID key);
+
+		/**
+		 * Called only with a key in this partition.
+		 */
+		void remove(ID key);
+
+		/**
+		 * @return null if a linear scan is cheaper.
+		 */
+		Set<ID> search(ID key, int radius);
+	}
+
+	/**
+	 * @return null if keys are just scanned.
+	 */
+	protected abstract Partition newPartition(int sizeInBit);
+
+	public void add(ID key) {
+		this.lock.writeLock().lock();
+		try {
+			PackedKeys packed = this.packedKeys.get(key.getSize());
+			if (packed == null) {
+				packed = new PackedKeys(key.getSize());
+				this.packedKeys.put(key.getSize(), packed);
+
+				Partition p = this.newPartition(key.getSize() * 8);
+				if (p != null) this.partitions.put(key.getSize(), p);
+			}
+
+			if (!packed.add(key)) return;	// already indexed
+
+			Partition p = this.partitions.get(key.getSize());
+			if (p != null) p.add(key);
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(ID key) {
+		this.lock.writeLock().lock();
+		try {
+			PackedKeys packed = this.packedKeys.get(key.getSize());
+			if (packed == null || !packed.remove(key)) return;	// not indexed
+
+			Partition p = this.partitions.get(key.getSize());
+			if (p != null) p.remove(key);
+
+			if (packed.size() <= 0) {
+				this.packedKeys.remove(key.getSize());
+				this.partitions.remove(key.getSize());
+			}
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public void clear() {
+		this.lock.writeLock().lock();
+		try {
+			this.partitions.clear();
+			this.packedKeys.clear();
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public Set<ID> getCandidates(ID key, float threshold) {
+		int sizeInBit = key.getSize() * 8;
+		if (sizeInBit <= 0) return null;
+
+		int radius = HammingIDComparator.maxDistance(sizeInBit, threshold);
+
+		this.lock.readLock().lock();
+		try {
+			PackedKeys packed = this.packedKeys.get(key.getSize());
+			if (packed == null || radius < 0) return new HashSet<ID>();
+
+			Partition p = this.partitions.get(key.getSize());
+			Set<ID> result = (p != null ? p.search(key, radius) : null);
+			if (result == null) {
+				result = packed.scan(key, radius);
+			}
+
+			return result;
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	static int distance(ID a, ID b) {
+		return ID.xorBitCount(a.getWords(), b.getWords());
+	}
+}
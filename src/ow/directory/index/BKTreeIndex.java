@@ -0,0 +1,154 @@
+package ow.directory.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ow.id.ID;
+
+/**
+ * An index for Hamming range queries on IDs based on a BK-tree.
+ * Each child of a node is labeled with its distance to the node,
+ * and by the triangle inequality a query of radius r descends only into children
+ * labeled from d - r to d + r, where d is the distance from the query to the node.
+ * It works best for a small radius, i.e. a high threshold.
+ * A removed key is marked and the tree is rebuilt when marked nodes outnumber the live ones.
+ */
+public final class BKTreeIndex extends AbstractHammingIndex {
+	protected Partition newPartition(int sizeInBit) {
+		return new Tree();
+	}
+
+	private static final class Node {
+		final ID key;
+		boolean removed = false;
+		int[] childDistances = null;
+		Node[] children = null;
+		int numChildren = 0;
+
+		Node(ID key) { this.key = key; }
+
+		Node child(int distance) {
+			for (int i = 0; i < this.numChildren; i++) {
+				if (this.childDistances[i] == distance) return this.children[i];
+			}
+			return null;
+		}
+
+		void addChild(int distance, Node child) {
+			if (this.children == null) {
+				this.childDistances = new int[2];
+				this.children = new Node[2];
+			}
+			else if (this.numChildren >= this.children.length) {
+				int newCapacity = this.children.length * 2;
+
+				int[] newDistances = new int[newCapacity];
+				System.arraycopy(this.childDistances, 0, newDistances, 0, this.numChildren);
+				this.childDistances = newDistances;
+
+				Node[] newChildren = new Node[newCapacity];
+				System.arraycopy(this.children, 0, newChildren, 0, this.numChildren);
+				this.children = newChildren;
+			}
+
+			this.childDistances[this.numChildren] = distance;
+			this.children[this.numChildren] = child;
+			this.numChildren++;
+		}
+	}
+
+	private static final class Tree implements Partition {
+		private Node root = null;
+		private int numKeys = 0;
+		private int numRemoved = 0;
+
+		public void add(ID key) {
+			if (this.root == null) {
+				this.root = new Node(key);
+				this.numKeys++;
+				return;
+			}
+
+			Node node = this.root;
+			while (true) {
+				int d = distance(key, node.key);
+				if (d == 0 && node.key.equals(key)) {
+					if (node.removed) {
+						node.removed = false;
+						this.numRemoved--;
+						this.numKeys++;
+					}
+					return;
+				}
+
+				Node child = node.child(d);
+				if (child == null) {
+					node.addChild(d, new Node(key));
+					this.numKeys++;
+					return;
+				}
+				node = child;
+			}
+		}
+
+		public void remove(ID key) {
+			Node node = this.root;
+			while (node != null) {
+				int d = distance(key, node.key);
+				if (d == 0 && node.key.equals(key)) {
+					if (node.removed) return;
+
+					node.removed = true;
+					this.numKeys--;
+					this.numRemoved++;
+
+					if (this.numRemoved > this.numKeys) this.rebuild();
+					return;
+				}
+
+				node = node.child(d);
+			}
+		}
+
+		private void rebuild() {
+			List<ID> keys = new ArrayList<ID>(this.numKeys);
+
+			List<Node> stack = new ArrayList<Node>();
+			if (this.root != null) stack.add(this.root);
+			while (!stack.isEmpty()) {
+				Node node = stack.remove(stack.size() - 1);
+				if (!node.removed) keys.add(node.key);
+				for (int i = 0; i < node.numChildren; i++) stack.add(node.children[i]);
+			}
+
+			this.root = null;
+			this.numKeys = 0;
+			this.numRemoved = 0;
+			for (ID key: keys) this.add(key);
+		}
+
+		public Set<ID> search(ID key, int radius) {
+			Set<ID> result = new HashSet<ID>();
+
+			List<Node> stack = new ArrayList<Node>();
+			if (this.root != null) stack.add(this.root);
+			while (!stack.isEmpty()) {
+				Node node = stack.remove(stack.size() - 1);
+
+				int d = distance(key, node.key);
+				if (d <= radius && !node.removed) result.add(node.key);
+
+				for (int i = 0; i < node.numChildren; i++) {
+					int childDistance = node.childDistances[i];
+					if (childDistance >= d - radius && childDistance <= d + radius) {
+						stack.add(node.children[i]);
+					}
+				}
+			}
+
+			return result;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package ow.directory.index;
+
+import java.util.HashSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import ow.id.ID;
+import ow.routing.chord.GrayCode;
+
+/**
+ * An index for Hamming range queries on IDs which sorts keys by their rank in the reflected Gray code,
+ * the order in which HammingChord places keys on the ring.
+ * The keys sharing the top m bits form a contiguous range of ranks,
+ * so that a query of radius r scans the ranges of the prefixes within distance r from the prefix of the query key,
+ * filtering keys in the ranges by Hamming distance.
+ * m is chosen to minimize the number of probes plus keys scanned,
+ * and a linear scan is done instead if it would be cheaper.
+ */
+public final class GrayCodeRangeIndex extends AbstractHammingIndex {
+	private final static int MAX_PREFIX_BITS = 62;
+	private final static double TREE_STEP_COST = 8.0;	// a step in the tree relative to a key in a linear scan
+
+	protected Partition newPartition(int sizeInBit) {
+		return new Ranks(sizeInBit);
+	}
+
+	/**
+	 * Returns the rank of an ID in the Gray code, the binary number which encodes to it.
+	 */
+	static long[] rank(long[] words) {
+		return GrayCode.fromGray(words, new long[words.length]);
+	}
+
+	/**
+	 * Compares words as unsigned integers.
+	 */
+	static int compare(long[] a, long[] b) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return (a[i] + Long.MIN_VALUE < b[i] + Long.MIN_VALUE ? -1 : 1);
+			}
+		}
+		return 0;
+	}
+
+	private static final class Ranks implements Partition {
+		private final int sizeInBit;
+		private final int wordLength;
+		private final NavigableMap<long[],ID> map = new TreeMap<long[],ID>(GrayCodeRangeIndex::compare);
+
+		Ranks(int sizeInBit) {
+			this.sizeInBit = sizeInBit;
+			this.wordLength = ID.getWordLength(sizeInBit / 8);
+		}
+
+		public void add(ID key) {
+			this.map.put(rank(key.getWords()), key);
+		}
+
+		public void remove(ID key) {
+			this.map.remove(rank(key.getWords()));
+		}
+
+		public Set<ID> search(ID key, int radius) {
+			int n = this.map.size();
+			if (n <= 0) return new HashSet<ID>();
+
+			// choose the length of prefixes: probes cost log n steps each, and about n / 2^m keys are scanned per probe
+			double logN = Math.log(n + 1) / Math.log(2.0);
+			int maxBits = Math.min(this.sizeInBit, MAX_PREFIX_BITS);
+			int bestBits = 0;
+			double bestCost = n;
+			for (int m = 1; m <= maxBits; m++) {
+				double probes = numProbes(m, radius);
+				double cost = TREE_STEP_COST * (probes * logN + probes * n / Math.pow(2.0, m));
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestBits = m;
+				}
+			}
+			if (bestBits == 0) {
+				return null;	// a linear scan is cheaper
+			}
+
+			long[] words = key.getWords();
+			long prefix = this.topBits(words, bestBits);
+
+			Set<ID> result = new HashSet<ID>();
+			this.probe(words, prefix, bestBits, 0, radius, radius, result);
+
+			return result;
+		}
+
+		/**
+		 * Scans the range of the prefix and every prefix which differs in up to remaining bits at or above fromBit.
+		 */
+		private void probe(long[] words, long prefix, int m, int fromBit, int remaining, int radius, Set<ID> result) {
+			this.scan(words, prefix, m, radius, result);
+
+			if (remaining <= 0) return;
+
+			for (int b = fromBit; b < m; b++) {
+				this.probe(words, prefix ^ (1L << b), m, b + 1, remaining - 1, radius, result);
+			}
+		}
+
+		private void scan(long[] words, long prefix, int m, int radius, Set<ID> result) {
+			// ranks of the codes starting with the prefix
+			long prefixRank = GrayCode.fromGray(prefix);
+
+			long[] from = this.withTopBits(prefixRank, m, false);
+			long[] to = this.withTopBits(prefixRank, m, true);
+
+			keys:
+			for (ID k: this.map.subMap(from, true, to, true).values()) {
+				long[] w = k.getWords();
+				int distance = 0;
+				for (int j = 0; j < w.length; j++) {
+					distance += Long.bitCount(w[j] ^ words[j]);
+					if (distance > radius) continue keys;
+				}
+
+				result.add(k);
+			}
+		}
+
+		/**
+		 * Returns the top m bits of an ID.
+		 */
+		private long topBits(long[] words, int m) {
+			long v = 0L;
+			for (int j = 0; j < m; j++) {
+				int bit = this.sizeInBit - m + j;
+				if ((words[this.wordLength - 1 - bit / 64] & (1L << (bit % 64))) != 0L) {
+					v |= 1L << j;
+				}
+			}
+			return v;
+		}
+
+		/**
+		 * Returns the words of an ID whose top m bits are the specified ones
+		 * and whose lower bits are all zero or all one.
+		 */
+		private long[] withTopBits(long top, int m, boolean lowerOnes) {
+			long[] w = new long[this.wordLength];
+
+			int lowerBits = this.sizeInBit - m;
+			if (lowerOnes) {
+				for (int bit = 0; bit < lowerBits; bit++) {
+					w[this.wordLength - 1 - bit / 64] |= 1L << (bit % 64);
+				}
+			}
+			for (int j = 0; j < m; j++) {
+				if ((top & (1L << j)) != 0L) {
+					int bit = lowerBits + j;
+					w[this.wordLength - 1 - bit / 64] |= 1L << (bit % 64);
+				}
+			}
+
+			return w;
+		}
+
+		/**
+		 * Returns the number of m-bit prefixes within distance r, sum of C(m, i) for i up to r.
+		 */
+		private static double numProbes(int m, int r) {
+			double probes = 0.0;
+			double c = 1.0;
+			for (int i = 0; i <= r && i <= m; i++) {
+				probes += c;
+				c = c * (m - i) / (i + 1);
+			}
+			return probes;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package ow.directory.index;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ow.id.ID;
+
+/**
+ * An index for Hamming range queries on IDs based on multi-index hashing.
+ * Each key is split into m disjoint substrings and each substring is indexed in its own hash table.
+ * If two keys are within Hamming distance r, at least one pair of their substrings is within floor(r / m),
+ * so that a query probes every table with the substrings within that radius.
+ * Falls back to a linear scan when the probes would outnumber the keys.
+ */
+public final class MultiIndexHashingIndex extends AbstractHammingIndex {
+	public final static int DEFAULT_SUBSTRING_BITS = 16;
+
+	private final int substringBits;
+
+	public MultiIndexHashingIndex() {
+		this(DEFAULT_SUBSTRING_BITS);
+	}
+
+	/**
+	 * @param substringBits length of a substring in bit, from 1 to 63.
+	 */
+	public MultiIndexHashingIndex(int substringBits) {
+		if (substringBits < 1 || substringBits > 63) {
+			throw new IllegalArgumentException("Length of a substring should be from 1 to 63: " + substringBits);
+		}
+
+		this.substringBits = substringBits;
+	}
+
+	protected Partition newPartition(int sizeInBit) {
+		return new Tables(sizeInBit);
+	}
+
+	/**
+	 * Returns bits [offset, offset + len) of the words of an ID, counted from the least significant bit.
+	 */
+	static long extractBits(long[] words, int offset, int len) {
+		int idx = words.length - 1 - offset / 64;
+		int shift = offset % 64;
+
+		long v = words[idx] >>> shift;
+		if (shift + len > 64 && idx > 0) {
+			v |= words[idx - 1] << (64 - shift);
+		}
+
+		return v & ((1L << len) - 1L);
+	}
+
+	private final class Tables implements Partition {
+		private final int numSubstrings;
+		private final int[] offsets, lengths;
+		private final Map<Long,ID[]>[] tables;
+		private int numKeys = 0;
+
+		@SuppressWarnings("unchecked")
+		Tables(int sizeInBit) {
+			int m = (sizeInBit + substringBits - 1) / substringBits;
+			this.numSubstrings = m;
+			this.offsets = new int[m];
+			this.lengths = new int[m];
+			this.tables = new Map[m];
+
+			// split as evenly as possible
+			int offset = 0;
+			for (int j = 0; j < m; j++) {
+				int len = sizeInBit / m + (j < sizeInBit % m ? 1 : 0);
+				this.offsets[j] = offset;
+				this.lengths[j] = len;
+				this.tables[j] = new HashMap<Long,ID[]>();
+				offset += len;
+			}
+		}
+
+		public void add(ID key) {
+			long[] words = key.getWords();
+
+			for (int j = 0; j < this.numSubstrings; j++) {
+				Long sub = extractBits(words, this.offsets[j], this.lengths[j]);
+				ID[] bucket = this.tables[j].get(sub);
+
+				ID[] newBucket;
+				if (bucket == null) {
+					newBucket = new ID[] { key };
+				}
+				else {
+					newBucket = new ID[bucket.length + 1];
+					System.arraycopy(bucket, 0, newBucket, 0, bucket.length);
+					newBucket[bucket.length] = key;
+				}
+				this.tables[j].put(sub, newBucket);
+			}
+
+			this.numKeys++;
+		}
+
+		public void remove(ID key) {
+			long[] words = key.getWords();
+
+			for (int j = 0; j < this.numSubstrings; j++) {
+				Long sub = extractBits(words, this.offsets[j], this.lengths[j]);
+				ID[] bucket = this.tables[j].get(sub);
+				if (bucket == null) continue;
+
+				int idx = -1;
+				for (int i = 0; i < bucket.length; i++) {
+					if (bucket[i].equals(key)) { idx = i; break; }
+				}
+				if (idx < 0) continue;
+
+				if (bucket.length == 1) {
+					this.tables[j].remove(sub);
+				}
+				else {
+					ID[] newBucket = new ID[bucket.length - 1];
+					System.arraycopy(bucket, 0, newBucket, 0, idx);
+					System.arraycopy(bucket, idx + 1, newBucket, idx, bucket.length - idx - 1);
+					this.tables[j].put(sub, newBucket);
+				}
+			}
+
+			this.numKeys--;
+		}
+
+		public Set<ID> search(ID key, int radius) {
+			int subRadius = radius / this.numSubstrings;
+
+			// estimate the number of probes
+			double probes = 0.0;
+			for (int j = 0; j < this.numSubstrings; j++) {
+				double c = 1.0;	// C(len, k)
+				for (int k = 0; k <= subRadius && k <= this.lengths[j]; k++) {
+					probes += c;
+					c = c * (this.lengths[j] - k) / (k + 1);
+				}
+			}
+			if (probes > this.numKeys) {
+				return null;	// a linear scan is cheaper
+			}
+
+			Set<ID> result = new HashSet<ID>();
+			long[] words = key.getWords();
+			for (int j = 0; j < this.numSubstrings; j++) {
+				long sub = extractBits(words, this.offsets[j], this.lengths[j]);
+				this.probe(this.tables[j], sub, 0, this.lengths[j], subRadius, result);
+			}
+
+			return result;
+		}
+
+		/**
+		 * Looks up the substring and every substring which differs in up to remaining bits at or above fromBit.
+		 */
+		private void probe(Map<Long,ID[]> table, long sub, int fromBit, int len, int remaining, Set<ID> result) {
+			ID[] bucket = table.get(sub);
+			if (bucket != null) {
+				for (ID id: bucket) result.add(id);
+			}
+
+			if (remaining <= 0) return;
+
+			for (int b = fromBit; b < len; b++) {
+				this.probe(table, sub ^ (1L << b), b + 1, len, remaining - 1, result);
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package ow.directory.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ow.id.ID;
+
+/**
+ * A columnar store of IDs of the same size, whose words are packed into a single long array.
+ * A scan computes Hamming distances with Long#bitCount() over the array
+ * without allocating any object per key, and gives up on a key as soon as the distance exceeds the radius.
+ * A large store is scanned in parallel with fork/join.
+ * Not thread-safe, and a scan can run concurrently only with other scans.
+ */
+final class PackedKeys {
+	private final static int INITIAL_CAPACITY = 16;
+	final static int PARALLEL_SCAN_THRESHOLD = 64 * 1024;	// keys per task
+
+	private final int wordLength;
+	private long[] words;
+	private ID[] keys;
+	private int size = 0;
+	private final Map<ID,Integer> positions = new HashMap<ID,Integer>();
+
+	PackedKeys(int sizeInByte) {
+		this.wordLength = ID.getWordLength(sizeInByte);
+		this.words = new long[INITIAL_CAPACITY * this.wordLength];
+		this.keys = new ID[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @return false if the key is already stored.
+	 */
+	boolean add(ID key) {
+		if (this.positions.containsKey(key)) return false;
+
+		if (this.size >= this.keys.length) {
+			int newCapacity = this.keys.length * 2;
+
+			long[] newWords = new long[newCapacity * this.wordLength];
+			System.arraycopy(this.words, 0, newWords, 0, this.size * this.wordLength);
+			this.words = newWords;
+
+			ID[] newKeys = new ID[newCapacity];
+			System.arraycopy(this.keys, 0, newKeys, 0, this.size);
+			this.keys = newKeys;
+		}
+
+		System.arraycopy(key.getWords(), 0, this.words, this.size * this.wordLength, this.wordLength);
+		this.keys[this.size] = key;
+		this.positions.put(key, this.size);
+		this.size++;
+
+		return true;
+	}
+
+	/**
+	 * Removes the key and moves the last key to its position.
+	 *
+	 * @return false if the key is not stored.
+	 */
+	boolean remove(ID key) {
+		Integer pos = this.positions.remove(key);
+		if (pos == null) return false;
+
+		int last = this.size - 1;
+		if (pos != last) {
+			System.arraycopy(this.words, last * this.wordLength, this.words, pos * this.wordLength, this.wordLength);
+			this.keys[pos] = this.keys[last];
+			this.positions.put(this.keys[pos], pos);
+		}
+		this.keys[last] = null;
+		this.size--;
+
+		return true;
+	}
+
+	int size() { return this.size; }
+
+	/**
+	 * Returns the keys within the specified Hamming distance.
+	 */
+	Set<ID> scan(ID query, int radius) {
+		long[] q = query.getWords();
+
+		if (this.size < PARALLEL_SCAN_THRESHOLD * 2) {
+			Set<ID> result = new HashSet<ID>();
+			this.scan(q, radius, 0, this.size, result);
+			return result;
+		}
+		else {
+			return new HashSet<ID>(ForkJoinPool.commonPool().invoke(new ScanTask(q, radius, 0, this.size)));
+		}
+	}
+
+	private void scan(long[] q, int radius, int from, int to, Collection<ID> result) {
+		long[] w = this.words;
+		int wl = this.wordLength;
+
+		keys:
+		for (int i = from, off = from * wl; i < to; i++, off += wl) {
+			int distance = 0;
+			for (int j = 0; j < wl; j++) {
+				distance += Long.bitCount(w[off + j] ^ q[j]);
+				if (distance > radius) continue keys;	// early abort
+			}
+
+			result.add(this.keys[i]);
+		}
+	}
+
+	private final class ScanTask extends RecursiveTask<List<ID>> {
+		private final long[] q;
+		private final int radius, from, to;
+
+		ScanTask(long[] q, int radius, int from, int to) {
+			this.q = q;
+			this.radius = radius;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected List<ID> compute() {
+			if (this.to - this.from <= PARALLEL_SCAN_THRESHOLD) {
+				List<ID> result = new ArrayList<ID>();
+				PackedKeys.this.scan(this.q, this.radius, this.from, this.to, result);
+				return result;
+			}
+
+			int mid = (this.from + this.to) >>> 1;
+			ScanTask left = new ScanTask(this.q, this.radius, this.from, mid);
+			left.fork();
+			List<ID> result = new ScanTask(this.q, this.radius, mid, this.to).compute();
+			result.addAll(left.join());
+
+			return result;
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package ow.directory.index;
+
+/**
+ * An index which just scans IDs packed in long arrays for Hamming range queries.
+ * Needs no extra structure and is much faster than comparing keys one by one with a comparator.
+ */
+public final class PackedScanIndex extends AbstractHammingIndex {
+	protected Partition newPartition(int sizeInBit) {
+		return null;
+	}
+}
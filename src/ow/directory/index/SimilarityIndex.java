@@ -0,0 +1,26 @@
+package ow.directory.index;
+
+import java.util.Set;
+
+/**
+ * An index over the keys of a directory which narrows down a similarity search.
+ * A directory keeps its index up to date on put, remove and expiration,
+ * and checks the similarity of each returned candidate as it does in a linear scan.
+ *
+ * @param <K> type of keys.
+ */
+public interface SimilarityIndex<K> {
+	void add(K key);
+
+	void remove(K key);
+
+	void clear();
+
+	/**
+	 * Returns a superset of the indexed keys whose similarity to the specified key
+	 * is equal to or larger than the threshold.
+	 *
+	 * @return null if this index cannot narrow down the search and the caller should scan all the keys.
+	 */
+	Set<K> getCandidates(K key, float threshold);
+}
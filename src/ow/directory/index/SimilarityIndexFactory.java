@@ -0,0 +1,55 @@
+package ow.directory.index;
+
+import java.util.logging.Logger;
+
+import ow.directory.DirectoryConfiguration;
+import ow.directory.comparator.KeySimilarityComparatorFactory;
+import ow.id.ID;
+
+public class SimilarityIndexFactory {
+	private final static Logger logger = Logger.getLogger("directory");
+
+	public static final String INDEX_NONE = "None";
+	public static final String INDEX_SCAN = "Scan";
+	public static final String INDEX_MULTI_INDEX_HASHING = "MultiIndexHashing";
+	public static final String INDEX_BK_TREE = "BKTree";
+	public static final String INDEX_VP_TREE = "VPTree";
+	public static final String INDEX_GRAY_CODE_RANGE = "GrayCodeRange";
+
+	/**
+	 * Returns a new index for the specified type of keys.
+	 *
+	 * @return null if the configured index does not support the key type or the similarity metric.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K> SimilarityIndex<K> getIndex(Class keyClass, DirectoryConfiguration config) {
+		String index = config.getSimilarityIndex();
+		if (index == null || index.equals(INDEX_NONE)) {
+			return null;
+		}
+
+		// indexes for Hamming distance between IDs
+		boolean hammingOnIDs = (keyClass != null && ID.class.isAssignableFrom(keyClass)
+				&& KeySimilarityComparatorFactory.METRIC_HAMMING.equals(config.getSimilarityMetric()));
+
+		if (index.equals(INDEX_SCAN)) {
+			return (hammingOnIDs ? (SimilarityIndex<K>)new PackedScanIndex() : null);
+		}
+		else if (index.equals(INDEX_MULTI_INDEX_HASHING)) {
+			return (hammingOnIDs ?
+					(SimilarityIndex<K>)new MultiIndexHashingIndex(config.getSimilarityIndexSubstringBits()) : null);
+		}
+		else if (index.equals(INDEX_BK_TREE)) {
+			return (hammingOnIDs ? (SimilarityIndex<K>)new BKTreeIndex() : null);
+		}
+		else if (index.equals(INDEX_VP_TREE)) {
+			return (hammingOnIDs ? (SimilarityIndex<K>)new VPTreeIndex() : null);
+		}
+		else if (index.equals(INDEX_GRAY_CODE_RANGE)) {
+			return (hammingOnIDs ? (SimilarityIndex<K>)new GrayCodeRangeIndex() : null);
+		}
+
+		logger.warning("Similarity index " + index + " is not supported.");
+		return null;
+	}
+}
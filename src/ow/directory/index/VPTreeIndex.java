@@ -0,0 +1,153 @@
+package ow.directory.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import ow.id.ID;
+
+/**
+ * An index for Hamming range queries on IDs based on a vantage-point tree.
+ * Each node splits keys into those within the median distance from a vantage point and the rest,
+ * and a query of radius r visits a side only if the ball around the query can overlap it.
+ * The tree is balanced and prunes better than a BK-tree for a large radius, i.e. a low threshold.
+ * Added keys are kept in a buffer and removed keys are marked until the tree is rebuilt,
+ * which happens when they exceed a fraction of the keys in the tree.
+ */
+public final class VPTreeIndex extends AbstractHammingIndex {
+	private final static int LEAF_SIZE = 8;
+	private final static int MIN_PENDING_TO_REBUILD = 64;
+	private final static int REBUILD_FRACTION = 8;	// rebuilds if changes exceed 1 / 8 of the tree
+
+	protected Partition newPartition(int sizeInBit) {
+		return new Tree();
+	}
+
+	private static final class Node {
+		ID vantagePoint;
+		int median;			// inside: distance <= median, outside: distance > median
+		Node inside, outside;
+		ID[] bucket;		// non-null if this is a leaf
+	}
+
+	private static final class Tree implements Partition {
+		private final Random rnd = new Random();
+		private Node root = null;
+		private int numKeysInTree = 0;
+		private final Set<ID> keysInTree = new HashSet<ID>();
+		private final Set<ID> removed = new HashSet<ID>();	// in the tree but removed
+		private final Set<ID> added = new HashSet<ID>();	// not in the tree yet
+
+		public void add(ID key) {
+			if (this.removed.remove(key)) return;
+			if (this.keysInTree.contains(key)) return;
+
+			this.added.add(key);
+			this.rebuildIfNeeded();
+		}
+
+		public void remove(ID key) {
+			if (this.added.remove(key)) return;
+			if (!this.keysInTree.contains(key)) return;
+
+			this.removed.add(key);
+			this.rebuildIfNeeded();
+		}
+
+		private void rebuildIfNeeded() {
+			int changes = this.added.size() + this.removed.size();
+			if (changes < MIN_PENDING_TO_REBUILD
+					|| changes * REBUILD_FRACTION < this.numKeysInTree) return;
+
+			List<ID> keys = new ArrayList<ID>(this.numKeysInTree - this.removed.size() + this.added.size());
+			for (ID k: this.keysInTree) {
+				if (!this.removed.contains(k)) keys.add(k);
+			}
+			keys.addAll(this.added);
+
+			this.keysInTree.clear();
+			this.keysInTree.addAll(keys);
+			this.numKeysInTree = keys.size();
+			this.removed.clear();
+			this.added.clear();
+
+			this.root = this.build(keys.toArray(new ID[keys.size()]), 0, keys.size());
+		}
+
+		private Node build(ID[] keys, int from, int to) {
+			if (from >= to) return null;
+
+			Node node = new Node();
+
+			if (to - from <= LEAF_SIZE) {
+				node.bucket = new ID[to - from];
+				System.arraycopy(keys, from, node.bucket, 0, to - from);
+				return node;
+			}
+
+			// pick a vantage point at random and move it to the head
+			int vp = from + this.rnd.nextInt(to - from);
+			ID tmp = keys[from]; keys[from] = keys[vp]; keys[vp] = tmp;
+			node.vantagePoint = keys[from];
+
+			// sort the others by distance with a counting sort
+			int n = to - from - 1;
+			int[] distances = new int[n];
+			int maxDistance = 0;
+			for (int i = 0; i < n; i++) {
+				distances[i] = distance(node.vantagePoint, keys[from + 1 + i]);
+				if (distances[i] > maxDistance) maxDistance = distances[i];
+			}
+			int[] counts = new int[maxDistance + 2];
+			for (int d: distances) counts[d + 1]++;
+			for (int d = 1; d < counts.length; d++) counts[d] += counts[d - 1];
+
+			ID[] sorted = new ID[n];
+			for (int i = 0; i < n; i++) sorted[counts[distances[i]]++] = keys[from + 1 + i];
+
+			node.median = distance(node.vantagePoint, sorted[(n - 1) / 2]);
+
+			// split at the end of the median, where counts[d] now points
+			int split = counts[node.median];
+
+			System.arraycopy(sorted, 0, keys, from + 1, n);
+			node.inside = this.build(keys, from + 1, from + 1 + split);
+			node.outside = this.build(keys, from + 1 + split, to);
+
+			return node;
+		}
+
+		public Set<ID> search(ID key, int radius) {
+			Set<ID> result = new HashSet<ID>();
+
+			List<Node> stack = new ArrayList<Node>();
+			if (this.root != null) stack.add(this.root);
+			while (!stack.isEmpty()) {
+				Node node = stack.remove(stack.size() - 1);
+
+				if (node.bucket != null) {
+					for (ID k: node.bucket) {
+						if (distance(key, k) <= radius) result.add(k);
+					}
+					continue;
+				}
+
+				int d = distance(key, node.vantagePoint);
+				if (d <= radius) result.add(node.vantagePoint);
+
+				if (node.inside != null && d - radius <= node.median) stack.add(node.inside);
+				if (node.outside != null && d + radius > node.median) stack.add(node.outside);
+			}
+
+			result.removeAll(this.removed);
+
+			for (ID k: this.added) {
+				if (distance(key, k) <= radius) result.add(k);
+			}
+
+			return result;
+		}
+	}
+}
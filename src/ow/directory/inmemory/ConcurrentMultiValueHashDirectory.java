@@ -0,0 +1,295 @@
+package ow.directory.inmemory;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import ow.directory.DirectoryConfiguration;
+import ow.directory.DirectoryConfiguration.HeapOverflowAction;
+import ow.directory.MultiValueDirectory;
+import ow.directory.NearestKeys;
+import ow.directory.OutOfHeapException;
+import ow.directory.comparator.KeySimilarityComparator;
+import ow.directory.comparator.KeySimilarityComparatorFactory;
+import ow.directory.index.SimilarityIndex;
+import ow.directory.index.SimilarityIndexFactory;
+
+/**
+ * A {@link MultiValueDirectory MultiValueDirectory} on concurrent hash maps,
+ * to which message handlers put values without locking the whole directory.
+ * The values of a key are held in a concurrent map as well, and reads take no lock.
+ * A write holds one of the locks striped by the hash code of the key,
+ * so that the values of a key are created and dropped with the key
+ * and the similarity index follows the keys in the directory.
+ * If the heap runs short, a key is evicted on put as {@link HeapOverflowAction#LRU LRU} specifies,
+ * though in the iteration order of the map instead of the order of access.
+ */
+public final class ConcurrentMultiValueHashDirectory<K,V> implements MultiValueDirectory<K,V> {
+	private final static Logger logger = Logger.getLogger("directory");
+
+	private final static int NUM_LOCK_STRIPES = 64;	// a power of 2
+
+	private final DirectoryConfiguration config;
+	private final ConcurrentHashMap<K,ConcurrentHashMap<V,V>> map =
+		new ConcurrentHashMap<K,ConcurrentHashMap<V,V>>();
+		// value of a key is a Map, not a Set
+		// because remove() has to return the value held.
+	private final Object[] locks = new Object[NUM_LOCK_STRIPES];
+	private final KeySimilarityComparator<K> similarityComparator;
+	private final SimilarityIndex<K> similarityIndex;	// null if not indexed
+
+	ConcurrentMultiValueHashDirectory(Class typeK, Class typeV, DirectoryConfiguration config) {
+		this.config = (config != null ? config : DirectoryConfiguration.getDefaultConfiguration());
+
+		for (int i = 0; i < this.locks.length; i++) this.locks[i] = new Object();
+
+		this.similarityComparator =
+			KeySimilarityComparatorFactory.getComparator(typeK, this.config.getSimilarityMetric());
+		this.similarityIndex = (this.similarityComparator != null ?
+				SimilarityIndexFactory.<K>getIndex(typeK, this.config) : null);
+	}
+
+	private Object lockFor(K key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return this.locks[h & (NUM_LOCK_STRIPES - 1)];
+	}
+
+	public Set<V> get(K key) {
+		Map<V,V> values = this.map.get(key);
+		if (values == null) return null;
+
+		Set<V> ret = new HashSet<V>(values.values());
+		return (ret.isEmpty() ? null : ret);	// being removed
+	}
+
+	public KeySimilarityComparator<K> getSimilarityComparator() {
+		return this.similarityComparator;
+	}
+
+	public Set<K> getSimilarKeys(K key, float threshold) {
+		if (this.similarityComparator == null) {
+			logger.warning("Similarity comparison not supported");
+
+			Set<K> ret = new HashSet<K>();
+			if (this.map.containsKey(key)) ret.add(key);
+			return ret;
+		}
+
+		List<K> candidates = this.getCandidates(key, threshold);
+		float[] sims = this.similarityComparator.similarities(key, candidates);
+
+		Set<K> results = new HashSet<K>();
+		for (int i = 0; i < sims.length; i++) {
+			if (sims[i] >= threshold) results.add(candidates.get(i));
+		}
+		return results;
+	}
+
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) {
+		if (this.similarityComparator == null) {
+			logger.warning("Similarity comparison not supported");
+			return (this.map.containsKey(key) ? NearestKeys.exact(key) : NearestKeys.<K>empty());
+		}
+
+		return NearestKeys.select(key, this.getCandidates(key, threshold), threshold, k, this.similarityComparator);
+	}
+
+	/**
+	 * Returns the keys in this directory which may be similar to the specified key.
+	 * Copied so that keys put or removed concurrently do not change their number on the way.
+	 */
+	private List<K> getCandidates(K key, float threshold) {
+		// the index narrows down candidates, otherwise brute-force search of entire keyset
+		Set<K> keys = null;
+		if (this.similarityIndex != null) {
+			keys = this.similarityIndex.getCandidates(key, threshold);
+		}
+		if (keys == null) {
+			return new ArrayList<K>(this.map.keySet());
+		}
+
+		List<K> present = new ArrayList<K>(keys.size());
+		for (K candidate: keys) {
+			if (this.map.containsKey(candidate)) present.add(candidate);
+		}
+		return present;
+	}
+
+	public Map<K,Set<V>> getSimilar(K key, float threshold) {
+		Map<K,Set<V>> results = new HashMap<K,Set<V>>();
+
+		for (K k: this.getSimilarKeys(key, threshold)) {
+			Set<V> values = this.get(k);
+			if (values != null) results.put(k, values);
+		}
+
+		return results;
+	}
+
+	public V put(K key, V value) throws OutOfHeapException {
+		if (!this.ensureFreeHeap(key)) return null;
+
+		synchronized (this.lockFor(key)) {
+			ConcurrentHashMap<V,V> values = this.map.get(key);
+			if (values == null) {
+				values = new ConcurrentHashMap<V,V>();
+				this.map.put(key, values);
+				if (this.similarityIndex != null) this.similarityIndex.add(key);
+			}
+
+			// replaces the old value
+			return values.put(value, value);
+		}
+	}
+
+	/** For compatibility with ExpiringMultiValueDirectory. */
+	public V put(K key, V value, long ttl) throws OutOfHeapException {
+		// ignore ttl
+		return this.put(key, value);
+	}
+
+	/**
+	 * Makes room for a pair to be put as the heap overflow action of the configuration specifies.
+	 *
+	 * @return false if the pair is to be ignored.
+	 */
+	private boolean ensureFreeHeap(K key) throws OutOfHeapException {
+		HeapOverflowAction a = this.config.getHeapOverflowAction();
+		if (a == HeapOverflowAction.DO_NOT_CARE) return true;
+
+		Runtime r = Runtime.getRuntime();
+		if (r.freeMemory() >= this.config.getRequiredFreeHeapToPut()) return true;
+
+		System.gc();
+		if (r.freeMemory() >= this.config.getRequiredFreeHeapToPut()) return true;
+
+		// out of heap
+		if (a == HeapOverflowAction.THROW_AN_OUT_OF_HEAP_EXCEPTION) {
+			throw new OutOfHeapException("Remaining heap: " + Runtime.getRuntime().freeMemory() + "key: " + key);
+		}
+		else if (a == HeapOverflowAction.IGNORE) {
+			return false;
+		}
+
+		// evict a key
+		for (K k: this.map.keySet()) {
+			if (k.equals(key)) continue;
+
+			this.remove(k);
+			break;
+		}
+
+		return true;
+	}
+
+	public Set<V> remove(K key) {
+		Map<V,V> values;
+		synchronized (this.lockFor(key)) {
+			values = this.map.remove(key);
+			if (values != null && this.similarityIndex != null) this.similarityIndex.remove(key);
+		}
+
+		return (values != null ? new HashSet<V>(values.values()) : null);
+	}
+
+	public V remove(K key, V value) {
+		return this.remove(key, value, false);
+	}
+
+	/**
+	 * @param held if true, removes the value only if it is the one held, not an equal one put since.
+	 */
+	private V remove(K key, V value, boolean held) {
+		synchronized (this.lockFor(key)) {
+			Map<V,V> values = this.map.get(key);
+			if (values == null) return null;
+
+			V ret = null;
+			if (!held || values.get(value) == value) {
+				ret = values.remove(value);
+			}
+
+			if (values.isEmpty()) {
+				this.map.remove(key);
+				if (this.similarityIndex != null) this.similarityIndex.remove(key);
+			}
+
+			return ret;
+		}
+	}
+
+	public boolean isEmpty() {
+		return this.map.isEmpty();
+	}
+
+	/**
+	 * Returns a view of the keys, which iterates without locking
+	 * and reflects puts and removes made during the iteration or not.
+	 */
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(this.map.keySet());
+	}
+
+	public Set<Map.Entry<K,V>> entrySet() {
+		Set<Map.Entry<K,V>> result = new HashSet<Map.Entry<K,V>>();
+		for (Map.Entry<K,V> e: this) result.add(e);
+		return result;
+	}
+
+	public void clear() {
+		for (K k: this.map.keySet()) this.remove(k);
+	}
+
+	public void close() {}
+
+	/**
+	 * Returns an iterator, which reflects puts and removes made during the iteration or not.
+	 * It does not remove a value replaced by a put after the iteration returned it, e.g. on expiration.
+	 */
+	public Iterator<Map.Entry<K,V>> iterator() {
+		return new ConcurrentMultiValueIterator();
+	}
+
+	private class ConcurrentMultiValueIterator implements Iterator<Map.Entry<K,V>> {
+		private final Iterator<Map.Entry<K,ConcurrentHashMap<V,V>>> keyIt = map.entrySet().iterator();
+		private K key = null;
+		private Iterator<V> valueIt = Collections.<V>emptySet().iterator();
+		private Map.Entry<K,V> last = null;
+
+		public boolean hasNext() {
+			while (!this.valueIt.hasNext()) {
+				if (!this.keyIt.hasNext()) return false;
+
+				Map.Entry<K,ConcurrentHashMap<V,V>> e = this.keyIt.next();
+				this.key = e.getKey();
+				this.valueIt = e.getValue().values().iterator();
+			}
+
+			return true;
+		}
+
+		public Map.Entry<K,V> next() {
+			if (!this.hasNext()) throw new NoSuchElementException();
+
+			this.last = new AbstractMap.SimpleImmutableEntry<K,V>(this.key, this.valueIt.next());
+			return this.last;
+		}
+
+		public void remove() {
+			if (this.last == null) throw new IllegalStateException();
+
+			ConcurrentMultiValueHashDirectory.this.remove(this.last.getKey(), this.last.getValue(), true);
+			this.last = null;
+		}
+	}
+}
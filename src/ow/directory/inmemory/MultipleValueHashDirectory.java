@@ -22,6 +22,7 @@ import java.util.Map.Entry;
 
 import ow.directory.DirectoryConfiguration;
 import ow.directory.MultiValueDirectory;
+import ow.directory.NearestKeys;
 import ow.directory.SingleValueDirectory;
 import ow.directory.comparator.KeySimilarityComparator;
 
@@ -60,6 +61,10 @@ public final class MultipleValueHashDirectory<K,V> implements MultiValueDirector
 		return this.internalDir.getSimilarKeys(key, threshold);
 	}
 
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception {
+		return this.internalDir.getNearestKeys(key, threshold, k);
+	}
+
 	public Map<K,Set<V>> getSimilar(K key, float threshold) throws Exception {
 		Set<K> keys = getSimilarKeys(key, threshold);
 
@@ -146,8 +151,13 @@ public final class MultipleValueHashDirectory<K,V> implements MultiValueDirector
 		return this.internalDir.isEmpty();
 	}
 
+	/**
+	 * Returns a copy of the keys, taken under the lock writers hold.
+	 */
 	public Set<K> keySet() {
-		return this.internalDir.keySet();
+		synchronized (this) {
+			return new HashSet<K>(this.internalDir.keySet());
+		}
 	}
 
 	public Set<Map.Entry<K,V>> entrySet() {
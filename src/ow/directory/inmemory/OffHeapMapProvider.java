@@ -0,0 +1,39 @@
+package ow.directory.inmemory;
+
+import ow.directory.DirectoryConfiguration;
+import ow.directory.DirectoryProvider;
+import ow.directory.MultiValueDirectory;
+import ow.directory.SingleValueDirectory;
+
+/**
+ * A provider of volatile directories which hold values in slabs outside the Java heap,
+ * so that a node holds many small values without as many objects on the heap.
+ * Single-value directories are on the heap as those {@link VolatileMapProvider VolatileMapProvider} provides.
+ * The size of direct buffers in total is limited by the -XX:MaxDirectMemorySize option of the VM.
+ */
+public final class OffHeapMapProvider extends DirectoryProvider {
+	private final static String NAME = "OffHeapMap";
+
+	// configuration
+	private final static int SLAB_SIZE = 4 * 1024 * 1024;	// 4 MB
+	private final static long COMPACTION_INTERVAL = 10 * 1000L;	// 10 sec
+	private final static float COMPACTION_THRESHOLD = 0.5f;	// compacts slabs less than half live
+
+	public String getName() { return NAME; }
+
+	protected <K,V> SingleValueDirectory<K,V> provideSingleValueDirectory(Class typeK, Class typeV, String dir, String dbName,
+			DirectoryConfiguration config) throws Exception {
+		return new SingleValueHashDirectory<K,V>(typeK, typeV, dir, dbName, null,
+				config, -1);
+	}
+
+	protected <K,V> MultiValueDirectory<K,V> provideMultiValueDirectory(Class typeK, Class typeV, String dir, String dbName,
+			DirectoryConfiguration config) throws Exception {
+		return new OffHeapMultiValueDirectory<K,V>(typeK, typeV, config,
+				SLAB_SIZE, COMPACTION_INTERVAL, COMPACTION_THRESHOLD);
+	}
+
+	public void removeDirectory(String dir, String dbName) throws Exception {
+		// do nothing
+	}
+}
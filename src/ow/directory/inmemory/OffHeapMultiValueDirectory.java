@@ -0,0 +1,487 @@
+package ow.directory.inmemory;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ow.directory.DirectoryConfiguration;
+import ow.directory.DirectoryConfiguration.HeapOverflowAction;
+import ow.directory.MultiValueDirectory;
+import ow.directory.NearestKeys;
+import ow.directory.OutOfHeapException;
+import ow.directory.comparator.KeySimilarityComparator;
+import ow.directory.comparator.KeySimilarityComparatorFactory;
+import ow.directory.index.SimilarityIndex;
+import ow.directory.index.SimilarityIndexFactory;
+
+/**
+ * A {@link MultiValueDirectory MultiValueDirectory} which holds values serialized in slabs outside the Java heap.
+ * Keys and the similarity index are on the heap, and a key refers to its values by their hash codes and
+ * references to the records, twelve bytes a value.
+ * A daemon thread compacts the slabs periodically by moving the values out of slabs mostly freed.
+ * As {@link ConcurrentMultiValueHashDirectory ConcurrentMultiValueHashDirectory},
+ * an access to a key holds one of the locks striped by the hash code of the key.
+ * The heap overflow action of the configuration applies when no direct buffer can be allocated for a slab.
+ */
+public final class OffHeapMultiValueDirectory<K,V> implements MultiValueDirectory<K,V> {
+	private final static Logger logger = Logger.getLogger("directory");
+
+	private final static int NUM_LOCK_STRIPES = 64;	// a power of 2
+	private final static long NO_ROOM = -1L;
+
+	private final DirectoryConfiguration config;
+	private final ConcurrentHashMap<K,Refs> map = new ConcurrentHashMap<K,Refs>();
+	private final Object[] locks = new Object[NUM_LOCK_STRIPES];
+	private final SlabArena arena;
+	private final ValueSerializer serializer = new ValueSerializer();
+	private final float compactionThreshold;
+	private final KeySimilarityComparator<K> similarityComparator;
+	private final SimilarityIndex<K> similarityIndex;	// null if not indexed
+	private final Thread compactor;
+
+	/** Values of a key. */
+	private final static class Refs {
+		private int[] hashes = new int[1];
+		private long[] refs = new long[1];
+		private int size = 0;
+
+		void add(int hash, long ref) {
+			if (this.size == this.refs.length) {
+				int[] h = new int[this.size * 2];
+				System.arraycopy(this.hashes, 0, h, 0, this.size);
+				this.hashes = h;
+				long[] r = new long[this.size * 2];
+				System.arraycopy(this.refs, 0, r, 0, this.size);
+				this.refs = r;
+			}
+			this.hashes[this.size] = hash;
+			this.refs[this.size] = ref;
+			this.size++;
+		}
+
+		void removeAt(int i) {
+			this.size--;
+			this.hashes[i] = this.hashes[this.size];
+			this.refs[i] = this.refs[this.size];
+		}
+
+		int indexOf(long ref) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.refs[i] == ref) return i;
+			}
+			return -1;
+		}
+	}
+
+	OffHeapMultiValueDirectory(Class typeK, Class typeV, DirectoryConfiguration config,
+			int slabSize, long compactionInterval, float compactionThreshold) {
+		this.config = (config != null ? config : DirectoryConfiguration.getDefaultConfiguration());
+		this.arena = new SlabArena(slabSize);
+		this.compactionThreshold = compactionThreshold;
+
+		for (int i = 0; i < this.locks.length; i++) this.locks[i] = new Object();
+
+		this.similarityComparator =
+			KeySimilarityComparatorFactory.getComparator(typeK, this.config.getSimilarityMetric());
+		this.similarityIndex = (this.similarityComparator != null ?
+				SimilarityIndexFactory.<K>getIndex(typeK, this.config) : null);
+
+		// start a compacting thread
+		this.compactor = new Thread(new Compactor(compactionInterval));
+		this.compactor.setDaemon(true);
+		this.compactor.setName("Off-heap slab compactor");
+		this.compactor.start();
+	}
+
+	private Object lockFor(K key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return this.locks[h & (NUM_LOCK_STRIPES - 1)];
+	}
+
+	private V toValue(byte[] data) {
+		return (V)this.serializer.deserialize(data);
+	}
+
+	public Set<V> get(K key) {
+		byte[][] records;
+		synchronized (this.lockFor(key)) {
+			Refs refs = this.map.get(key);
+			if (refs == null) return null;
+
+			records = new byte[refs.size][];
+			for (int i = 0; i < refs.size; i++) records[i] = this.arena.load(refs.refs[i]);
+		}
+
+		Set<V> ret = new HashSet<V>();
+		for (byte[] data: records) ret.add(this.toValue(data));
+		return ret;
+	}
+
+	public KeySimilarityComparator<K> getSimilarityComparator() {
+		return this.similarityComparator;
+	}
+
+	public Set<K> getSimilarKeys(K key, float threshold) {
+		if (this.similarityComparator == null) {
+			logger.warning("Similarity comparison not supported");
+
+			Set<K> ret = new HashSet<K>();
+			if (this.map.containsKey(key)) ret.add(key);
+			return ret;
+		}
+
+		List<K> candidates = this.getCandidates(key, threshold);
+		float[] sims = this.similarityComparator.similarities(key, candidates);
+
+		Set<K> results = new HashSet<K>();
+		for (int i = 0; i < sims.length; i++) {
+			if (sims[i] >= threshold) results.add(candidates.get(i));
+		}
+		return results;
+	}
+
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) {
+		if (this.similarityComparator == null) {
+			logger.warning("Similarity comparison not supported");
+			return (this.map.containsKey(key) ? NearestKeys.exact(key) : NearestKeys.<K>empty());
+		}
+
+		return NearestKeys.select(key, this.getCandidates(key, threshold), threshold, k, this.similarityComparator);
+	}
+
+	private List<K> getCandidates(K key, float threshold) {
+		// the index narrows down candidates, otherwise brute-force search of entire keyset
+		Set<K> keys = null;
+		if (this.similarityIndex != null) {
+			keys = this.similarityIndex.getCandidates(key, threshold);
+		}
+		if (keys == null) {
+			return new ArrayList<K>(this.map.keySet());
+		}
+
+		List<K> present = new ArrayList<K>(keys.size());
+		for (K candidate: keys) {
+			if (this.map.containsKey(candidate)) present.add(candidate);
+		}
+		return present;
+	}
+
+	public Map<K,Set<V>> getSimilar(K key, float threshold) {
+		Map<K,Set<V>> results = new HashMap<K,Set<V>>();
+
+		for (K k: this.getSimilarKeys(key, threshold)) {
+			Set<V> values = this.get(k);
+			if (values != null) results.put(k, values);
+		}
+
+		return results;
+	}
+
+	public V put(K key, V value) throws IOException, OutOfHeapException {
+		byte[] data = this.serializer.serialize(value);
+		long ref = this.store(key, data);
+		if (ref == NO_ROOM) return null;
+
+		int hash = value.hashCode();
+		synchronized (this.lockFor(key)) {
+			Refs refs = this.map.get(key);
+			if (refs == null) {
+				refs = new Refs();
+				this.map.put(key, refs);
+				if (this.similarityIndex != null) this.similarityIndex.add(key);
+			}
+
+			// replaces the old value
+			for (int i = 0; i < refs.size; i++) {
+				if (refs.hashes[i] != hash) continue;
+
+				V old = this.toValue(this.arena.load(refs.refs[i]));
+				if (value.equals(old)) {
+					this.arena.free(refs.refs[i]);
+					refs.refs[i] = ref;
+					return old;
+				}
+			}
+
+			refs.add(hash, ref);
+			return null;
+		}
+	}
+
+	/** For compatibility with ExpiringMultiValueDirectory. */
+	public V put(K key, V value, long ttl) throws IOException, OutOfHeapException {
+		// ignore ttl
+		return this.put(key, value);
+	}
+
+	/**
+	 * Writes a serialized value to a slab.
+	 * If no slab can be allocated, acts as the heap overflow action of the configuration specifies.
+	 *
+	 * @return {@link #NO_ROOM NO_ROOM} if the value is to be ignored.
+	 */
+	private long store(K key, byte[] data) throws OutOfHeapException {
+		try {
+			return this.arena.store(data);
+		}
+		catch (OutOfMemoryError e) {
+			HeapOverflowAction a = this.config.getHeapOverflowAction();
+			if (a == HeapOverflowAction.DO_NOT_CARE) {
+				throw e;
+			}
+			else if (a == HeapOverflowAction.IGNORE) {
+				return NO_ROOM;
+			}
+			else if (a == HeapOverflowAction.LRU) {
+				// evict a key and retry
+				for (K k: this.map.keySet()) {
+					if (k.equals(key)) continue;
+
+					this.remove(k);
+					break;
+				}
+				this.compact();
+
+				try {
+					return this.arena.store(data);
+				}
+				catch (OutOfMemoryError e2) { /* throw an exception below */ }
+			}
+
+			throw new OutOfHeapException("Slabs: " + this.arena.getCapacity() + " bytes, key: " + key);
+		}
+	}
+
+	public Set<V> remove(K key) {
+		byte[][] records;
+		synchronized (this.lockFor(key)) {
+			Refs refs = this.map.remove(key);
+			if (refs == null) return null;
+			if (this.similarityIndex != null) this.similarityIndex.remove(key);
+
+			records = new byte[refs.size][];
+			for (int i = 0; i < refs.size; i++) {
+				records[i] = this.arena.load(refs.refs[i]);
+				this.arena.free(refs.refs[i]);
+			}
+		}
+
+		Set<V> ret = new HashSet<V>();
+		for (byte[] data: records) ret.add(this.toValue(data));
+		return ret;
+	}
+
+	public V remove(K key, V value) {
+		int hash = value.hashCode();
+		synchronized (this.lockFor(key)) {
+			Refs refs = this.map.get(key);
+			if (refs == null) return null;
+
+			for (int i = 0; i < refs.size; i++) {
+				if (refs.hashes[i] != hash) continue;
+
+				V v = this.toValue(this.arena.load(refs.refs[i]));
+				if (value.equals(v)) {
+					this.removeAt(key, refs, i);
+					return v;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Removes a value by the reference to its record,
+	 * which is not found if the value has been replaced or moved since the reference was taken.
+	 */
+	private void removeRef(K key, long ref) {
+		synchronized (this.lockFor(key)) {
+			Refs refs = this.map.get(key);
+			if (refs == null) return;
+
+			int i = refs.indexOf(ref);
+			if (i >= 0) this.removeAt(key, refs, i);
+		}
+	}
+
+	private void removeAt(K key, Refs refs, int i) {
+		this.arena.free(refs.refs[i]);
+		refs.removeAt(i);
+
+		if (refs.size == 0) {
+			this.map.remove(key);
+			if (this.similarityIndex != null) this.similarityIndex.remove(key);
+		}
+	}
+
+	/**
+	 * Moves the values in slabs mostly freed to the current slab, so that the former slabs are released.
+	 *
+	 * @return the number of values moved.
+	 */
+	public int compact() {
+		Set<Integer> sparse = this.arena.getSparseSlabs(this.compactionThreshold);
+		if (sparse.isEmpty()) return 0;
+
+		int moved = 0;
+		for (K key: this.map.keySet()) {
+			synchronized (this.lockFor(key)) {
+				Refs refs = this.map.get(key);
+				if (refs == null) continue;
+
+				for (int i = 0; i < refs.size; i++) {
+					if (sparse.contains(SlabArena.slabOf(refs.refs[i]))) {
+						refs.refs[i] = this.arena.move(refs.refs[i]);
+						moved++;
+					}
+				}
+			}
+		}
+
+		return moved;
+	}
+
+	/** Returns the size of the slabs in byte. */
+	public long getOffHeapCapacity() { return this.arena.getCapacity(); }
+
+	/** Returns the size of the serialized values in the slabs in byte. */
+	public long getOffHeapLiveBytes() { return this.arena.getLiveBytes(); }
+
+	public boolean isEmpty() {
+		return this.map.isEmpty();
+	}
+
+	/**
+	 * Returns a view of the keys, which iterates without locking
+	 * and reflects puts and removes made during the iteration or not.
+	 */
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(this.map.keySet());
+	}
+
+	public Set<Map.Entry<K,V>> entrySet() {
+		Set<Map.Entry<K,V>> result = new HashSet<Map.Entry<K,V>>();
+		for (Map.Entry<K,V> e: this) result.add(e);
+		return result;
+	}
+
+	public void clear() {
+		for (K k: this.map.keySet()) this.remove(k);
+	}
+
+	public void close() {
+		this.compactor.interrupt();
+		try {
+			this.compactor.join();	// not to move values being freed
+		}
+		catch (InterruptedException e) { /* ignore */ }
+
+		this.map.clear();
+		if (this.similarityIndex != null) this.similarityIndex.clear();
+		this.arena.clear();
+	}
+
+	/**
+	 * Returns an iterator, which reflects puts and removes made during the iteration or not.
+	 * It does not remove a value replaced by a put or moved by compaction after the iteration returned it,
+	 * e.g. on expiration.
+	 */
+	public Iterator<Map.Entry<K,V>> iterator() {
+		return new OffHeapIterator();
+	}
+
+	private class OffHeapIterator implements Iterator<Map.Entry<K,V>> {
+		private final Iterator<K> keyIt = map.keySet().iterator();
+		private K key = null;
+		private long[] refs = new long[0];
+		private byte[][] records = new byte[0][];
+		private int next = 0;
+		private K lastKey = null;
+		private long lastRef = NO_ROOM;
+
+		public boolean hasNext() {
+			while (this.next >= this.refs.length) {
+				if (!this.keyIt.hasNext()) return false;
+
+				this.key = this.keyIt.next();
+				this.next = 0;
+
+				synchronized (lockFor(this.key)) {
+					Refs r = map.get(this.key);
+					int size = (r != null ? r.size : 0);
+
+					this.refs = new long[size];
+					this.records = new byte[size][];
+					for (int i = 0; i < size; i++) {
+						this.refs[i] = r.refs[i];
+						this.records[i] = arena.load(r.refs[i]);
+					}
+				}
+			}
+
+			return true;
+		}
+
+		public Map.Entry<K,V> next() {
+			if (!this.hasNext()) throw new NoSuchElementException();
+
+			this.lastKey = this.key;
+			this.lastRef = this.refs[this.next];
+			V value = toValue(this.records[this.next]);
+			this.records[this.next++] = null;
+
+			return new AbstractMap.SimpleImmutableEntry<K,V>(this.key, value);
+		}
+
+		public void remove() {
+			if (this.lastRef == NO_ROOM) throw new IllegalStateException();
+
+			removeRef(this.lastKey, this.lastRef);
+			this.lastRef = NO_ROOM;
+		}
+	}
+
+	private class Compactor implements Runnable {
+		private final long interval;
+
+		Compactor(long interval) {
+			this.interval = interval;
+		}
+
+		public void run() {
+			while (true) {
+				try {
+					Thread.sleep(this.interval);
+				}
+				catch (InterruptedException e) {
+					logger.log(Level.FINE, "A compactor interrupted.");
+					return;	// closed
+				}
+
+				try {
+					long before = arena.getCapacity();
+					int moved = compact();
+					if (moved > 0) {
+						logger.log(Level.FINE, "Moved " + moved + " values, slabs: " + before + " -> " + arena.getCapacity() + " bytes");
+					}
+				}
+				catch (OutOfMemoryError e) {
+					logger.log(Level.WARNING, "Could not allocate a slab to compact slabs.", e);
+				}
+			}
+		}
+	}
+}
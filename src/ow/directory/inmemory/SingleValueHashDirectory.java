@@ -30,11 +30,14 @@ import java.util.AbstractMap;
 
 import ow.directory.DirectoryConfiguration;
 import ow.directory.DirectoryConfiguration.HeapOverflowAction;
+import ow.directory.NearestKeys;
 import ow.directory.OutOfHeapException;
 import ow.directory.SingleValueDirectory;
 import ow.directory.comparator.HammingIDComparator;
 import ow.directory.comparator.KeySimilarityComparator;
 import ow.directory.comparator.KeySimilarityComparatorFactory;
+import ow.directory.index.SimilarityIndex;
+import ow.directory.index.SimilarityIndexFactory;
 import ow.id.ID;
 
 public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory<K,V> {
@@ -48,6 +51,7 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 	private boolean changed = false;	// if true, this map is to be synchronized
 	private Synchronizer synchronizer;
 	private final KeySimilarityComparator<K> similarityComparator;
+	private final SimilarityIndex<K> similarityIndex;	// null if not indexed
 
 	protected SingleValueHashDirectory(Class typeK, Class typeV, String workingDir, String dbName, String dbNameOld,
 			DirectoryConfiguration config, long syncInterval) throws Exception {
@@ -87,6 +91,19 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 		String metric = config.getSimilarityMetric();
 		this.similarityComparator =  KeySimilarityComparatorFactory.getComparator(typeK, metric);
 
+		// index keys for similarity search
+		this.similarityIndex = (this.similarityComparator != null ?
+				SimilarityIndexFactory.<K>getIndex(typeK, this.config) : null);
+		if (this.similarityIndex != null) {
+			synchronized (this.map) {
+				for (K k: this.rawMap.keySet()) this.similarityIndex.add(k);
+			}
+
+			if (this.rawMap instanceof LRUExpiringMap) {
+				((LRUExpiringMap)this.rawMap).similarityIndex = this.similarityIndex;
+			}
+		}
+
 		// start a synchronizing thread
 		if (this.syncInterval > 0) {
 			this.synchronizer = new Synchronizer(
@@ -106,6 +123,7 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 		// Otherwise SingleValueHashDirectory instance is also serialized.
 
 		private final long requiredFreeHeap;
+		private transient SimilarityIndex similarityIndex;	// notified of expiration
 		private LRUExpiringMap(long reqFreeHeap) { this.requiredFreeHeap = reqFreeHeap; }
 
 		protected boolean removeEldestEntry(Map.Entry eldest) {
@@ -115,6 +133,9 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 				if (r.freeMemory() < this.requiredFreeHeap) {
 					// out of heap
 					// kick off LRU expiration
+					if (this.similarityIndex != null) {
+						this.similarityIndex.remove(eldest.getKey());
+					}
 					return true;
 				}
 			}
@@ -142,19 +163,40 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 			return new HashSet<>();
 		}
 
-		// TODO: use more efficient impl than brute-force search of entire keyset :)
-		Set<K> keys = keySet();
+		Set<K> keys = this.getCandidates(key, threshold);
 		Set<K> results = new HashSet<>();
 
+		float[] sims = similarityComparator.similarities(key, keys);
+		int i = 0;
 		for (K candidate : keys) {
-			float sim = similarityComparator.similarity(key, candidate);
-			if (sim >= threshold) {
+			if (sims[i++] >= threshold) {
 				results.add(candidate);
 			}
 		}
 		return results;
 	}
 
+	public NearestKeys<K> getNearestKeys(K key, float threshold, int k) throws Exception {
+		if (similarityComparator == null) {
+			logger.warning("Similarity comparison not supported");
+			return (this.map.containsKey(key) ? NearestKeys.exact(key) : NearestKeys.<K>empty());
+		}
+
+		return NearestKeys.select(key, this.getCandidates(key, threshold), threshold, k, similarityComparator);
+	}
+
+	private Set<K> getCandidates(K key, float threshold) {
+		// the index narrows down candidates, otherwise brute-force search of entire keyset
+		Set<K> keys = null;
+		if (this.similarityIndex != null) {
+			keys = this.similarityIndex.getCandidates(key, threshold);
+		}
+		if (keys == null) {
+			keys = keySet();
+		}
+		return keys;
+	}
+
 	public Map<K,V> getSimilar(K key, float threshold) throws Exception {
 		Set<K> keys = getSimilarKeys(key, threshold);
 		HashMap<K,V> results = new HashMap<>();
@@ -188,7 +230,11 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 			}
 		}
 
-		V ret = this.map.put(key, value);
+		V ret;
+		synchronized (this.map) {
+			ret = this.map.put(key, value);
+			if (this.similarityIndex != null) this.similarityIndex.add(key);
+		}
 		this.changed = true;
 
 		return ret;
@@ -201,7 +247,11 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 	}
 
 	public V remove(K key) {
-		V ret = this.map.remove(key);
+		V ret;
+		synchronized (this.map) {
+			ret = this.map.remove(key);
+			if (this.similarityIndex != null) this.similarityIndex.remove(key);
+		}
 		this.changed = true;
 
 		return ret;
@@ -220,7 +270,10 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 	}
 
 	public void clear() {
-		this.map.clear();
+		synchronized (this.map) {
+			this.map.clear();
+			if (this.similarityIndex != null) this.similarityIndex.clear();
+		}
 		this.changed = true;
 	}
 
@@ -230,7 +283,26 @@ public final class SingleValueHashDirectory<K,V> implements SingleValueDirectory
 	}
 
 	public Iterator<Map.Entry<K,V>> iterator() {
-		return this.map.entrySet().iterator();
+		final Iterator<Map.Entry<K,V>> it = this.map.entrySet().iterator();
+		if (this.similarityIndex == null) return it;
+
+		// removes a key from the index as well, e.g. on expiration
+		return new Iterator<Map.Entry<K,V>>() {
+			private K lastKey;
+
+			public boolean hasNext() { return it.hasNext(); }
+			public Map.Entry<K,V> next() {
+				Map.Entry<K,V> e = it.next();
+				this.lastKey = e.getKey();
+				return e;
+			}
+			public void remove() {
+				synchronized (map) {
+					it.remove();
+					similarityIndex.remove(this.lastKey);
+				}
+			}
+		};
 	}
 
 	private class Synchronizer implements Runnable {
@@ -0,0 +1,183 @@
+package ow.directory.inmemory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records of bytes in slabs of direct buffers, outside the Java heap.
+ * A record is appended to the current slab and referred to by a long, the number of its slab and its offset.
+ * A slab is released as soon as no record in it remains, and a slab with few records left
+ * is to be emptied by moving its records, see {@link #getSparseSlabs(float) getSparseSlabs()}.
+ * Allocation and release are serialized on this arena.
+ * Reading and writing a record take no lock, and callers ensure that a record is not freed meanwhile.
+ */
+final class SlabArena {
+	private final static int HEADER_SIZE = 4;	// length of a record
+	private final static int INITIAL_NUM_SLABS = 16;
+
+	private final int slabSize;
+
+	private volatile Slab[] slabs = new Slab[INITIAL_NUM_SLABS];	// indexed by slab number
+	private final Deque<Integer> freeNumbers = new ArrayDeque<Integer>();
+	private int numSlabs = 0;	// slab numbers in use or freed
+	private Slab current = null;
+	private ByteBuffer spare = null;	// a released slab to be reused
+	private long capacity = 0L, liveBytes = 0L;
+
+	private final static class Slab {
+		private final int number;
+		private final ByteBuffer buffer;
+		private int top = 0;	// where the next record is written
+		private int liveBytes = 0;
+
+		Slab(int number, ByteBuffer buffer) {
+			this.number = number;
+			this.buffer = buffer;
+		}
+	}
+
+	SlabArena(int slabSize) {
+		this.slabSize = slabSize;
+	}
+
+	static int slabOf(long ref) { return (int)(ref >>> 32); }
+	private static int offsetOf(long ref) { return (int)ref; }
+
+	/**
+	 * Writes the data to a slab.
+	 *
+	 * @return the reference to the record.
+	 * @throws OutOfMemoryError if a direct buffer for a new slab could not be allocated.
+	 */
+	long store(byte[] data) {
+		long ref = this.reserve(data.length);
+
+		ByteBuffer b = this.slabs[slabOf(ref)].buffer.duplicate();
+		b.position(offsetOf(ref));
+		b.putInt(data.length);
+		b.put(data);
+
+		return ref;
+	}
+
+	private synchronized long reserve(int length) {
+		int size = HEADER_SIZE + length;
+
+		Slab s;
+		if (size > this.slabSize) {
+			// a slab of its own, not to be appended to
+			s = this.openSlab(ByteBuffer.allocateDirect(size));
+		}
+		else {
+			if (this.current == null || this.current.top + size > this.slabSize) {
+				Slab full = this.current;
+
+				ByteBuffer buf = this.spare;
+				this.spare = null;
+				this.current = this.openSlab(buf != null ? buf : ByteBuffer.allocateDirect(this.slabSize));
+
+				if (full != null && full.liveBytes == 0) this.release(full);
+			}
+			s = this.current;
+		}
+
+		int offset = s.top;
+		s.top += size;
+		s.liveBytes += size;
+		this.liveBytes += size;
+
+		return ((long)s.number << 32) | offset;
+	}
+
+	private Slab openSlab(ByteBuffer buf) {
+		Integer number = this.freeNumbers.poll();
+		if (number == null) {
+			number = this.numSlabs++;
+			if (number >= this.slabs.length) {
+				Slab[] grown = new Slab[this.slabs.length * 2];
+				System.arraycopy(this.slabs, 0, grown, 0, this.slabs.length);
+				this.slabs = grown;
+			}
+		}
+
+		Slab s = new Slab(number, buf);
+		this.slabs[number] = s;
+		this.capacity += buf.capacity();
+		return s;
+	}
+
+	private void release(Slab s) {
+		this.slabs[s.number] = null;
+		this.freeNumbers.push(s.number);
+		this.capacity -= s.buffer.capacity();
+
+		if (this.spare == null && s.buffer.capacity() == this.slabSize) {
+			s.buffer.clear();
+			this.spare = s.buffer;
+		}
+		// otherwise the direct buffer is freed by the garbage collector
+	}
+
+	byte[] load(long ref) {
+		ByteBuffer b = this.slabs[slabOf(ref)].buffer.duplicate();
+		b.position(offsetOf(ref));
+		byte[] data = new byte[b.getInt()];
+		b.get(data);
+
+		return data;
+	}
+
+	synchronized void free(long ref) {
+		Slab s = this.slabs[slabOf(ref)];
+		int size = HEADER_SIZE + s.buffer.getInt(offsetOf(ref));
+
+		s.liveBytes -= size;
+		this.liveBytes -= size;
+
+		if (s.liveBytes == 0 && s != this.current) this.release(s);
+	}
+
+	/**
+	 * Copies a record to the current slab and frees the original.
+	 *
+	 * @return the reference to the copy.
+	 */
+	long move(long ref) {
+		long newRef = this.store(this.load(ref));
+		this.free(ref);
+		return newRef;
+	}
+
+	/**
+	 * Returns the numbers of the slabs in which live records take less than the specified ratio of the slab.
+	 * Records are not appended to these slabs any more.
+	 */
+	synchronized Set<Integer> getSparseSlabs(float ratio) {
+		Set<Integer> ret = new HashSet<Integer>();
+		for (int i = 0; i < this.numSlabs; i++) {
+			Slab s = this.slabs[i];
+			if (s == null || s == this.current) continue;
+
+			if (s.liveBytes < ratio * s.buffer.capacity()) ret.add(s.number);
+		}
+		return ret;
+	}
+
+	/** Returns the total size of the slabs in byte. */
+	synchronized long getCapacity() { return this.capacity; }
+
+	/** Returns the size of the live records including their headers in byte. */
+	synchronized long getLiveBytes() { return this.liveBytes; }
+
+	synchronized void clear() {
+		this.slabs = new Slab[INITIAL_NUM_SLABS];
+		this.freeNumbers.clear();
+		this.numSlabs = 0;
+		this.current = null;
+		this.spare = null;
+		this.capacity = this.liveBytes = 0L;
+	}
+}
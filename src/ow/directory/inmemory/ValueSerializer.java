@@ -0,0 +1,85 @@
+package ow.directory.inmemory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes values one by one as Java serialization does,
+ * except that a class is written as a number in the catalog this serializer holds on the heap,
+ * as SerialBinding of Berkeley DB Java Edition does with its class catalog.
+ * A small value is thus not followed by the descriptions of its classes.
+ * The bytes are read only by the serializer which wrote them.
+ */
+final class ValueSerializer {
+	private final List<ObjectStreamClass> classes = new ArrayList<ObjectStreamClass>();
+	private final Map<String,Integer> classIDs = new HashMap<String,Integer>();
+
+	byte[] serialize(Object o) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ObjectOutputStream out = new CatalogOutputStream(bout);
+		out.writeObject(o);
+		out.close();
+
+		return bout.toByteArray();
+	}
+
+	/**
+	 * @throws IllegalStateException if the bytes could not be read,
+	 * which were written by this serializer in this VM.
+	 */
+	Object deserialize(byte[] data) {
+		try {
+			ObjectInputStream in = new CatalogInputStream(new ByteArrayInputStream(data));
+			return in.readObject();
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Could not deserialize a value.", e);
+		}
+	}
+
+	private synchronized int classID(ObjectStreamClass desc) {
+		Integer id = this.classIDs.get(desc.getName());
+		if (id == null) {
+			id = this.classes.size();
+			this.classes.add(desc);
+			this.classIDs.put(desc.getName(), id);
+		}
+		return id;
+	}
+
+	private synchronized ObjectStreamClass classFor(int id) throws StreamCorruptedException {
+		if (id < 0 || id >= this.classes.size()) throw new StreamCorruptedException("Unknown class: " + id);
+		return this.classes.get(id);
+	}
+
+	private class CatalogOutputStream extends ObjectOutputStream {
+		CatalogOutputStream(OutputStream out) throws IOException { super(out); }
+
+		protected void writeStreamHeader() {}
+
+		protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+			this.writeInt(classID(desc));
+		}
+	}
+
+	private class CatalogInputStream extends ObjectInputStream {
+		CatalogInputStream(InputStream in) throws IOException { super(in); }
+
+		protected void readStreamHeader() {}
+
+		protected ObjectStreamClass readClassDescriptor() throws IOException {
+			return classFor(this.readInt());
+		}
+	}
+}
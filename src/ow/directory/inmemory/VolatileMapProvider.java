@@ -35,8 +35,7 @@ public final class VolatileMapProvider extends DirectoryProvider {
 
 	protected <K,V> MultiValueDirectory<K,V> provideMultiValueDirectory(Class typeK, Class typeV, String dir, String dbName,
 			DirectoryConfiguration config) throws Exception {
-		return new MultipleValueHashDirectory<K,V>(typeK, typeV, dir, dbName, null,
-				config, -1);
+		return new ConcurrentMultiValueHashDirectory<K,V>(typeK, typeV, config);
 	}
 
 	public void removeDirectory(String dir, String dbName) throws Exception {
@@ -28,6 +28,12 @@ import java.util.logging.Logger;
 /**
  * An ID with arbitrary length.
  * Note that internal representation is big endian.
+ * <p>
+ * Besides {@link #toBigInteger() BigInteger}, an ID is represented as an array of 64-bit words,
+ * on which static methods like {@link #subtractWords(long[], long[], int, long[]) subtractWords()}
+ * and {@link #compareWords(long[], long[]) compareWords()} work without allocating objects.
+ * Words are in big endian and have spare bits over the ID size
+ * (see {@link #getWordLength(int) getWordLength()}).
  */
 public final class ID implements java.io.Externalizable, Comparable<ID> {
 	public final static boolean USE_INT_ARRAY = false;
@@ -53,6 +59,8 @@ public final class ID implements java.io.Externalizable, Comparable<ID> {
 //	private volatile int intSize;
 //	private volatile int[] intValue;
 		// big endian
+	private long[] words;
+		// big endian, with spare bits on the top
 	private volatile BigInteger bigInteger;
 		// can keep a BigInteger because it is immutable
 	private volatile int hashCode;
@@ -104,8 +112,15 @@ public final class ID implements java.io.Externalizable, Comparable<ID> {
 //			}
 //		}
 
-		// create a BigInteger
-		this.bigInteger = new BigInteger(1 /*positive*/, this.value);
+		// create words
+		this.words = new long[getWordLength(this.size)];
+		for (int i = 0; i < this.size; i++) {
+			int bitPos = (this.size - 1 - i) * 8;	// from LSB
+			this.words[this.words.length - 1 - bitPos / 64] |= (0xffL & this.value[i]) << (bitPos % 64);
+		}
+
+		// a BigInteger is created lazily
+		this.bigInteger = null;
 
 		// calculate the hashed value
 		int hashedvalue = 0;
@@ -279,6 +294,19 @@ public final class ID implements java.io.Externalizable, Comparable<ID> {
 
 	public byte[] getValue() { return this.value; }
 
+	/**
+	 * Returns the value of this ID as an array of words in big endian.
+	 * Note that the returned array is shared and must not be modified.
+	 */
+	public long[] getWords() { return this.words; }
+
+	/**
+	 * Returns the number of 64-bit words representing an ID or a distance of the given size.
+	 * The words have at least one spare bit over the ID size
+	 * so that they can hold 2 ^ (size in bit) and a doubled distance.
+	 */
+	public static int getWordLength(int sizeInByte) { return sizeInByte / 8 + 1; }
+
 	/**
 	 * Returns bits.
 	 *
@@ -292,7 +320,7 @@ public final class ID implements java.io.Externalizable, Comparable<ID> {
 			int index = from + i;
 
 			if (index >= 0) {
-				if (this.bigInteger.testBit(from + i)) {
+				if (testBit(this.words, index)) {
 					result |= (1 << i);
 				}
 			}
@@ -332,6 +360,10 @@ public final class ID implements java.io.Externalizable, Comparable<ID> {
 	}
 
 	public static int matchLengthFromMSB(ID a, ID b) {
+		if (a.size == b.size) {
+			return matchLengthFromMSB(a.words, b.words, a.size * 8);
+		}
+
 		int aRemainingSize = a.getSize();
 		int bRemainingSize = b.getSize();
 
@@ -378,7 +410,227 @@ public final class ID implements java.io.Externalizable, Comparable<ID> {
 	}
 
 	public BigInteger toBigInteger() {
-		return this.bigInteger;
+		BigInteger i = this.bigInteger;
+		if (i == null) {
+			this.bigInteger = i = new BigInteger(1 /*positive*/, this.value);
+		}
+		return i;
+	}
+
+	//
+	// arithmetic on words
+	//
+
+	/**
+	 * Returns a BigInteger which has the value of the given words.
+	 */
+	public static BigInteger wordsToBigInteger(long[] a) {
+		byte[] bytes = new byte[a.length * 8];
+		for (int i = 0; i < a.length; i++) {
+			long w = a[i];
+			for (int j = 7; j >= 0; j--) {
+				bytes[i * 8 + j] = (byte)w;
+				w >>>= 8;
+			}
+		}
+
+		return new BigInteger(1 /*positive*/, bytes);
+	}
+
+	/**
+	 * Sets the value of the given non-negative BigInteger to result.
+	 * Bits which do not fit in result are lost.
+	 *
+	 * @return result.
+	 */
+	public static long[] bigIntegerToWords(BigInteger v, long[] result) {
+		for (int i = 0; i < result.length; i++) {
+			result[result.length - 1 - i] = v.shiftRight(i * 64).longValue();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Compares the given words as unsigned integers.
+	 * Words of different lengths are aligned on their least significant words.
+	 */
+	public static int compareWords(long[] a, long[] b) {
+		int len = Math.max(a.length, b.length);
+		int aOffset = len - a.length, bOffset = len - b.length;
+
+		for (int i = 0; i < len; i++) {
+			long va = (i >= aOffset ? a[i - aOffset] : 0L);
+			long vb = (i >= bOffset ? b[i - bOffset] : 0L);
+			if (va != vb) {
+				return ((va + Long.MIN_VALUE) < (vb + Long.MIN_VALUE) ? -1 : 1);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Sets (a - b) mod 2 ^ sizeInBit to result.
+	 * The given arrays have the same length and result can be a or b.
+	 *
+	 * @return result.
+	 */
+	public static long[] subtractWords(long[] a, long[] b, int sizeInBit, long[] result) {
+		long borrow = 0L;
+		for (int i = result.length - 1; i >= 0; i--) {
+			long x = a[i], y = b[i];
+			result[i] = x - y - borrow;
+			borrow = (((x + Long.MIN_VALUE) < (y + Long.MIN_VALUE)) || (x == y && borrow != 0L)) ? 1L : 0L;
+		}
+
+		return maskWords(result, sizeInBit);
+	}
+
+	/**
+	 * Sets a xor b to result.
+	 * The given arrays have the same length and result can be a or b.
+	 *
+	 * @return result.
+	 */
+	public static long[] xorWords(long[] a, long[] b, long[] result) {
+		for (int i = 0; i < result.length; i++) {
+			result[i] = a[i] ^ b[i];
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sets the ones' complement of a in sizeInBit bits to result.
+	 * result can be a.
+	 *
+	 * @return result.
+	 */
+	public static long[] complementWords(long[] a, int sizeInBit, long[] result) {
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ~a[i];
+		}
+
+		return maskWords(result, sizeInBit);
+	}
+
+	/**
+	 * Sets (a << n) to result. Bits shifted out of the words are lost.
+	 * result can be a.
+	 *
+	 * @return result.
+	 */
+	public static long[] shiftLeftWords(long[] a, int n, long[] result) {
+		int wordShift = n / 64, bitShift = n % 64;
+		int len = result.length;
+
+		for (int i = 0; i < len; i++) {
+			int src = i + wordShift;
+			long hi = (src < len ? a[src] : 0L);
+			long lo = (src + 1 < len ? a[src + 1] : 0L);
+
+			result[i] = (bitShift == 0 ? hi : (hi << bitShift) | (lo >>> (64 - bitShift)));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Clears bits at and above the position sizeInBit.
+	 *
+	 * @return a.
+	 */
+	public static long[] maskWords(long[] a, int sizeInBit) {
+		for (int i = 0; i < a.length; i++) {
+			int lowestBit = (a.length - 1 - i) * 64;
+			if (lowestBit >= sizeInBit) {
+				a[i] = 0L;
+			}
+			else if (sizeInBit - lowestBit < 64) {
+				a[i] &= (1L << (sizeInBit - lowestBit)) - 1L;
+			}
+		}
+
+		return a;
+	}
+
+	public static boolean testBit(long[] a, int n) {
+		int idx = a.length - 1 - n / 64;
+		if (idx < 0) return false;
+
+		return (a[idx] & (1L << (n % 64))) != 0L;
+	}
+
+	/**
+	 * Sets the designated bit of the given words.
+	 *
+	 * @return a.
+	 */
+	public static long[] setBit(long[] a, int n) {
+		a[a.length - 1 - n / 64] |= (1L << (n % 64));
+		return a;
+	}
+
+	public static boolean isZero(long[] a) {
+		for (long w: a) {
+			if (w != 0L) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of bits in the minimal two's-complement representation, like BigInteger#bitLength().
+	 */
+	public static int bitLength(long[] a) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != 0L) {
+				return (a.length - i) * 64 - Long.numberOfLeadingZeros(a[i]);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Returns the number of one-bits (population count) of the given words.
+	 */
+	public static int bitCount(long[] a) {
+		int count = 0;
+		for (long w: a) {
+			count += Long.bitCount(w);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the Hamming distance between the given words of the same length.
+	 */
+	public static int xorBitCount(long[] a, long[] b) {
+		int count = 0;
+		for (int i = 0; i < a.length; i++) {
+			count += Long.bitCount(a[i] ^ b[i]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the length of the common prefix of the given words of the same length
+	 * in which sizeInBit bits are significant.
+	 */
+	public static int matchLengthFromMSB(long[] a, long[] b, int sizeInBit) {
+		for (int i = 0; i < a.length; i++) {
+			long x = a[i] ^ b[i];
+			if (x != 0L) {
+				int len = (a.length - i) * 64 - Long.numberOfLeadingZeros(x);
+				return sizeInBit - len;
+			}
+		}
+
+		return sizeInBit;
 	}
 
 	public boolean equals(Object obj) {
@@ -458,6 +710,6 @@ public final class ID implements java.io.Externalizable, Comparable<ID> {
 	}
 
 	public int compareTo(ID other) {
-		return this.toBigInteger().compareTo(other.toBigInteger());
+		return compareWords(this.words, other.words);
 	}
 }
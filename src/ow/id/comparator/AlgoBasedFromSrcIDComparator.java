@@ -17,7 +17,6 @@
 
 package ow.id.comparator;
 
-import java.math.BigInteger;
 import java.util.Comparator;
 
 import ow.id.ID;
@@ -33,9 +32,10 @@ public final class AlgoBasedFromSrcIDComparator implements Comparator<ID> {
 	}
 
 	public int compare(ID i1, ID i2) {
-		BigInteger dist1 = algo.distance(i1, this.sourceID);
-		BigInteger dist2 = algo.distance(i2, this.sourceID);
+		long[][] dist = DistanceWords.get(ID.getWordLength(this.sourceID.getSize()));
+		algo.distance(i1, this.sourceID, dist[0]);
+		algo.distance(i2, this.sourceID, dist[1]);
 
-		return dist1.compareTo(dist2);
+		return ID.compareWords(dist[0], dist[1]);
 	}
 }
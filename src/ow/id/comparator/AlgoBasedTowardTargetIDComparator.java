@@ -17,7 +17,6 @@
 
 package ow.id.comparator;
 
-import java.math.BigInteger;
 import java.util.Comparator;
 
 import ow.id.ID;
@@ -33,9 +32,10 @@ public final class AlgoBasedTowardTargetIDComparator implements Comparator<ID> {
 	}
 
 	public int compare(ID i1, ID i2) {
-		BigInteger dist1 = algo.distance(this.targetID, i1);
-		BigInteger dist2 = algo.distance(this.targetID, i2);
+		long[][] dist = DistanceWords.get(ID.getWordLength(this.targetID.getSize()));
+		algo.distance(this.targetID, i1, dist[0]);
+		algo.distance(this.targetID, i2, dist[1]);
 
-		return dist1.compareTo(dist2);
+		return ID.compareWords(dist[0], dist[1]);
 	}
 }
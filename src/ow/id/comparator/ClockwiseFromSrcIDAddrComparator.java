@@ -17,33 +17,27 @@
 
 package ow.id.comparator;
 
-import java.math.BigInteger;
 import java.util.Comparator;
 
 import ow.id.ID;
 import ow.id.IDAddressPair;
 
 public final class ClockwiseFromSrcIDAddrComparator implements Comparator<IDAddressPair> {
-	private BigInteger sourceIDInteger;
-	private final BigInteger ID_SPACE_SIZE;
+	private ID sourceID;
+	private final int idSizeInBit;
 
 	public ClockwiseFromSrcIDAddrComparator(int idSizeInBit, ID sourceID) {
-		this.sourceIDInteger = sourceID.toBigInteger();
-
-		this.ID_SPACE_SIZE = BigInteger.ONE.shiftLeft(idSizeInBit);
+		this.sourceID = sourceID;
+		this.idSizeInBit = idSizeInBit;
 	}
 
 	public int compare(IDAddressPair p1, IDAddressPair p2) {
-		BigInteger dist1 = p1.getID().toBigInteger().subtract(this.sourceIDInteger);
-		if (dist1.compareTo(BigInteger.ZERO) < 0) {
-			dist1 = dist1.add(this.ID_SPACE_SIZE);
-		}
+		long[] src = this.sourceID.getWords();
+		long[][] dist = DistanceWords.get(src.length);
 
-		BigInteger dist2 = p2.getID().toBigInteger().subtract(this.sourceIDInteger);
-		if (dist2.compareTo(BigInteger.ZERO) < 0) {
-			dist2 = dist2.add(this.ID_SPACE_SIZE);
-		}
+		ID.subtractWords(p1.getID().getWords(), src, this.idSizeInBit, dist[0]);
+		ID.subtractWords(p2.getID().getWords(), src, this.idSizeInBit, dist[1]);
 
-		return dist1.compareTo(dist2);
+		return ID.compareWords(dist[0], dist[1]);
 	}
 }
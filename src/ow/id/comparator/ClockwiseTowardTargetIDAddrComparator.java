@@ -17,33 +17,27 @@
 
 package ow.id.comparator;
 
-import java.math.BigInteger;
 import java.util.Comparator;
 
 import ow.id.ID;
 import ow.id.IDAddressPair;
 
 public final class ClockwiseTowardTargetIDAddrComparator implements Comparator<IDAddressPair> {
-	private BigInteger targetIDInteger;
-	private final BigInteger ID_SPACE_SIZE;
+	private ID targetID;
+	private final int idSizeInBit;
 
 	public ClockwiseTowardTargetIDAddrComparator(int idSizeInBit, ID targetID) {
-		this.targetIDInteger = targetID.toBigInteger();
-
-		this.ID_SPACE_SIZE = BigInteger.ONE.shiftLeft(idSizeInBit);
+		this.targetID = targetID;
+		this.idSizeInBit = idSizeInBit;
 	}
 
 	public int compare(IDAddressPair p1, IDAddressPair p2) {
-		BigInteger dist1 = this.targetIDInteger.subtract(p1.getID().toBigInteger());
-		if (dist1.compareTo(BigInteger.ZERO) < 0) {
-			dist1 = dist1.add(this.ID_SPACE_SIZE);
-		}
+		long[] tgt = this.targetID.getWords();
+		long[][] dist = DistanceWords.get(tgt.length);
 
-		BigInteger dist2 = this.targetIDInteger.subtract(p2.getID().toBigInteger());
-		if (dist2.compareTo(BigInteger.ZERO) < 0) {
-			dist2 = dist2.add(this.ID_SPACE_SIZE);
-		}
+		ID.subtractWords(tgt, p1.getID().getWords(), this.idSizeInBit, dist[0]);
+		ID.subtractWords(tgt, p2.getID().getWords(), this.idSizeInBit, dist[1]);
 
-		return dist1.compareTo(dist2);
+		return ID.compareWords(dist[0], dist[1]);
 	}
 }
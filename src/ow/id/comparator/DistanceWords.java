@@ -0,0 +1,27 @@
+package ow.id.comparator;
+
+/**
+ * Per-thread scratch words to which comparators write distances.
+ * A comparator can be shared by threads and should not allocate objects on each comparison.
+ */
+final class DistanceWords {
+	private final static ThreadLocal<long[][]> scratch = new ThreadLocal<long[][]>() {
+		protected long[][] initialValue() {
+			return new long[2][];
+		}
+	};
+
+	/**
+	 * Returns a pair of words with the given length.
+	 * The returned words are reused by the next call on the same thread.
+	 */
+	static long[][] get(int length) {
+		long[][] words = scratch.get();
+		if (words[0] == null || words[0].length != length) {
+			words[0] = new long[length];
+			words[1] = new long[length];
+		}
+
+		return words;
+	}
+}
@@ -0,0 +1,171 @@
+package ow.id.lsh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import ow.id.ID;
+
+/**
+ * Multi-probe LSH: generates IDs near the ID of a query in the order of likelihood
+ * that a similar vector is hashed to them, so that a few probes find
+ * what would otherwise require more tables or walking neighbors blindly.
+ *
+ * A probe flips a set of bits of the query ID and is scored by the sum of
+ * the squared margins of the flipped bits, since a similar vector is more likely
+ * to fall on the other side of a hyperplane close to the query.
+ * Sets of bits are enumerated in ascending order of score with a heap
+ * and the shift and expand operations of Lv et al., Multi-Probe LSH (VLDB 2007).
+ */
+public final class MultiProbe {
+  private MultiProbe() {}
+
+  /**
+   * Returns probes of a table, the ID of the query first.
+   *
+   * @param numProbes the maximum number of probes including the ID of the query.
+   */
+  public static List<Probe> plan(RandomHyperplaneHash.Signature signature, int numProbes) {
+    return plan(new RandomHyperplaneHash.Signature[] { signature }, numProbes);
+  }
+
+  /**
+   * Returns probes of multiple tables ranked together, the IDs of the query first.
+   *
+   * @param numProbes the maximum number of probes including the IDs of the query.
+   */
+  public static List<Probe> plan(RandomHyperplaneHash.Signature[] signatures, int numProbes) {
+    List<Probe> probes = new ArrayList<Probe>(Math.max(numProbes, 0));
+    if (numProbes <= 0) return probes;
+
+    int[][] order = new int[signatures.length][];
+    double[][] scores = new double[signatures.length][];
+    PriorityQueue<Perturbation> heap = new PriorityQueue<Perturbation>();
+
+    for (int t = 0; t < signatures.length; t++) {
+      RandomHyperplaneHash.Signature sig = signatures[t];
+
+      order[t] = sig.bitsByMargin();
+      scores[t] = new double[order[t].length];
+      for (int j = 0; j < order[t].length; j++) {
+        double m = sig.getMargin(order[t][j]);
+        scores[t][j] = m * m;
+      }
+
+      probes.add(new Probe(sig.getTable(), sig.getID(), sig.getID(), 0, 0.0));
+      if (scores[t].length > 0) heap.add(new Perturbation(t, new int[] { 0 }, scores[t][0]));
+    }
+
+    while (probes.size() < numProbes && !heap.isEmpty()) {
+      Perturbation p = heap.poll();
+      RandomHyperplaneHash.Signature sig = signatures[p.table];
+
+      int[] bits = new int[p.indexes.length];
+      for (int j = 0; j < bits.length; j++) bits[j] = order[p.table][p.indexes[j]];
+      probes.add(new Probe(sig.getTable(), sig.getID(), flip(sig.getID(), bits), bits.length, p.score));
+
+      int last = p.indexes[p.indexes.length - 1];
+      if (last + 1 < scores[p.table].length) {
+        double[] s = scores[p.table];
+
+        // shift: replace the last bit with the next one
+        int[] shifted = p.indexes.clone();
+        shifted[shifted.length - 1] = last + 1;
+        heap.add(new Perturbation(p.table, shifted, p.score - s[last] + s[last + 1]));
+
+        // expand: add the next bit
+        int[] expanded = Arrays.copyOf(p.indexes, p.indexes.length + 1);
+        expanded[expanded.length - 1] = last + 1;
+        heap.add(new Perturbation(p.table, expanded, p.score + s[last + 1]));
+      }
+    }
+
+    return probes;
+  }
+
+  /**
+   * Returns the IDs of the queries of probes, with which the results of the probes are compared.
+   */
+  public static ID[] keys(List<Probe> probes) {
+    ID[] keys = new ID[probes.size()];
+    for (int i = 0; i < keys.length; i++) keys[i] = probes.get(i).getKey();
+    return keys;
+  }
+
+  /**
+   * Returns the IDs of probes, to which lookups are routed.
+   */
+  public static ID[] ids(List<Probe> probes) {
+    ID[] ids = new ID[probes.size()];
+    for (int i = 0; i < ids.length; i++) ids[i] = probes.get(i).getID();
+    return ids;
+  }
+
+  private static ID flip(ID id, int[] bits) {
+    int size = id.getSize();
+    byte[] value = id.getValue().clone();
+    for (int b: bits) {
+      value[size - 1 - b / 8] ^= (byte)(1 << (b % 8));
+    }
+    return ID.getID(value, size);
+  }
+
+  private static final class Perturbation implements Comparable<Perturbation> {
+    final int table;
+    final int[] indexes;  // ascending indexes into bits sorted by margin
+    final double score;
+
+    Perturbation(int table, int[] indexes, double score) {
+      this.table = table;
+      this.indexes = indexes;
+      this.score = score;
+    }
+
+    public int compareTo(Perturbation o) {
+      return Double.compare(this.score, o.score);
+    }
+  }
+
+  /**
+   * An ID to be looked up for a query in a table.
+   */
+  public static final class Probe {
+    private final int table;
+    private final ID key;
+    private final ID id;
+    private final int numFlippedBits;
+    private final double score;
+
+    Probe(int table, ID key, ID id, int numFlippedBits, double score) {
+      this.table = table;
+      this.key = key;
+      this.id = id;
+      this.numFlippedBits = numFlippedBits;
+      this.score = score;
+    }
+
+    public int getTable() { return this.table; }
+
+    /**
+     * Returns the ID of the query in the table.
+     */
+    public ID getKey() { return this.key; }
+
+    /**
+     * Returns the ID to be looked up.
+     */
+    public ID getID() { return this.id; }
+
+    public int getNumFlippedBits() { return this.numFlippedBits; }
+
+    /**
+     * Returns the sum of the squared margins of the flipped bits. Smaller is more likely.
+     */
+    public double getScore() { return this.score; }
+
+    public String toString() {
+      return "table " + this.table + ", " + this.id + " (" + this.numFlippedBits + " bits, " + this.score + ")";
+    }
+  }
+}
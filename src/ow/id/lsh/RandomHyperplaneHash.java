@@ -0,0 +1,285 @@
+package ow.id.lsh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ow.id.ID;
+import ow.util.ConfigProperties;
+import ow.util.concurrent.ExecutorBlockingMode;
+import ow.util.concurrent.SingletonThreadPoolExecutors;
+
+/**
+ * Random hyperplane locality-sensitive hashing of real-valued vectors into IDs.
+ * Bit i of an ID is set if the vector is on the positive side of the i-th hyperplane,
+ * so that the Hamming distance between two IDs estimates the angle between the vectors.
+ *
+ * Unlike {@link RandomHyperplaneIDGenerator}, an instance holds its own projections
+ * in primitive arrays, and has L independent tables,
+ * each of which maps a vector to a different ID, so that an item put under all of them
+ * is found if any one of the tables places a similar vector close enough.
+ * Hyperplanes are normalized and the signed distance of a vector to each of them,
+ * its margin, is exposed for probing the bits which are the most likely to flip.
+ * Instances are immutable and can be shared by threads.
+ */
+public final class RandomHyperplaneHash {
+  private final static int MIN_VECTORS_PER_TASK = 64;
+
+  private final int dimensions;
+  private final int bitLength;
+  private final int numTables;
+  private final long seed;
+
+  // projections[t][i * dimensions + j]: j-th element of the i-th unit normal of table t
+  private final double[][] projections;
+
+  /**
+   * @param seed seed of the random hyperplanes. Instances with the same parameters hash identically.
+   * @param dimensions the number of dimensions of vectors.
+   * @param bitLength the length of IDs in bit. A multiple of 8.
+   * @param numTables the number of tables L.
+   */
+  public RandomHyperplaneHash(long seed, int dimensions, int bitLength, int numTables) {
+    if (dimensions <= 0 || numTables <= 0 || bitLength <= 0 || bitLength % 8 != 0) {
+      throw new IllegalArgumentException("Invalid LSH parameters: dimensions " + dimensions +
+          ", bit length " + bitLength + ", tables " + numTables);
+    }
+
+    this.dimensions = dimensions;
+    this.bitLength = bitLength;
+    this.numTables = numTables;
+    this.seed = seed;
+
+    Random rand = new Random(seed);
+    this.projections = new double[numTables][bitLength * dimensions];
+    for (double[] p: this.projections) {
+      for (int i = 0; i < bitLength; i++) {
+        double norm = 0.0;
+        for (int j = 0; j < dimensions; j++) {
+          double g = rand.nextGaussian();
+          p[i * dimensions + j] = g;
+          norm += g * g;
+        }
+
+        norm = Math.sqrt(norm);
+        if (norm == 0.0) continue;
+        for (int j = 0; j < dimensions; j++) {
+          p[i * dimensions + j] /= norm;
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates an instance with ow.lsh.random-seed, ow.lsh.content-vector-dimensions,
+   * ow.lsh.rhh-bit-length and ow.lsh.num-tables in the config properties.
+   */
+  public static RandomHyperplaneHash fromConfigProperties() {
+    try {
+      return new RandomHyperplaneHash(
+          ConfigProperties.getLong("ow.lsh.random-seed"),
+          ConfigProperties.getInt("ow.lsh.content-vector-dimensions", 1),
+          ConfigProperties.getInt("ow.lsh.rhh-bit-length", 160),
+          ConfigProperties.getInt("ow.lsh.num-tables", 1));
+    } catch (Exception e) {
+      throw new IllegalStateException("Can't read LSH parameters from config properties", e);
+    }
+  }
+
+  public int getDimensions() { return this.dimensions; }
+  public int getBitLength() { return this.bitLength; }
+  public int getNumTables() { return this.numTables; }
+  public long getSeed() { return this.seed; }
+
+  /**
+   * Returns the ID of a vector in the specified table.
+   */
+  public ID hash(int table, double[] vector) {
+    return toID(this.margins(table, vector));
+  }
+
+  public ID hash(int table, float[] vector) {
+    return toID(this.margins(table, vector));
+  }
+
+  /**
+   * Returns the IDs of a vector in all the tables, under which an item is to be put.
+   */
+  public ID[] hash(double[] vector) {
+    ID[] ids = new ID[this.numTables];
+    for (int t = 0; t < this.numTables; t++) ids[t] = this.hash(t, vector);
+    return ids;
+  }
+
+  public ID[] hash(float[] vector) {
+    ID[] ids = new ID[this.numTables];
+    for (int t = 0; t < this.numTables; t++) ids[t] = this.hash(t, vector);
+    return ids;
+  }
+
+  /**
+   * Returns the signed distance of a vector to each hyperplane of the table.
+   * Bit i of the ID is set if the i-th margin is not negative,
+   * and a bit with a margin close to zero is likely to differ for a similar vector.
+   */
+  public double[] margins(int table, double[] vector) {
+    this.checkDimensions(vector.length);
+
+    double[] p = this.projections[table];
+    double[] margins = new double[this.bitLength];
+    for (int i = 0, off = 0; i < this.bitLength; i++, off += this.dimensions) {
+      double dot = 0.0;
+      for (int j = 0; j < this.dimensions; j++) dot += p[off + j] * vector[j];
+      margins[i] = dot;
+    }
+
+    return margins;
+  }
+
+  public double[] margins(int table, float[] vector) {
+    this.checkDimensions(vector.length);
+
+    double[] p = this.projections[table];
+    double[] margins = new double[this.bitLength];
+    for (int i = 0, off = 0; i < this.bitLength; i++, off += this.dimensions) {
+      double dot = 0.0;
+      for (int j = 0; j < this.dimensions; j++) dot += p[off + j] * vector[j];
+      margins[i] = dot;
+    }
+
+    return margins;
+  }
+
+  /**
+   * Returns the ID and the margins of a vector in the specified table.
+   */
+  public Signature sign(int table, double[] vector) {
+    double[] margins = this.margins(table, vector);
+    return new Signature(table, toID(margins), margins);
+  }
+
+  public Signature sign(int table, float[] vector) {
+    double[] margins = this.margins(table, vector);
+    return new Signature(table, toID(margins), margins);
+  }
+
+  /**
+   * Hashes vectors in parallel.
+   *
+   * @return IDs in all the tables, the t-th ID of the i-th vector at [i][t].
+   */
+  public ID[][] hashAll(final double[][] vectors) throws InterruptedException {
+    final ID[][] ids = new ID[vectors.length][];
+    this.runInParallel(vectors.length, (int from, int to) -> {
+      for (int i = from; i < to; i++) ids[i] = this.hash(vectors[i]);
+    });
+    return ids;
+  }
+
+  public ID[][] hashAll(final float[][] vectors) throws InterruptedException {
+    final ID[][] ids = new ID[vectors.length][];
+    this.runInParallel(vectors.length, (int from, int to) -> {
+      for (int i = from; i < to; i++) ids[i] = this.hash(vectors[i]);
+    });
+    return ids;
+  }
+
+  private interface Range {
+    void run(int from, int to);
+  }
+
+  /**
+   * Splits [0, n) into as many ranges as processors, runs all but the last one in pooled threads
+   * and the last one in the calling thread.
+   */
+  private void runInParallel(int n, final Range range) throws InterruptedException {
+    int numTasks = Math.min(Runtime.getRuntime().availableProcessors(),
+        (n + MIN_VECTORS_PER_TASK - 1) / MIN_VECTORS_PER_TASK);
+    if (numTasks <= 1) {
+      range.run(0, n);
+      return;
+    }
+
+    ExecutorService ex = SingletonThreadPoolExecutors.getThreadPool(
+        ExecutorBlockingMode.CONCURRENT_NON_BLOCKING, Thread.currentThread().isDaemon());
+
+    List<Future<?>> futures = new ArrayList<Future<?>>(numTasks - 1);
+    for (int k = 0; k < numTasks - 1; k++) {
+      final int from = (int)((long)n * k / numTasks);
+      final int to = (int)((long)n * (k + 1) / numTasks);
+      futures.add(ex.submit(() -> range.run(from, to)));
+    }
+    range.run((int)((long)n * (numTasks - 1) / numTasks), n);
+
+    for (Future<?> f: futures) {
+      try {
+        f.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+        if (cause instanceof Error) throw (Error)cause;
+        throw new IllegalStateException(cause);
+      }
+    }
+  }
+
+  private void checkDimensions(int length) {
+    if (length != this.dimensions) {
+      throw new IllegalArgumentException("Vector has " + length + " dimensions instead of " + this.dimensions);
+    }
+  }
+
+  private static ID toID(double[] margins) {
+    int size = margins.length / 8;
+    byte[] value = new byte[size];
+    for (int i = 0; i < margins.length; i++) {
+      if (margins[i] >= 0.0) {
+        value[size - 1 - i / 8] |= (byte)(1 << (i % 8));
+      }
+    }
+    return ID.getID(value, size);
+  }
+
+  /**
+   * The ID of a vector in a table and the margins of its bits.
+   */
+  public static final class Signature {
+    private final int table;
+    private final ID id;
+    private final double[] margins;
+
+    Signature(int table, ID id, double[] margins) {
+      this.table = table;
+      this.id = id;
+      this.margins = margins;
+    }
+
+    public int getTable() { return this.table; }
+    public ID getID() { return this.id; }
+    public int getBitLength() { return this.margins.length; }
+
+    /**
+     * Returns the signed distance of the vector to the hyperplane of the bit.
+     */
+    public double getMargin(int bit) { return this.margins[bit]; }
+
+    /**
+     * Returns the bits sorted from the one with the smallest absolute margin,
+     * i.e. from the one most likely to be flipped for a similar vector.
+     */
+    public int[] bitsByMargin() {
+      Integer[] bits = new Integer[this.margins.length];
+      for (int i = 0; i < bits.length; i++) bits[i] = i;
+      Arrays.sort(bits, (Integer a, Integer b) ->
+          Double.compare(Math.abs(this.margins[a]), Math.abs(this.margins[b])));
+
+      int[] ret = new int[bits.length];
+      for (int i = 0; i < bits.length; i++) ret[i] = bits[i];
+      return ret;
+    }
+  }
+}
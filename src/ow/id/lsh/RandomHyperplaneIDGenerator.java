@@ -11,6 +11,8 @@ import java.util.Random;
 
 /**
  * Created by yusef on 12/16/15.
+ *
+ * @see RandomHyperplaneHash for an instance-based generator with multiple tables and primitive projections.
  */
 public class RandomHyperplaneIDGenerator {
   public static long randomSeed;
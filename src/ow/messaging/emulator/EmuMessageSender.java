@@ -109,12 +109,33 @@ public final class EmuMessageSender implements MessageSender {
 		}
 
 		// notify statistics collector
-		MessagingReporter msgReporter = this.receiver.getMessagingReporter();
-		if (msgReporter != null && !this.receiver.getSelfAddress().equals(dest)) {
-			// TODO: measures the length of the message.
-			msgReporter.notifyStatCollectorOfMessageSent(dest, msg, 0);
+		if (!this.receiver.getSelfAddress().equals(dest)) {
+			MessagingReporter msgReporter = this.receiver.getMessagingReporter();
+			if (msgReporter != null) {
+				msgReporter.notifyStatCollectorOfMessageSent(dest, msg, lengthToBeReported(this.receiver, msg));
+			}
+
+			// a reply is reported by the receiver as the other transports do
+			MessagingReporter replyReporter = receiver.getMessagingReporter();
+			if (doReceive && ret != null && replyReporter != null) {
+				replyReporter.notifyStatCollectorOfMessageSent(
+						this.receiver.getSelfAddress(), ret, lengthToBeReported(receiver, ret));
+			}
 		}
 
 		return ret;
 	}
+
+	/**
+	 * Returns the length of the message encoded as the other transports send it.
+	 * A message is encoded only if a statistics collector will be notified of it.
+	 */
+	private static int lengthToBeReported(EmuMessageReceiver sendingReceiver, Message msg) {
+		if (sendingReceiver.provider.getMessagingCollectorAddress() == null
+				|| !msg.getToBeReported()) {
+			return 0;
+		}
+
+		return msg.encode().remaining();
+	}
 }
@@ -30,12 +30,27 @@ import ow.id.IDAddressPair;
 public interface RoutingAlgorithm {
 	/**
 	 * Returns the distance between given two IDs.
+	 * Note that this method allocates a BigInteger for each call and
+	 * {@link #distance(ID, ID, long[]) distance(ID, ID, long[])} is preferred.
+	 * {@link ow.routing.impl.AbstractRoutingAlgorithm AbstractRoutingAlgorithm}
+	 * implements this method on top of it.
 	 *
 	 * @param to target.
 	 * @param from starting point.
 	 */
 	BigInteger distance(ID to, ID from);
 
+	/**
+	 * Computes the distance between given two IDs without allocating objects.
+	 *
+	 * @param to target.
+	 * @param from starting point.
+	 * @param result words to which the distance is written in big endian.
+	 *   Its length is {@link ID#getWordLength(int) ID.getWordLength(the size of the IDs)}.
+	 * @return the given result.
+	 */
+	long[] distance(ID to, ID from, long[] result);
+
 	/**
 	 * Returns the initial routing context.
 	 *
@@ -101,6 +116,16 @@ public interface RoutingAlgorithm {
 	 */
 	void fail(IDAddressPair failedNode);
 
+	/**
+	 * Returns the nodes in the routing table other than the neighbors
+	 * {@link #responsibleNodeCandidates(ID, int) responsibleNodeCandidates()} returns,
+	 * e.g. fingers of Chord, to which this node sends messages directly.
+	 * Note that each algorithm does not have to implement this method because
+	 * {@link ow.routing.impl.AbstractRoutingAlgorithm AbstractRoutingAlgorithm}
+	 * implements it, returning no node.
+	 */
+	IDAddressPair[] routingTableEntries();
+
 	/**
 	 * Returns the configuration object.
 	 */
@@ -23,23 +23,91 @@ import ow.util.Timer;
 
 /**
  * An instance of this class represents a hop in a route.
+ * Besides the node and the time, a hop can carry a breakdown of the time spent on it.
+ * All times are in millisecond and -1 means unknown.
+ * <ul>
+ * <li>send time: when the request to this hop left the previous node (or the initiator).</li>
+ * <li>reply time: when the reply from this hop reached the sender of the request.
+ *     Only iterative routing knows it.</li>
+ * <li>queue time: how long the request waited on this hop before it was processed.
+ *     Only recursive routing knows it.</li>
+ * <li>processing time: how long this hop spent on processing the request,
+ *     measured on the hop and piggybacked on the reply or on the forwarded request.</li>
+ * </ul>
+ * Note that the send time and the time of a recursive hop are measured on different nodes.
  */
 public final class RoutingHop implements Serializable {
 	private final IDAddressPair node;
 	private final long time;
 
-	private RoutingHop(IDAddressPair node, long time) {	// prohibit direct instantiation
+	private final long sendTime;
+	private final long replyTime;
+	private final long queueTime;
+	private final long processingTime;
+
+	private RoutingHop(IDAddressPair node, long time,
+			long sendTime, long replyTime, long queueTime, long processingTime) {	// prohibit direct instantiation
 		this.node = node;
 		this.time = time;
+
+		this.sendTime = sendTime;
+		this.replyTime = replyTime;
+		this.queueTime = queueTime;
+		this.processingTime = processingTime;
 	}
 
 	public static RoutingHop newInstance(IDAddressPair node) {
-		return new RoutingHop(node, Timer.currentTimeMillis());
+		return new RoutingHop(node, Timer.currentTimeMillis(), -1L, -1L, -1L, -1L);
+	}
+
+	/**
+	 * Returns a hop with a timing breakdown.
+	 * The time of the hop is the current time.
+	 */
+	public static RoutingHop newInstance(IDAddressPair node,
+			long sendTime, long replyTime, long queueTime, long processingTime) {
+		return new RoutingHop(node, Timer.currentTimeMillis(), sendTime, replyTime, queueTime, processingTime);
+	}
+
+	/**
+	 * Returns a hop with a timing breakdown and the specified time.
+	 */
+	public static RoutingHop newInstance(IDAddressPair node, long time,
+			long sendTime, long replyTime, long queueTime, long processingTime) {
+		return new RoutingHop(node, time, sendTime, replyTime, queueTime, processingTime);
 	}
 
 	public IDAddressPair getIDAddressPair() { return this.node; }
 	public long getTime() { return this.time; }
 
+	public long getSendTime() { return this.sendTime; }
+	public long getReplyTime() { return this.replyTime; }
+	public long getQueueTime() { return this.queueTime; }
+	public long getProcessingTime() { return this.processingTime; }
+
+	/**
+	 * Returns the time spent on the network to reach this hop.
+	 * It is a round-trip time without the queue and processing time on this hop
+	 * if the reply time is known, and a one-way time otherwise.
+	 *
+	 * @return -1 if unknown.
+	 */
+	public long getNetworkTime() {
+		if (this.sendTime < 0L) return -1L;
+
+		long t;
+		if (this.replyTime >= 0L) {
+			t = this.replyTime - this.sendTime;
+			if (this.queueTime > 0L) t -= this.queueTime;
+			if (this.processingTime > 0L) t -= this.processingTime;
+		}
+		else {
+			t = this.time - this.sendTime;
+		}
+
+		return (t >= 0L ? t : 0L);
+	}
+
 	public String toString() { return this.toString(0); }
 
 	public String toString(int verboseLevel) {
@@ -48,6 +116,13 @@ public final class RoutingHop implements Serializable {
 		sb.append(this.node.toString(verboseLevel));
 		sb.append(" (").append(this.time).append(")");
 
+		if (verboseLevel > 0) {
+			sb.append(" {net:").append(this.getNetworkTime());
+			sb.append(",queue:").append(this.queueTime);
+			sb.append(",proc:").append(this.processingTime);
+			sb.append("}");
+		}
+
 		return sb.toString();
 	}
 }
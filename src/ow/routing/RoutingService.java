@@ -166,6 +166,14 @@ public interface RoutingService {
 	 */
 	void setStatCollectorAddress(MessagingAddress address);
 
+	/**
+	 * Sets a sink to which lookups initiated by this node are reported with their per-hop timing.
+	 *
+	 * @param sink a sink. null stops reporting.
+	 * @return the previous sink.
+	 */
+	RoutingTraceSink setRoutingTraceSink(RoutingTraceSink sink);
+
 	/**
 	 * Returns a String representation of a route.
 	 */
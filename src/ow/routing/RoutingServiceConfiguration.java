@@ -25,6 +25,8 @@ public class RoutingServiceConfiguration {
 //	public final static int DEFAULT_QUERY_CONCURRENCY = 3;	// 3 in the Kademlia paper
 	public final static boolean DEFAULT_USE_THREAD_POOL = true;
 	public final static long DEFAULT_ROUTING_TIMEOUT = 30 * 1000L;
+	public final static int DEFAULT_NUM_OF_SPECULATIVE_FORWARDS = 1;	// 1 disables speculative forwarding
+	public final static long DEFAULT_SPECULATIVE_FORWARDING_DELAY = 0L;
 
 	private int ttl = DEFAULT_TTL;
 	public int getTTL() { return this.ttl; }
@@ -98,4 +100,34 @@ public class RoutingServiceConfiguration {
 		this.routingTimeout = timeout;
 		return old;
 	}
+
+	private int numOfSpeculativeForwards = DEFAULT_NUM_OF_SPECULATIVE_FORWARDS;
+	/**
+	 * Number of next hop candidates to which a request is forwarded speculatively.
+	 * A node forwards to the best candidate and to the following ones
+	 * (concurrently or after {@link #getSpeculativeForwardingDelay() a hedge delay}),
+	 * and proceeds as soon as one of them acknowledges.
+	 * Downstream nodes suppress duplicates of a request.
+	 * Note that only recursive routing supports it.
+	 */
+	public int getNumOfSpeculativeForwards() { return this.numOfSpeculativeForwards; }
+	public int setNumOfSpeculativeForwards(int num) {
+		int old = this.numOfSpeculativeForwards;
+		this.numOfSpeculativeForwards = num;
+		return old;
+	}
+
+	private long speculativeForwardingDelay = DEFAULT_SPECULATIVE_FORWARDING_DELAY;
+	/**
+	 * Delay (msec) before forwarding to the next speculative candidate
+	 * in case that no candidate has acknowledged yet.
+	 * 0 means forwarding to all the candidates concurrently.
+	 * A failure of a candidate causes forwarding to the next one immediately.
+	 */
+	public long getSpeculativeForwardingDelay() { return this.speculativeForwardingDelay; }
+	public long setSpeculativeForwardingDelay(long delay) {
+		long old = this.speculativeForwardingDelay;
+		this.speculativeForwardingDelay = delay;
+		return old;
+	}
 }
@@ -0,0 +1,28 @@
+package ow.routing;
+
+import ow.id.ID;
+import ow.id.IDAddressPair;
+
+/**
+ * A sink to which a routing service reports completed lookups.
+ * It is invoked on the initiator of a routing, once per target.
+ *
+ * @see ow.routing.RoutingService#setRoutingTraceSink(RoutingTraceSink)
+ */
+public interface RoutingTraceSink {
+	/**
+	 * Reports a completed routing.
+	 *
+	 * @param initiator the node which started the routing.
+	 * @param target target ID of the routing.
+	 * @param result the result of the routing. null if the routing failed.
+	 * @param startTime time when the routing started (msec).
+	 * @param endTime time when the routing finished (msec).
+	 */
+	void trace(IDAddressPair initiator, ID target, RoutingResult result, long startTime, long endTime);
+
+	/**
+	 * Flushes and releases resources held by this sink.
+	 */
+	void close();
+}
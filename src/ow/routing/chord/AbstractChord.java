@@ -18,12 +18,14 @@
 package ow.routing.chord;
 
 import java.security.InvalidAlgorithmParameterException;
-import java.util.SortedSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import ow.id.IDAddressPair;
 import ow.messaging.Message;
 import ow.routing.RoutingAlgorithmConfiguration;
 import ow.routing.RoutingService;
+import ow.routing.impl.DistanceRanking;
 import ow.routing.linearwalker.LinearWalker;
 import ow.util.HTMLUtil;
 
@@ -46,9 +48,20 @@ public abstract class AbstractChord extends LinearWalker {
 	}
 
 	// called by LinearWalker#nextHopCandidates()
-	protected void addToNextHopCandidatesSet(SortedSet<IDAddressPair> nextHopCandsSet) {	// overrides LinearWalker
+	protected void addToNextHopCandidates(DistanceRanking<IDAddressPair> nextHopCands) {	// overrides LinearWalker
+		IDAddressPair[] fingers = this.fingerTable.snapshot();
 		for (int i = 1; i <= this.idSizeInBit; i++)
-			nextHopCandsSet.add(this.fingerTable.get(i));
+			nextHopCands.add(fingers[i]);
+	}
+
+	public IDAddressPair[] routingTableEntries() {	// overrides AbstractRoutingAlgorithm
+		Set<IDAddressPair> entries = new LinkedHashSet<IDAddressPair>();
+		IDAddressPair[] fingers = this.fingerTable.snapshot();
+		for (int i = 1; i <= this.idSizeInBit; i++) {
+			if (fingers[i] != null && !fingers[i].equals(this.selfIDAddress)) entries.add(fingers[i]);
+		}
+
+		return entries.toArray(new IDAddressPair[entries.size()]);
 	}
 
 	public void touch(IDAddressPair from) {
@@ -74,8 +87,9 @@ public abstract class AbstractChord extends LinearWalker {
 
 		sb.append("finger table: [");
 		IDAddressPair lastEntry = null;
+		IDAddressPair[] fingers = this.fingerTable.snapshot();
 		for (int i = 1; i <= this.idSizeInBit; i++) {
-			IDAddressPair entry = this.fingerTable.get(i);
+			IDAddressPair entry = fingers[i];
 			if (!entry.equals(lastEntry)) {
 				sb.append("\n ").append(i).append(": ").append(entry.toString(verboseLevel));
 				lastEntry = entry;
@@ -94,8 +108,9 @@ public abstract class AbstractChord extends LinearWalker {
 		sb.append("<h4>Finger Table</h4>\n");
 		sb.append("<table>\n");
 		IDAddressPair lastEntry = null;
+		IDAddressPair[] fingers = this.fingerTable.snapshot();
 		for (int i = 1; i <= this.idSizeInBit; i++) {
-			IDAddressPair entry = this.fingerTable.get(i);
+			IDAddressPair entry = fingers[i];
 			if (!entry.equals(lastEntry)) {
 				String url = HTMLUtil.convertMessagingAddressToURL(entry.getAddress());
 				sb.append("<tr><td>" + HTMLUtil.stringInHTML(Integer.toString(i)) + "</td>"
@@ -17,7 +17,6 @@
 
 package ow.routing.chord;
 
-import java.math.BigInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,12 +26,14 @@ import ow.routing.RoutingAlgorithm;
 
 /**
  * Chord's finger table.
+ * An updated table is published as a new array, so that readers do not lock.
+ * Writers are serialized on this instance.
  */
 public final class FingerTable {
 	private final static Logger logger = Logger.getLogger("routing");
 
 	private final int idSizeInBit;
-	private final IDAddressPair[] fingerTable;
+	private volatile IDAddressPair[] fingerTable;
 	private final RoutingAlgorithm algorithm;
 	private final IDAddressPair selfIDAddressPair;
 	private final boolean aggressiveJoining;
@@ -46,7 +47,6 @@ public final class FingerTable {
 			IDAddressPair selfIDAddressPair, boolean aggressiveJoining) {
 		this.idSizeInBit = idSizeInByte * 8;
 
-		this.fingerTable = new IDAddressPair[this.idSizeInBit + 1];
 		this.algorithm = algorithm;
 		this.selfIDAddressPair = selfIDAddressPair;
 		this.aggressiveJoining = aggressiveJoining;
@@ -56,9 +56,12 @@ public final class FingerTable {
 
 	synchronized void clear() {
 		// fill the table with self address
+		IDAddressPair[] table = new IDAddressPair[this.idSizeInBit + 1];
 		for (int i = 0; i < this.idSizeInBit + 1; i++) {
-			this.fingerTable[i] = selfIDAddressPair;
+			table[i] = selfIDAddressPair;
 		}
+
+		this.fingerTable = table;
 	}
 
 	/**
@@ -70,6 +73,14 @@ public final class FingerTable {
 		return this.fingerTable[k];
 	}
 
+	/**
+	 * Returns the current table, indexed from 1 to size.
+	 * Note that the returned array is shared and must not be modified.
+	 */
+	public IDAddressPair[] snapshot() {
+		return this.fingerTable;
+	}
+
 	/**
 	 * Set an entry
 	 *
@@ -79,8 +90,10 @@ public final class FingerTable {
 		IDAddressPair old;
 
 		synchronized (this) {
-			old = fingerTable[k];
-			fingerTable[k] = entry;
+			IDAddressPair[] table = this.fingerTable.clone();
+			old = table[k];
+			table[k] = entry;
+			this.fingerTable = table;
 		}
 
 		return old;
@@ -95,9 +108,9 @@ public final class FingerTable {
 		ID newID = newEntry.getID();
 		ID selfID = this.selfIDAddressPair.getID();
 
-		BigInteger distanceOfNewEntry =
-			algorithm.distance(newID, selfID);
-		int largestIndex = distanceOfNewEntry.bitLength();
+		long[] distanceOfNewEntry =
+			algorithm.distance(newID, selfID, new long[ID.getWordLength(newID.getSize())]);
+		int largestIndex = ID.bitLength(distanceOfNewEntry);
 
 		return put(newEntry, largestIndex);
 	}
@@ -111,9 +124,11 @@ public final class FingerTable {
 		boolean updated = false;
 
 		synchronized (this) {
+			IDAddressPair[] table = this.fingerTable.clone();
+
 			int i;
 			for (i = largestIndex; i > 0; i--) {
-				IDAddressPair existingEntry = this.fingerTable[i];
+				IDAddressPair existingEntry = table[i];
 
 				// distance from this node is smaller -> better
 				if (!this.algorithm.toReplace(existingEntry, newEntry)) {
@@ -124,11 +139,13 @@ public final class FingerTable {
 						continue;
 				}
 
-				this.fingerTable[i] = newEntry;
+				table[i] = newEntry;
 				updated = true;
 			}	// for
 
 			if (updated) {
+				this.fingerTable = table;
+
 				logger.log(Level.INFO, "FingerTable#put: " + newEntry
 						+ " from " + largestIndex + " to " + (i + 1));
 			}
@@ -142,8 +159,8 @@ public final class FingerTable {
 	 * and fill the blanks with the appropriate alternative entry.
 	 */
 	public void remove(ID target) {
-		BigInteger distance = algorithm.distance(target, selfIDAddressPair.getID());
-		int possibleLargestIndex = distance.bitLength();
+		long[] distance = algorithm.distance(target, selfIDAddressPair.getID(), new long[ID.getWordLength(target.getSize())]);
+		int possibleLargestIndex = ID.bitLength(distance);
 		if (possibleLargestIndex > this.idSizeInBit) {
 			// target is this node itself
 			return;
@@ -153,16 +170,20 @@ public final class FingerTable {
 
 		IDAddressPair altEntry;
 		synchronized (this) {
+			IDAddressPair[] table = this.fingerTable.clone();
+			boolean updated = false;
+
 			try {
-				altEntry = this.fingerTable[possibleLargestIndex + 1];
+				altEntry = table[possibleLargestIndex + 1];
 			}
 			catch (ArrayIndexOutOfBoundsException e) {
 				altEntry = this.selfIDAddressPair;
 			}
 
 			for (int i = possibleLargestIndex; i > 0; i--) {
-				if (this.fingerTable[i].getID().equals(target)) {
-					this.fingerTable[i] = altEntry;
+				if (table[i].getID().equals(target)) {
+					table[i] = altEntry;
+					updated = true;
 				}
 				else {
 					if (!this.aggressiveJoining)
@@ -171,6 +192,8 @@ public final class FingerTable {
 						break;
 				}
 			}
+
+			if (updated) this.fingerTable = table;
 		}	// synchronized (this)
 	}
 
@@ -181,12 +204,11 @@ public final class FingerTable {
 	public int numOfDifferentEntries() {
 		int count = 0;
 		IDAddressPair lastEntry = this.selfIDAddressPair;
-		synchronized (this.fingerTable) {
-			for (int i = this.idSizeInBit; i >= 1; i--) {
-				if (!lastEntry.equals(this.fingerTable[i])) {
-					lastEntry = this.fingerTable[i];
-					count++;
-				}
+		IDAddressPair[] table = this.fingerTable;
+		for (int i = this.idSizeInBit; i >= 1; i--) {
+			if (!lastEntry.equals(table[i])) {
+				lastEntry = table[i];
+				count++;
 			}
 		}
 
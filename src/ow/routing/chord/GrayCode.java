@@ -1,13 +1,15 @@
 package ow.routing.chord;
 
 import java.math.BigInteger;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+
+import ow.id.ID;
 
 /**
  * Utility functions for converting to/from binary and Gray Code (reflected binary).
- * Uses BigIntegers of any size.
+ * Works on BigIntegers of any size, or on the words of IDs without allocating objects.
+ *
+ * Bit i of the binary number of a Gray code is the parity of the bits at and above i of the code,
+ * which a prefix xor with shifts of 1, 2, 4, ... computes in a logarithmic number of steps.
  *
  * FIXME: These conversions break if given a negative number input.
  *  That may not be an issue for our domain; if so we should at least
@@ -16,43 +18,13 @@ import java.util.Map;
 
 public class GrayCode {
 
-  private static class LRUCache extends LinkedHashMap<BigInteger, BigInteger> {
-    int cacheSize;
-
-    LRUCache(int cacheSize) {
-      super(16, 0.75f, true);
-      this.cacheSize = cacheSize;
-    }
-
-    protected boolean removeEldestEntry(Map.Entry<BigInteger, BigInteger> eldest) {
-      return size() >= cacheSize;
-    }
-  }
-
-  // BigInteger conversion from gray code to binary is crazy slow.
-  private static final LRUCache fromGrayMemo = new LRUCache(65536);
-
   public static BigInteger toGray(BigInteger n) {
     return n.xor(n.shiftRight(1));
   }
 
   public static BigInteger fromGray(BigInteger n) {
-
-    synchronized (fromGrayMemo) {
-      if (fromGrayMemo.containsKey(n)) {
-        return fromGrayMemo.get(n);
-      }
-    }
-
-    BigInteger orig = n;
-    for (BigInteger i = n.shiftRight(1);
-         i.compareTo(BigInteger.ZERO) != 0;
-         n = n.xor(i), i = i.shiftRight(1)) {
-      // ;
-    }
-
-    synchronized (fromGrayMemo) {
-      fromGrayMemo.put(orig, n);
+    for (int shift = 1; shift < n.bitLength(); shift <<= 1) {
+      n = n.xor(n.shiftRight(shift));
     }
     return n;
   }
@@ -74,4 +46,114 @@ public class GrayCode {
     final BigInteger b2 = fromGray(g2);
     return b1.subtract(b2);
   }
+
+  // Word-parallel versions on big-endian words as returned by ID#getWords().
+  // result arrays have the same length as the arguments, and can be one of them.
+
+  /**
+   * Returns the binary number of a Gray code in a word.
+   */
+  public static long fromGray(long g) {
+    g ^= g >>> 1;
+    g ^= g >>> 2;
+    g ^= g >>> 4;
+    g ^= g >>> 8;
+    g ^= g >>> 16;
+    g ^= g >>> 32;
+    return g;
+  }
+
+  public static long toGray(long b) {
+    return b ^ (b >>> 1);
+  }
+
+  /**
+   * Sets the binary number of a Gray code to result.
+   *
+   * @return result.
+   */
+  public static long[] fromGray(long[] g, long[] result) {
+    long carry = 0L;  // parity of the higher words, all ones or zero
+    for (int i = 0; i < result.length; i++) {
+      long b = fromGray(g[i]) ^ carry;
+      result[i] = b;
+      carry = -(b & 1L);
+    }
+    return result;
+  }
+
+  /**
+   * Sets the Gray code of a binary number to result.
+   *
+   * @return result.
+   */
+  public static long[] toGray(long[] b, long[] result) {
+    long higherBit = 0L;  // the lowest bit of the higher word
+    for (int i = 0; i < result.length; i++) {
+      long x = b[i];
+      result[i] = toGray(x) ^ (higherBit << 63);
+      higherBit = x & 1L;
+    }
+    return result;
+  }
+
+  /**
+   * Sets (fromGray(g1) - fromGray(g2)) mod 2 ^ sizeInBit to result.
+   *
+   * @return result.
+   */
+  public static long[] distance(long[] g1, long[] g2, int sizeInBit, long[] result) {
+    return addOrSubtract(g1, g2, true, sizeInBit, result);
+  }
+
+  /**
+   * Sets the Gray code of (fromGray(g1) - fromGray(g2)) mod 2 ^ sizeInBit to result.
+   *
+   * @return result.
+   */
+  public static long[] subtract(long[] g1, long[] g2, int sizeInBit, long[] result) {
+    return toGray(addOrSubtract(g1, g2, true, sizeInBit, result), result);
+  }
+
+  /**
+   * Sets the Gray code of (fromGray(g1) + fromGray(g2)) mod 2 ^ sizeInBit to result.
+   *
+   * @return result.
+   */
+  public static long[] add(long[] g1, long[] g2, int sizeInBit, long[] result) {
+    return toGray(addOrSubtract(g1, g2, false, sizeInBit, result), result);
+  }
+
+  private static long[] addOrSubtract(long[] g1, long[] g2, boolean subtract, int sizeInBit, long[] result) {
+    // words are converted from the lowest one, which needs the parity of the words above it:
+    // the parity of all the words xor the parity of the words at and below it
+    long parity1 = parity(g1), parity2 = parity(g2);
+
+    long c = 0L;  // carry or borrow
+    for (int i = result.length - 1; i >= 0; i--) {
+      long w1 = g1[i], w2 = g2[i];
+      parity1 ^= Long.bitCount(w1) & 1L;
+      parity2 ^= Long.bitCount(w2) & 1L;
+      long x = fromGray(w1) ^ -parity1;
+      long y = fromGray(w2) ^ -parity2;
+
+      if (subtract) {
+        result[i] = x - y - c;
+        c = (((x + Long.MIN_VALUE) < (y + Long.MIN_VALUE)) || (x == y && c != 0L)) ? 1L : 0L;
+      }
+      else {
+        long sum = x + y + c;
+        c = (((sum + Long.MIN_VALUE) < (x + Long.MIN_VALUE)) || (sum == x && c != 0L)) ? 1L : 0L;
+        result[i] = sum;
+      }
+    }
+
+    return ID.maskWords(result, sizeInBit);
+  }
+
+  private static long parity(long[] words) {
+    long x = 0L;
+    for (long w : words) x ^= w;
+    return Long.bitCount(x) & 1L;
+  }
 }
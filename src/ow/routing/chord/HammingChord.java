@@ -60,13 +60,14 @@ public class HammingChord extends AbstractChord {
   }
 
   @Override
-  public BigInteger distance(ID to, ID from) {
-    BigInteger dist = GrayCode.distance(to.toBigInteger(), from.toBigInteger());
-    if (dist.compareTo(BigInteger.ZERO) <= 0) {
-      return dist.add(this.sizeOfIDSpace);
+  public long[] distance(ID to, ID from, long[] result) {
+    GrayCode.distance(to.getWords(), from.getWords(), this.idSizeInBit, result);  // distance = to - from
+    if (ID.isZero(result)) {
+      ID.setBit(result, this.idSizeInBit);
+        // distance = 2 ^ # of bit if to and from are the same ID
     }
 
-    return dist;
+    return result;  // 1 <= distance <= 2 ^ # of bit
   }
 
   private synchronized void startFingerTableFixer() {
@@ -132,17 +132,14 @@ public final class FRTChord extends AbstractRoutingAlgorithm  {
 		return new FRTChordRoutingContext();
 	}
 
-	public BigInteger distance(ID to, ID from) {
-		BigInteger toInt = to.toBigInteger();
-		BigInteger fromInt = from.toBigInteger();
-
-		BigInteger distance = toInt.subtract(fromInt);	// distance = to - from
-		if (distance.compareTo(BigInteger.ZERO) <= 0) {
-			distance = distance.add(this.sizeOfIDSpace);
+	public long[] distance(ID to, ID from, long[] result) {
+		ID.subtractWords(to.getWords(), from.getWords(), this.idSizeInBit, result);	// distance = to - from
+		if (ID.isZero(result)) {
+			ID.setBit(result, this.idSizeInBit);
 				// distance = 2 ^ # of bit if to and from are the same ID
 		}
 
-		return distance;	// 1 <= distance <= 2 ^ # of bit
+		return result;	// 1 <= distance <= 2 ^ # of bit
 	}
 
 	public void join(IDAddressPair[] neighbors /* are to be successor list, but including self */) {
@@ -18,6 +18,8 @@ package ow.routing.frtchord;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -30,16 +32,21 @@ import java.util.TreeSet;
 import ow.id.ID;
 import ow.id.IDAddressPair;
 import ow.id.comparator.AlgoBasedFromSrcIDAddrPairComparator;
+import ow.routing.impl.DistanceRanking;
 
 /**
  * Routing table for FRT-Chord.
+ * Writers are serialized on this instance and publish the sorted nodes as a snapshot,
+ * which readers access without locking.
  */
 final class RoutingTable {
 	private final FRTChord algorithm;
 	private final IDAddressPair selfIDAddress;
 	private final ID selfIDMinusOne;
 
+	private final Comparator<IDAddressPair> comparator;
 	private final SortedMap<IDAddressPair,Entry> table;	// does not have the node itself
+	private volatile IDAddressPair[] snapshot = new IDAddressPair[0];	// keys of the table
 	private final SortedSet<Entry> removeeCandidates;
 	private IDAddressPair lastDroppedIDAddressPair = null;	// optimization
 
@@ -57,14 +64,20 @@ final class RoutingTable {
 		this.normalizingConst = Math.log(2.0) * algorithm.idSizeInBit;
 
 		// Prepare tables
-		this.table = new TreeMap<IDAddressPair,Entry>(
-				new AlgoBasedFromSrcIDAddrPairComparator(algorithm, selfIDAddress.getID()));
+		this.comparator = new AlgoBasedFromSrcIDAddrPairComparator(algorithm, selfIDAddress.getID());
+		this.table = new TreeMap<IDAddressPair,Entry>(this.comparator);
 		this.removeeCandidates = new TreeSet<Entry>();
 	}
 
 	public synchronized void clear() {
 		this.table.clear();
 		this.removeeCandidates.clear();
+		this.publish();
+	}
+
+	// called with the lock on this instance
+	private void publish() {
+		this.snapshot = this.table.keySet().toArray(new IDAddressPair[this.table.size()]);
 	}
 
 	public IDAddressPair insert(IDAddressPair idAddr) {
@@ -126,6 +139,8 @@ final class RoutingTable {
 				this.removeeCandidates.add(succeedingEntry0);
 			}
 
+			this.publish();
+
 //System.out.println("removeeCandidates " + this.selfIDAddress.toString(-1) + "{");
 //for (Entry e: this.removeeCandidates) {
 //				System.out.println(e.getIDAddressPair().toString(-1) + " " + e.normalizedIDInterval);
@@ -228,6 +243,8 @@ final class RoutingTable {
 				}
 
 				this.lastDroppedIDAddressPair = null;	// optimization
+
+				this.publish();
 			}
 		}
 
@@ -237,8 +254,8 @@ final class RoutingTable {
 			return null;
 	}
 
-	public synchronized IDAddressPair[] toArray() {
-		return this.table.keySet().toArray(new IDAddressPair[0]);
+	public IDAddressPair[] toArray() {
+		return this.snapshot.clone();
 	}
 
 	protected synchronized Entry[] toEntryArray() {
@@ -252,48 +269,37 @@ final class RoutingTable {
 		}
 		ID targetMinusOne = ID.getID(targetMinusOneInt, target.getSize());
 
-		SortedSet<IDAddressPair> retSet = new TreeSet<IDAddressPair>(
-					new AlgoBasedFromSrcIDAddrPairComparator(this.algorithm, targetMinusOne));
+		DistanceRanking<IDAddressPair> ranking = DistanceRanking.fromSource(this.algorithm, targetMinusOne);
 
 		// add all candidates
-		retSet.add(selfIDAddress);
-		synchronized (this) {
-			retSet.addAll(this.table.keySet());
-		}
+		ranking.add(selfIDAddress);
+		ranking.addAll(this.snapshot);
 
 //System.out.println("target - 1         : " + targetMinusOne);
 //System.out.println("resp candidates for: " + target);
-//for (IDAddressPair p: retSet) {
+//for (IDAddressPair p: ranking.sorted()) {
 //	System.out.println(" " + p);
 //	System.out.println("    dist: " + algorithm.distance(p.getID(), targetMinusOne).toString(16));
 //}
 		// convert to an array
-		int len = Math.min(maxNumber, retSet.size());
-		IDAddressPair[] ret = new IDAddressPair[len];
+		List<IDAddressPair> top = ranking.top(maxNumber);
+		IDAddressPair[] ret = new IDAddressPair[top.size()];
 
-		int i = 0;
-		for (IDAddressPair p: retSet) {
-			if (i >= len) break;
-			ret[i++] = p;
-		}
-
-		return ret;
+		return top.toArray(ret);
 	}
 
 	IDAddressPair[] closestTo(ID target, boolean joining, boolean passOverTarget) {
-		List<IDAddressPair> result = new ArrayList<IDAddressPair>();
-
-		SortedMap<IDAddressPair,Entry> smallerHalf, largerHalf;
+		IDAddressPair[] s = this.snapshot;
+		List<IDAddressPair> result = new ArrayList<IDAddressPair>(s.length + 1);
 
+		// s[0, split) is smaller than target, and s[split, length) may include target
 		IDAddressPair targetIDAddr = IDAddressPair.getIDAddressPair(target, null);
-		synchronized (this) {
-			smallerHalf = this.table.headMap(targetIDAddr);
-			largerHalf = this.table.tailMap(targetIDAddr);	// may include target
+		int split = Arrays.binarySearch(s, targetIDAddr, this.comparator);
+		if (split < 0) split = -split - 1;
 
-			result.addAll(largerHalf.keySet());
-			result.add(this.selfIDAddress);
-			result.addAll(smallerHalf.keySet());
-		}
+		for (int i = split; i < s.length; i++) result.add(s[i]);
+		result.add(this.selfIDAddress);
+		for (int i = 0; i < split; i++) result.add(s[i]);
 
 		if (joining) {
 			for (Iterator<IDAddressPair> ite = result.iterator(); ite.hasNext();) {
@@ -325,34 +331,36 @@ final class RoutingTable {
 		return ret;
 	}
 
-	public int size() { return this.table.size(); }
+	public int size() { return this.snapshot.length; }
 
-	public synchronized IDAddressPair getFirstNode() {
-		if (!this.table.isEmpty())
-			return this.table.firstKey();
+	public IDAddressPair getFirstNode() {
+		IDAddressPair[] s = this.snapshot;
+		if (s.length > 0)
+			return s[0];
 		else
 			return null;
 	}
 
-	public synchronized IDAddressPair getLastNode() {
-		if (!this.table.isEmpty())
-			return this.table.lastKey();
+	public IDAddressPair getLastNode() {
+		IDAddressPair[] s = this.snapshot;
+		if (s.length > 0)
+			return s[s.length - 1];
 		else
 			return null;
 	}
 
-	public synchronized IDAddressPair[] getStickyNodes() {
+	public IDAddressPair[] getStickyNodes() {
 		Set<IDAddressPair> stickyNodeSet = new HashSet<IDAddressPair>();
 
-		SortedSet<IDAddressPair> keySortedSet = (SortedSet<IDAddressPair>)this.table.keySet();
+		IDAddressPair[] s = this.snapshot;
 
-		if (!keySortedSet.isEmpty()) {
+		if (s.length > 0) {
 			int i = this.algorithm.config.getNumStickyNodes();
-			for (IDAddressPair p: keySortedSet) {
+			for (IDAddressPair p: s) {
 				if (i-- <= 0) break;
 				stickyNodeSet.add(p);
 			}
-			stickyNodeSet.add(keySortedSet.last());
+			stickyNodeSet.add(s[s.length - 1]);
 		}
 
 		IDAddressPair[] stickyNodeArray = new IDAddressPair[stickyNodeSet.size()];
@@ -360,12 +368,12 @@ final class RoutingTable {
 		return stickyNodeArray;
 	}
 
-	public synchronized IDAddressPair getLastStickyNode() {
-		SortedSet<IDAddressPair> keySortedSet = (SortedSet<IDAddressPair>)this.table.keySet();
+	public IDAddressPair getLastStickyNode() {
+		IDAddressPair[] s = this.snapshot;
 		int i = this.algorithm.config.getNumStickyNodes();
 
 		IDAddressPair lastStickyNode = null;
-		for (IDAddressPair p: keySortedSet) {
+		for (IDAddressPair p: s) {
 			if (i-- <= 0) break;
 			lastStickyNode = p;
 		}
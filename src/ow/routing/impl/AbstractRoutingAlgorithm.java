@@ -17,6 +17,7 @@
 
 package ow.routing.impl;
 
+import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
@@ -80,6 +81,16 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm {
 		}
 	}
 
+	/**
+	 * The default implementation of
+	 * {@link RoutingAlgorithm#distance(ID, ID) distance()},
+	 * which is based on {@link RoutingAlgorithm#distance(ID, ID, long[]) distance(ID, ID, long[])}.
+	 */
+	public BigInteger distance(ID to, ID from) {
+		long[] result = new long[ID.getWordLength(to.getSize())];
+		return ID.wordsToBigInteger(this.distance(to, from, result));
+	}
+
 	/**
 	 * The default implementation of
 	 * {@link RoutingAlgorithm#initialRoutingContext(ID) initialRoutingContext()}.
@@ -108,6 +119,10 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm {
 		return this.config;
 	}
 
+	public IDAddressPair[] routingTableEntries() {
+		return new IDAddressPair[0];
+	}
+
 	/**
 	 * Table to count the number of sequential failures.
 	 */
@@ -50,11 +50,13 @@ import ow.routing.RoutingResult;
 import ow.routing.RoutingRuntime;
 import ow.routing.RoutingService;
 import ow.routing.RoutingServiceConfiguration;
+import ow.routing.RoutingTraceSink;
 import ow.routing.impl.message.AckMessage;
 import ow.routing.impl.message.PingMessage;
 import ow.routing.impl.message.RepNeighborsMessage;
 import ow.routing.impl.message.ReqNeighborsMessage;
 import ow.stat.MessagingReporter;
+import ow.util.Timer;
 
 /**
  * The super class of all routing drivers.
@@ -81,6 +83,8 @@ public abstract class AbstractRoutingDriver implements RoutingRuntime, RoutingSe
 
 	protected MessagingAddress statCollectorAddress;
 
+	private volatile RoutingTraceSink traceSink;
+
 	private final IDAddressPair selfIDAddressPair;
 	private int selfAddressHashCode;	// to check a change of self address
 
@@ -190,6 +194,13 @@ public abstract class AbstractRoutingDriver implements RoutingRuntime, RoutingSe
 
 			this.algorithm = null;
 		}
+
+		RoutingTraceSink sink = this.traceSink;
+		if (sink != null) {
+			sink.close();
+
+			this.traceSink = null;
+		}
 	}
 
 	public synchronized void suspend() {
@@ -268,6 +279,27 @@ public abstract class AbstractRoutingDriver implements RoutingRuntime, RoutingSe
 		this.msgProvider.setMessagingCollectorAddress(address);
 	}
 
+	public RoutingTraceSink setRoutingTraceSink(RoutingTraceSink sink) {
+		RoutingTraceSink old = this.traceSink;
+		this.traceSink = sink;
+		return old;
+	}
+
+	/**
+	 * Reports completed routings to the trace sink if it has been set.
+	 */
+	protected void traceRoutes(ID[] targets, RoutingResult[] results, long startTime) {
+		RoutingTraceSink sink = this.traceSink;
+		if (sink == null) return;
+
+		long endTime = Timer.currentTimeMillis();
+		IDAddressPair self = this.getSelfIDAddressPair();
+
+		for (int i = 0; i < targets.length; i++) {
+			sink.trace(self, targets[i], results[i], startTime, endTime);
+		}
+	}
+
 	public String routeToString(RoutingHop[] route) {
 		if (route == null) return "";
 
@@ -0,0 +1,155 @@
+package ow.routing.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import ow.id.IDAddressPair;
+
+/**
+ * A sorted set of nodes which publishes an immutable snapshot on every update.
+ * Readers access the snapshot without locking, and writers are serialized on this instance.
+ * Like a TreeSet, elements are identified by the comparator.
+ * Suitable for a routing table which is read on every routing and updated rarely.
+ */
+public final class CopyOnWriteNodeSet {
+	private final static IDAddressPair[] EMPTY = new IDAddressPair[0];
+
+	private final Comparator<IDAddressPair> comparator;
+	private final int maxSize;
+	private volatile IDAddressPair[] snapshot = EMPTY;
+
+	/**
+	 * @param maxSize the farthest elements are dropped over this size. infinity if equal to or less than 0.
+	 */
+	public CopyOnWriteNodeSet(Comparator<IDAddressPair> comparator, int maxSize) {
+		this.comparator = comparator;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the current snapshot in ascending order.
+	 * Note that the returned array is shared and must not be modified.
+	 */
+	public IDAddressPair[] snapshot() { return this.snapshot; }
+
+	public int size() { return this.snapshot.length; }
+
+	public boolean isEmpty() { return this.snapshot.length <= 0; }
+
+	/**
+	 * Returns the first element. null if empty.
+	 */
+	public IDAddressPair first() {
+		IDAddressPair[] s = this.snapshot;
+		return (s.length > 0 ? s[0] : null);
+	}
+
+	/**
+	 * Returns the last element. null if empty.
+	 */
+	public IDAddressPair last() {
+		IDAddressPair[] s = this.snapshot;
+		return (s.length > 0 ? s[s.length - 1] : null);
+	}
+
+	public boolean contains(IDAddressPair elem) {
+		if (elem == null) return false;
+
+		return Arrays.binarySearch(this.snapshot, elem, this.comparator) >= 0;
+	}
+
+	/**
+	 * Returns the index of the given element in the snapshot,
+	 * or (-(insertion point) - 1) in the same way as Arrays#binarySearch().
+	 */
+	public static int indexOf(IDAddressPair[] snapshot, IDAddressPair elem, Comparator<IDAddressPair> comparator) {
+		return Arrays.binarySearch(snapshot, elem, comparator);
+	}
+
+	public synchronized boolean add(IDAddressPair elem) {
+		if (elem == null) return false;
+
+		IDAddressPair[] s = this.snapshot;
+		int idx = Arrays.binarySearch(s, elem, this.comparator);
+		if (idx >= 0) return false;
+
+		idx = -idx - 1;
+		if (this.maxSize > 0 && idx >= this.maxSize) return false;	// would be dropped
+
+		int newLen = s.length + 1;
+		if (this.maxSize > 0 && newLen > this.maxSize) newLen = this.maxSize;
+
+		IDAddressPair[] newSnapshot = new IDAddressPair[newLen];
+		System.arraycopy(s, 0, newSnapshot, 0, idx);
+		newSnapshot[idx] = elem;
+		System.arraycopy(s, idx, newSnapshot, idx + 1, newLen - idx - 1);
+
+		this.snapshot = newSnapshot;
+
+		return true;
+	}
+
+	/**
+	 * Adds the given elements and publishes a snapshot once.
+	 *
+	 * @return true if this set has changed.
+	 */
+	public synchronized boolean addAll(Collection<IDAddressPair> elems) {
+		return this.addAll(elems.toArray(new IDAddressPair[elems.size()]));
+	}
+
+	public synchronized boolean addAll(IDAddressPair[] elems) {
+		if (elems == null || elems.length <= 0) return false;
+
+		IDAddressPair[] s = this.snapshot;
+
+		IDAddressPair[] merged = new IDAddressPair[s.length + elems.length];
+		System.arraycopy(s, 0, merged, 0, s.length);
+		int len = s.length;
+		for (IDAddressPair e: elems) {
+			if (e != null) merged[len++] = e;
+		}
+
+		Arrays.sort(merged, 0, len, this.comparator);
+
+		// remove duplicates
+		int j = 0;
+		for (int i = 0; i < len; i++) {
+			if (j > 0 && this.comparator.compare(merged[j - 1], merged[i]) == 0) continue;
+			merged[j++] = merged[i];
+		}
+
+		if (this.maxSize > 0 && j > this.maxSize) j = this.maxSize;
+
+		boolean changed = (j != s.length);
+		for (int i = 0; !changed && i < j; i++) {
+			if (merged[i] != s[i]) changed = true;
+		}
+		if (!changed) return false;
+
+		this.snapshot = Arrays.copyOf(merged, j);
+
+		return true;
+	}
+
+	public synchronized boolean remove(IDAddressPair elem) {
+		if (elem == null) return false;
+
+		IDAddressPair[] s = this.snapshot;
+		int idx = Arrays.binarySearch(s, elem, this.comparator);
+		if (idx < 0) return false;
+
+		IDAddressPair[] newSnapshot = new IDAddressPair[s.length - 1];
+		System.arraycopy(s, 0, newSnapshot, 0, idx);
+		System.arraycopy(s, idx + 1, newSnapshot, idx, s.length - idx - 1);
+
+		this.snapshot = newSnapshot;
+
+		return true;
+	}
+
+	public synchronized void clear() {
+		this.snapshot = EMPTY;
+	}
+}
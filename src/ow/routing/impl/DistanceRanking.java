@@ -0,0 +1,276 @@
+package ow.routing.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ow.id.ID;
+import ow.id.IDAddressPair;
+import ow.routing.RoutingAlgorithm;
+
+/**
+ * Ranks nodes or IDs by the distance defined by a routing algorithm.
+ * The distance of each element is computed once when it is added,
+ * and sorting and top-k selection compare the precomputed words
+ * instead of calling {@link RoutingAlgorithm#distance(ID, ID) distance()} on every comparison
+ * as a comparator-based TreeSet does.
+ * Elements with the same distance are ordered by their IDs.
+ * Duplicated and null elements are ignored.
+ * An instance is not thread-safe.
+ */
+public final class DistanceRanking<T> {
+	private final RoutingAlgorithm algo;
+	private final ID reference;
+	private final boolean towardReference;
+	private final int wordLength;
+
+	private final Set<T> elemSet = new HashSet<T>();
+	private Object[] elems = new Object[16];
+	private ID[] ids = new ID[16];
+	private long[] keys;
+	private int size = 0;
+
+	private final long[] scratch;
+
+	private DistanceRanking(RoutingAlgorithm algo, ID reference, boolean towardReference) {
+		this.algo = algo;
+		this.reference = reference;
+		this.towardReference = towardReference;
+		this.wordLength = ID.getWordLength(reference.getSize());
+		this.keys = new long[16 * this.wordLength];
+		this.scratch = new long[this.wordLength];
+	}
+
+	/**
+	 * Returns a ranking of nodes by the distance from each node to the target,
+	 * in the same order as {@link ow.id.comparator.AlgoBasedTowardTargetIDAddrComparator AlgoBasedTowardTargetIDAddrComparator}.
+	 */
+	public static DistanceRanking<IDAddressPair> towardTarget(RoutingAlgorithm algo, ID target) {
+		return new DistanceRanking<IDAddressPair>(algo, target, true);
+	}
+
+	/**
+	 * Returns a ranking of nodes by the distance from the source to each node,
+	 * in the same order as {@link ow.id.comparator.AlgoBasedFromSrcIDAddrPairComparator AlgoBasedFromSrcIDAddrPairComparator}.
+	 */
+	public static DistanceRanking<IDAddressPair> fromSource(RoutingAlgorithm algo, ID source) {
+		return new DistanceRanking<IDAddressPair>(algo, source, false);
+	}
+
+	/**
+	 * Returns a ranking of IDs by the distance from each ID to the target,
+	 * in the same order as {@link ow.id.comparator.AlgoBasedTowardTargetIDComparator AlgoBasedTowardTargetIDComparator}.
+	 */
+	public static DistanceRanking<ID> idsTowardTarget(RoutingAlgorithm algo, ID target) {
+		return new DistanceRanking<ID>(algo, target, true);
+	}
+
+	/**
+	 * Adds an element and computes its distance.
+	 *
+	 * @return true if added.
+	 */
+	public boolean add(T elem) {
+		if (elem == null) return false;
+
+		ID id = (elem instanceof IDAddressPair ? ((IDAddressPair)elem).getID() : (ID)elem);
+		if (id == null) return false;
+
+		if (!this.elemSet.add(elem)) return false;
+
+		if (this.size >= this.elems.length) {
+			int newCapacity = this.elems.length * 2;
+
+			Object[] newElems = new Object[newCapacity];
+			System.arraycopy(this.elems, 0, newElems, 0, this.size);
+			this.elems = newElems;
+
+			ID[] newIDs = new ID[newCapacity];
+			System.arraycopy(this.ids, 0, newIDs, 0, this.size);
+			this.ids = newIDs;
+
+			long[] newKeys = new long[newCapacity * this.wordLength];
+			System.arraycopy(this.keys, 0, newKeys, 0, this.size * this.wordLength);
+			this.keys = newKeys;
+		}
+
+		if (this.towardReference)
+			this.algo.distance(this.reference, id, this.scratch);
+		else
+			this.algo.distance(id, this.reference, this.scratch);
+		System.arraycopy(this.scratch, 0, this.keys, this.size * this.wordLength, this.wordLength);
+
+		this.elems[this.size] = elem;
+		this.ids[this.size] = id;
+		this.size++;
+
+		return true;
+	}
+
+	public void addAll(T[] c) {
+		if (c == null) return;
+
+		for (T elem: c) this.add(elem);
+	}
+
+	public void addAll(Collection<? extends T> c) {
+		if (c == null) return;
+
+		for (T elem: c) this.add(elem);
+	}
+
+	/**
+	 * Removes elements which have the specified ID.
+	 */
+	public void removeID(ID id) {
+		int j = 0;
+		for (int i = 0; i < this.size; i++) {
+			if (id.equals(this.ids[i])) {
+				this.elemSet.remove(this.elems[i]);
+				continue;
+			}
+
+			if (i != j) {
+				this.elems[j] = this.elems[i];
+				this.ids[j] = this.ids[i];
+				System.arraycopy(this.keys, i * this.wordLength, this.keys, j * this.wordLength, this.wordLength);
+			}
+			j++;
+		}
+
+		for (int i = j; i < this.size; i++) {
+			this.elems[i] = null;
+			this.ids[i] = null;
+		}
+		this.size = j;
+	}
+
+	public int size() { return this.size; }
+
+	/**
+	 * Returns the closest element. null if empty.
+	 */
+	public T first() {
+		if (this.size <= 0) return null;
+
+		int best = 0;
+		for (int i = 1; i < this.size; i++) {
+			if (this.compare(i, best) < 0) best = i;
+		}
+
+		return this.elementAt(best);
+	}
+
+	/**
+	 * Returns the farthest element. null if empty.
+	 */
+	public T last() {
+		if (this.size <= 0) return null;
+
+		int worst = 0;
+		for (int i = 1; i < this.size; i++) {
+			if (this.compare(i, worst) > 0) worst = i;
+		}
+
+		return this.elementAt(worst);
+	}
+
+	/**
+	 * Returns all the elements in ascending order of distance.
+	 */
+	public List<T> sorted() {
+		return this.top(this.size);
+	}
+
+	/**
+	 * Returns the k closest elements in ascending order of distance.
+	 * They are selected with a bounded heap in O(n log k).
+	 */
+	public List<T> top(int k) {
+		k = Math.min(k, this.size);
+		if (k <= 0) return new ArrayList<T>(0);
+
+		// max-heap of the k closest elements, whose root is the farthest one
+		int[] heap = new int[k];
+		int heapSize = 0;
+
+		for (int i = 0; i < this.size; i++) {
+			if (heapSize < k) {
+				heap[heapSize] = i;
+				this.siftUp(heap, heapSize);
+				heapSize++;
+			}
+			else if (this.compare(i, heap[0]) < 0) {
+				heap[0] = i;
+				this.siftDown(heap, heapSize, 0);
+			}
+		}
+
+		// pop from the farthest
+		Object[] result = new Object[k];
+		while (heapSize > 0) {
+			heapSize--;
+			result[heapSize] = this.elems[heap[0]];
+			heap[0] = heap[heapSize];
+			this.siftDown(heap, heapSize, 0);
+		}
+
+		List<T> ret = new ArrayList<T>(k);
+		for (Object o: result) {
+			@SuppressWarnings("unchecked")
+			T elem = (T)o;
+			ret.add(elem);
+		}
+
+		return ret;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T elementAt(int i) {
+		return (T)this.elems[i];
+	}
+
+	private void siftUp(int[] heap, int pos) {
+		int elem = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (this.compare(elem, heap[parent]) <= 0) break;
+
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = elem;
+	}
+
+	private void siftDown(int[] heap, int heapSize, int pos) {
+		if (heapSize <= 0) return;
+
+		int elem = heap[pos];
+		while (true) {
+			int child = pos * 2 + 1;
+			if (child >= heapSize) break;
+
+			if (child + 1 < heapSize && this.compare(heap[child + 1], heap[child]) > 0) child++;
+			if (this.compare(elem, heap[child]) >= 0) break;
+
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = elem;
+	}
+
+	private int compare(int i, int j) {
+		int offI = i * this.wordLength, offJ = j * this.wordLength;
+
+		for (int w = 0; w < this.wordLength; w++) {
+			long a = this.keys[offI + w], b = this.keys[offJ + w];
+			if (a != b) {
+				return ((a + Long.MIN_VALUE) < (b + Long.MIN_VALUE) ? -1 : 1);
+			}
+		}
+
+		return this.ids[i].compareTo(this.ids[j]);
+	}
+}
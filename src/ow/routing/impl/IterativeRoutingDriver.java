@@ -55,6 +55,7 @@ import ow.routing.impl.message.IteRouteInvokeMessage;
 import ow.routing.impl.message.IteRouteJoinMessage;
 import ow.routing.impl.message.IteRouteNoneMessage;
 import ow.stat.MessagingReporter;
+import ow.util.Timer;
 import ow.util.concurrent.ExecutorBlockingMode;
 import ow.util.concurrent.SingletonThreadPoolExecutors;
 
@@ -121,6 +122,8 @@ public final class IterativeRoutingDriver extends AbstractRoutingDriver {
 //for (ID t: target) System.out.print(" " + t.toString().substring(0, 4) + "..");
 //System.out.println();
 //System.out.flush();
+		long startTime = Timer.currentTimeMillis();
+
 		if (numResponsibleNodeCands < 1) numResponsibleNodeCands = 1;
 
 		if (routingContexts == null) routingContexts = new RoutingContext[target.length];
@@ -317,6 +320,10 @@ public final class IterativeRoutingDriver extends AbstractRoutingDriver {
 			}
 		}
 
+		if (!msgClass.equals(IteRouteJoinMessage.class)) {
+			this.traceRoutes(target, ret, startTime);
+		}
+
 		return ret;
 	}
 
@@ -433,6 +440,7 @@ public final class IterativeRoutingDriver extends AbstractRoutingDriver {
 
 				// query
 				Message replyMsg = null;
+				long sendTime = -1L, replyTime = -1L;
 				do {	// while (replyMsg == null)
 					Set<IDAddressPair> contactSet = new HashSet<IDAddressPair>();
 					boolean allContactsAreNull = true;
@@ -669,8 +677,10 @@ public final class IterativeRoutingDriver extends AbstractRoutingDriver {
 
 					replyMsg = null;
 					try {
+						sendTime = Timer.currentTimeMillis();
 						replyMsg = sender.sendAndReceive(contacts[0].getAddress(), requestMsg);
 										// throws IOException
+						replyTime = Timer.currentTimeMillis();
 					}
 					catch (IOException e) {
 						logger.log(Level.WARNING, "Sending or receiving failed: "
@@ -735,8 +745,11 @@ public final class IterativeRoutingDriver extends AbstractRoutingDriver {
 					}
 				} while (replyMsg == null);	// query
 
+				long processingTime =
+					(replyMsg != null ? ((IteReplyMessage)replyMsg).processingTime : -1L);
 				for (int i = 0; i < target.length; i++) {
-					this.route[i].add(RoutingHop.newInstance(contacts[0]));
+					this.route[i].add(RoutingHop.newInstance(contacts[0],
+							sendTime, replyTime, -1L, processingTime));
 				}
 
 				// add the nodes in the reply to contact list
@@ -809,6 +822,8 @@ public final class IterativeRoutingDriver extends AbstractRoutingDriver {
 		// ITE_ROUTE_{NONE,INVOKE,JOIN}
 		handler = new MessageHandler() {
 			public Message process(final Message msg) {
+				long startTime = Timer.currentTimeMillis();
+
 				// parse the Message
 				final ID[] targets;
 				RoutingContext[] routingContexts = null;
@@ -933,7 +948,8 @@ public final class IterativeRoutingDriver extends AbstractRoutingDriver {
 				for (int i = 0; i < targets.length; i++)
 					responsibleNodeCands[i] = algorithm.responsibleNodeCandidates(targets[i], numResponsibleNodeCands);
 
-				return new IteReplyMessage(nextHopCands, responsibleNodeCands, routingContexts, callbackResult);
+				return new IteReplyMessage(nextHopCands, responsibleNodeCands, routingContexts, callbackResult,
+						Timer.currentTimeMillis() - startTime);
 			}
 		};
 		addMessageHandler(IteRouteNoneMessage.class, handler);
@@ -0,0 +1,115 @@
+package ow.routing.impl;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ow.id.ID;
+import ow.id.IDAddressPair;
+import ow.routing.RoutingHop;
+import ow.routing.RoutingResult;
+import ow.routing.RoutingTraceSink;
+import ow.util.JSONUtil;
+
+/**
+ * A {@link RoutingTraceSink RoutingTraceSink} which writes sampled lookup traces
+ * to a file, one JSON object per line.
+ * A line looks like:
+ * <pre>
+ * {"target":"...","initiator":"...","start":...,"elapsed":...,"succeed":true,
+ *  "hops":[{"id":"...","addr":"...","time":...,"send":...,"reply":...,"net":...,"queue":...,"proc":...},...]}
+ * </pre>
+ * Times are in millisecond and -1 means unknown.
+ */
+public final class JSONLinesRoutingTraceSink implements RoutingTraceSink {
+	private final static Logger logger = Logger.getLogger("routing");
+
+	private final Writer out;
+	private final double samplingRate;
+	private final Random rnd = new Random();
+	private boolean closed = false;
+
+	/**
+	 * @param filename name of the file to which traces are appended.
+	 * @param samplingRate ratio of lookups written to the file (0.0 - 1.0).
+	 */
+	public JSONLinesRoutingTraceSink(String filename, double samplingRate) throws IOException {
+		this(new OutputStreamWriter(new FileOutputStream(filename, true), "UTF-8"), samplingRate);
+	}
+
+	public JSONLinesRoutingTraceSink(Writer out, double samplingRate) {
+		this.out = new BufferedWriter(out);
+		this.samplingRate = samplingRate;
+	}
+
+	public void trace(IDAddressPair initiator, ID target, RoutingResult result, long startTime, long endTime) {
+		if (this.samplingRate < 1.0) {
+			synchronized (this.rnd) {
+				if (this.rnd.nextDouble() >= this.samplingRate) return;
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"target\":\"").append(target != null ? JSONUtil.stringInJSON(target.toString()) : "").append("\"");
+		sb.append(",\"initiator\":\"").append(initiator != null && initiator.getAddress() != null ?
+				JSONUtil.stringInJSON(initiator.getAddress().toString()) : "").append("\"");
+		sb.append(",\"start\":").append(startTime);
+		sb.append(",\"elapsed\":").append(endTime - startTime);
+		sb.append(",\"succeed\":").append(result != null);
+
+		sb.append(",\"hops\":[");
+		if (result != null && result.getRoute() != null) {
+			boolean first = true;
+			for (RoutingHop h: result.getRoute()) {
+				if (h == null) continue;
+
+				if (!first) sb.append(",");
+				first = false;
+
+				IDAddressPair p = h.getIDAddressPair();
+				sb.append("{\"id\":\"").append(p != null && p.getID() != null ?
+						JSONUtil.stringInJSON(p.getID().toString()) : "").append("\"");
+				sb.append(",\"addr\":\"").append(p != null && p.getAddress() != null ?
+						JSONUtil.stringInJSON(p.getAddress().toString()) : "").append("\"");
+				sb.append(",\"time\":").append(h.getTime());
+				sb.append(",\"send\":").append(h.getSendTime());
+				sb.append(",\"reply\":").append(h.getReplyTime());
+				sb.append(",\"net\":").append(h.getNetworkTime());
+				sb.append(",\"queue\":").append(h.getQueueTime());
+				sb.append(",\"proc\":").append(h.getProcessingTime());
+				sb.append("}");
+			}
+		}
+		sb.append("]}\n");
+
+		synchronized (this.out) {
+			if (this.closed) return;
+
+			try {
+				this.out.write(sb.toString());
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Failed to write a lookup trace.", e);
+			}
+		}
+	}
+
+	public void close() {
+		synchronized (this.out) {
+			if (this.closed) return;
+			this.closed = true;
+
+			try {
+				this.out.close();
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Failed to close a lookup trace file.", e);
+			}
+		}
+	}
+}
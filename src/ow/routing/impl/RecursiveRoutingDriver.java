@@ -22,13 +22,20 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import ow.id.ID;
@@ -65,9 +72,22 @@ import ow.util.concurrent.SingletonThreadPoolExecutors;
  * @see ow.routing.impl.IterativeRoutingDriver
  */
 public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
+	private final static int RECENT_ROUTING_TABLE_SIZE = 4096;
+
 	// messages
 	private final Message recAckMessage;
 
+	// routing ID, which identifies a routing initiated by this node
+	private final AtomicInteger routingIDCounter = new AtomicInteger(new Random().nextInt());
+
+	// routings which this node has processed recently, to suppress duplicates of speculative forwarding
+	private final Map<RecentRouting,Long> recentRoutingTable =
+		new LinkedHashMap<RecentRouting,Long>() {
+			protected boolean removeEldestEntry(Map.Entry<RecentRouting,Long> eldest) {
+				return this.size() > RECENT_ROUTING_TABLE_SIZE;
+			}
+		};
+
 	protected RecursiveRoutingDriver(RoutingServiceConfiguration conf,
 			MessagingProvider msgProvider, MessagingConfiguration msgConfig, int port, int portRange,
 			RoutingAlgorithmProvider algoProvider, RoutingAlgorithmConfiguration algoConfig,
@@ -157,9 +177,11 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 		IDAddressPair[][] nextHopCands = new IDAddressPair[target.length][];
 		IDAddressPair[] blackList = null;
 
+		long startTime = Timer.currentTimeMillis();
+
 		if (numResponsibleNodeCands < 1) numResponsibleNodeCands = 1;
 
-		int routingID = Thread.currentThread().hashCode();
+		int routingID = this.routingIDCounter.getAndIncrement();
 
 		RoutingContext[] lastRoutingContexts = new RoutingContext[target.length];
 		if (routingContexts == null) routingContexts = new RoutingContext[target.length];
@@ -200,10 +222,11 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 			}
 		}
 
-		Message msg = RecursiveRoutingDriver.getRecRouteMessage(msgClass,
+		AbstractRecRouteMessage msg = RecursiveRoutingDriver.getRecRouteMessage(msgClass,
 				routingID, target, routingContexts, numResponsibleNodeCands,
 				this.getSelfIDAddressPair(), config.getTTL(), new RoutingHop[0], blackList,
 				callbackTag, callbackArgs);
+		msg.receivedTime = msg.processStartTime = startTime;
 
 		forwardOrReturnResult(msg, lastRoutingContexts, nextHopCands);
 
@@ -329,6 +352,10 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 			ret[index] = null;
 		}
 
+		if (!msgClass.equals(RecRouteJoinMessage.class)) {
+			this.traceRoutes(target, ret, startTime);
+		}
+
 		return ret;
 	}
 
@@ -368,7 +395,7 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 
 		boolean ttlExpired = false;
 		boolean succeed = true;
-		Message newMsg;
+		AbstractRecRouteMessage newMsg;
 		boolean[] forwarded = new boolean[targets.length];
 		for (int i = 0; i < forwarded.length; i++) forwarded[i] = false;
 
@@ -383,7 +410,7 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 		RoutingHop[] lastRoute = route;
 		route = new RoutingHop[lastRoute.length + 1];
 		System.arraycopy(lastRoute, 0, route, 0, lastRoute.length);
-		route[route.length - 1] = RoutingHop.newInstance(getSelfIDAddressPair());
+		route[route.length - 1] = this.getSelfRoutingHop((AbstractRecRouteMessage)msg);
 
 		// TTL check
 		if (ttl < 0) {
@@ -421,8 +448,9 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 					if (nextHopCands[i] == null || nextHopCands[i].length <= 0) {
 						nextHops[i] = null;
 					}
-
-					nextHops[i] = nextHopCands[i][0];
+					else {
+						nextHops[i] = nextHopCands[i][0];
+					}
 
 					if (nextHops[i] == null) continue;
 
@@ -520,12 +548,17 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 						RoutingHop[] copiedRoute = new RoutingHop[route.length];
 						System.arraycopy(route, 0, copiedRoute, 0, route.length);
 
+						AbstractRecRouteMessage forkedMsg =
+							RecursiveRoutingDriver.getRecRouteMessage(msg.getClass(),
+									routingID, forkedTarget, forkedRoutingContext, numResponsibleNodeCands,
+									initiator, ttl, copiedRoute, blackList,
+									callbackTag, forkedCallbackArgs);
+						forkedMsg.sendTime = ((AbstractRecRouteMessage)msg).sendTime;
+						forkedMsg.receivedTime = ((AbstractRecRouteMessage)msg).receivedTime;
+						forkedMsg.processStartTime = ((AbstractRecRouteMessage)msg).processStartTime;
+
 						Forwarder f = new Forwarder(
-								RecursiveRoutingDriver.getRecRouteMessage(msg.getClass(),
-										routingID, forkedTarget, forkedRoutingContext, numResponsibleNodeCands,
-										initiator, ttl, copiedRoute, blackList,
-										callbackTag, forkedCallbackArgs),
-								forkedLastRoutingContext, forkedNextHopCands);
+								forkedMsg, forkedLastRoutingContext, forkedNextHopCands);
 						forkedForwarder.add(f);
 					}
 
@@ -594,7 +627,58 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 						initiator, ttl - 1, route, blackList,
 						callbackTag, callbackArgs);
 
+				// speculative forwarding
+				int numSpeculativeForwards = config.getNumOfSpeculativeForwards();
+				if (numSpeculativeForwards > 1 && !(msg instanceof RecRouteJoinMessage)) {
+					IDAddressPair[] specHops = this.speculativeNextHops(
+							nextHop, nextHopCands[0], blackListSet, numSpeculativeForwards);
+
+					if (specHops.length > 1) {
+						AbstractRecRouteMessage[] specMsgs = new AbstractRecRouteMessage[specHops.length];
+						specMsgs[0] = newMsg;
+						for (int j = 1; j < specHops.length; j++) {
+							// a message for each candidate because a receiver updates routing contexts in it
+							RoutingContext[] copiedContexts = new RoutingContext[routingContexts.length];
+							for (int i = 0; i < routingContexts.length; i++) {
+								if (routingContexts[i] != null) copiedContexts[i] = routingContexts[i].clone();
+							}
+
+							specMsgs[j] = RecursiveRoutingDriver.getRecRouteMessage(msg.getClass(),
+									routingID, targets, copiedContexts, numResponsibleNodeCands,
+									initiator, ttl - 1, route, blackList,
+									callbackTag, callbackArgs);
+						}
+
+						boolean[] failed = new boolean[specHops.length];
+						int acked = this.forwardSpeculatively(specMsgs, specHops, failed);
+
+						Set<IDAddressPair> failedSet = new HashSet<IDAddressPair>();
+						for (int j = 0; j < specHops.length; j++) {
+							if (!failed[j]) continue;
+
+							super.fail(specHops[j]);
+							blackList = this.addToBlackList(blackList, specHops[j]);
+							blackListSet.add(specHops[j]);
+							failedSet.add(specHops[j]);
+						}
+
+						if (acked >= 0) {
+							for (int i = 0; i < forwarded.length; i++) forwarded[i] = true;
+
+							break forward;
+						}
+
+						// remove failed candidates and try the remaining ones
+						for (int i = 0; i < targets.length; i++) {
+							nextHopCands[i] = this.removeCandidates(nextHopCands[i], failedSet);
+						}
+
+						continue forward;
+					}
+				}
+
 				try {
+					newMsg.sendTime = Timer.currentTimeMillis();
 					Message ack = sender.sendAndReceive(nextHop.getAddress(), newMsg);
 						// throws IOException
 //System.out.println("On " + getSelfIDAddressPair().getAddress() + ", forwarded " + Tag.getNameByNumber(oldMsgTag) + " from " + getSelfIDAddressPair().getAddress() + " to " + nextHop.getAddress());
@@ -633,16 +717,7 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 				if (nextHop.getID() != null) {	// nextHop.getID() is null when joining
 					super.fail(nextHop);
 
-					if (blackList != null) {
-						IDAddressPair[] oldBlackList = blackList;
-						blackList = new IDAddressPair[oldBlackList.length + 1];
-						System.arraycopy(oldBlackList, 0, blackList, 0, oldBlackList.length);
-					}
-					else {
-						blackList = new IDAddressPair[1];
-					}
-					blackList[blackList.length - 1] = nextHop;
-
+					blackList = this.addToBlackList(blackList, nextHop);
 					blackListSet.add(nextHop);
 
 					logger.log(Level.INFO, nextHop.getAddress() + " is added to blacklist on " + this.getSelfIDAddressPair().getAddress());
@@ -731,6 +806,10 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 		}
 
 		if (!notForwardedIndexList.isEmpty()) {
+			// update processing time on this node, which includes callbacks
+			route = route.clone();	// the original can be held by a forwarded message
+			route[route.length - 1] = this.getSelfRoutingHop((AbstractRecRouteMessage)msg);
+
 			// get candidates for the responsible node
 			ID[] partOfTarget = new ID[notForwardedIndexList.size()];
 			RoutingResult[] partOfResult = new RoutingResult[notForwardedIndexList.size()];
@@ -785,6 +864,261 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 		return ret;
 	}
 
+	private IDAddressPair[] addToBlackList(IDAddressPair[] blackList, IDAddressPair node) {
+		if (blackList != null) {
+			IDAddressPair[] oldBlackList = blackList;
+			blackList = new IDAddressPair[oldBlackList.length + 1];
+			System.arraycopy(oldBlackList, 0, blackList, 0, oldBlackList.length);
+		}
+		else {
+			blackList = new IDAddressPair[1];
+		}
+		blackList[blackList.length - 1] = node;
+
+		return blackList;
+	}
+
+	/**
+	 * Returns candidates to which a request is forwarded speculatively.
+	 * The first element is the given next hop, followed by the next best candidates.
+	 */
+	private IDAddressPair[] speculativeNextHops(IDAddressPair nextHop, IDAddressPair[] cands,
+			Set<IDAddressPair> blackListSet, int num) {
+		List<IDAddressPair> hops = new ArrayList<IDAddressPair>(num);
+		hops.add(nextHop);
+
+		if (cands != null) {
+			MessagingAddress selfAddress = this.getSelfIDAddressPair().getAddress();
+
+			for (IDAddressPair p: cands) {
+				if (hops.size() >= num) break;
+
+				if (p == null || p.getID() == null
+						|| hops.contains(p) || blackListSet.contains(p)
+						|| selfAddress.equals(p.getAddress()))
+					continue;
+
+				hops.add(p);
+			}
+		}
+
+		IDAddressPair[] ret = new IDAddressPair[hops.size()];
+		hops.toArray(ret);
+
+		return ret;
+	}
+
+	private IDAddressPair[] removeCandidates(IDAddressPair[] cands, Set<IDAddressPair> removed) {
+		if (cands == null) return null;
+
+		List<IDAddressPair> l = new ArrayList<IDAddressPair>(cands.length);
+		for (IDAddressPair p: cands) {
+			if (p != null && !removed.contains(p)) l.add(p);
+		}
+
+		if (l.isEmpty()) return null;
+
+		IDAddressPair[] ret = new IDAddressPair[l.size()];
+		l.toArray(ret);
+
+		return ret;
+	}
+
+	/**
+	 * Forwards the messages to the corresponding nodes,
+	 * the first one immediately and the following ones after the hedge delay
+	 * or immediately after a failure.
+	 *
+	 * @param failed set to true for nodes which failed to acknowledge.
+	 * @return index of the node which acknowledged first. -1 if all failed.
+	 */
+	private int forwardSpeculatively(final AbstractRecRouteMessage[] msgs, final IDAddressPair[] hops, boolean[] failed) {
+		long delay = config.getSpeculativeForwardingDelay();
+
+		ExecutorService ex = SingletonThreadPoolExecutors.getThreadPool(
+				ExecutorBlockingMode.CONCURRENT_REJECTING, Thread.currentThread().isDaemon());
+		CompletionService<Integer> cs = new ExecutorCompletionService<Integer>(ex);
+
+		int submitted = 0, outstanding = 0;
+
+		while (true) {
+			// forward to the next candidate
+			if (submitted < hops.length) {
+				final int index = submitted++;
+				Callable<Integer> c = new Callable<Integer>() {
+					public Integer call() {
+						return RecursiveRoutingDriver.this.forwardTo(msgs[index], hops[index], index);
+					}
+				};
+
+				try {
+					cs.submit(c);
+					outstanding++;
+				}
+				catch (RejectedExecutionException e) {
+					if (outstanding <= 0) {
+						// invoke directly if no candidate is in progress
+						int ret = this.forwardTo(msgs[index], hops[index], index);
+						if (ret >= 0) return ret;
+						failed[index] = true;
+					}
+					continue;
+				}
+
+				if (delay <= 0L) continue;	// forward to all the candidates at once
+			}
+
+			if (outstanding <= 0) return -1;
+
+			// wait for an acknowledgement
+			Future<Integer> f;
+			try {
+				if (submitted < hops.length)
+					f = cs.poll(delay, TimeUnit.MILLISECONDS);
+				else
+					f = cs.take();
+			}
+			catch (InterruptedException e) {
+				logger.log(Level.WARNING, "Speculative forwarding interrupted on " + getSelfIDAddressPair().getAddress());
+				return -1;
+			}
+
+			if (f == null) continue;	// hedge delay passed
+
+			outstanding--;
+
+			int ret;
+			try {
+				ret = f.get();
+			}
+			catch (ExecutionException e) {
+				logger.log(Level.WARNING, "Speculative forwarding threw an Exception.", e.getCause());
+				continue;
+			}
+			catch (InterruptedException e) {
+				return -1;
+			}
+
+			if (ret >= 0) return ret;
+			failed[-ret - 1] = true;
+		}
+	}
+
+	/**
+	 * Forwards a message and receives an acknowledgement.
+	 *
+	 * @return the given index if acknowledged. -(index + 1) otherwise.
+	 */
+	private int forwardTo(AbstractRecRouteMessage msg, IDAddressPair nextHop, int index) {
+		try {
+			msg.sendTime = Timer.currentTimeMillis();
+			Message ack = sender.sendAndReceive(nextHop.getAddress(), msg);
+				// throws IOException
+
+			if (algorithm != null) {
+				algorithm.touch((IDAddressPair)ack.getSource());
+			}
+
+			if (ack instanceof RecAckMessage) {
+				return index;
+			}
+			else {
+				logger.log(Level.SEVERE, "Received message is not REC_ACK.");
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Failed to forward a request to "
+					+ nextHop.getAddress()
+					+ " on " + getSelfIDAddressPair().getAddress(), e);
+		}
+
+		return -index - 1;
+	}
+
+	/**
+	 * Records a routing request and judges whether it is a duplicate of one processed recently.
+	 * A duplicate arrives in case that a previous node forwarded it speculatively.
+	 * A request which has already visited this node is not a duplicate but a revisit,
+	 * which happens for instance when routing tables are inconsistent.
+	 */
+	private boolean isDuplicate(AbstractRecRouteMessage msg) {
+		if (msg.initiator == null) return false;
+
+		boolean revisit = false;
+		if (msg.route != null) {
+			MessagingAddress selfAddress = getSelfIDAddressPair().getAddress();
+			for (RoutingHop h: msg.route) {
+				if (h != null && selfAddress.equals(h.getIDAddressPair().getAddress())) {
+					revisit = true;
+					break;
+				}
+			}
+		}
+
+		long now = Timer.currentTimeMillis();
+		long expiration = now - config.getRoutingTimeout();
+		boolean dup = !revisit;
+
+		synchronized (this.recentRoutingTable) {
+			for (int i = 0; i < msg.target.length; i++) {
+				RecentRouting r = new RecentRouting(msg.initiator.getAddress(), msg.routingID, msg.target[i]);
+
+				Long time = this.recentRoutingTable.get(r);
+				if (time == null || time < expiration) {
+					dup = false;
+				}
+				this.recentRoutingTable.put(r, now);
+			}
+		}
+
+		return dup;
+	}
+
+	private final static class RecentRouting {
+		private final MessagingAddress initiator;
+		private final int routingID;
+		private final ID target;
+
+		RecentRouting(MessagingAddress initiator, int routingID, ID target) {
+			this.initiator = initiator;
+			this.routingID = routingID;
+			this.target = target;
+		}
+
+		public int hashCode() {
+			return this.initiator.hashCode() ^ this.routingID ^ this.target.hashCode();
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof RecentRouting)) return false;
+
+			RecentRouting other = (RecentRouting)o;
+			return this.routingID == other.routingID
+				&& this.initiator.equals(other.initiator)
+				&& this.target.equals(other.target);
+		}
+	}
+
+	/**
+	 * Returns a hop representing this node,
+	 * with timing recorded in the given message.
+	 */
+	private RoutingHop getSelfRoutingHop(AbstractRecRouteMessage msg) {
+		long now = Timer.currentTimeMillis();
+		long queueTime = -1L, processingTime = -1L;
+
+		if (msg.processStartTime >= 0L) {
+			processingTime = now - msg.processStartTime;
+
+			if (msg.receivedTime >= 0L)
+				queueTime = msg.processStartTime - msg.receivedTime;
+		}
+
+		return RoutingHop.newInstance(getSelfIDAddressPair(),
+				(msg.receivedTime >= 0L ? msg.receivedTime : now),
+				msg.sendTime, -1L, queueTime, processingTime);
+	}
+
 	private final class Forwarder implements Callable<Boolean>, Runnable {
 		private final Message msg;
 		private RoutingContext[] lastRoutingContexts;
@@ -828,10 +1162,14 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 		// REC_ROUTE_{NONE,INVOKE,JOIN}
 		handler = new ExtendedMessageHandler() {
 			public Message process(Message msg) {
+				((AbstractRecRouteMessage)msg).receivedTime = Timer.currentTimeMillis();
+
 				return RecursiveRoutingDriver.this.recAckMessage;
 			}
 
 			public void postProcess(Message msg) {
+				((AbstractRecRouteMessage)msg).processStartTime = Timer.currentTimeMillis();
+
 				// parse the incoming message
 				ID[] targets = ((AbstractRecRouteMessage)msg).target;
 				RoutingContext[] routingContexts = ((AbstractRecRouteMessage)msg).cxt;
@@ -843,6 +1181,12 @@ public final class RecursiveRoutingDriver extends AbstractRoutingDriver {
 						// In case of joining, routing contexts are initialized here.
 				}
 
+				// suppress a duplicate, which has been forwarded speculatively
+				if (RecursiveRoutingDriver.this.isDuplicate((AbstractRecRouteMessage)msg)) {
+					logger.log(Level.FINE, "Duplicate routing request dropped on " + getSelfIDAddressPair().getAddress());
+					return;
+				}
+
 				// remove nodes in blacklist from routing table
 				// Note: this removes nodes which this node itself has not contacted
 				// and prone to be abused by a malicious node.
@@ -36,6 +36,11 @@ public abstract class AbstractRecRouteMessage extends Message {
 	public int ttl;
 	public RoutingHop[] route;
 	public IDAddressPair[] blackList;
+	public long sendTime = -1L;	// when the last node sent this message
+
+	// local members, which are not transmitted
+	public transient long receivedTime = -1L;
+	public transient long processStartTime = -1L;
 
 	public AbstractRecRouteMessage() { super(); }	// for Class#newInstance()
 
@@ -60,6 +65,7 @@ public abstract class AbstractRecRouteMessage extends Message {
 		oos.writeInt(this.ttl);
 		oos.writeObject(this.route);
 		oos.writeObject(this.blackList);
+		oos.writeLong(this.sendTime);
 	}
 
 	public void decodeContents(ObjectInputStream ois) throws IOException, ClassNotFoundException {
@@ -71,5 +77,6 @@ public abstract class AbstractRecRouteMessage extends Message {
 		this.ttl = ois.readInt();
 		this.route = (RoutingHop[])ois.readObject();
 		this.blackList = (IDAddressPair[])ois.readObject();
+		this.sendTime = ois.readLong();
 	}
 }
@@ -36,16 +36,18 @@ public final class IteReplyMessage extends Message {
 	public IDAddressPair[][] responsibleNodeCands;
 	public RoutingContext[] routingContexts;
 	public Serializable[] callbackResult;
+	public long processingTime;	// time spent on the replying node (msec)
 
 	public IteReplyMessage() { super(); }	// for Class#newInstance()
 
 	public IteReplyMessage(
 			IDAddressPair[][] nextHopCandidates, IDAddressPair[][] responsibleNodeCands, RoutingContext[] routingContexts,
-			Serializable[] callbackResult) {
+			Serializable[] callbackResult, long processingTime) {
 		this.nextHopCandidates = nextHopCandidates;
 		this.responsibleNodeCands = responsibleNodeCands;
 		this.routingContexts = routingContexts;
 		this.callbackResult = callbackResult;
+		this.processingTime = processingTime;
 	}
 
 	public void encodeContents(ObjectOutputStream oos) throws IOException {
@@ -53,6 +55,7 @@ public final class IteReplyMessage extends Message {
 		oos.writeObject(this.responsibleNodeCands);
 		oos.writeObject(this.routingContexts);
 		oos.writeObject(this.callbackResult);
+		oos.writeLong(this.processingTime);
 	}
 
 	public void decodeContents(ObjectInputStream ois) throws IOException, ClassNotFoundException {
@@ -60,5 +63,6 @@ public final class IteReplyMessage extends Message {
 		this.responsibleNodeCands = (IDAddressPair[][])ois.readObject();
 		this.routingContexts = (RoutingContext[])ois.readObject();
 		this.callbackResult = (Serializable[])ois.readObject();
+		this.processingTime = ois.readLong();
 	}
 }
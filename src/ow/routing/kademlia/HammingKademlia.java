@@ -19,18 +19,16 @@ package ow.routing.kademlia;
 
 import ow.id.ID;
 import ow.id.IDAddressPair;
-import ow.id.comparator.AlgoBasedTowardTargetIDAddrComparator;
 import ow.routing.RoutingAlgorithmConfiguration;
 import ow.routing.RoutingContext;
 import ow.routing.RoutingService;
 import ow.routing.impl.AbstractRoutingAlgorithm;
+import ow.routing.impl.DistanceRanking;
 import ow.util.HTMLUtil;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.List;
 import java.util.logging.Level;
 
 /**
@@ -45,22 +43,23 @@ public final class HammingKademlia extends Kademlia {
 	}
 
 	@Override
-	public BigInteger distance(ID to, ID from) {
-		BigInteger toInt = to.toBigInteger();
-		BigInteger fromInt = from.toBigInteger();
-
+	public long[] distance(ID to, ID from, long[] result) {
 		// Hamming distance
-		return BigInteger.valueOf(fromInt.xor(toInt).bitCount());
+		for (int i = 0; i < result.length - 1; i++) result[i] = 0L;
+		result[result.length - 1] = hammingDistance(to, from);
+
+		return result;
+	}
+
+	private static int hammingDistance(ID to, ID from) {
+		return ID.xorBitCount(from.getWords(), to.getWords());
 	}
 
 	public IDAddressPair[] nextHopCandidates(ID targetID, ID lastHop /*ignored*/, boolean joining,
 			int maxNum, RoutingContext cxt) {
 		final IDAddressPair[] results = new IDAddressPair[maxNum];
 
-		int distance = distance(targetID, selfIDAddress.getID()).intValue();
-
-		Comparator<IDAddressPair> comparator =
-			new AlgoBasedTowardTargetIDAddrComparator(this, targetID);
+		int distance = hammingDistance(targetID, selfIDAddress.getID());
 
 		// pick nodes from k-buckets
 		// and fulfill the resulting array with them
@@ -70,14 +69,14 @@ public final class HammingKademlia extends Kademlia {
 		if (distance > 0) {	// this node is not the target
 			kb = this.kBuckets[distance];
 			if (kb != null) {
-				index = pickNodes(index, results, kb, comparator);
+				index = pickNodes(index, results, kb, targetID);
 				if (index >= results.length) return results;		// fulfilled
 			}
 
 			for (int i = distance - 1; i >= 0; i--) {
 				kb = this.kBuckets[i];
 				if (kb != null) {
-					index = pickNodes(index, results, kb, comparator);
+					index = pickNodes(index, results, kb, targetID);
 					if (index >= results.length) return results;	// fulfilled
 				}
 			}
@@ -92,7 +91,7 @@ public final class HammingKademlia extends Kademlia {
 			for (int i = distance; i < this.numKBuckets; i++) {
 				kb = this.kBuckets[i];
 				if (kb != null) {
-					index = pickNodes(index, results, kb, comparator);
+					index = pickNodes(index, results, kb, targetID);
 					if (index >= results.length) return results;	// fulfilled
 				}
 			}
@@ -101,7 +100,7 @@ public final class HammingKademlia extends Kademlia {
 		for (int i = distance + 1; i < this.numKBuckets; i++) {
 			kb = this.kBuckets[i];
 			if (kb != null) {
-				index = pickNodes(index, results, kb, comparator);
+				index = pickNodes(index, results, kb, targetID);
 			}
 		}
 
@@ -118,15 +117,13 @@ public final class HammingKademlia extends Kademlia {
 		return ret;
 	}
 
-	private int pickNodes(int index, IDAddressPair[] dest, KBucket kb, Comparator<IDAddressPair> comparator) {
-		IDAddressPair[] result;
-		if (true) {	// performs better
-			result = kb.toSortedArray(comparator);
-		}
-		else {
-			result = kb.toArray();
-			Arrays.<IDAddressPair>sort(result, comparator);
-		}
+	private int pickNodes(int index, IDAddressPair[] dest, KBucket kb, ID targetID) {
+		DistanceRanking<IDAddressPair> ranking = DistanceRanking.towardTarget(this, targetID);
+		ranking.addAll(kb.snapshot());
+
+		List<IDAddressPair> sorted = ranking.top(dest.length - index);
+		IDAddressPair[] result = new IDAddressPair[sorted.size()];
+		sorted.toArray(result);
 
 		int resultLen = result.length;
 		int destLen = dest.length;
@@ -144,7 +141,7 @@ public final class HammingKademlia extends Kademlia {
 			return;
 		}
 
-		int distance = distance(from.getID(), selfIDAddress.getID()).intValue();
+		int distance = hammingDistance(from.getID(), selfIDAddress.getID());
 
 		KBucket kb;
 		synchronized (this.kBuckets) {
@@ -165,7 +162,7 @@ public final class HammingKademlia extends Kademlia {
 			// from is myself, and ignore
 			return;
 		}
-		int distance = distance(failedNode.getID(), selfIDAddress.getID()).intValue();
+		int distance = hammingDistance(failedNode.getID(), selfIDAddress.getID());
 
 		synchronized (this.kBuckets) {
 			KBucket kb = this.kBuckets[distance];
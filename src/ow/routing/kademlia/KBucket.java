@@ -17,12 +17,10 @@
 
 package ow.routing.kademlia;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import ow.id.IDAddressPair;
 import ow.routing.RoutingAlgorithm;
@@ -30,21 +28,25 @@ import ow.routing.RoutingAlgorithm;
 /**
  * k-bucket for Kademlia.
  * Nearer to the tail is fresh and the head is the least-recently seen node.
+ * Every update publishes a new array, so that readers do not lock.
+ * Writers are serialized on this instance.
  */
 final class KBucket implements Iterable<IDAddressPair> {
+	private final static IDAddressPair[] EMPTY = new IDAddressPair[0];
+
 	private final Kademlia algorithm;
-	private final List<IDAddressPair> internalList = new ArrayList<IDAddressPair>();
+	private volatile IDAddressPair[] entries = EMPTY;
 
 	KBucket(RoutingAlgorithm algorithm) {
 		this.algorithm = (Kademlia)algorithm;
 	}
 
 	synchronized void clear() {
-		this.internalList.clear();
+		this.entries = EMPTY;
 	}
 
-	public synchronized int size() {
-		return this.internalList.size();
+	public int size() {
+		return this.entries.length;
 	}
 
 	/**
@@ -53,30 +55,48 @@ final class KBucket implements Iterable<IDAddressPair> {
 	 * @return true if this k-bucket contained the specified element.
 	 */
 	public synchronized boolean remove(IDAddressPair elem) {
-		return this.internalList.remove(elem);
+		IDAddressPair[] s = this.entries;
+		int idx = indexOf(s, elem);
+		if (idx < 0) return false;
+
+		this.entries = removeAt(s, idx);
+		return true;
+	}
+
+	private static int indexOf(IDAddressPair[] s, IDAddressPair elem) {
+		for (int i = 0; i < s.length; i++) {
+			if (s[i].equals(elem)) return i;
+		}
+		return -1;
+	}
+
+	private static IDAddressPair[] removeAt(IDAddressPair[] s, int idx) {
+		IDAddressPair[] ret = new IDAddressPair[s.length - 1];
+		System.arraycopy(s, 0, ret, 0, idx);
+		System.arraycopy(s, idx + 1, ret, idx, s.length - idx - 1);
+		return ret;
+	}
+
+	private static IDAddressPair[] append(IDAddressPair[] s, IDAddressPair elem) {
+		IDAddressPair[] ret = Arrays.copyOf(s, s.length + 1);
+		ret[s.length] = elem;
+		return ret;
 	}
 
 	/**
 	 * Returns the least-recently seen node at the head of this k-bucket.
 	 */
 	private IDAddressPair peekHead() {
-		IDAddressPair ret = null;
-		try {
-			ret = this.internalList.get(0);
-		}
-		catch (IndexOutOfBoundsException e) {} // list is empty
-
-		return ret;
+		IDAddressPair[] s = this.entries;
+		return (s.length > 0 ? s[0] : null);
 	}
 
 	private IDAddressPair removeHead() {
-		IDAddressPair ret = null;
-		try {
-			ret = this.internalList.remove(0);
-		}
-		catch (IndexOutOfBoundsException e) {} // list is empty
+		IDAddressPair[] s = this.entries;
+		if (s.length <= 0) return null;	// list is empty
 
-		return ret;
+		this.entries = removeAt(s, 0);
+		return s[0];
 	}
 
 	private IDAddressPair nodeBeingChecked = null;
@@ -91,13 +111,17 @@ final class KBucket implements Iterable<IDAddressPair> {
 				return;
 			}
 
-			if (this.internalList.remove(newEntry)) {
-				this.internalList.add(newEntry);
+			IDAddressPair[] s = this.entries;
+			int idx = indexOf(s, newEntry);
+			if (idx >= 0) {
+				if (idx < s.length - 1) {
+					this.entries = append(removeAt(s, idx), newEntry);
+				}
 				return;
 			}
 			else {
-				if (this.internalList.size() < this.algorithm.kBucketLength) {
-					this.internalList.add(newEntry);
+				if (s.length < this.algorithm.kBucketLength) {
+					this.entries = append(s, newEntry);
 					return;
 				}
 				else {
@@ -127,20 +151,25 @@ final class KBucket implements Iterable<IDAddressPair> {
 		}
 	}
 
-	public synchronized Iterator<IDAddressPair> iterator() {
-		return this.internalList.iterator();
+	public Iterator<IDAddressPair> iterator() {
+		return Collections.unmodifiableList(Arrays.asList(this.entries)).iterator();
 	}
 
-	public synchronized IDAddressPair[] toArray() {
-		IDAddressPair[] ret = new IDAddressPair[this.internalList.size()];
-		return this.internalList.toArray(ret);
+	/**
+	 * Returns the current entries from the head to the tail.
+	 * Note that the returned array is shared and must not be modified.
+	 */
+	IDAddressPair[] snapshot() {
+		return this.entries;
 	}
 
-	public synchronized IDAddressPair[] toSortedArray(Comparator<IDAddressPair> comparator) {
-		SortedSet<IDAddressPair> s = new TreeSet<IDAddressPair>(comparator);
-		s.addAll(this.internalList);
+	public IDAddressPair[] toArray() {
+		return this.entries.clone();
+	}
 
-		IDAddressPair[] ret = new IDAddressPair[s.size()];
-		return s.toArray(ret);
+	public IDAddressPair[] toSortedArray(Comparator<IDAddressPair> comparator) {
+		IDAddressPair[] ret = this.entries.clone();
+		Arrays.sort(ret, comparator);
+		return ret;
 	}
 }
@@ -18,19 +18,17 @@
 package ow.routing.kademlia;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.List;
 import java.util.logging.Level;
 
 import ow.id.ID;
 import ow.id.IDAddressPair;
-import ow.id.comparator.AlgoBasedTowardTargetIDAddrComparator;
 import ow.routing.RoutingAlgorithmConfiguration;
 import ow.routing.RoutingContext;
 import ow.routing.RoutingService;
 import ow.routing.impl.AbstractRoutingAlgorithm;
+import ow.routing.impl.DistanceRanking;
 import ow.util.HTMLUtil;
 
 /**
@@ -74,23 +72,26 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 
 	public synchronized void resume() { /* do nothing */ }
 
-	public BigInteger distance(ID to, ID from) {
-		BigInteger toInt = to.toBigInteger();
-		BigInteger fromInt = from.toBigInteger();
-
+	public long[] distance(ID to, ID from, long[] result) {
 		// XOR distance
-		return fromInt.xor(toInt);
+		return ID.xorWords(from.getWords(), to.getWords(), result);
+	}
+
+	/**
+	 * Returns the index of the highest set bit of the XOR distance, which is the index of a k-bucket.
+	 *
+	 * @return -1 if the given IDs are the same.
+	 */
+	private static int highestSetBitOfDistance(ID to, ID from) {
+		return to.getSize() * 8 - ID.matchLengthFromMSB(to, from) - 1;
 	}
 
 	public IDAddressPair[] nextHopCandidates(ID targetID, ID lastHop /*ignored*/, boolean joining,
 			int maxNum, RoutingContext cxt) {
 		final IDAddressPair[] results = new IDAddressPair[maxNum];
 
-		BigInteger distance = distance(targetID, selfIDAddress.getID());
-		int highestSetBit = distance.bitLength() - 1;
-
-		Comparator<IDAddressPair> comparator =
-			new AlgoBasedTowardTargetIDAddrComparator(this, targetID);
+		long[] distance = distance(targetID, selfIDAddress.getID(), new long[ID.getWordLength(targetID.getSize())]);
+		int highestSetBit = ID.bitLength(distance) - 1;
 
 		// pick nodes from k-buckets
 		// and fulfill the resulting array with them
@@ -100,15 +101,15 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 		if (highestSetBit >= 0) {	// this node is not the target
 			kb = this.kBuckets[highestSetBit];
 			if (kb != null) {
-				index = pickNodes(index, results, kb, comparator);
+				index = pickNodes(index, results, kb, targetID);
 				if (index >= results.length) return results;		// fulfilled
 			}
 
 			for (int i = highestSetBit - 1; i >= 0; i--) {
-				if (distance.testBit(i)) {
+				if (ID.testBit(distance, i)) {
 					kb = this.kBuckets[i];
 					if (kb != null) {
-						index = pickNodes(index, results, kb, comparator);
+						index = pickNodes(index, results, kb, targetID);
 						if (index >= results.length) return results;	// fulfilled
 					}
 				}
@@ -122,10 +123,10 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 
 		if (highestSetBit >= 0) {	// this node is not the target
 			for (int i = 0; i < highestSetBit; i++) {
-				if (!distance.testBit(i)) {
+				if (!ID.testBit(distance, i)) {
 					kb = this.kBuckets[i];
 					if (kb != null) {
-						index = pickNodes(index, results, kb, comparator);
+						index = pickNodes(index, results, kb, targetID);
 						if (index >= results.length) return results;	// fulfilled
 					}
 				}
@@ -135,7 +136,7 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 		for (int i = highestSetBit + 1; i < this.numKBuckets; i++) {
 			kb = this.kBuckets[i];
 			if (kb != null) {
-				index = pickNodes(index, results, kb, comparator);
+				index = pickNodes(index, results, kb, targetID);
 			}
 		}
 
@@ -156,15 +157,13 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 		return this.nextHopCandidates(target, null, false, maxNum, null);
 	}
 
-	private int pickNodes(int index, IDAddressPair[] dest, KBucket kb, Comparator<IDAddressPair> comparator) {
-		IDAddressPair[] result;
-		if (true) {	// performs better
-			result = kb.toSortedArray(comparator);
-		}
-		else {
-			result = kb.toArray();
-			Arrays.<IDAddressPair>sort(result, comparator);
-		}
+	private int pickNodes(int index, IDAddressPair[] dest, KBucket kb, ID targetID) {
+		DistanceRanking<IDAddressPair> ranking = DistanceRanking.towardTarget(this, targetID);
+		ranking.addAll(kb.snapshot());
+
+		List<IDAddressPair> sorted = ranking.top(dest.length - index);
+		IDAddressPair[] result = new IDAddressPair[sorted.size()];
+		sorted.toArray(result);
 
 		int resultLen = result.length;
 		int destLen = dest.length;
@@ -203,8 +202,7 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 	}
 
 	public void touch(IDAddressPair from) {
-		BigInteger distance = distance(from.getID(), selfIDAddress.getID());
-		int highestSetBit = distance.bitLength() - 1;
+		int highestSetBit = highestSetBitOfDistance(from.getID(), selfIDAddress.getID());
 
 		if (highestSetBit < 0) {
 			// from is myself, and ignore
@@ -225,8 +223,7 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 	 * Remove the specified node from k-buckets.
 	 */
 	public void forget(IDAddressPair failedNode) {
-		BigInteger distance = distance(failedNode.getID(), selfIDAddress.getID());
-		int highestSetBit = distance.bitLength() - 1;
+		int highestSetBit = highestSetBitOfDistance(failedNode.getID(), selfIDAddress.getID());
 
 		if (highestSetBit < 0) {
 			// from is myself, and ignore
@@ -252,10 +249,8 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 			KBucket kb = kBuckets[i];
 			if (kb != null && kb.size() > 0) {
 				sb.append("\n ").append(i).append(":");
-				synchronized (kb) {
-					for (IDAddressPair pair: kb) {
-						sb.append("\n  ").append(pair.toString(verboseLevel));
-					}
+				for (IDAddressPair pair: kb) {
+					sb.append("\n  ").append(pair.toString(verboseLevel));
 				}
 			}
 		}
@@ -272,12 +267,10 @@ public class Kademlia extends AbstractRoutingAlgorithm {
 			KBucket kb = kBuckets[i];
 			if (kb != null && kb.size() > 0) {
 				sb.append("<tr><td>" + HTMLUtil.stringInHTML(Integer.toString(i)) + "</td><td></td><td></td></tr>\n");
-				synchronized (kb) {
-					for (IDAddressPair pair: kb) {
-						String url = HTMLUtil.convertMessagingAddressToURL(pair.getAddress());
-						sb.append("<tr><td></td><td><a href=\"" + url + "\">" + HTMLUtil.stringInHTML(url) + "</a></td><td>"
-								+ HTMLUtil.stringInHTML(pair.getID().toString()) + "</td></tr>\n");
-					}
+				for (IDAddressPair pair: kb) {
+					String url = HTMLUtil.convertMessagingAddressToURL(pair.getAddress());
+					sb.append("<tr><td></td><td><a href=\"" + url + "\">" + HTMLUtil.stringInHTML(url) + "</a></td><td>"
+							+ HTMLUtil.stringInHTML(pair.getID().toString()) + "</td></tr>\n");
 				}
 			}
 		}
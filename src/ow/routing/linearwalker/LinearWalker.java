@@ -21,8 +21,6 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.SortedSet;
 import java.util.logging.Level;
 
 import ow.id.ID;
@@ -35,6 +33,7 @@ import ow.routing.RoutingAlgorithmConfiguration;
 import ow.routing.RoutingContext;
 import ow.routing.RoutingService;
 import ow.routing.impl.AbstractRoutingAlgorithm;
+import ow.routing.impl.DistanceRanking;
 import ow.routing.linearwalker.message.RepSuccAndPredMessage;
 import ow.routing.linearwalker.message.ReqSuccAndPredMessage;
 import ow.util.HTMLUtil;
@@ -150,17 +149,14 @@ public class LinearWalker extends AbstractRoutingAlgorithm {
 		return new LinearWalkerRoutingContext();
 	}
 
-	public BigInteger distance(ID to, ID from) {
-		BigInteger toInt = to.toBigInteger();
-		BigInteger fromInt = from.toBigInteger();
-
-		BigInteger distance = toInt.subtract(fromInt);	// distance = to - from
-		if (distance.compareTo(BigInteger.ZERO) <= 0) {
-			distance = distance.add(this.sizeOfIDSpace);
+	public long[] distance(ID to, ID from, long[] result) {
+		ID.subtractWords(to.getWords(), from.getWords(), this.idSizeInBit, result);	// distance = to - from
+		if (ID.isZero(result)) {
+			ID.setBit(result, this.idSizeInBit);
 				// distance = 2 ^ # of bit if to and from are the same ID
 		}
 
-		return distance;	// 1 <= distance <= 2 ^ # of bit
+		return result;	// 1 <= distance <= 2 ^ # of bit
 	}
 
 	public IDAddressPair[] nextHopCandidates(ID target, ID lastHop, boolean joining,
@@ -196,31 +192,26 @@ public class LinearWalker extends AbstractRoutingAlgorithm {
 		}
 
 		// calculate closest nodes
-		SortedSet<IDAddressPair> closestSet = this.successorList.closestTo(target, true);
-		if (this.predecessor != null)
-			closestSet.add(this.predecessor);
+		DistanceRanking<IDAddressPair> closest = DistanceRanking.towardTarget(this, target);
+		closest.addAll(this.successorList.toArray());
+		closest.add(selfIDAddress);
+		closest.add(this.predecessor);
 
-		this.addToNextHopCandidatesSet(closestSet);	// call LinearWalker or AbstractChord
+		this.addToNextHopCandidates(closest);	// call LinearWalker or AbstractChord
 
 		if (joining) {
-			for (Iterator<IDAddressPair> ite = closestSet.iterator(); ite.hasNext();) {
-				IDAddressPair p = ite.next();
-				if (target.equals(p.getID())) {
-					ite.remove();
-				}
-			}
+			closest.removeID(target);
 		}
 
-		int len = Math.min(maxNumber, closestSet.size());
+		int len = Math.min(maxNumber, closest.size());
 		IDAddressPair[] closestArray = new IDAddressPair[len];
 
 		if (len > 0) {
 			int i = 0;
 			if (context.inLastPhase()) {
-				closestArray[i++] = closestSet.last();
+				closestArray[i++] = closest.last();
 			}
-			for (IDAddressPair p: closestSet) {
-				if (i >= len) break;
+			for (IDAddressPair p: closest.top(len - i)) {
 				closestArray[i++] = p;
 			}
 		}
@@ -231,7 +222,7 @@ public class LinearWalker extends AbstractRoutingAlgorithm {
 		return closestArray;
 	}
 
-	protected void addToNextHopCandidatesSet(SortedSet<IDAddressPair> nextHopCandidatesSet) {}	// overridden by AbstractChord
+	protected void addToNextHopCandidates(DistanceRanking<IDAddressPair> nextHopCandidates) {}	// overridden by AbstractChord
 
 	public IDAddressPair[] responsibleNodeCandidates(ID target, int maxNumber) {
 		return this.successorList.responsibleNodeCandidates(target, maxNumber, this.predecessor);
@@ -18,6 +18,8 @@
 package ow.routing.linearwalker;
 
 import java.math.BigInteger;
+import java.util.Comparator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -25,11 +27,17 @@ import ow.id.ID;
 import ow.id.IDAddressPair;
 import ow.id.comparator.AlgoBasedFromSrcIDAddrPairComparator;
 import ow.id.comparator.AlgoBasedTowardTargetIDAddrComparator;
+import ow.routing.impl.CopyOnWriteNodeSet;
+import ow.routing.impl.DistanceRanking;
 
+/**
+ * Successor list.
+ * Readers see a snapshot of the list without locking and writers are serialized on this instance.
+ */
 public final class SuccessorList {
 	private final IDAddressPair selfIDAddress;
-	private final int maxLength;
-	private final SortedSet<IDAddressPair> list;	// not being empty
+	private final Comparator<IDAddressPair> comparator;
+	private final CopyOnWriteNodeSet list;	// not being empty
 	private final LinearWalker algorithm;
 
 	/**
@@ -40,9 +48,8 @@ public final class SuccessorList {
 	public SuccessorList(LinearWalker algo, IDAddressPair selfIDAddress, int maxLength) {
 		this.algorithm = algo;
 		this.selfIDAddress = selfIDAddress;
-		this.maxLength = maxLength;
-		this.list = new TreeSet<IDAddressPair>(
-				new AlgoBasedFromSrcIDAddrPairComparator(algo, selfIDAddress.getID()));
+		this.comparator = new AlgoBasedFromSrcIDAddrPairComparator(algo, selfIDAddress.getID());
+		this.list = new CopyOnWriteNodeSet(this.comparator, maxLength);
 
 		// initialize
 		this.clear();
@@ -53,38 +60,29 @@ public final class SuccessorList {
 		this.list.add(selfIDAddress);
 	}
 
+	/**
+	 * Returns the current list, which is not empty.
+	 */
+	private IDAddressPair[] snapshot() {
+		IDAddressPair[] s = this.list.snapshot();
+		if (s.length <= 0) {
+			// being updated by clear() or remove()
+			s = new IDAddressPair[] { this.selfIDAddress };
+		}
+
+		return s;
+	}
+
 	public void add(IDAddressPair elem) {
 		if (elem == null) return;
 
-		synchronized (this.list) {
-			boolean added = this.list.add(elem);
-
-			if (added && maxLength > 0) {
-				while (this.list.size() > maxLength) {
-					IDAddressPair lastElem = this.list.last();
-					this.list.remove(lastElem);
-				}
-			}
-		}
+		this.list.add(elem);
 	}
 
 	public void addAll(IDAddressPair[] elems) {
 		if (elems == null) return;
 
-		synchronized (this.list) {
-			boolean added = false;
-
-			for (IDAddressPair elem: elems) {
-				added |= this.list.add(elem);
-			}
-
-			if (added && maxLength > 0) {
-				while (this.list.size() > maxLength) {
-					IDAddressPair lastElem = this.list.last();
-					this.list.remove(lastElem);
-				}
-			}
-		}
+		this.list.addAll(elems);
 	}
 
 	public boolean contains(IDAddressPair elem) {
@@ -93,55 +91,48 @@ public final class SuccessorList {
 		return this.list.contains(elem);
 	}
 
-	public boolean remove(IDAddressPair elem) {
-		boolean ret;
-
-		synchronized (this.list) {
-			ret = this.list.remove(elem); 
+	public synchronized boolean remove(IDAddressPair elem) {
+		boolean ret = this.list.remove(elem);
 
-			if (this.list.isEmpty()) {
-				this.list.add(selfIDAddress);
-			}
+		if (this.list.isEmpty()) {
+			this.list.add(selfIDAddress);
 		}
 
 		return ret;
 	}
 
 	public IDAddressPair first() {
-		synchronized (this.list) {
-			return this.list.first();
-		}
+		return this.snapshot()[0];
 	}
 
 	public IDAddressPair lastOtherNode() {
-		synchronized (this.list) {
-			SortedSet<IDAddressPair> headSet = this.list.headSet(selfIDAddress);
-			if (headSet.isEmpty())
-				return null;
-			else
-				return headSet.last();
-		}
+		IDAddressPair[] s = this.snapshot();
+
+		// the last element of the head set to this node
+		int idx = CopyOnWriteNodeSet.indexOf(s, this.selfIDAddress, this.comparator);
+		if (idx < 0) idx = -idx - 1;
+
+		if (idx <= 0)
+			return null;
+		else
+			return s[idx - 1];
 	}
 
 	public IDAddressPair[] toArray() {
-		synchronized (this.list) {
-			IDAddressPair[] array = new IDAddressPair[this.list.size()];
-			return this.list.toArray(array);
-		}
+		return this.snapshot().clone();
 	}
 
 	public IDAddressPair[] toArrayExcludingSelf() {
-		IDAddressPair[] array;
+		IDAddressPair[] s = this.snapshot();
 
-		synchronized (this.list) {
-			int size = this.list.size();
-			if (this.list.contains(this.selfIDAddress)) size--;
+		int size = s.length;
+		for (IDAddressPair p: s)
+			if (this.selfIDAddress.equals(p)) size--;
 
-			array = new IDAddressPair[size];
-			int i = 0;
-			for (IDAddressPair p: this.list)
-				if (!this.selfIDAddress.equals(p)) array[i++] = p;
-		}
+		IDAddressPair[] array = new IDAddressPair[size];
+		int i = 0;
+		for (IDAddressPair p: s)
+			if (!this.selfIDAddress.equals(p)) array[i++] = p;
 
 		return array;
 	}
@@ -153,42 +144,31 @@ public final class SuccessorList {
 		}
 		ID targetMinusOne = ID.getID(targetMinusOneInt, target.getSize());
 
-		SortedSet<IDAddressPair> retSet = new TreeSet<IDAddressPair>(
-					new AlgoBasedFromSrcIDAddrPairComparator(this.algorithm, targetMinusOne));
+		DistanceRanking<IDAddressPair> ranking = DistanceRanking.fromSource(this.algorithm, targetMinusOne);
 
 		// add all candidates
-		retSet.add(selfIDAddress);
-		synchronized (this.list) {
-			retSet.addAll(this.list);
-		}
-		if (predecessor != null) retSet.add(predecessor);
+		ranking.add(selfIDAddress);
+		ranking.addAll(this.snapshot());
+		if (predecessor != null) ranking.add(predecessor);
 
 //System.out.println("target - 1         : " + targetMinusOne);
 //System.out.println("resp candidates for: " + target);
-//for (IDAddressPair p: retSet) {
+//for (IDAddressPair p: ranking.sorted()) {
 //	System.out.println(" " + p);
 //	System.out.println("    dist: " + algrithm.distance(p.getID(), targetMinusOne).toString(16));
 //}
 		// convert to an array
-		int len = Math.min(maxNumber, retSet.size());
-		IDAddressPair[] ret = new IDAddressPair[len];
-
-		int i = 0;
-		for (IDAddressPair p: retSet) {
-			if (i >= len) break;
-			ret[i++] = p;
-		}
+		List<IDAddressPair> top = ranking.top(maxNumber);
+		IDAddressPair[] ret = new IDAddressPair[top.size()];
 
-		return ret;
+		return top.toArray(ret);
 	}
 
 	public SortedSet<IDAddressPair> closestTo(ID target, boolean includeSelf) {
 		SortedSet<IDAddressPair> result = new TreeSet<IDAddressPair>(
 				new AlgoBasedTowardTargetIDAddrComparator(algorithm, target));
 
-		synchronized (this.list) {
-			result.addAll(this.list);
-		}
+		for (IDAddressPair p: this.snapshot()) result.add(p);
 
 		if (includeSelf) result.add(this.selfIDAddress);
 		else result.remove(this.selfIDAddress);
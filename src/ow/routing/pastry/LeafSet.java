@@ -20,24 +20,27 @@ package ow.routing.pastry;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.NoSuchElementException;
+import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import ow.id.ID;
 import ow.id.IDAddressPair;
-import ow.id.comparator.AlgoBasedTowardTargetIDAddrComparator;
 import ow.id.comparator.ClockwiseFromSrcIDAddrComparator;
 import ow.id.comparator.ClockwiseTowardTargetIDAddrComparator;
 import ow.routing.RoutingAlgorithm;
+import ow.routing.impl.CopyOnWriteNodeSet;
+import ow.routing.impl.DistanceRanking;
 import ow.util.HTMLUtil;
 
+/**
+ * Leaf set of Pastry.
+ * Readers see snapshots of both sides without locking and writers are serialized on each side.
+ */
 public final class LeafSet {
 	private final int oneSideSize;
 	// following sets are sorted by distance from ID of this node
-	private SortedSet<IDAddressPair> smallerSet;	
-	private SortedSet<IDAddressPair> largerSet;
+	private final CopyOnWriteNodeSet smallerSet;
+	private final CopyOnWriteNodeSet largerSet;
 
 	private volatile RoutingAlgorithm algorithm = null;
 	private volatile IDAddressPair selfIDAddress = null;
@@ -54,169 +57,100 @@ public final class LeafSet {
 		this.largerComparator =
 			new ClockwiseFromSrcIDAddrComparator(idSizeInBit, selfIDAddress.getID());
 
-		this.clear();
+		this.smallerSet = new CopyOnWriteNodeSet(this.smallerComparator, oneSideSize);
+		this.largerSet = new CopyOnWriteNodeSet(this.largerComparator, oneSideSize);
 	}
 
 	synchronized void clear() {
-		this.smallerSet = new TreeSet<IDAddressPair>(this.smallerComparator);
-		this.largerSet = new TreeSet<IDAddressPair>(this.largerComparator);
+		this.smallerSet.clear();
+		this.largerSet.clear();
 	}
 
 	public void merge(IDAddressPair elem) {
 		if (elem.equals(this.selfIDAddress)) return;
 
-		this.mergeToSortedSet(this.smallerSet, elem);
-		this.mergeToSortedSet(this.largerSet, elem);
-	}
-
-	private void mergeToSortedSet(SortedSet<IDAddressPair> set, IDAddressPair elem) {
-		synchronized (set) {
-			set.add(elem);
-
-			while (set.size() > this.oneSideSize) {
-				IDAddressPair lastElem = set.last();
-				set.remove(lastElem);
-			}
-		}
+		this.smallerSet.add(elem);
+		this.largerSet.add(elem);
 	}
 
 	public void merge(IDAddressPair[] leafSet) {
 		if (leafSet != null) {
-			this.mergeToSortedSet(this.smallerSet, leafSet);
-			this.mergeToSortedSet(this.largerSet, leafSet);
-		}
-	}
-
-	private void mergeToSortedSet(SortedSet<IDAddressPair> set, IDAddressPair[] oneSideLeafSet) {
-		synchronized (set) {
-			synchronized (oneSideLeafSet) {
-				for (IDAddressPair p: oneSideLeafSet) {
-					if (p == null || p.equals(this.selfIDAddress)) continue;
+			IDAddressPair[] others = new IDAddressPair[leafSet.length];
+			int n = 0;
+			for (IDAddressPair p: leafSet) {
+				if (p == null || p.equals(this.selfIDAddress)) continue;
 
-					set.add(p);
-				}
+				others[n++] = p;
 			}
-
-			while (set.size() > this.oneSideSize) {
-				IDAddressPair lastElem = set.last();
-				set.remove(lastElem);
+			if (n < others.length) {
+				IDAddressPair[] shortened = new IDAddressPair[n];
+				System.arraycopy(others, 0, shortened, 0, n);
+				others = shortened;
 			}
+
+			this.smallerSet.addAll(others);
+			this.largerSet.addAll(others);
 		}
 	}
 
 	public void remove(IDAddressPair elem) {
-		synchronized (this.smallerSet) {
-			this.smallerSet.remove(elem);
-		}
-
-		synchronized (this.largerSet) {
-			this.largerSet.remove(elem);
-		}
+		this.smallerSet.remove(elem);
+		this.largerSet.remove(elem);
 	}
 
 	public boolean coversWithSmallerSet(IDAddressPair elem) {
-		try {
-			IDAddressPair smallest;
-			synchronized (this.smallerSet) {
-				smallest = this.smallerSet.last();
-			}
+		IDAddressPair smallest = this.smallerSet.last();
 
-			if (this.smallerComparator.compare(elem, smallest) <= 0
-					&& !elem.equals(this.selfIDAddress))
-				return true;
-		}
-		catch (NoSuchElementException e) { /* ignore */ }
+		if (smallest != null
+				&& this.smallerComparator.compare(elem, smallest) <= 0
+				&& !elem.equals(this.selfIDAddress))
+			return true;
 
 		return false;
 	}
 
 	public boolean coversWithLargerSet(IDAddressPair elem) {
-		try {
-			IDAddressPair largest;
-			synchronized (this.largerSet) {
-				largest = this.largerSet.last();
-			}
+		IDAddressPair largest = this.largerSet.last();
 
-			if (this.largerComparator.compare(elem, largest) <= 0
-					&& !elem.equals(this.selfIDAddress))
-				return true;
-		}
-		catch (NoSuchElementException e) { /* ignore */ } 
+		if (largest != null
+				&& this.largerComparator.compare(elem, largest) <= 0
+				&& !elem.equals(this.selfIDAddress))
+			return true;
 
 		return false;
 	}
 
 	public boolean coversEntireRing() {
-		IDAddressPair smallest = null;
-		IDAddressPair largest = null;
-
-		try {
-			synchronized (this.smallerSet) {
-				smallest = this.smallerSet.last();
-			}
-			if (this.largerSet.contains(smallest))
-				return true;
+		IDAddressPair smallest = this.smallerSet.last();
+		if (smallest == null) return true;
+		if (this.largerSet.contains(smallest))
+			return true;
 
-			synchronized (this.largerSet) {
-				largest = this.largerSet.last();
-			}
-			if (this.smallerSet.contains(largest))
-				return true;
-		}
-		catch (NoSuchElementException e) {
+		IDAddressPair largest = this.largerSet.last();
+		if (largest == null) return true;
+		if (this.smallerSet.contains(largest))
 			return true;
-		}
 
 		return false;
 	}
 
 	public int getOneSideSize() { return this.oneSideSize; }
-	public int getNumberOfSmallerNodes() {
-		return this.getSizeOfSortedSet(this.smallerSet);
-	}
-	public int getNumberOfLargerNodes() {
-		return this.getSizeOfSortedSet(this.largerSet);
-	}
+	public int getNumberOfSmallerNodes() { return this.smallerSet.size(); }
+	public int getNumberOfLargerNodes() { return this.largerSet.size(); }
 
-	private int getSizeOfSortedSet(SortedSet<IDAddressPair> set) {
-		synchronized (set) { return set.size(); }
-	}
+	public IDAddressPair getNearestSmallerNode() { return this.smallerSet.first(); }
+	public IDAddressPair getNearestLargerNode() { return this.largerSet.first(); }
+	public IDAddressPair getFarthestSmallerNode() { return this.smallerSet.last(); }
+	public IDAddressPair getFarthestLargerNode() { return this.largerSet.last(); }
 
-	public IDAddressPair getNearestSmallerNode() { return getFirstElement(this.smallerSet); }
-	public IDAddressPair getNearestLargerNode() { return getFirstElement(this.largerSet); }
-	public IDAddressPair getFarthestSmallerNode() { return getLastElement(this.smallerSet); }
-	public IDAddressPair getFarthestLargerNode() { return getLastElement(this.largerSet); }
+	public List<IDAddressPair> closestNodes(ID target, int maxNum) {
+		DistanceRanking<IDAddressPair> ranking = DistanceRanking.towardTarget(this.algorithm, target);
 
-	private IDAddressPair getFirstElement(SortedSet<IDAddressPair> set) {
-		try { return set.first(); } catch (NoSuchElementException e) { return null; }
-	}
+		ranking.add(selfIDAddress);	// results includes this node itself
+		ranking.addAll(this.smallerSet.snapshot());
+		ranking.addAll(this.largerSet.snapshot());
 
-	private IDAddressPair getLastElement(SortedSet<IDAddressPair> set) {
-		try { return set.last(); } catch (NoSuchElementException e) { return null; }
-	}
-
-	public SortedSet<IDAddressPair> closestNodes(ID target, int maxNum) {
-		Comparator<IDAddressPair> towardTargetComparator =
-			new AlgoBasedTowardTargetIDAddrComparator(this.algorithm, target);
-		SortedSet<IDAddressPair> result = new TreeSet<IDAddressPair>(towardTargetComparator);
-
-		result.add(selfIDAddress);	// results includes this node itself
-
-		synchronized (this.smallerSet) {
-			result.addAll(this.smallerSet);
-		}
-
-		synchronized (this.largerSet) {
-			result.addAll(this.largerSet);
-		}
-
-		// trim
-		while (result.size() > maxNum) {
-			IDAddressPair lastElem = result.last();
-			result.remove(lastElem);
-		}
-
-		return result;
+		return ranking.top(maxNum);
 	}
 
 	public IDAddressPair[] toArray() { return this.toArray(null); }
@@ -233,12 +167,8 @@ public final class LeafSet {
 		return ret;
 	}
 	public void addtoCollection(Collection<IDAddressPair> c) {
-		synchronized(this.smallerSet) {
-			c.addAll(this.smallerSet);
-		}
-		synchronized(this.largerSet) {
-			c.addAll(this.largerSet);
-		}
+		for (IDAddressPair p: this.smallerSet.snapshot()) c.add(p);
+		for (IDAddressPair p: this.largerSet.snapshot()) c.add(p);
 	}
 
 	public String toString() {
@@ -250,20 +180,16 @@ public final class LeafSet {
 
 		sb.append("[");
 
-		synchronized (this.smallerSet) {
-			for (IDAddressPair p: this.smallerSet) {
-				sb.append(" ");
-				sb.append(p.getAddress().toString(verboseLevel));
-			}
+		for (IDAddressPair p: this.smallerSet.snapshot()) {
+			sb.append(" ");
+			sb.append(p.getAddress().toString(verboseLevel));
 		}
 
 		sb.append(" |");
 
-		synchronized (this.largerSet) {
-			for (IDAddressPair p: this.largerSet) {
-				sb.append(" ");
-				sb.append(p.getAddress().toString(verboseLevel));
-			}
+		for (IDAddressPair p: this.largerSet.snapshot()) {
+			sb.append(" ");
+			sb.append(p.getAddress().toString(verboseLevel));
 		}
 
 		sb.append(" ]");
@@ -275,21 +201,17 @@ public final class LeafSet {
 		StringBuilder sb = new StringBuilder();
 		String url;
 
-		synchronized (this.smallerSet) {
-			for (IDAddressPair p: this.smallerSet) {
-				url = HTMLUtil.convertMessagingAddressToURL(p.getAddress());
-				sb.append("<a href=\"" + url + "\">" + HTMLUtil.stringInHTML(url) + "</a><br>\n");
-			}
+		for (IDAddressPair p: this.smallerSet.snapshot()) {
+			url = HTMLUtil.convertMessagingAddressToURL(p.getAddress());
+			sb.append("<a href=\"" + url + "\">" + HTMLUtil.stringInHTML(url) + "</a><br>\n");
 		}
 
 		url = HTMLUtil.convertMessagingAddressToURL(this.selfIDAddress.getAddress());
 		sb.append("<a href=\"" + url + "\">" + HTMLUtil.stringInHTML(url) + "</a> (self)<br>\n");
 
-		synchronized (this.largerSet) {
-			for (IDAddressPair p: this.largerSet) {
-				url = HTMLUtil.convertMessagingAddressToURL(p.getAddress());
-				sb.append("<a href=\"" + url + "\">" + HTMLUtil.stringInHTML(url) + "</a><br>\n");
-			}
+		for (IDAddressPair p: this.largerSet.snapshot()) {
+			url = HTMLUtil.convertMessagingAddressToURL(p.getAddress());
+			sb.append("<a href=\"" + url + "\">" + HTMLUtil.stringInHTML(url) + "</a><br>\n");
 		}
 
 		return sb.toString();
@@ -18,7 +18,6 @@
 package ow.routing.pastry;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -26,7 +25,6 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.logging.Level;
 
 import ow.id.ID;
@@ -133,35 +131,26 @@ public final class Pastry extends Plaxton {
 		this.startRoutingTableMaintainer();
 	}
 
-	private final BigInteger ID_SPACE_SIZE = BigInteger.ONE.shiftLeft(idSizeInBit);
-	private final BigInteger HALF_ID_SPACE_SIZE = BigInteger.ONE.shiftLeft(idSizeInBit - 1);
+	public long[] distance(ID to, ID from, long[] result) {
+		ID.subtractWords(to.getWords(), from.getWords(), idSizeInBit, result);
 
-	public BigInteger distance(ID to, ID from) {
-		BigInteger toInt = to.toBigInteger();
-		BigInteger fromInt = from.toBigInteger();
-
-		BigInteger distance = toInt.subtract(fromInt);
-		if (distance.compareTo(BigInteger.ZERO) < 0) {
-			distance = distance.add(ID_SPACE_SIZE);
-		}
-
-		if (distance.compareTo(HALF_ID_SPACE_SIZE) < 0) {	// if d < 2^(ID_SIZE - 1)
+		if (!ID.testBit(result, idSizeInBit - 1)) {	// if d < 2^(ID_SIZE - 1)
 			// d = d * 2
-			distance = distance.shiftLeft(1);
+			ID.shiftLeftWords(result, 1, result);
 		}
 		else {
-			// d = ((2 ^ ID_SIZE) - d) * 2 - 1
-			distance = ID_SPACE_SIZE.subtract(distance);
-			distance = distance.shiftLeft(1);
-			distance = distance.subtract(BigInteger.ONE);
+			// d = ((2 ^ ID_SIZE) - d) * 2 - 1 = (~d) * 2 + 1
+			ID.complementWords(result, idSizeInBit, result);
+			ID.shiftLeftWords(result, 1, result);
+			ID.setBit(result, 0);
 		}
 
-		return distance;
+		return result;
 	}
 
 	public IDAddressPair[] nextHopCandidates(ID target, ID lastHop /*ignored*/, boolean joining,
 			int maxNum, RoutingContext cxt) {
-		SortedSet<IDAddressPair> nodesByLeafSet = null;
+		List<IDAddressPair> nodesByLeafSet = null;
 		IDAddressPair[] nodesByRoutingTable = null;
 		boolean leafSetPreferred = false;
 		int num = 0;
@@ -190,7 +179,7 @@ public final class Pastry extends Plaxton {
 			if (!leafSetPreferred
 					&& nodesByLeafSet != null && nodesByLeafSet.size() > 0
 					/*&& nodesByRoutingTable != null*/ && nodesByRoutingTable.length > 0) {
-				ID headOfLeafSet = nodesByLeafSet.first().getID();
+				ID headOfLeafSet = nodesByLeafSet.get(0).getID();
 				ID headOfRoutingTable = nodesByRoutingTable[0].getID();
 
 				Comparator<ID> toTargetComparator = new AlgoBasedTowardTargetIDComparator(this, target);
@@ -18,7 +18,6 @@
 package ow.routing.tapestry;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -61,29 +60,32 @@ public final class Tapestry extends Plaxton {
 		this.prepareHandlers();
 	}
 
-	public BigInteger distance(ID to, ID from) {
+	public long[] distance(ID to, ID from, long[] result) {
 		int nMatchBits, nMatchDigits;
 
+		for (int i = 0; i < result.length; i++) result[i] = 0L;
+
 		if (to.equals(from)) {
-			return BigInteger.ZERO;
+			return result;
 		}
 
 		nMatchBits = ID.matchLengthFromMSB(to, from);
 		nMatchDigits = nMatchBits / digitSize;
 
-		BigInteger distance = BigInteger.ZERO;
 		for (int i = nMatchDigits; i < idSizeInDigit; i++) {
 			int toDigit = getDigit(to, i);
 			int fromDigit = getDigit(from, i);
 
 			int digitDistance = this.digitDistanceInTapestry(toDigit, fromDigit);
 
-			BigInteger digitDistanceBigInteger =
-				BigInteger.valueOf(digitDistance).shiftLeft((idSizeInDigit - 1 - i) * digitSize); 
-			distance = distance.add(digitDistanceBigInteger);
+			// digits do not overlap and setting bits is equivalent to addition
+			int offset = (idSizeInDigit - 1 - i) * digitSize;
+			for (int b = 0; b < digitSize; b++) {
+				if ((digitDistance & (1 << b)) != 0) ID.setBit(result, offset + b);
+			}
 		}
 
-		return distance;
+		return result;
 	}
 
 	private int digitDistanceInTapestry(int toDigit, int fromDigit) {
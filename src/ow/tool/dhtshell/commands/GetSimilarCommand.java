@@ -38,7 +38,7 @@ public final class GetSimilarCommand implements Command<DHT<String>> {
 	public String[] getNames() { return NAMES; }
 
 	public String getHelp() {
-		return "get-similar [-status] [-hops <num-hops>] <key> <threshold> [<key> <threshold> ...]";
+		return "get-similar [-status] [-hops <num-hops>] [-k <num-results>] <key> <threshold> [<key> <threshold> ...]";
 	}
 
 	public boolean execute(ShellContext<DHT<String>> context) {
@@ -47,6 +47,7 @@ public final class GetSimilarCommand implements Command<DHT<String>> {
 		String[] args = context.getArguments();
 		boolean showStatus = false;
 		int extraHops = -1;
+		int numResults = -1;
 		int argIndex = 0;
 
 		if (argIndex < args.length && args[argIndex].equals("-status")) {
@@ -59,6 +60,11 @@ public final class GetSimilarCommand implements Command<DHT<String>> {
 			argIndex++;
 		}
 
+		if (argIndex < args.length - 1 && args[argIndex].equals("-k")) {
+			numResults = Integer.parseInt(args[++argIndex]);
+			argIndex++;
+		}
+
 		int remainingArgs = args.length - argIndex;
 
 		if (remainingArgs < 2 || (remainingArgs % 2) != 0) {
@@ -100,8 +106,9 @@ public final class GetSimilarCommand implements Command<DHT<String>> {
 			thresholds[i] = pair.getValue();
 
 			try {
-				if (extraHops >= 0) {
-					results[i] = dht.getSimilar(keys[i], thresholds[i], extraHops, -1);
+				if (extraHops >= 0 || numResults > 0) {
+					if (extraHops < 0) extraHops = dht.getConfiguration().getSimilarSearchExtraHopCount();
+					results[i] = dht.getSimilar(keys[i], thresholds[i], extraHops, numResults);
 				} else {
 					results[i] = dht.getSimilar(keys[i], thresholds[i]);
 				}
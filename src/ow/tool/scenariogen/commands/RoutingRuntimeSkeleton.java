@@ -37,6 +37,7 @@ import ow.routing.RoutingResult;
 import ow.routing.RoutingRuntime;
 import ow.routing.RoutingService;
 import ow.routing.RoutingServiceConfiguration;
+import ow.routing.RoutingTraceSink;
 import ow.stat.MessagingReporter;
 
 /**
@@ -85,6 +86,7 @@ class RoutingRuntimeSkeleton implements RoutingService, RoutingRuntime {
 	public void resume() {}
 	public String routeToString(RoutingHop[] route) { return null; }
 	public void setStatCollectorAddress(MessagingAddress address) {}
+	public RoutingTraceSink setRoutingTraceSink(RoutingTraceSink sink) { return null; }
 	public void stop() {}
 	public void suspend() {}
 
@@ -0,0 +1,232 @@
+package ow.tool.simbench;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import ow.dht.DHTConfiguration;
+import ow.dht.DHTFactory;
+import ow.id.ID;
+
+/**
+ * The main class of Similarity Benchmark.
+ * Measures similarity searches on an emulated overlay and prints the results as a line of JSON,
+ * which is appended to the output file if specified.
+ */
+public final class Main {
+	private final static String COMMAND = "owsimbench";	// A shell/batch script provided as bin/owsimbench
+	private final static String DEFAULT_DATASET = "resources/phash-sample.json";
+
+	private final static String DEFAULT_ALGORITHM = "HammingChord";
+	private final static int DEFAULT_NUM_NODES = 100;
+	private final static int DEFAULT_ID_SIZE = 8;	// 64 bit pHash
+	private final static int DEFAULT_NUM_QUERIES = 100;
+	private final static float DEFAULT_THRESHOLD = 0.9f;
+	private final static int DEFAULT_EXTRA_HOPS = 2;
+	private final static int DEFAULT_NUM_FLIPPED_BITS = 4;
+	private final static long DEFAULT_SEED = 1L;
+	private final static long DEFAULT_SETTLE_TIME = 5000L;
+	private final static int PUT_BATCH_SIZE = 100;
+
+	protected void usage(String command) {
+		System.out.println("Usage: " + command
+				+ " [-a <algorithm>] [-r <routing style>] [-n <# of nodes>]"
+				+ " [-d <dataset file>] [-i <ID size in byte>] [-k <# of keys>]"
+				+ " [-q <# of queries>] [-t <threshold>] [-x <extra hops>] [--top <# of results>]"
+				+ " [-f <# of flipped bits>] [-p <parallelism>] [--adaptive] [--cache <size>]"
+				+ " [-s <seed>] [-w <settle time in msec>] [-o <output file>]");
+	}
+
+	public static void main(String[] args) {
+		(new Main()).start(args);
+	}
+
+	protected void start(String[] args) {
+		DHTConfiguration config = DHTFactory.getDefaultConfiguration();
+		config.setRoutingAlgorithm(DEFAULT_ALGORITHM);
+
+		String datasetFile = null;
+		String outputFile = null;
+		int numNodes = DEFAULT_NUM_NODES;
+		int idSize = DEFAULT_ID_SIZE;
+		int numKeys = -1;
+		int numQueries = DEFAULT_NUM_QUERIES;
+		float threshold = DEFAULT_THRESHOLD;
+		int extraHops = DEFAULT_EXTRA_HOPS;
+		int numResultsDesired = -1;
+		int numFlippedBits = DEFAULT_NUM_FLIPPED_BITS;
+		long seed = DEFAULT_SEED;
+		long settleTime = DEFAULT_SETTLE_TIME;
+
+		Options opts = new Options();
+		opts.addOption("h", "help", false, "print help");
+		opts.addOption("a", "algorithm", true, "routing algorithm");
+		opts.addOption("r", "routingstyle", true, "routing style, Iterative or Recursive");
+		opts.addOption("n", "nodes", true, "number of nodes");
+		opts.addOption("d", "dataset", true, "dataset file, a JSON object of file names and pHashes");
+		opts.addOption("i", "idsize", true, "size of IDs and keys in byte");
+		opts.addOption("k", "keys", true, "number of keys put");
+		opts.addOption("q", "queries", true, "number of queries");
+		opts.addOption("t", "threshold", true, "similarity threshold");
+		opts.addOption("x", "extrahops", true, "extra hops");
+		opts.addOption("K", "top", true, "number of results desired");
+		opts.addOption("f", "flip", true, "number of bits of a key flipped to make a query");
+		opts.addOption("p", "parallelism", true, "similarity search parallelism");
+		opts.addOption("A", "adaptive", false, "adapt extra hops to observed results");
+		opts.addOption("c", "cache", true, "size of the similarity search result cache");
+		opts.addOption("s", "seed", true, "random seed");
+		opts.addOption("w", "settle", true, "time in msec for which the overlay stabilizes");
+		opts.addOption("o", "output", true, "file to which results are appended");
+
+		CommandLineParser parser = new DefaultParser();
+		CommandLine cmd = null;
+		try {
+			cmd = parser.parse(opts, args);
+		}
+		catch (ParseException e) {
+			System.out.println("There is an invalid option.");
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		String optVal;
+		try {
+			if (cmd.hasOption('h')) {
+				usage(COMMAND);
+				System.exit(1);
+			}
+			optVal = cmd.getOptionValue('a');
+			if (optVal != null) config.setRoutingAlgorithm(optVal);
+			optVal = cmd.getOptionValue('r');
+			if (optVal != null) config.setRoutingStyle(optVal);
+			optVal = cmd.getOptionValue('n');
+			if (optVal != null) numNodes = Integer.parseInt(optVal);
+			datasetFile = cmd.getOptionValue('d');
+			optVal = cmd.getOptionValue('i');
+			if (optVal != null) idSize = Integer.parseInt(optVal);
+			optVal = cmd.getOptionValue('k');
+			if (optVal != null) numKeys = Integer.parseInt(optVal);
+			optVal = cmd.getOptionValue('q');
+			if (optVal != null) numQueries = Integer.parseInt(optVal);
+			optVal = cmd.getOptionValue('t');
+			if (optVal != null) threshold = Float.parseFloat(optVal);
+			optVal = cmd.getOptionValue('x');
+			if (optVal != null) extraHops = Integer.parseInt(optVal);
+			optVal = cmd.getOptionValue('K');
+			if (optVal != null) numResultsDesired = Integer.parseInt(optVal);
+			optVal = cmd.getOptionValue('f');
+			if (optVal != null) numFlippedBits = Integer.parseInt(optVal);
+			optVal = cmd.getOptionValue('p');
+			if (optVal != null) config.setSimilarSearchParallelism(Integer.parseInt(optVal));
+			if (cmd.hasOption('A')) config.setAdaptiveSimilarSearchHops(true);
+			optVal = cmd.getOptionValue('c');
+			if (optVal != null) config.setSimilarResultCacheSize(Integer.parseInt(optVal));
+			optVal = cmd.getOptionValue('s');
+			if (optVal != null) seed = Long.parseLong(optVal);
+			optVal = cmd.getOptionValue('w');
+			if (optVal != null) settleTime = Long.parseLong(optVal);
+			outputFile = cmd.getOptionValue('o');
+		}
+		catch (NumberFormatException e) {
+			System.out.println("There is an invalid number: " + e.getMessage());
+			usage(COMMAND);
+			System.exit(1);
+		}
+
+		if (numNodes < 1 || numQueries < 1) {
+			usage(COMMAND);
+			System.exit(1);
+		}
+
+		// read the dataset
+		Map<ID,Set<String>> dataset = null;
+		try {
+			InputStream in;
+			if (datasetFile != null) {
+				in = new FileInputStream(datasetFile);
+			}
+			else {
+				in = Main.class.getClassLoader().getResourceAsStream(DEFAULT_DATASET);
+				if (in == null) throw new IOException("Resource not found: " + DEFAULT_DATASET);
+			}
+
+			dataset = SimilarityBenchmark.readDataset(in, idSize);
+		}
+		catch (IOException e) {
+			System.err.println("Could not read a dataset:");
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		// run
+		SimilarityBenchmark bench = new SimilarityBenchmark(config, numNodes, idSize, seed);
+		StringBuilder sb = new StringBuilder();
+		int exitCode = 0;
+		try {
+			bench.start(settleTime);
+
+			SimilarityBenchmark.Phase load = bench.load(dataset, numKeys, PUT_BATCH_SIZE);
+			SimilarityBenchmark.Workload workload =
+				bench.run(numQueries, threshold, extraHops, numResultsDesired, numFlippedBits);
+
+			sb.append("{\"algorithm\":\"").append(config.getRoutingAlgorithm()).append("\"");
+			sb.append(",\"routingStyle\":\"").append(config.getRoutingStyle()).append("\"");
+			sb.append(",\"nodes\":").append(numNodes);
+			sb.append(",\"idSize\":").append(idSize);
+			sb.append(",\"keys\":").append(bench.getNumKeys());
+			sb.append(",\"values\":").append(bench.getNumValues());
+			sb.append(",\"queries\":").append(numQueries);
+			sb.append(",\"threshold\":").append(threshold);
+			sb.append(",\"extraHops\":").append(extraHops);
+			sb.append(",\"top\":").append(numResultsDesired);
+			sb.append(",\"flippedBits\":").append(numFlippedBits);
+			sb.append(",\"parallelism\":").append(config.getSimilarSearchParallelism());
+			sb.append(",\"adaptive\":").append(config.getAdaptiveSimilarSearchHops());
+			sb.append(",\"cache\":").append(config.getSimilarResultCacheSize());
+			sb.append(",\"seed\":").append(seed);
+			sb.append(",\"load\":");
+			load.appendJSON(sb, bench.getNumKeys());
+			sb.append(",");
+			workload.appendJSON(sb);
+			sb.append("}");
+		}
+		catch (Exception e) {
+			System.err.println("An Exception thrown:");
+			e.printStackTrace();
+			exitCode = 1;
+		}
+		finally {
+			bench.stop();
+		}
+
+		if (exitCode == 0) {
+			System.out.println(sb);
+
+			if (outputFile != null) {
+				try {
+					Writer out = new OutputStreamWriter(new FileOutputStream(outputFile, true), "UTF-8");
+					out.write(sb.append("\n").toString());
+					out.close();
+				}
+				catch (IOException e) {
+					System.err.println("Could not write results to " + outputFile);
+					e.printStackTrace();
+					exitCode = 1;
+				}
+			}
+		}
+
+		System.exit(exitCode);
+	}
+}
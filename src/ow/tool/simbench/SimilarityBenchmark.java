@@ -0,0 +1,535 @@
+package ow.tool.simbench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ow.dht.DHT;
+import ow.dht.DHTConfiguration;
+import ow.dht.DHTFactory;
+import ow.dht.ValueInfo;
+import ow.directory.comparator.HammingIDComparator;
+import ow.id.ID;
+import ow.id.IDAddressPair;
+import ow.messaging.MessageDirectory;
+import ow.messaging.MessagingAddress;
+import ow.messaging.MessagingConfiguration;
+import ow.messaging.MessagingFactory;
+import ow.messaging.MessagingProvider;
+import ow.messaging.Signature;
+import ow.routing.RoutingAlgorithmConfiguration;
+import ow.routing.RoutingAlgorithmFactory;
+import ow.routing.RoutingAlgorithmProvider;
+import ow.routing.RoutingResult;
+import ow.routing.RoutingService;
+import ow.routing.RoutingServiceFactory;
+import ow.routing.RoutingServiceProvider;
+import ow.routing.RoutingTraceSink;
+import ow.stat.MessagingCallback;
+import ow.stat.MessagingCollector;
+import ow.stat.StatConfiguration;
+import ow.stat.StatFactory;
+
+/**
+ * Similarity Benchmark.
+ * Instantiated by the {@link ow.tool.simbench.Main Main} class.
+ *
+ * Builds an emulated overlay, puts a dataset of perceptual hashes on it
+ * and measures similarity searches against the ground truth computed over the whole dataset.
+ * Messages and their lengths are counted by a statistics collector in the emulator,
+ * and routing hops by a routing trace sink on every node.
+ * Only messages sent and routings made by non-daemon threads, which load keys and search,
+ * are counted so that the maintenance of the overlay does not blur the numbers.
+ */
+public final class SimilarityBenchmark implements MessagingCallback, RoutingTraceSink {
+	private final static Pattern ENTRY_PATTERN =
+		Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"\\s*:\\s*(\\d+)");
+
+	private final DHTConfiguration config;
+	private final int numNodes;
+	private final int idSizeInByte;
+	private final Random rnd;
+
+	private final List<DHT<String>> nodes = new ArrayList<DHT<String>>();
+	private MessagingCollector statCollector = null;
+
+	private ID[] keys = new ID[0];
+	private int numValues = 0;
+
+	// counters
+	private long numMessages = 0L;
+	private long numBytes = 0L;
+	private final SortedMap<Integer,long[]> countsByTag = new TreeMap<Integer,long[]>();
+	private long numLookups = 0L;
+	private long numRoutingHops = 0L;
+
+	/**
+	 * @param config configuration of every node. Its transport is overwritten with the emulator.
+	 * @param idSizeInByte size of node IDs and keys.
+	 */
+	public SimilarityBenchmark(DHTConfiguration config, int numNodes, int idSizeInByte, long seed) {
+		this.config = config;
+		this.numNodes = numNodes;
+		this.idSizeInByte = idSizeInByte;
+		this.rnd = new Random(seed);
+
+		this.config.setMessagingTransport("Emulator");
+		this.config.setDoUPnPNATTraversal(false);
+	}
+
+	/**
+	 * Reads a dataset, a JSON object which maps file names to unsigned 64 bit perceptual hashes.
+	 * Returns a map from hashes to the names of the files having them.
+	 */
+	public static Map<ID,Set<String>> readDataset(InputStream in, int idSizeInByte) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		Reader reader = new InputStreamReader(in, "UTF-8");
+		char[] buf = new char[8192];
+		int len;
+		while ((len = reader.read(buf)) >= 0) {
+			sb.append(buf, 0, len);
+		}
+		reader.close();
+
+		Map<ID,Set<String>> dataset = new LinkedHashMap<ID,Set<String>>();
+		Matcher m = ENTRY_PATTERN.matcher(sb);
+		while (m.find()) {
+			ID key = ID.getID(new BigInteger(m.group(2)), idSizeInByte);
+
+			Set<String> names = dataset.get(key);
+			if (names == null) {
+				names = new HashSet<String>();
+				dataset.put(key, names);
+			}
+			names.add(m.group(1));
+		}
+
+		return dataset;
+	}
+
+	/**
+	 * Starts a statistics collector and nodes, and lets the nodes join an overlay.
+	 *
+	 * @param settleTime time in millisecond for which the overlay is left to stabilize.
+	 */
+	public void start(long settleTime) throws Exception {
+		StatConfiguration statConfig = StatFactory.getDefaultConfiguration();
+		statConfig.setMessagingTransport("Emulator");
+		statConfig.setDoUPnPNATTraversal(false);
+
+		this.statCollector = StatFactory.getMessagingCollector(statConfig);
+		this.statCollector.start(this);
+		MessagingAddress collectorAddress = this.statCollector.getMessageReceiver().getSelfAddress();
+
+		for (int i = 0; i < this.numNodes; i++) {
+			DHT<String> dht = this.createNode();
+
+			dht.setStatCollectorAddress(collectorAddress.getHostname(), collectorAddress.getPort());
+			dht.getRoutingService().setRoutingTraceSink(this);
+
+			if (!this.nodes.isEmpty()) {
+				MessagingAddress contact = this.nodes.get(0).getSelfIDAddressPair().getAddress();
+				dht.joinOverlay(contact.getHostname(), contact.getPort());
+			}
+
+			this.nodes.add(dht);
+		}
+
+		Thread.sleep(settleTime);
+	}
+
+	private DHT<String> createNode() throws Exception {
+		// a routing service with IDs of the size of keys, as BasicDHTImpl prepares one
+		byte[] messageSignature = Signature.getSignature(
+				RoutingServiceFactory.getRoutingStyleID(this.config.getRoutingStyle()),
+				RoutingAlgorithmFactory.getAlgorithmID(this.config.getRoutingAlgorithm()),
+				Signature.getAllAcceptingApplicationID(), Signature.getAllAcceptingApplicationVersion());
+
+		MessagingProvider msgProvider =
+			MessagingFactory.getProvider(this.config.getMessagingTransport(), messageSignature);
+		MessagingConfiguration msgConfig = msgProvider.getDefaultConfiguration();
+		msgConfig.setDoUPnPNATTraversal(false);
+
+		RoutingAlgorithmProvider algoProvider =
+			RoutingAlgorithmFactory.getProvider(this.config.getRoutingAlgorithm());
+		RoutingAlgorithmConfiguration algoConfig = algoProvider.getDefaultConfiguration();
+		algoConfig.setIDSizeInByte(this.idSizeInByte);
+
+		byte[] selfID = new byte[this.idSizeInByte];
+		this.rnd.nextBytes(selfID);
+
+		RoutingServiceProvider svcProvider = RoutingServiceFactory.getProvider(this.config.getRoutingStyle());
+		RoutingService routingSvc = svcProvider.getService(
+				svcProvider.getDefaultConfiguration(),
+				msgProvider, msgConfig, this.config.getSelfPort(), this.config.getSelfPortRange(),
+				algoProvider, algoConfig, ID.getID(selfID, this.idSizeInByte));
+
+		algoProvider.initializeAlgorithmInstance(algoConfig, routingSvc);
+
+		return DHTFactory.<String>getDHT(this.config, routingSvc);
+	}
+
+	public void stop() {
+		for (DHT<String> dht: this.nodes) {
+			dht.stop();
+		}
+		this.nodes.clear();
+
+		if (this.statCollector != null) {
+			this.statCollector.stop();
+			this.statCollector = null;
+		}
+	}
+
+	/**
+	 * Puts keys of a dataset with their values from randomly chosen nodes.
+	 *
+	 * @param numKeys number of keys put. All the keys are put if negative.
+	 * @param batchSize number of keys put at once.
+	 */
+	public Phase load(Map<ID,Set<String>> dataset, int numKeys, int batchSize) throws Exception {
+		List<ID> keyList = new ArrayList<ID>(dataset.keySet());
+		if (numKeys >= 0 && numKeys < keyList.size()) {
+			Collections.shuffle(keyList, this.rnd);
+			keyList = keyList.subList(0, numKeys);
+		}
+
+		this.keys = keyList.toArray(new ID[keyList.size()]);
+		this.numValues = 0;
+
+		Phase phase = this.beginPhase();
+
+		for (int i = 0; i < this.keys.length; i += batchSize) {
+			int n = Math.min(batchSize, this.keys.length - i);
+
+			@SuppressWarnings("unchecked")
+			DHT.PutRequest<String>[] reqs = new DHT.PutRequest[n];
+			for (int j = 0; j < n; j++) {
+				Set<String> names = dataset.get(this.keys[i + j]);
+				reqs[j] = new DHT.PutRequest<String>(this.keys[i + j], names.toArray(new String[names.size()]));
+				this.numValues += names.size();
+			}
+
+			this.randomNode().put(reqs);
+		}
+
+		this.endPhase(phase);
+
+		return phase;
+	}
+
+	/**
+	 * Searches keys similar to the loaded ones with some bits flipped, from randomly chosen nodes.
+	 *
+	 * @param numFlippedBits number of bits flipped to make a query from a loaded key.
+	 */
+	public Workload run(int numQueries, float threshold, int extraHops, int numResultsDesired,
+			int numFlippedBits) {
+		if (this.keys.length == 0) {
+			throw new IllegalStateException("No key has been loaded.");
+		}
+
+		int sizeInBit = this.idSizeInByte * 8;
+		int maxDistance = HammingIDComparator.maxDistance(sizeInBit, threshold);
+
+		Workload w = new Workload(numQueries);
+		w.phase = this.beginPhase();
+
+		for (int q = 0; q < numQueries; q++) {
+			ID query = this.flip(this.keys[this.rnd.nextInt(this.keys.length)], numFlippedBits);
+			DHT<String> node = this.randomNode();
+
+			// ground truth
+			int[] distances = HammingIDComparator.distances(query, this.keys);
+			int[] truth = new int[distances.length];
+			int numTruth = 0;
+			for (int d: distances) {
+				if (d <= maxDistance) truth[numTruth++] = d;
+			}
+			Arrays.sort(truth, 0, numTruth);
+
+			int numRelevant = numTruth;
+			int relevantDistance = maxDistance;
+			if (numResultsDesired > 0 && numResultsDesired < numTruth) {
+				numRelevant = numResultsDesired;
+				relevantDistance = truth[numResultsDesired - 1];
+			}
+
+			// search
+			long lookups = this.numLookups, routingHops = this.numRoutingHops;
+			long start = System.nanoTime();
+
+			Map<ID,Set<ValueInfo<String>>> results = null;
+			try {
+				results = node.getSimilar(query, threshold, extraHops, numResultsDesired);
+			}
+			catch (Exception e) {
+				w.numFailures++;
+			}
+
+			w.latencies[q] = (System.nanoTime() - start) / 1000000.0;
+
+			synchronized (this) {
+				w.numLookups += this.numLookups - lookups;
+				w.numRoutingHops += this.numRoutingHops - routingHops;
+			}
+
+			// recall
+			int numHits = 0, maxExtraHops = 0;
+			if (results != null) {
+				HammingIDComparator.DistanceComparator cmp = HammingIDComparator.distanceComparatorForKey(query);
+				for (Map.Entry<ID,Set<ValueInfo<String>>> e: results.entrySet()) {
+					if (cmp.distance(e.getKey()) <= relevantDistance) numHits++;
+
+					if (e.getValue() == null) continue;
+					for (ValueInfo<String> v: e.getValue()) {
+						maxExtraHops = Math.max(maxExtraHops, v.getExtraHopCount());
+					}
+				}
+
+				w.numResults += results.size();
+			}
+			w.numExtraHops += maxExtraHops;
+			w.numTruth += numRelevant;
+
+			if (numRelevant > 0) {
+				w.recalls[w.numRecalls++] = Math.min(numHits, numRelevant) / (double)numRelevant;
+			}
+		}
+
+		this.endPhase(w.phase);
+
+		return w;
+	}
+
+	private DHT<String> randomNode() {
+		return this.nodes.get(this.rnd.nextInt(this.nodes.size()));
+	}
+
+	private ID flip(ID key, int numFlippedBits) {
+		byte[] value = key.getValue().clone();
+
+		int sizeInBit = value.length * 8;
+		Set<Integer> flipped = new HashSet<Integer>();
+		while (flipped.size() < Math.min(numFlippedBits, sizeInBit)) {
+			int bit = this.rnd.nextInt(sizeInBit);
+			if (flipped.add(bit)) value[bit / 8] ^= (byte)(1 << (bit % 8));
+		}
+
+		return ID.getID(value, value.length);
+	}
+
+	public int getNumKeys() { return this.keys.length; }
+	public int getNumValues() { return this.numValues; }
+
+	private synchronized Phase beginPhase() {
+		Phase phase = new Phase();
+		phase.startTime = System.nanoTime();
+		phase.numMessages = -this.numMessages;
+		phase.numBytes = -this.numBytes;
+
+		for (Map.Entry<Integer,long[]> e: this.countsByTag.entrySet()) {
+			phase.countsByTag.put(e.getKey(), new long[] { -e.getValue()[0], -e.getValue()[1] });
+		}
+
+		return phase;
+	}
+
+	private synchronized void endPhase(Phase phase) {
+		phase.millis = (System.nanoTime() - phase.startTime) / 1000000L;
+		phase.numMessages += this.numMessages;
+		phase.numBytes += this.numBytes;
+
+		for (Map.Entry<Integer,long[]> e: this.countsByTag.entrySet()) {
+			long[] c = phase.countsByTag.get(e.getKey());
+			if (c == null) {
+				c = new long[2];
+				phase.countsByTag.put(e.getKey(), c);
+			}
+			c[0] += e.getValue()[0];
+			c[1] += e.getValue()[1];
+		}
+	}
+
+	/**
+	 * Implements {@link ow.stat.MessagingCallback#messageSent(MessagingAddress, MessagingAddress, int, int)
+	 * MessagingCallback#messageSent()}.
+	 */
+	public void messageSent(MessagingAddress source, MessagingAddress target, int tag, int len) {
+		if (Thread.currentThread().isDaemon()) return;	// maintenance
+
+		synchronized (this) {
+			this.numMessages++;
+			this.numBytes += len;
+
+			long[] c = this.countsByTag.get(tag);
+			if (c == null) {
+				c = new long[2];
+				this.countsByTag.put(tag, c);
+			}
+			c[0]++;
+			c[1] += len;
+		}
+	}
+
+	/**
+	 * Implements {@link ow.stat.MessagingCallback#nodeFailed(MessagingAddress)
+	 * MessagingCallback#nodeFailed()}.
+	 */
+	public void nodeFailed(MessagingAddress node) {}
+
+	/**
+	 * Implements {@link ow.routing.RoutingTraceSink#trace(IDAddressPair, ID, RoutingResult, long, long)
+	 * RoutingTraceSink#trace()}.
+	 */
+	public void trace(IDAddressPair initiator, ID target, RoutingResult result, long startTime, long endTime) {
+		if (Thread.currentThread().isDaemon()) return;	// maintenance
+
+		synchronized (this) {
+			this.numLookups++;
+			if (result != null && result.getRoute() != null) {
+				this.numRoutingHops += Math.max(0, result.getRoute().length - 1);
+			}
+		}
+	}
+
+	/**
+	 * Implements {@link ow.routing.RoutingTraceSink#close() RoutingTraceSink#close()}.
+	 */
+	public void close() {}
+
+	/**
+	 * Messages and time taken by a phase of a benchmark.
+	 */
+	public static class Phase {
+		private long startTime;
+		private long millis;
+		private long numMessages;
+		private long numBytes;
+		private final SortedMap<Integer,long[]> countsByTag = new TreeMap<Integer,long[]>();
+
+		public long getMillis() { return this.millis; }
+		public long getNumMessages() { return this.numMessages; }
+		public long getNumBytes() { return this.numBytes; }
+
+		void appendJSON(StringBuilder sb, int numOperations) {
+			sb.append("{\"millis\":").append(this.millis);
+			sb.append(",\"messages\":").append(this.numMessages);
+			sb.append(",\"bytes\":").append(this.numBytes);
+			if (numOperations > 0) {
+				sb.append(",\"messagesPerOp\":").append(format(this.numMessages / (double)numOperations));
+				sb.append(",\"bytesPerOp\":").append(format(this.numBytes / (double)numOperations));
+			}
+
+			sb.append(",\"byTag\":{");
+			boolean first = true;
+			for (Map.Entry<Integer,long[]> e: this.countsByTag.entrySet()) {
+				if (e.getValue()[0] == 0L) continue;
+
+				if (!first) sb.append(",");
+				first = false;
+
+				sb.append("\"").append(MessageDirectory.getName(e.getKey())).append("\":");
+				sb.append("{\"messages\":").append(e.getValue()[0]);
+				sb.append(",\"bytes\":").append(e.getValue()[1]).append("}");
+			}
+			sb.append("}}");
+		}
+	}
+
+	/**
+	 * Results of similarity searches.
+	 */
+	public static class Workload {
+		private Phase phase;
+		private final double[] latencies;	// in millisecond
+		private final double[] recalls;
+		private int numRecalls = 0;	// queries having one or more similar keys
+		private int numFailures = 0;
+		private long numResults = 0L;
+		private long numTruth = 0L;
+		private long numLookups = 0L;
+		private long numRoutingHops = 0L;
+		private long numExtraHops = 0L;
+
+		Workload(int numQueries) {
+			this.latencies = new double[numQueries];
+			this.recalls = new double[numQueries];
+		}
+
+		public Phase getPhase() { return this.phase; }
+
+		public double getMeanRecall() {
+			double sum = 0.0;
+			for (int i = 0; i < this.numRecalls; i++) sum += this.recalls[i];
+			return (this.numRecalls > 0 ? sum / this.numRecalls : 1.0);
+		}
+
+		void appendJSON(StringBuilder sb) {
+			int numQueries = this.latencies.length;
+
+			double minRecall = 1.0;
+			int numPerfect = 0;
+			for (int i = 0; i < this.numRecalls; i++) {
+				minRecall = Math.min(minRecall, this.recalls[i]);
+				if (this.recalls[i] >= 1.0) numPerfect++;
+			}
+
+			sb.append("\"recall\":{\"mean\":").append(format(this.getMeanRecall()));
+			sb.append(",\"min\":").append(format(minRecall));
+			sb.append(",\"perfect\":").append(numPerfect);
+			sb.append(",\"measured\":").append(this.numRecalls).append("}");
+
+			sb.append(",\"results\":{\"mean\":").append(format(this.numResults / (double)numQueries));
+			sb.append(",\"relevantMean\":").append(format(this.numTruth / (double)numQueries));
+			sb.append(",\"failures\":").append(this.numFailures).append("}");
+
+			sb.append(",\"hops\":{\"lookupsPerQuery\":").append(format(this.numLookups / (double)numQueries));
+			sb.append(",\"routing\":").append(
+					format(this.numLookups > 0 ? this.numRoutingHops / (double)this.numLookups : 0.0));
+			sb.append(",\"extra\":").append(format(this.numExtraHops / (double)numQueries)).append("}");
+
+			double[] sorted = this.latencies.clone();
+			Arrays.sort(sorted);
+			double sum = 0.0;
+			for (double l: sorted) sum += l;
+
+			sb.append(",\"latencyMillis\":{\"mean\":").append(format(sum / numQueries));
+			sb.append(",\"p50\":").append(format(percentile(sorted, 0.50)));
+			sb.append(",\"p90\":").append(format(percentile(sorted, 0.90)));
+			sb.append(",\"p99\":").append(format(percentile(sorted, 0.99)));
+			sb.append(",\"max\":").append(format(sorted[sorted.length - 1])).append("}");
+
+			sb.append(",\"search\":");
+			this.phase.appendJSON(sb, numQueries);
+		}
+	}
+
+	/**
+	 * Returns the nearest-rank percentile of sorted values.
+	 */
+	static double percentile(double[] sorted, double p) {
+		int rank = (int)Math.ceil(p * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+
+	static String format(double d) {
+		return String.format(Locale.ROOT, "%.4f", d);
+	}
+}
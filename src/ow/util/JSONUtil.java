@@ -0,0 +1,38 @@
+package ow.util;
+
+public final class JSONUtil {
+	/**
+	 * Escapes quotation marks, backslashes and control characters
+	 * so that the string can be written between the quotation marks of a JSON string.
+	 */
+	public static String stringInJSON(String str) {
+		StringBuilder sb = null;
+
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+
+			String conv;
+			switch (c) {
+			case '"': conv = "\\\""; break;
+			case '\\': conv = "\\\\"; break;
+			case '\b': conv = "\\b"; break;
+			case '\f': conv = "\\f"; break;
+			case '\n': conv = "\\n"; break;
+			case '\r': conv = "\\r"; break;
+			case '\t': conv = "\\t"; break;
+			default:
+				conv = (c < 0x20 ? String.format("\\u%04x", (int)c) : null);
+			}
+
+			if (conv != null) {
+				if (sb == null) sb = new StringBuilder(str.substring(0, i));
+				sb.append(conv);
+			}
+			else if (sb != null) {
+				sb.append(c);
+			}
+		}
+
+		return (sb != null ? sb.toString() : str);
+	}
+}
@@ -0,0 +1,111 @@
+package ow.dht.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ow.id.ID;
+
+/**
+ * Checks that the lower bound of {@link KeySummary} never exceeds the Hamming distance
+ * from a search key to the keys summarized, so that a node holding a key near enough is never skipped.
+ */
+public class KeySummaryTest {
+	private final static int SIZE = 20;
+	private final static int NUM_QUERIES = 2000;
+
+	private static boolean ok = true;
+
+	public static void main(String[] args) throws Exception {
+		Random rnd = new Random(1);
+
+		// no key
+		KeySummary empty = KeySummary.of(new ArrayList<ID>(), SIZE);
+		check("no key", empty.getNumKeys() == 0
+				&& empty.lowerBound(ID.getRandomID(SIZE), 160) == Integer.MAX_VALUE
+				&& !empty.mayContain(ID.getRandomID(SIZE), 160));
+		check("null", KeySummary.of(null, SIZE).getNumKeys() == 0);
+
+		for (int numKeys: new int[] { 1, 10, 1000 }) {
+			List<ID> keys = new ArrayList<ID>();
+			for (int i = 0; i < numKeys; i++) keys.add(ID.getRandomID(SIZE));
+			KeySummary summary = KeySummary.of(keys, SIZE);
+
+			check(numKeys + " keys counted", summary.getNumKeys() == numKeys);
+
+			boolean sound = true, contained = true, tight = true;
+			for (int i = 0; i < NUM_QUERIES; i++) {
+				// near a key, or random
+				ID q = (i % 2 == 0 ? flip(keys.get(rnd.nextInt(numKeys)), rnd, rnd.nextInt(16)) : ID.getRandomID(SIZE));
+
+				int min = Integer.MAX_VALUE;
+				for (ID k: keys) min = Math.min(min, distance(q, k));
+
+				int bound = summary.lowerBound(q, Integer.MAX_VALUE - 8);
+				sound &= (bound <= min);
+				contained &= summary.mayContain(q, min);
+				if (numKeys == 1) tight &= (bound == min);
+			}
+			check(numKeys + " keys: bound not above the distance", sound);
+			check(numKeys + " keys: may contain within the distance", contained);
+			check(numKeys + " keys: bound exact for a key", tight);
+
+			boolean all = true;
+			for (ID k: keys) all &= (summary.lowerBound(k, 0) == 0);
+			check(numKeys + " keys: 0 for the keys summarized", all);
+		}
+
+		// cut at the limit
+		List<ID> one = new ArrayList<ID>();
+		one.add(ID.getID(new byte[SIZE], SIZE));
+		byte[] allSet = new byte[SIZE];
+		for (int j = 0; j < SIZE; j++) allSet[j] = (byte)0xff;
+		KeySummary zero = KeySummary.of(one, SIZE);
+		check("over the limit", zero.lowerBound(ID.getID(allSet, SIZE), 10) > 10);
+		check("not within the radius", !zero.mayContain(ID.getID(allSet, SIZE), SIZE * 8 - 1));
+		check("within the radius", zero.mayContain(ID.getID(allSet, SIZE), SIZE * 8));
+
+		// keys of another size
+		one.add(ID.getRandomID(SIZE / 2));
+		check("other size ignored", KeySummary.of(one, SIZE).getNumKeys() == 1);
+		check("other size of a search key", zero.lowerBound(ID.getRandomID(SIZE / 2), 0) == 0);
+
+		// sent to other nodes
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bout);
+		out.writeObject(zero);
+		out.close();
+		KeySummary received = (KeySummary)new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+		check("serialized", received.lowerBound(ID.getID(allSet, SIZE), Integer.MAX_VALUE - 8) == SIZE * 8);
+
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static ID flip(ID key, Random rnd, int numBits) {
+		byte[] b = key.getValue().clone();
+		for (int i = 0; i < numBits; i++) {
+			int bit = rnd.nextInt(b.length * 8);
+			b[bit / 8] ^= 1 << (bit % 8);
+		}
+		return ID.getID(b, b.length);
+	}
+
+	private static int distance(ID a, ID b) {
+		byte[] x = a.getValue(), y = b.getValue();
+		int d = 0;
+		for (int j = 0; j < x.length; j++) d += Integer.bitCount((x[j] ^ y[j]) & 0xff);
+		return d;
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("failed: " + name);
+			ok = false;
+		}
+	}
+}
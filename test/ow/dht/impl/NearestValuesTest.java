@@ -0,0 +1,105 @@
+package ow.dht.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import ow.dht.ValueInfo;
+import ow.id.ID;
+
+/**
+ * Checks that {@link NearestValues} ranks a key by the highest similarity it was found with,
+ * as when probes compare the same key with different query keys, and keeps the k most similar keys only.
+ */
+public class NearestValuesTest {
+	private final static int K = 10;
+
+	private static boolean ok = true;
+
+	public static void main(String[] args) {
+		ID a = key(1), b = key(2), c = key(3);
+
+		// a distant probe reaches a first
+		NearestValues<String> far = new NearestValues<String>(2);
+		far.add(a, 0.5f, values("a"));
+		far.add(c, 0.6f, values("c"));
+
+		NearestValues<String> near = new NearestValues<String>(2);
+		near.add(a, 0.9f, values("a"));
+		near.add(b, 0.7f, values("b"));
+
+		NearestValues<String> merged = new NearestValues<String>(2);
+		merged.merge(far, 0);
+		merged.merge(near, 0);
+		check("merged in order", keys(merged.toMap()).equals(list(a, b)));
+		check("k-th similarity", merged.getKthSimilarity() == 0.7f);
+
+		// in the other order
+		merged = new NearestValues<String>(2);
+		merged.merge(near, 0);
+		merged.merge(far, 0);
+		check("merged in reverse order", keys(merged.toMap()).equals(list(a, b)));
+
+		// added directly, a lower similarity later does not lower the key
+		NearestValues<String> added = new NearestValues<String>(2);
+		added.add(a, 0.5f, values("a"));
+		added.add(b, 0.7f, values("b"));
+		added.add(a, 0.9f, values("a2"));
+		added.add(a, 0.1f, values("a3"));
+		Map<ID,Set<ValueInfo<String>>> top = added.toMap();
+		check("raised by a later add", keys(top).equals(list(a, b)));
+		check("values unified", top.get(a) != null && top.get(a).size() == 3);
+		check("worst similarity", added.getWorstSimilarity() == 0.7f);
+
+		// only the k most similar keys are kept
+		Random rnd = new Random(1);
+		NearestValues<String> trimmed = new NearestValues<String>(K);
+		final Map<ID,Float> sims = new HashMap<ID,Float>();
+		for (int i = 0; i < 256; i++) {
+			float sim = rnd.nextFloat();
+			sims.put(key(i), sim);
+			trimmed.add(key(i), sim, values("v" + i));
+			check("size " + i, trimmed.size() == Math.min(i + 1, K));
+		}
+		List<ID> expected = new ArrayList<ID>(sims.keySet());
+		Collections.sort(expected, (ID x, ID y) -> Float.compare(sims.get(y), sims.get(x)));
+		expected = expected.subList(0, K);
+		check("most similar kept", keys(trimmed.toMap()).equals(expected));
+		check("k-th of many", trimmed.getKthSimilarity() == sims.get(expected.get(K - 1)));
+
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static ID key(int i) {
+		return ID.getID(new byte[] { (byte)i }, 1);
+	}
+
+	private static Set<ValueInfo<String>> values(String v) {
+		Set<ValueInfo<String>> ret = new HashSet<ValueInfo<String>>();
+		ret.add(new ValueInfo<String>(v, 0L, null));
+		return ret;
+	}
+
+	private static List<ID> keys(Map<ID,Set<ValueInfo<String>>> map) {
+		return new ArrayList<ID>(map.keySet());
+	}
+
+	private static List<ID> list(ID... keys) {
+		List<ID> ret = new ArrayList<ID>();
+		for (ID key: keys) ret.add(key);
+		return ret;
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("failed: " + name);
+			ok = false;
+		}
+	}
+}
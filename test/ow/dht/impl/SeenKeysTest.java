@@ -0,0 +1,96 @@
+package ow.dht.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ow.id.ID;
+
+/**
+ * Checks that {@link SeenKeys} has every key it is made of and no other key,
+ * including keys which a weak hash would confuse: of different sizes, or with words swapped.
+ */
+public class SeenKeysTest {
+	private final static int NUM_KEYS = 10000;
+	private final static int NUM_OTHERS = 100000;
+
+	private static boolean ok = true;
+
+	public static void main(String[] args) throws Exception {
+		check("null for no key", SeenKeys.of(null) == null && SeenKeys.of(new ArrayList<ID>()) == null);
+
+		// made of keys, duplicated ones included
+		List<ID> keys = new ArrayList<ID>();
+		for (int i = 0; i < NUM_KEYS; i++) keys.add(ID.getRandomID(20));
+		keys.add(keys.get(0));
+		SeenKeys seen = SeenKeys.of(keys);
+
+		check("size", seen.size() == keys.size());
+		boolean all = true;
+		for (ID key: keys) all &= seen.contains(key);
+		check("contains every key", all);
+
+		int falsePositives = 0;
+		for (int i = 0; i < NUM_OTHERS; i++) {
+			if (seen.contains(ID.getRandomID(20))) falsePositives++;
+		}
+		check("no other key (" + falsePositives + " found)", falsePositives == 0);
+
+		// merged with keys found later, as a query for the next page is
+		List<ID> more = new ArrayList<ID>();
+		for (int i = 0; i < NUM_KEYS; i++) more.add(ID.getRandomID(20));
+		Set<ID> union = new HashSet<ID>(keys);
+		union.addAll(more);
+		SeenKeys merged = SeenKeys.of(union);
+
+		check("merged size", merged.size() == union.size());
+		all = true;
+		for (ID key: union) all &= merged.contains(key);
+		check("merged contains every key", all);
+		check("earlier set does not contain later keys", !seen.contains(more.get(0)));
+
+		// keys close to each other in bits
+		byte[] b1 = new byte[16], b2 = new byte[16];
+		b1[0] = 1;	// words { x, 0 }
+		b2[8] = 1;	// words { 0, x }
+		ID k1 = ID.getID(b1, 16), k2 = ID.getID(b2, 16);
+		check("words swapped", !SeenKeys.of(list(k1)).contains(k2) && !SeenKeys.of(list(k2)).contains(k1));
+
+		ID zero4 = ID.getID(new byte[4], 4), zero8 = ID.getID(new byte[8], 8);
+		check("sizes differ", !SeenKeys.of(list(zero4)).contains(zero8) && !SeenKeys.of(list(zero8)).contains(zero4));
+
+		ID k3 = ID.getID(b1, 16).setBit(0);
+		check("a bit differs", !SeenKeys.of(list(k1)).contains(k3));
+
+		// sent in a query
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bout);
+		out.writeObject(seen);
+		out.close();
+		SeenKeys received = (SeenKeys)new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+		all = (received.size() == seen.size());
+		for (ID key: keys) all &= received.contains(key);
+		check("serialized", all);
+
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static List<ID> list(ID key) {
+		List<ID> ret = new ArrayList<ID>();
+		ret.add(key);
+		return ret;
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("failed: " + name);
+			ok = false;
+		}
+	}
+}
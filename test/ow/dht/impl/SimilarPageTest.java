@@ -0,0 +1,110 @@
+package ow.dht.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ow.dht.DHTConfiguration;
+import ow.dht.DHTFactory;
+import ow.dht.ValueInfo;
+import ow.directory.DirectoryConfiguration;
+import ow.directory.DirectoryFactory;
+import ow.directory.MultiValueDirectory;
+import ow.id.ID;
+
+/**
+ * Pages the replies to similarity queries on a directory of many keys at the same similarity,
+ * and checks that the pages together have every key similar enough just once.
+ * Keys are of 16 bits, and those with one or two bits set are at two similarities to 0.
+ */
+public class SimilarPageTest {
+	private final static int ID_SIZE = 2;
+	private final static float THRESHOLD = 0.8f;	// 14/16 and 15/16 are in
+
+	private static boolean ok = true;
+
+	public static void main(String[] args) throws Exception {
+		DHTConfiguration config = DHTFactory.getDefaultConfiguration();
+		config.setMessagingTransport("Emulator");
+		config.setDoUPnPNATTraversal(false);
+		BasicDHTImpl<String> dht = (BasicDHTImpl<String>)DHTFactory.<String>getDHT(config);
+
+		MultiValueDirectory<ID,ValueInfo<String>> dir = DirectoryFactory.getProvider("VolatileMap")
+			.openMultiValueDirectory(ID.class, ValueInfo.class, "./", "pagetest",
+					DirectoryConfiguration.getDefaultConfiguration());
+
+		Set<ID> expected = new HashSet<ID>();
+		for (int i = 0; i < ID_SIZE * 8; i++) {
+			for (int j = i; j < ID_SIZE * 8; j++) {
+				ID key = ID.getID(new byte[ID_SIZE], ID_SIZE).setBit(i).setBit(j);	// one bit if i == j
+				dir.put(key, new ValueInfo<String>("value" + i + "-" + j, -1L, null));
+				expected.add(key);
+			}
+		}
+		dir.put(ID.getID(new byte[] { (byte)0xff, 0 }, ID_SIZE), new ValueInfo<String>("dissimilar", -1L, null));
+
+		ID key = ID.getID(new byte[ID_SIZE], ID_SIZE);
+
+		for (int maxResults: new int[] { 1, 5, 16, 17 }) {
+			check("max " + maxResults + " results", page(dht, dir, key, maxResults, 0), expected);
+		}
+		for (int maxReplySize: new int[] { 1, 500, 2000 }) {
+			check("max " + maxReplySize + " bytes", page(dht, dir, key, 0, maxReplySize), expected);
+		}
+
+		dir.close();
+		dht.stop();
+
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	/**
+	 * Asks for pages as the querying node does, and returns the keys in the order received.
+	 */
+	private static List<ID> page(BasicDHTImpl<String> dht, MultiValueDirectory<ID,ValueInfo<String>> dir,
+			ID key, int maxResults, int maxReplySize) {
+		List<ID> received = new ArrayList<ID>();
+		float continuation = Float.NaN;
+
+		for (int numPages = 0; numPages < 1000; numPages++) {
+			Serializable reply = dht.getSimilarPageLocally(key, THRESHOLD, 0, SeenKeys.of(received), continuation,
+					maxResults, maxReplySize, new int[1], dir);
+
+			Serializable results = reply;
+			if (reply instanceof SimilarPage) {
+				results = ((SimilarPage)reply).getResults();
+				continuation = ((SimilarPage)reply).getContinuation();
+			}
+
+			Map<ID,Set<ValueInfo<String>>> values = (Map<ID,Set<ValueInfo<String>>>)results;
+			if (maxResults > 0 && values.size() > maxResults) {
+				System.out.println("a page of " + values.size() + " keys, more than " + maxResults);
+				ok = false;
+			}
+			received.addAll(values.keySet());
+
+			if (!(reply instanceof SimilarPage)) break;
+		}
+
+		return received;
+	}
+
+	private static void check(String name, List<ID> received, Set<ID> expected) {
+		Set<ID> distinct = new HashSet<ID>(received);
+		if (distinct.size() != received.size()) {
+			System.out.println(name + ": " + (received.size() - distinct.size()) + " keys repeated");
+			ok = false;
+		}
+		if (!distinct.equals(expected)) {
+			Set<ID> missing = new HashSet<ID>(expected);
+			missing.removeAll(distinct);
+			distinct.removeAll(expected);
+			System.out.println(name + ": " + missing.size() + " keys missing, " + distinct.size() + " keys unexpected");
+			ok = false;
+		}
+	}
+}
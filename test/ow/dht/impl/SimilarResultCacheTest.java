@@ -0,0 +1,163 @@
+package ow.dht.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ow.dht.ValueInfo;
+import ow.directory.comparator.HammingIDComparator;
+import ow.id.ID;
+import ow.util.Timer;
+
+/**
+ * Checks lookups by threshold, invalidation, LRU eviction and expiration of {@link SimilarResultCache}.
+ * Keys are of a byte, whose similarity to 0x00 is (8 - the number of bits set) / 8.
+ */
+public class SimilarResultCacheTest {
+	private final static long NO_EXPIRATION = 3600 * 1000L;
+
+	private static boolean ok = true;
+
+	public static void main(String[] args) throws Exception {
+		testThreshold();
+		testInvalidation();
+		testLRU();
+		testExpiration();
+
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static void testThreshold() {
+		SimilarResultCache<String> cache = newCache(10, NO_EXPIRATION);
+		ID key = id(0x00);
+
+		check("miss on empty", cache.get(key, 0.5f, 0, -1) == null);
+
+		cache.put(key, 0.5f, 2, results(0x00, 0x01, 0x07), Timer.currentTimeMillis(), cache.getGeneration());
+
+		check("hit on the same threshold", keys(cache.get(key, 0.5f, 2, -1)).equals(keySet(0x00, 0x01, 0x07)));
+		check("hit on a higher threshold, filtered", keys(cache.get(key, 0.8f, 2, -1)).equals(keySet(0x00, 0x01)));
+		check("hit with fewer extra hops", cache.get(key, 0.8f, 1, -1) != null);
+		check("top-k ranked", keys(cache.get(key, 0.5f, 2, 2)).equals(keySet(0x00, 0x01)));
+		check("miss on a lower threshold", cache.get(key, 0.4f, 2, -1) == null);
+		check("miss with more extra hops", cache.get(key, 0.5f, 3, -1) == null);
+		check("miss on another key", cache.get(id(0x01), 0.5f, 2, -1) == null);
+
+		// a lower threshold answers for the higher one
+		cache.put(key, 0.25f, 2, results(0x00, 0x01, 0x07, 0x3f), Timer.currentTimeMillis(), cache.getGeneration());
+		check("floor entry on a lower threshold", keys(cache.get(key, 0.3f, 2, -1)).equals(keySet(0x00, 0x01, 0x07)));
+	}
+
+	private static void testInvalidation() {
+		SimilarResultCache<String> cache = newCache(10, NO_EXPIRATION);
+		ID key = id(0x00);
+
+		cache.put(key, 0.5f, 0, results(0x00, 0x01), Timer.currentTimeMillis(), cache.getGeneration());
+		cache.put(key, 0.9f, 0, results(0x00), Timer.currentTimeMillis(), cache.getGeneration());
+
+		// a put or a remove of a dissimilar key keeps the entries
+		cache.invalidate(id(0xff));
+		check("kept on a dissimilar key", cache.get(key, 0.5f, 0, -1) != null);
+
+		// of a key with similarity 0.75 drops the entry on 0.5, not the one on 0.9
+		cache.invalidate(id(0x03));
+		check("invalidated on a similar key", cache.get(key, 0.5f, 0, -1) == null);
+		check("kept on a higher threshold", cache.get(key, 0.9f, 0, -1) != null);
+
+		// results of a search across an invalidation are checked against the key put or removed meanwhile
+		long generation = cache.getGeneration();
+		cache.invalidate(id(0x03));
+		cache.put(key, 0.5f, 0, results(0x00, 0x01), Timer.currentTimeMillis(), generation);
+		check("not valid across an invalidation on a similar key", cache.get(key, 0.5f, 0, -1) == null);
+
+		generation = cache.getGeneration();
+		cache.invalidate(id(0xff));
+		cache.put(key, 0.5f, 0, results(0x00, 0x01), Timer.currentTimeMillis(), generation);
+		check("valid across an invalidation on a dissimilar key", cache.get(key, 0.5f, 0, -1) != null);
+
+		cache.put(key, 0.5f, 0, results(0x00, 0x01), Timer.currentTimeMillis(), cache.getGeneration());
+		check("cached after an invalidation", cache.get(key, 0.5f, 0, -1) != null);
+
+		// entries older than the keys logged are not valid
+		for (int i = 0; i < 10000; i++) cache.invalidate(id(0xff));
+		check("invalidated after many writes", cache.get(key, 0.5f, 0, -1) == null);
+	}
+
+	private static void testLRU() {
+		SimilarResultCache<String> cache = newCache(2, NO_EXPIRATION);
+
+		cache.put(id(0x01), 0.5f, 0, results(0x01), Timer.currentTimeMillis(), cache.getGeneration());
+		cache.put(id(0x02), 0.5f, 0, results(0x02), Timer.currentTimeMillis(), cache.getGeneration());
+		cache.get(id(0x01), 0.5f, 0, -1);	// 0x02 is the least recently used
+		cache.put(id(0x04), 0.5f, 0, results(0x04), Timer.currentTimeMillis(), cache.getGeneration());
+
+		check("recently used kept", cache.get(id(0x01), 0.5f, 0, -1) != null);
+		check("least recently used evicted", cache.get(id(0x02), 0.5f, 0, -1) == null);
+		check("newest kept", cache.get(id(0x04), 0.5f, 0, -1) != null);
+	}
+
+	private static void testExpiration() throws InterruptedException {
+		// TTL of the cache
+		SimilarResultCache<String> cache = newCache(10, 200L);
+		cache.put(id(0x00), 0.5f, 0, results(0x00), Timer.currentTimeMillis(), cache.getGeneration());
+		check("hit before the TTL of the cache", cache.get(id(0x00), 0.5f, 0, -1) != null);
+		Thread.sleep(300L);
+		check("expired after the TTL of the cache", cache.get(id(0x00), 0.5f, 0, -1) == null);
+
+		// remaining TTL of a value, counted from the start of the search
+		cache = newCache(10, NO_EXPIRATION);
+		long searched = Timer.currentTimeMillis() - 100L;
+		Map<ID,Set<ValueInfo<String>>> r = results(0x00);
+		r.get(id(0x00)).iterator().next().setTTL(300L);
+		cache.put(id(0x00), 0.5f, 0, r, searched, cache.getGeneration());
+		check("hit before the value expires", cache.get(id(0x00), 0.5f, 0, -1) != null);
+		Thread.sleep(300L);
+		check("expired with the value", cache.get(id(0x00), 0.5f, 0, -1) == null);
+
+		r = results(0x00);
+		r.get(id(0x00)).iterator().next().setTTL(50L);
+		cache.put(id(0x00), 0.5f, 0, r, searched, cache.getGeneration());
+		check("not cached if the value expired during the search", cache.get(id(0x00), 0.5f, 0, -1) == null);
+	}
+
+	//
+	// Utility methods
+	//
+
+	private static SimilarResultCache<String> newCache(int capacity, long ttl) {
+		return new SimilarResultCache<String>(capacity, ttl, new HammingIDComparator());
+	}
+
+	private static ID id(int b) {
+		return ID.getID(new byte[] { (byte)b }, 1);
+	}
+
+	private static Set<ID> keySet(int... bs) {
+		Set<ID> ret = new HashSet<ID>();
+		for (int b: bs) ret.add(id(b));
+		return ret;
+	}
+
+	private static Set<ID> keys(Map<ID,Set<ValueInfo<String>>> results) {
+		return (results != null ? results.keySet() : null);
+	}
+
+	private static Map<ID,Set<ValueInfo<String>>> results(int... bs) {
+		Map<ID,Set<ValueInfo<String>>> ret = new HashMap<ID,Set<ValueInfo<String>>>();
+		for (int b: bs) {
+			Set<ValueInfo<String>> values = new HashSet<ValueInfo<String>>();
+			values.add(new ValueInfo<String>("value" + b, NO_EXPIRATION, null));
+			ret.put(id(b), values);
+		}
+		return ret;
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("failed: " + name);
+			ok = false;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package ow.directory;
+
+import java.util.Map;
+import java.util.Set;
+
+import ow.id.ID;
+
+/**
+ * Puts and removes values from threads at once, with and without expiration,
+ * and checks that no value is lost and that the similarity index agrees with the keys.
+ * Usage: ConcurrentMultiValueDirectoryTest [VolatileMap|PersistentMap|OffHeapMap|BerkeleyDB]
+ */
+public class ConcurrentMultiValueDirectoryTest {
+	private final static int NUM_THREADS = 8;
+	private final static int NUM_KEYS = 100;
+	private final static int NUM_VALUES = 20;	// per key and thread
+
+	public static void main(String[] args) throws Exception {
+		String providerName = (args.length > 0 ? args[0] : "VolatileMap");
+
+		boolean ok = true;
+		ok &= test(providerName, -1L);
+		ok &= test(providerName, 60 * 60 * 1000L);	// not to expire during the test
+
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static boolean test(String providerName, long expirationTime) throws Exception {
+		DirectoryProvider dirProvider = DirectoryFactory.getProvider(providerName);
+		DirectoryConfiguration dirConfig = DirectoryConfiguration.getDefaultConfiguration();
+		dirConfig.setExpirationTime(expirationTime);
+
+		final MultiValueDirectory<ID,String> dir =
+			dirProvider.openMultiValueDirectory(ID.class, String.class, "./", "concurrenttest", dirConfig);
+		dir.clear();
+
+		final ID[] keys = new ID[NUM_KEYS];
+		for (int i = 0; i < NUM_KEYS; i++) {
+			keys[i] = ID.getSHA1BasedID(("key" + i).getBytes(), 8);
+		}
+
+		// each thread puts its values on every key and removes the odd ones
+		long start = System.currentTimeMillis();
+		Thread[] threads = new Thread[NUM_THREADS];
+		final Exception[] error = new Exception[1];
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int v = 0; v < NUM_VALUES; v++) {
+							for (ID k: keys) dir.put(k, thread + "-" + v);
+						}
+						for (int v = 1; v < NUM_VALUES; v += 2) {
+							for (ID k: keys) {
+								if (dir.remove(k, thread + "-" + v) == null) throw new Exception("not removed: " + k);
+							}
+						}
+					}
+					catch (Exception e) {
+						error[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t: threads) t.join();
+		long elapsed = System.currentTimeMillis() - start;
+
+		boolean ok = (error[0] == null);
+		if (!ok) error[0].printStackTrace();
+
+		int expected = NUM_THREADS * ((NUM_VALUES + 1) / 2);
+		for (ID k: keys) {
+			Set<String> values = dir.get(k);
+			if (values == null || values.size() != expected) {
+				System.out.println("key " + k + ": " + (values == null ? 0 : values.size()) + " values, should be " + expected);
+				ok = false;
+				break;
+			}
+		}
+
+		// index agrees with the keys
+		for (ID k: keys) {
+			if (!dir.getSimilarKeys(k, 1.0f).contains(k)) {
+				System.out.println("key " + k + " not found by similarity");
+				ok = false;
+				break;
+			}
+		}
+
+		// drop half of the keys
+		for (int i = 0; i < NUM_KEYS; i += 2) dir.remove(keys[i]);
+
+		Map<ID,Set<String>> similar = dir.getSimilar(keys[0], 0.0f);
+		if (similar.size() != NUM_KEYS / 2 || similar.containsKey(keys[0])) {
+			System.out.println("similar keys after removal: " + similar.size() + ", should be " + (NUM_KEYS / 2));
+			ok = false;
+		}
+
+		System.out.println(providerName + " (expiration " + expirationTime + "): "
+				+ (NUM_THREADS * NUM_KEYS * NUM_VALUES * 3 / 2) + " writes in " + elapsed + " msec, "
+				+ (ok ? "OK" : "FAILED"));
+
+		dir.clear();
+		dir.close();
+
+		return ok;
+	}
+}
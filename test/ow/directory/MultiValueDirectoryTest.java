@@ -23,6 +23,7 @@ public class MultiValueDirectoryTest {
 		String providerName = "BerkeleyDB";
 //		String providerName = "PersistentMap";
 //		String providerName = "VolatileMap";
+//		String providerName = "OffHeapMap";
 
 		DirectoryProvider dirProvider = DirectoryFactory.getProvider(providerName);
 		DirectoryConfiguration dirConfig = DirectoryConfiguration.getDefaultConfiguration();
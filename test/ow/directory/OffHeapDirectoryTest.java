@@ -0,0 +1,78 @@
+package ow.directory;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import ow.directory.inmemory.OffHeapMultiValueDirectory;
+import ow.id.ID;
+
+/**
+ * Puts values to an "OffHeapMap" directory, removes most of them
+ * and checks that compaction releases slabs without losing the rest.
+ */
+public class OffHeapDirectoryTest {
+	private final static int NUM_KEYS = 10000;
+	private final static int NUM_VALUES = 20;	// per key
+	private final static String PADDING = String.format("%100s", "");	// values fill several slabs
+
+	public static void main(String[] args) throws Exception {
+		DirectoryProvider dirProvider = DirectoryFactory.getProvider("OffHeapMap");
+		DirectoryConfiguration dirConfig = DirectoryConfiguration.getDefaultConfiguration();
+
+		OffHeapMultiValueDirectory<ID,String> dir = (OffHeapMultiValueDirectory<ID,String>)
+			dirProvider.<ID,String>openMultiValueDirectory(ID.class, String.class, "./", "offheaptest", dirConfig);
+
+		ID[] keys = new ID[NUM_KEYS];
+		for (int i = 0; i < NUM_KEYS; i++) {
+			keys[i] = ID.getSHA1BasedID(("key" + i).getBytes(), 8);
+		}
+
+		long start = System.currentTimeMillis();
+		for (int v = 0; v < NUM_VALUES; v++) {
+			for (ID k: keys) dir.put(k, "value" + v + PADDING);
+		}
+		for (ID k: keys) dir.put(k, "value0" + PADDING);	// replaces
+		long elapsed = System.currentTimeMillis() - start;
+
+		System.out.println("put " + (NUM_KEYS * (NUM_VALUES + 1)) + " values in " + elapsed + " msec, slabs: "
+				+ dir.getOffHeapCapacity() + " bytes, live: " + dir.getOffHeapLiveBytes() + " bytes");
+
+		// remove three quarters of the values, from every slab
+		Set<String> expected = new HashSet<String>();
+		for (int v = 0; v < NUM_VALUES; v++) {
+			if (v % 4 == 0) {
+				expected.add("value" + v + PADDING);
+				continue;
+			}
+			for (ID k: keys) dir.remove(k, "value" + v + PADDING);
+		}
+
+		long before = dir.getOffHeapCapacity();
+		int moved = dir.compact();
+		long after = dir.getOffHeapCapacity();
+
+		System.out.println("moved " + moved + " values, slabs: " + before + " -> " + after + " bytes, live: "
+				+ dir.getOffHeapLiveBytes() + " bytes");
+
+		boolean ok = (after < before);
+		for (ID k: keys) {
+			Set<String> values = dir.get(k);
+			if (!expected.equals(values)) {
+				System.out.println("key " + k + ": " + (values == null ? 0 : values.size()) + " values, should be " + expected.size());
+				ok = false;
+				break;
+			}
+		}
+
+		for (ID k: keys) dir.remove(k);
+		if (!dir.isEmpty() || dir.getOffHeapLiveBytes() != 0L) {
+			System.out.println("not empty: " + dir.getOffHeapLiveBytes() + " bytes live");
+			ok = false;
+		}
+
+		dir.close();
+
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+}
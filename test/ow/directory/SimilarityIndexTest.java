@@ -0,0 +1,101 @@
+package ow.directory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import ow.directory.comparator.HammingIDComparator;
+import ow.directory.index.SimilarityIndexFactory;
+import ow.id.ID;
+
+/**
+ * Checks similarity search with an index, and its top-k version, against a linear scan.
+ */
+public class SimilarityIndexTest {
+	private final static int ID_SIZE = 8;	// 64-bit perceptual hashes
+	private final static int NUM_KEYS = 50000;
+	private final static int NUM_QUERIES = 200;
+	private final static float[] THRESHOLDS = { 1.0f, 0.95f, 0.9f, 0.85f, 0.8f };
+	private final static int TOP_K = 10;
+
+	public static void main(String[] args) throws Exception {
+		String providerName = (args.length > 0 ? args[0] : "VolatileMap");
+
+		DirectoryProvider dirProvider = DirectoryFactory.getProvider(providerName);
+		DirectoryConfiguration dirConfig = DirectoryConfiguration.getDefaultConfiguration();
+		dirConfig.setSimilarityIndex(args.length > 1 ? args[1] : SimilarityIndexFactory.INDEX_MULTI_INDEX_HASHING);
+
+		SingleValueDirectory<ID,String> dir = dirProvider.openSingleValueDirectory(ID.class, String.class, "./", "similarity", dirConfig);
+
+		// keys and their neighbors
+		Random rnd = new Random();
+		List<ID> keys = new ArrayList<ID>();
+		for (int i = 0; i < NUM_KEYS; i++) {
+			ID id = (i % 10 == 0 || keys.isEmpty() ? ID.getRandomID(ID_SIZE) : flip(keys.get(keys.size() - 1), rnd.nextInt(12), rnd));
+			keys.add(id);
+			dir.put(id, "v" + i);
+		}
+
+		// remove some keys
+		for (int i = 0; i < NUM_KEYS; i += 7) {
+			dir.remove(keys.get(i));
+		}
+
+		int errors = 0;
+		long indexedTime = 0L, scanTime = 0L;
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			ID query = flip(keys.get(rnd.nextInt(keys.size())), rnd.nextInt(6), rnd);
+
+			for (float threshold: THRESHOLDS) {
+				long t = System.nanoTime();
+				Set<ID> indexed = dir.getSimilarKeys(query, threshold);
+				indexedTime += System.nanoTime() - t;
+
+				t = System.nanoTime();
+				Set<ID> scanned = new HashSet<ID>();
+				for (ID k: dir.keySet()) {
+					if (HammingIDComparator.getSimilarity(query, k) >= threshold) scanned.add(k);
+				}
+				scanTime += System.nanoTime() - t;
+
+				if (!indexed.equals(scanned)) {
+					errors++;
+					System.out.println("threshold " + threshold + ": " + query + " indexed " + indexed.size() + ", scanned " + scanned.size());
+				}
+
+				// top-k: compare similarities because keys with the same similarity are interchangeable
+				NearestKeys<ID> nearest = dir.getNearestKeys(query, threshold, TOP_K);
+				List<Float> expected = new ArrayList<Float>();
+				for (ID k: scanned) expected.add(HammingIDComparator.getSimilarity(query, k));
+				Collections.sort(expected, Collections.reverseOrder());
+				expected = expected.subList(0, Math.min(TOP_K, expected.size()));
+
+				List<Float> actual = new ArrayList<Float>();
+				for (int i = 0; i < nearest.size(); i++) actual.add(nearest.getSimilarity(i));
+
+				if (!actual.equals(expected) || nearest.isTruncated() != (scanned.size() > TOP_K)) {
+					errors++;
+					System.out.println("threshold " + threshold + ": " + query + " top-" + TOP_K + " " + actual + ", scanned " + expected);
+				}
+			}
+		}
+
+		System.out.println("indexed: " + indexedTime / 1000000 + " msec, scanned: " + scanTime / 1000000 + " msec");
+		System.out.println(errors == 0 ? "OK" : errors + " errors.");
+
+		dir.close();
+	}
+
+	private static ID flip(ID id, int numBits, Random rnd) {
+		byte[] b = id.getValue().clone();
+		for (int i = 0; i < numBits; i++) {
+			int bit = rnd.nextInt(b.length * 8);
+			b[bit / 8] ^= (byte)(1 << (bit % 8));
+		}
+
+		return ID.getID(b, b.length);
+	}
+}
@@ -0,0 +1,108 @@
+package ow.id;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import ow.routing.chord.GrayCode;
+
+/**
+ * Checks arithmetic on words of IDs, and Gray codes on them, against BigInteger.
+ */
+public class IDWordsTest {
+	private final static int[] SIZES = { 1, 4, 8, 16, 20, 32 };
+	private final static int NUM_TRIALS = 10000;
+
+	public static void main(String[] args) {
+		Random rnd = new Random();
+		int errors = 0;
+
+		for (int size: SIZES) {
+			int sizeInBit = size * 8;
+			BigInteger space = BigInteger.ONE.shiftLeft(sizeInBit);
+			long[] r = new long[ID.getWordLength(size)];
+
+			for (int i = 0; i < NUM_TRIALS; i++) {
+				ID a = ID.getRandomID(size);
+				ID b = (rnd.nextInt(10) == 0 ? a : ID.getRandomID(size));
+				BigInteger ai = a.toBigInteger(), bi = b.toBigInteger();
+
+				if (!ID.wordsToBigInteger(a.getWords()).equals(ai)) {
+					errors++; System.out.println("words: " + a);
+				}
+
+				if (Integer.signum(a.compareTo(b)) != Integer.signum(ai.compareTo(bi))) {
+					errors++; System.out.println("compare: " + a + ", " + b);
+				}
+
+				BigInteger diff = ai.subtract(bi).mod(space);
+				if (!ID.wordsToBigInteger(ID.subtractWords(a.getWords(), b.getWords(), sizeInBit, r)).equals(diff)) {
+					errors++; System.out.println("subtract: " + a + ", " + b);
+				}
+
+				if (!ID.wordsToBigInteger(ID.xorWords(a.getWords(), b.getWords(), r)).equals(ai.xor(bi))) {
+					errors++; System.out.println("xor: " + a + ", " + b);
+				}
+
+				if (ID.xorBitCount(a.getWords(), b.getWords()) != ai.xor(bi).bitCount()) {
+					errors++; System.out.println("xorBitCount: " + a + ", " + b);
+				}
+
+				if (ID.bitLength(a.getWords()) != ai.bitLength()) {
+					errors++; System.out.println("bitLength: " + a);
+				}
+
+				if (ID.matchLengthFromMSB(a, b) != sizeInBit - ai.xor(bi).bitLength()) {
+					errors++; System.out.println("matchLengthFromMSB: " + a + ", " + b);
+				}
+
+				int shift = rnd.nextInt(sizeInBit);
+				System.arraycopy(a.getWords(), 0, r, 0, r.length);
+				BigInteger shifted = ai.shiftLeft(shift).mod(BigInteger.ONE.shiftLeft(r.length * 64));
+				if (!ID.wordsToBigInteger(ID.shiftLeftWords(r, shift, r)).equals(shifted)) {
+					errors++; System.out.println("shiftLeft " + shift + ": " + a);
+				}
+
+				BigInteger complement = space.subtract(BigInteger.ONE).subtract(ai);
+				if (!ID.wordsToBigInteger(ID.complementWords(a.getWords(), sizeInBit, r)).equals(complement)) {
+					errors++; System.out.println("complement: " + a);
+				}
+
+				if (!ID.wordsToBigInteger(ID.bigIntegerToWords(ai, r)).equals(ai)) {
+					errors++; System.out.println("bigIntegerToWords: " + a);
+				}
+
+				int bit = rnd.nextInt(sizeInBit);
+				if (ID.testBit(a.getWords(), bit) != ai.testBit(bit)) {
+					errors++; System.out.println("testBit " + bit + ": " + a);
+				}
+
+				// Gray codes
+				if (!ID.wordsToBigInteger(GrayCode.toGray(a.getWords(), r)).equals(GrayCode.toGray(ai))) {
+					errors++; System.out.println("toGray: " + a);
+				}
+
+				BigInteger af = GrayCode.fromGray(ai), bf = GrayCode.fromGray(bi);
+				if (!ID.wordsToBigInteger(GrayCode.fromGray(a.getWords(), r)).equals(af)) {
+					errors++; System.out.println("fromGray: " + a);
+				}
+
+				if (!ID.wordsToBigInteger(GrayCode.distance(a.getWords(), b.getWords(), sizeInBit, r))
+						.equals(af.subtract(bf).mod(space))) {
+					errors++; System.out.println("Gray distance: " + a + ", " + b);
+				}
+
+				if (!ID.wordsToBigInteger(GrayCode.subtract(a.getWords(), b.getWords(), sizeInBit, r))
+						.equals(GrayCode.toGray(af.subtract(bf).mod(space)))) {
+					errors++; System.out.println("Gray subtract: " + a + ", " + b);
+				}
+
+				if (!ID.wordsToBigInteger(GrayCode.add(a.getWords(), b.getWords(), sizeInBit, r))
+						.equals(GrayCode.toGray(af.add(bf).mod(space)))) {
+					errors++; System.out.println("Gray add: " + a + ", " + b);
+				}
+			}
+		}
+
+		System.out.println(errors == 0 ? "OK" : errors + " errors.");
+	}
+}
@@ -0,0 +1,149 @@
+package ow.id.lsh;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import ow.id.ID;
+
+/**
+ * Checks that {@link RandomHyperplaneHash} hashes a vector identically for the same seed,
+ * and that {@link MultiProbe} plans distinct probes in ascending order of the cost of the flipped bits.
+ */
+public class MultiProbeTest {
+  private final static int DIMENSIONS = 16;
+  private final static int NUM_VECTORS = 500;
+
+  private static boolean ok = true;
+
+  public static void main(String[] args) throws Exception {
+    testHash();
+    testProbes();
+
+    System.out.println(ok ? "OK" : "FAILED");
+    System.exit(ok ? 0 : 1);
+  }
+
+  private static void testHash() throws Exception {
+    Random rnd = new Random(1);
+    RandomHyperplaneHash h1 = new RandomHyperplaneHash(42L, DIMENSIONS, 64, 3);
+    RandomHyperplaneHash h2 = new RandomHyperplaneHash(42L, DIMENSIONS, 64, 3);
+    RandomHyperplaneHash other = new RandomHyperplaneHash(43L, DIMENSIONS, 64, 3);
+
+    double[][] vectors = new double[NUM_VECTORS][];
+    float[][] floats = new float[NUM_VECTORS][];
+    for (int i = 0; i < NUM_VECTORS; i++) {
+      vectors[i] = new double[DIMENSIONS];
+      floats[i] = new float[DIMENSIONS];
+      for (int j = 0; j < DIMENSIONS; j++) {
+        floats[i][j] = (float)rnd.nextGaussian();
+        vectors[i][j] = floats[i][j];
+      }
+    }
+
+    boolean same = true, differ = false, signed = true, floatSame = true;
+    for (int i = 0; i < NUM_VECTORS; i++) {
+      ID[] ids = h1.hash(vectors[i]);
+      same &= sameIDs(ids, h2.hash(vectors[i])) && sameIDs(ids, h1.hash(vectors[i]));
+      differ |= !sameIDs(ids, other.hash(vectors[i]));
+      floatSame &= sameIDs(ids, h1.hash(floats[i]));
+
+      for (int t = 0; t < h1.getNumTables(); t++) {
+        RandomHyperplaneHash.Signature sig = h1.sign(t, vectors[i]);
+        signed &= sig.getID().equals(ids[t]);
+        for (int b = 0; b < sig.getBitLength(); b++) {
+          signed &= (testBit(sig.getID(), b) == (sig.getMargin(b) >= 0.0));
+        }
+      }
+    }
+    check("deterministic for a seed", same);
+    check("different for another seed", differ);
+    check("float vectors", floatSame);
+    check("bits by the sign of margins", signed);
+
+    ID[][] all = h1.hashAll(vectors);
+    boolean parallel = (all.length == NUM_VECTORS);
+    for (int i = 0; i < NUM_VECTORS && parallel; i++) parallel &= sameIDs(all[i], h1.hash(vectors[i]));
+    check("hashed in parallel", parallel);
+
+    boolean rejected = false;
+    try {
+      h1.hash(0, new double[DIMENSIONS + 1]);
+    } catch (IllegalArgumentException e) {
+      rejected = true;
+    }
+    check("dimensions checked", rejected);
+  }
+
+  private static void testProbes() {
+    Random rnd = new Random(2);
+    RandomHyperplaneHash h = new RandomHyperplaneHash(7L, DIMENSIONS, 8, 2);
+
+    for (int n = 0; n < 20; n++) {
+      double[] v = new double[DIMENSIONS];
+      for (int j = 0; j < DIMENSIONS; j++) v[j] = rnd.nextGaussian();
+      RandomHyperplaneHash.Signature[] sigs = { h.sign(0, v), h.sign(1, v) };
+
+      // every ID of 8 bits in both tables
+      List<MultiProbe.Probe> probes = MultiProbe.plan(sigs, 2 * 256 + 10);
+      check("all probes", probes.size() == 2 * 256);
+      check("queries first", probes.get(0).getID().equals(sigs[0].getID())
+          && probes.get(1).getID().equals(sigs[1].getID())
+          && probes.get(0).getNumFlippedBits() == 0 && probes.get(0).getScore() == 0.0);
+
+      Set<String> seen = new HashSet<String>();
+      boolean ordered = true, distinct = true, scored = true;
+      double last = 0.0;
+      for (MultiProbe.Probe p: probes) {
+        ordered &= (p.getScore() >= last);
+        last = p.getScore();
+        distinct &= seen.add(p.getTable() + ":" + p.getID());
+
+        // the flipped bits and their cost
+        RandomHyperplaneHash.Signature sig = sigs[p.getTable()];
+        int flipped = 0;
+        double score = 0.0;
+        for (int b = 0; b < 8; b++) {
+          if (testBit(p.getID(), b) != testBit(sig.getID(), b)) {
+            flipped++;
+            score += sig.getMargin(b) * sig.getMargin(b);
+          }
+        }
+        scored &= p.getKey().equals(sig.getID()) && flipped == p.getNumFlippedBits()
+            && Math.abs(score - p.getScore()) <= 1e-9 * Math.max(1.0, score);
+      }
+      check("ordered by cost", ordered);
+      check("no duplicate", distinct);
+      check("cost of the flipped bits", scored);
+
+      // a prefix of the plan
+      List<MultiProbe.Probe> few = MultiProbe.plan(sigs, 10);
+      boolean prefix = (few.size() == 10);
+      for (int i = 0; i < few.size() && prefix; i++) prefix &= few.get(i).getID().equals(probes.get(i).getID());
+      check("fewer probes", prefix);
+    }
+
+    check("no probe", MultiProbe.plan(h.sign(0, new double[DIMENSIONS]), 0).isEmpty());
+  }
+
+  private static boolean testBit(ID id, int bit) {
+    byte[] value = id.getValue();
+    return (value[value.length - 1 - bit / 8] & (1 << (bit % 8))) != 0;
+  }
+
+  private static boolean sameIDs(ID[] a, ID[] b) {
+    if (a.length != b.length) return false;
+    for (int i = 0; i < a.length; i++) {
+      if (!a[i].equals(b[i])) return false;
+    }
+    return true;
+  }
+
+  private static void check(String name, boolean passed) {
+    if (!passed) {
+      System.out.println("failed: " + name);
+      ok = false;
+    }
+  }
+}